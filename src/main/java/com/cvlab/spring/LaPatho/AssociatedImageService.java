@@ -0,0 +1,290 @@
+package com.cvlab.spring.LaPatho;
+
+import loci.formats.IFormatReader;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.io.Resource;
+import org.springframework.core.io.UrlResource;
+import org.springframework.stereotype.Service;
+
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.EnumMap;
+import java.util.Hashtable;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Properties;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.regex.Pattern;
+
+/**
+ * Slayt dosyasındaki yardımcı görüntüler (etiket, makro, küçük resim).
+ *
+ * BIF/SVS/NDPI dosyaları ana piramidin yanında küçük, tek çözünürlüklü seriler taşır. Bu seriler
+ * ingest sırasında sınıflandırılır, bir kez okunup tek JPEG olarak tile deposunun yanına yazılır
+ * ({output-base-path}/{imageId}.{kind}.jpg) ve hiçbir zaman tile'lanmaz. Hangi serilerin
+ * çıkarıldığı {imageId}.associated dosyasında tutulur; bu dosya yoksa (eski görüntüler)
+ * çıkarma ilk istekte yapılır.
+ */
+@Service
+@Slf4j
+public class AssociatedImageService {
+
+    public enum Kind { LABEL, MACRO, THUMBNAIL }
+
+    /** Yardımcı görüntü bu boyutu aşarsa en-boy oranı korunarak küçültülür */
+    @Value("${associated.max-size:2048}")
+    private int maxSize;
+
+    @Value("${tile.block-size:4096}")
+    private int blockSize;
+
+    @Autowired
+    private ImageReaderPool readerPool;
+
+    @Autowired
+    private TileStore tileStore;
+
+    @Autowired
+    private TileEncoder tileEncoder;
+
+    /** Makro (slaytın tamamı) görüntülerinin en küçük en-boy oranı */
+    private static final double MACRO_MIN_ASPECT = 2.2;
+
+    /** Küçük resmin en-boy oranının ana görüntüden en fazla sapması */
+    private static final double THUMBNAIL_ASPECT_TOLERANCE = 0.15;
+
+    private static final Pattern LABEL_HINT = Pattern.compile("\\blabel", Pattern.CASE_INSENSITIVE);
+    private static final Pattern MACRO_HINT = Pattern.compile("\\b(macro|overview)", Pattern.CASE_INSENSITIVE);
+    private static final Pattern THUMBNAIL_HINT = Pattern.compile("\\bthumb", Pattern.CASE_INSENSITIVE);
+
+    /** Eski görüntülerde istek anında çıkarma aynı görüntü için bir kez yapılır */
+    private final Map<String, Object> extractLocks = new ConcurrentHashMap<>();
+
+    /** Çıkarılmış bir yardımcı görüntünün boyutları */
+    public record AssociatedImage(Kind kind, int series, int width, int height) {}
+
+    /**
+     * Ana seri dışındaki serileri sınıflandırır. Çok çözünürlüklü veya ana görüntüye yakın
+     * boyuttaki seriler (ör. BIF maskeleri) atlanır. Kalanlarda önce seri metadata'sındaki ipuçlarına
+     * ("label", "macro", "thumbnail"), yoksa geometriye bakılır: çok geniş seriler makro,
+     * en-boy oranı ana görüntüye benzeyenler küçük resim, kalanlar etiket sayılır.
+     * Reader'ın seçili serisi değişir.
+     */
+    public static Map<Kind, Integer> classify(IFormatReader reader, int mainSeries) {
+        reader.setSeries(mainSeries);
+        long mainWidth = reader.getSizeX();
+        long mainHeight = reader.getSizeY();
+        double mainAspect = (double) mainWidth / Math.max(1, mainHeight);
+
+        Map<Kind, Integer> result = new EnumMap<>(Kind.class);
+        for (int series = 0; series < reader.getSeriesCount(); series++) {
+            if (series == mainSeries) {
+                continue;
+            }
+            reader.setSeries(series);
+            int width = reader.getSizeX();
+            int height = reader.getSizeY();
+            // İpucu taşıyan seriler de (ör. BIF'te "label" geçen maske seri adları) aynı elemeden geçer
+            boolean small = width * 4L <= mainWidth && height * 4L <= mainHeight;
+            if (!small || reader.getResolutionCount() > 1) {
+                continue;
+            }
+            Kind kind = hintedKind(reader.getSeriesMetadata());
+            if (kind == null) {
+                double aspect = (double) Math.max(width, height) / Math.max(1, Math.min(width, height));
+                if (aspect >= MACRO_MIN_ASPECT) {
+                    kind = Kind.MACRO;
+                } else if (Math.abs((double) width / Math.max(1, height) - mainAspect) <= mainAspect * THUMBNAIL_ASPECT_TOLERANCE) {
+                    kind = Kind.THUMBNAIL;
+                } else {
+                    kind = Kind.LABEL;
+                }
+            }
+            result.putIfAbsent(kind, series);
+        }
+        return result;
+    }
+
+    private static Kind hintedKind(Hashtable<String, Object> metadata) {
+        if (metadata == null) {
+            return null;
+        }
+        StringBuilder text = new StringBuilder();
+        for (Map.Entry<String, Object> entry : metadata.entrySet()) {
+            text.append(entry.getKey()).append(' ');
+            String value = String.valueOf(entry.getValue());
+            // Uzun XML/açıklama değerleri yanlış eşleşmelere yol açar
+            if (value.length() <= 256) {
+                text.append(value).append(' ');
+            }
+        }
+        if (LABEL_HINT.matcher(text).find()) {
+            return Kind.LABEL;
+        }
+        if (MACRO_HINT.matcher(text).find()) {
+            return Kind.MACRO;
+        }
+        if (THUMBNAIL_HINT.matcher(text).find()) {
+            return Kind.THUMBNAIL;
+        }
+        return null;
+    }
+
+    /**
+     * Yardımcı görüntüleri çıkarıp depoya yazar. Hata tile üretimini durdurmaz.
+     * Reader'ın seçili serisi ve çözünürlüğü sonunda ana seriye geri alınır.
+     */
+    public void extract(IFormatReader reader, int mainSeries, String imageId) {
+        Map<String, String> index = new LinkedHashMap<>();
+        try {
+            for (Map.Entry<Kind, Integer> entry : classify(reader, mainSeries).entrySet()) {
+                Kind kind = entry.getKey();
+                int series = entry.getValue();
+                try {
+                    reader.setSeries(series);
+                    reader.setResolution(0);
+                    BufferedImage image = readScaled(reader, maxSize, blockSize);
+                    write(tileStore.associatedPath(imageId, kind.name().toLowerCase(Locale.ROOT)),
+                            tileEncoder.encode(image));
+                    index.put(kind.name(), series + " " + image.getWidth() + " " + image.getHeight());
+                    log.info("Yardımcı görüntü çıkarıldı: imageId={}, tür={}, seri={}, boyut={}x{}",
+                            imageId, kind, series, image.getWidth(), image.getHeight());
+                } catch (Exception e) {
+                    log.warn("Yardımcı görüntü okunamadı: imageId={}, tür={}, seri={}, error={}",
+                            imageId, kind, series, e.getMessage());
+                }
+            }
+            writeIndex(imageId, index);
+        } catch (Exception e) {
+            log.warn("Yardımcı görüntüler çıkarılamadı: imageId={}, error={}", imageId, e.getMessage());
+        } finally {
+            reader.setSeries(mainSeries);
+            reader.setResolution(0);
+        }
+    }
+
+    /** Görüntünün yardımcı görüntüleri; gerekirse önce çıkarılır */
+    public Map<Kind, AssociatedImage> list(ImageEntity image) throws Exception {
+        String imageId = image.getId().toString();
+        ensureExtracted(image);
+        Map<Kind, AssociatedImage> result = new EnumMap<>(Kind.class);
+        for (Map.Entry<String, String> entry : readIndex(imageId).entrySet()) {
+            Kind kind = Kind.valueOf(entry.getKey());
+            String[] parts = entry.getValue().split(" ");
+            result.put(kind, new AssociatedImage(kind, Integer.parseInt(parts[0]),
+                    Integer.parseInt(parts[1]), Integer.parseInt(parts[2])));
+        }
+        return result;
+    }
+
+    /** Yardımcı görüntünün JPEG'i; dosyada bu tür yoksa boş */
+    public Optional<Resource> find(ImageEntity image, Kind kind) throws Exception {
+        ensureExtracted(image);
+        Path path = tileStore.associatedPath(image.getId().toString(), kind.name().toLowerCase(Locale.ROOT));
+        if (!Files.exists(path)) {
+            return Optional.empty();
+        }
+        return Optional.of(new UrlResource(path.toUri()));
+    }
+
+    private void ensureExtracted(ImageEntity image) throws Exception {
+        String imageId = image.getId().toString();
+        if (Files.exists(tileStore.associatedIndexPath(imageId))) {
+            return;
+        }
+        Object lock = extractLocks.computeIfAbsent(tileStore.resolve(imageId), id -> new Object());
+        try {
+            synchronized (lock) {
+                if (Files.exists(tileStore.associatedIndexPath(imageId))) {
+                    return;
+                }
+                try (ImageReaderPool.PooledReader pooled = readerPool.borrow(image.getPath())) {
+                    IFormatReader reader = pooled.get();
+                    extract(reader, TileService.findWSISeries(reader), imageId);
+                }
+            }
+        } finally {
+            extractLocks.remove(tileStore.resolve(imageId), lock);
+        }
+    }
+
+    /**
+     * Seçili seri ve çözünürlüğü bloklar halinde okur, maxSize'ı aşıyorsa en-boy oranını
+     * koruyarak alan ortalamasıyla küçültür.
+     */
+    static BufferedImage readScaled(IFormatReader reader, int maxSize, int blockSize) throws Exception {
+        int width = reader.getSizeX();
+        int height = reader.getSizeY();
+        double scale = Math.min(1.0, (double) maxSize / Math.max(width, height));
+        int targetWidth = Math.max(1, (int) Math.round(width * scale));
+        int targetHeight = Math.max(1, (int) Math.round(height * scale));
+
+        PixelConverter.PixelLayout layout = PixelConverter.PixelLayout.of(reader);
+        boolean unscaled = targetWidth == width && targetHeight == height;
+        BufferedImage result = unscaled ? PixelConverter.createImage(width, height, layout) : null;
+        Downsampler.AreaAverager averager = unscaled ? null : new Downsampler.AreaAverager(
+                width, height, targetWidth, targetHeight, layout.isGray() ? 1 : 3);
+        int maxBlockWidth = Math.min(blockSize, width);
+        int maxBlockHeight = Math.min(blockSize, height);
+        byte[] buffer = PixelConverter.readBuffer(layout.bufferSize(maxBlockWidth, maxBlockHeight));
+        BufferedImage block = unscaled ? null : PixelConverter.blockImage(maxBlockWidth, maxBlockHeight, layout);
+
+        for (int y = 0; y < height; y += blockSize) {
+            for (int x = 0; x < width; x += blockSize) {
+                int blockWidth = Math.min(blockSize, width - x);
+                int blockHeight = Math.min(blockSize, height - y);
+                PixelConverter.read(reader, layout, buffer, x, y, blockWidth, blockHeight);
+                if (unscaled) {
+                    PixelConverter.convert(buffer, blockWidth, blockHeight, layout, result, x, y);
+                } else {
+                    PixelConverter.convert(buffer, blockWidth, blockHeight, layout, block, 0, 0);
+                    averager.add(block, blockWidth, blockHeight, x, y);
+                }
+            }
+        }
+        return unscaled ? result : averager.toImage(layout.imageType());
+    }
+
+    private static void write(Path target, byte[] jpeg) throws IOException {
+        Files.createDirectories(target.getParent());
+        Path temp = target.resolveSibling(target.getFileName() + ".tmp");
+        Files.write(temp, jpeg);
+        Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /** tür -> "seri genişlik yükseklik" */
+    private void writeIndex(String imageId, Map<String, String> index) throws IOException {
+        Path path = tileStore.associatedIndexPath(imageId);
+        Files.createDirectories(path.getParent());
+        Properties props = new Properties();
+        props.putAll(index);
+        Path temp = path.resolveSibling(path.getFileName() + ".tmp");
+        try (Writer out = Files.newBufferedWriter(temp)) {
+            props.store(out, "LaPatho yardımcı görüntüler");
+        }
+        Files.move(temp, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    private Map<String, String> readIndex(String imageId) throws IOException {
+        Path path = tileStore.associatedIndexPath(imageId);
+        Map<String, String> index = new LinkedHashMap<>();
+        if (!Files.exists(path)) {
+            return index;
+        }
+        Properties props = new Properties();
+        try (Reader in = Files.newBufferedReader(path)) {
+            props.load(in);
+        }
+        props.stringPropertyNames().forEach(name -> index.put(name, props.getProperty(name)));
+        return index;
+    }
+}
@@ -1,23 +1,78 @@
 package com.cvlab.spring.LaPatho;
 
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.core.task.AsyncTaskExecutor;
 import org.springframework.scheduling.annotation.EnableAsync;
+import org.springframework.scheduling.annotation.EnableScheduling;
 import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+import org.springframework.web.servlet.config.annotation.AsyncSupportConfigurer;
+import org.springframework.web.servlet.config.annotation.WebMvcConfigurer;
 
 import java.util.concurrent.Executor;
 
 @Configuration
 @EnableAsync
-public class AsyncConfig {
+@EnableScheduling
+public class AsyncConfig implements WebMvcConfigurer {
+    // 0: işlemci sayısı kadar thread
+    @Value("${tile.parallelism:0}")
+    private int parallelism;
+
+    // Aynı anda piramidi üretilen görüntü sayısı
+    @Value("${tile.ingest.max-concurrent:2}")
+    private int maxConcurrentIngests;
+
+    // Aynı anda yazılan toplu tile yanıtı sayısı
+    @Value("${tile.batch.stream-threads:32}")
+    private int batchStreamThreads;
+
     @Bean("tileExecutor")
     public Executor tileExecutor() {
+        int poolSize = parallelism > 0 ? parallelism : Runtime.getRuntime().availableProcessors();
         ThreadPoolTaskExecutor exec = new ThreadPoolTaskExecutor();
-        exec.setCorePoolSize(4);
-        exec.setMaxPoolSize(8);
+        exec.setCorePoolSize(poolSize);
+        exec.setMaxPoolSize(poolSize);
         exec.setQueueCapacity(100);
         exec.setThreadNamePrefix("tile-");
         exec.initialize();
         return exec;
     }
+
+    /**
+     * Arka plan piramit üretim işleri (generateTilesAsync). Sınırlı tutulur; fazla yüklemeler
+     * sırada bekler ve etkileşimli tile işleriyle yarışan iş sayısı artmaz.
+     */
+    @Bean("ingestExecutor")
+    public Executor ingestExecutor() {
+        ThreadPoolTaskExecutor exec = new ThreadPoolTaskExecutor();
+        exec.setCorePoolSize(maxConcurrentIngests);
+        exec.setMaxPoolSize(maxConcurrentIngests);
+        exec.setQueueCapacity(1000);
+        exec.setThreadNamePrefix("ingest-");
+        exec.initialize();
+        return exec;
+    }
+
+    /**
+     * MVC async yanıtları (toplu tile yanıtının StreamingResponseBody'si). Toplu yanıt istek anında
+     * üretilen tile'ları beklerken bu thread'lerden birini tutar, servlet thread'ini değil.
+     * Sınırlı tutulur; fazla yanıtlar sırada bekler.
+     */
+    @Bean("mvcStreamExecutor")
+    public AsyncTaskExecutor mvcStreamExecutor() {
+        ThreadPoolTaskExecutor exec = new ThreadPoolTaskExecutor();
+        exec.setCorePoolSize(batchStreamThreads);
+        exec.setMaxPoolSize(batchStreamThreads);
+        exec.setQueueCapacity(1000);
+        exec.setThreadNamePrefix("tile-stream-");
+        exec.initialize();
+        return exec;
+    }
+
+    @Override
+    public void configureAsyncSupport(AsyncSupportConfigurer configurer) {
+        configurer.setTaskExecutor(mvcStreamExecutor());
+    }
 }
@@ -0,0 +1,232 @@
+package com.cvlab.spring.LaPatho;
+
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferByte;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.List;
+
+/**
+ * Bir görüntünün boş (cam/arka plan) tile'ları, renk başına ve seviye başına bir bit kümesi olarak.
+ *
+ * Boş tile'lar kodlanmaz ve diske yazılmaz; istendiğinde kendi ortalama renginde tek tip bir
+ * tile servis edilir. Renkler küçük bir paletle tutulur: kanal başına COLOR_TOLERANCE içinde
+ * kalan renkler aynı girdiyi paylaşır (JPEG gürültüsü görünür bir fark yaratmaz). Palet dolduğunda
+ * yeni bir renkteki boş tile işaretlenmez, normal yazılır. Küme görüntü başına {id}.blank
+ * dosyasında saklanır:
+ * <pre>
+ *   int magic, int version, int width, int height, int tileSize, int colorCount
+ *   her renk için: int rgb, her seviye için: int wordCount, long words[wordCount]
+ * </pre>
+ * Sürüm 1 dosyaları (tek renk) okunabilir.
+ */
+public class BlankTiles {
+
+    private static final int MAGIC = 0x4C50424C; // "LPBL"
+    private static final int VERSION = 2;
+    /** Paletteki en fazla renk */
+    static final int MAX_COLORS = 32;
+    /** Aynı palet girdisine düşen renkler arasında kanal başına en fazla fark */
+    static final int COLOR_TOLERANCE = 3;
+
+    private final TilePyramid pyramid;
+    /** Palet renkleri (0xRRGGBB) ve her rengin seviye başına bit kümesi */
+    private final List<Integer> colors = new ArrayList<>();
+    private final List<BitSet[]> levels = new ArrayList<>();
+    private int count;
+    private boolean dirty;
+
+    public BlankTiles(TilePyramid pyramid) {
+        this.pyramid = pyramid;
+    }
+
+    /**
+     * Tile arka plansa (yeterince açık ve her kanalda düz) ortalama rengini (0xRRGGBB), değilse
+     * -1 döndürür. Varyans kanal başına hesaplanır; kanalların ortalamaları arasındaki fark
+     * (soluk renkli düz bir arka plan) tile'ı elemez. Doku içeren tile'lar genellikle ilk koyu
+     * örnekte elenir.
+     */
+    public static int backgroundColor(BufferedImage tile, int minBrightness, double maxStdDev) {
+        byte[] data = ((DataBufferByte) tile.getRaster().getDataBuffer()).getData();
+        int channels = tile.getRaster().getNumBands();
+        int rejectBelow = (int) Math.max(0, minBrightness - 4 * maxStdDev);
+
+        long[] sums = new long[channels];
+        long[] sumSquares = new long[channels];
+        for (int i = 0; i < data.length; i += channels) {
+            for (int c = 0; c < channels; c++) {
+                int v = data[i + c] & 0xFF;
+                if (v < rejectBelow) {
+                    return -1;
+                }
+                sums[c] += v;
+                sumSquares[c] += (long) v * v;
+            }
+        }
+
+        long pixels = data.length / channels;
+        long total = 0;
+        for (int c = 0; c < channels; c++) {
+            double mean = (double) sums[c] / pixels;
+            if ((double) sumSquares[c] / pixels - mean * mean > maxStdDev * maxStdDev) {
+                return -1;
+            }
+            total += sums[c];
+        }
+        if ((double) total / data.length < minBrightness) {
+            return -1;
+        }
+
+        if (channels < 3) {
+            int gray = (int) (sums[0] / pixels);
+            return (gray << 16) | (gray << 8) | gray;
+        }
+        // TYPE_3BYTE_BGR: bantlar B, G, R sırasındadır
+        int b = (int) (sums[0] / pixels);
+        int g = (int) (sums[1] / pixels);
+        int r = (int) (sums[2] / pixels);
+        return (r << 16) | (g << 8) | b;
+    }
+
+    public TilePyramid getPyramid() {
+        return pyramid;
+    }
+
+    public synchronized int getCount() {
+        return count;
+    }
+
+    /**
+     * Tile'ı verilen renkte boş olarak işaretler.
+     *
+     * @return palet dolu olduğu için işaretlenemediyse false; tile normal yazılmalıdır
+     */
+    public synchronized boolean mark(int level, int tileX, int tileY, int color) {
+        int index = paletteIndex(color);
+        if (index < 0) {
+            if (colors.size() >= MAX_COLORS) {
+                return false;
+            }
+            index = colors.size();
+            colors.add(color);
+            levels.add(newLevels());
+        }
+        int bit = tileY * pyramid.columns(level) + tileX;
+        for (int i = 0; i < levels.size(); i++) {
+            BitSet set = levels.get(i)[level];
+            if (set.get(bit)) {
+                if (i == index) {
+                    return true;
+                }
+                // Yeniden üretilen tile başka bir renge düştü
+                set.clear(bit);
+                count--;
+            }
+        }
+        levels.get(index)[level].set(bit);
+        count++;
+        dirty = true;
+        return true;
+    }
+
+    /** Tile boşsa rengi (0xRRGGBB), değilse -1 */
+    public synchronized int colorOf(int level, int tileX, int tileY) {
+        if (level < 0 || level > pyramid.getMaxLevel() || !pyramid.contains(level, tileX, tileY)) {
+            return -1;
+        }
+        int bit = tileY * pyramid.columns(level) + tileX;
+        for (int i = 0; i < levels.size(); i++) {
+            if (levels.get(i)[level].get(bit)) {
+                return colors.get(i);
+            }
+        }
+        return -1;
+    }
+
+    public boolean isBlank(int level, int tileX, int tileY) {
+        return colorOf(level, tileX, tileY) >= 0;
+    }
+
+    /** Kanal başına COLOR_TOLERANCE içindeki palet girdisi, yoksa -1 */
+    private int paletteIndex(int color) {
+        for (int i = 0; i < colors.size(); i++) {
+            int other = colors.get(i);
+            if (Math.abs((color >> 16 & 0xFF) - (other >> 16 & 0xFF)) <= COLOR_TOLERANCE
+                    && Math.abs((color >> 8 & 0xFF) - (other >> 8 & 0xFF)) <= COLOR_TOLERANCE
+                    && Math.abs((color & 0xFF) - (other & 0xFF)) <= COLOR_TOLERANCE) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private BitSet[] newLevels() {
+        BitSet[] sets = new BitSet[pyramid.getMaxLevel() + 1];
+        for (int level = 0; level < sets.length; level++) {
+            sets[level] = new BitSet();
+        }
+        return sets;
+    }
+
+    /** Değişiklik varsa dosyaya yazar (geçici dosya + taşıma) */
+    public synchronized void saveIfDirty(Path file) throws IOException {
+        if (!dirty) {
+            return;
+        }
+        Path temp = file.resolveSibling(file.getFileName() + ".tmp");
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(temp)))) {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeInt(pyramid.getWidth());
+            out.writeInt(pyramid.getHeight());
+            out.writeInt(pyramid.getTileSize());
+            out.writeInt(colors.size());
+            for (int i = 0; i < colors.size(); i++) {
+                out.writeInt(colors.get(i));
+                for (BitSet level : levels.get(i)) {
+                    long[] words = level.toLongArray();
+                    out.writeInt(words.length);
+                    for (long word : words) {
+                        out.writeLong(word);
+                    }
+                }
+            }
+        }
+        Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        dirty = false;
+    }
+
+    public static BlankTiles load(Path file) throws IOException {
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file)))) {
+            int version = in.readInt() == MAGIC ? in.readInt() : -1;
+            if (version != 1 && version != VERSION) {
+                throw new IOException("Geçersiz boş tile dosyası: " + file);
+            }
+            BlankTiles blank = new BlankTiles(new TilePyramid(in.readInt(), in.readInt(), in.readInt()));
+            // Sürüm 1: tek renk, doğrudan seviyeler
+            int colorCount = version == 1 ? 1 : in.readInt();
+            for (int i = 0; i < colorCount; i++) {
+                blank.colors.add(in.readInt());
+                BitSet[] sets = blank.newLevels();
+                for (int level = 0; level < sets.length; level++) {
+                    long[] words = new long[in.readInt()];
+                    for (int w = 0; w < words.length; w++) {
+                        words[w] = in.readLong();
+                    }
+                    sets[level] = BitSet.valueOf(words);
+                    blank.count += sets[level].cardinality();
+                }
+                blank.levels.add(sets);
+            }
+            return blank;
+        }
+    }
+}
@@ -0,0 +1,243 @@
+package com.cvlab.spring.LaPatho;
+
+import jakarta.servlet.http.HttpServletRequest;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+
+import java.io.IOException;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Base64;
+import java.util.HashMap;
+import java.util.HexFormat;
+import java.util.Map;
+import java.util.Optional;
+
+/**
+ * Çok gigabaytlık slaytlar için parçalı, kaldığı yerden devam edebilen yükleme (tus 1.0 çekirdeği).
+ *
+ * <pre>
+ *   POST   /api/images/uploads                 Upload-Length, Upload-Metadata: filename &lt;base64&gt;
+ *   HEAD   /api/images/uploads/{id}            -> Upload-Offset
+ *   PATCH  /api/images/uploads/{id}            Upload-Offset, application/offset+octet-stream gövde
+ *   POST   /api/images/uploads/{id}/finalize   [Upload-Checksum: sha256 &lt;base64&gt;] -> ImageDTO
+ *   DELETE /api/images/uploads/{id}
+ * </pre>
+ * Bağlantı koparsa istemci HEAD ile ofseti öğrenip PATCH'e oradan devam eder.
+ */
+@RestController
+@RequestMapping("/api/images/uploads")
+@Slf4j
+public class ChunkedUploadController {
+
+    private static final String TUS_VERSION = "1.0.0";
+    private static final String OFFSET_CONTENT_TYPE = "application/offset+octet-stream";
+    /** tus checksum eklentisindeki "checksum mismatch" durumu */
+    private static final int CHECKSUM_MISMATCH = 460;
+
+    @Autowired
+    private ChunkedUploadService uploadService;
+
+    @Autowired
+    private ImageService imageService;
+
+    @RequestMapping(method = RequestMethod.OPTIONS)
+    public ResponseEntity<Void> options() {
+        return ResponseEntity.noContent()
+                .header("Tus-Resumable", TUS_VERSION)
+                .header("Tus-Version", TUS_VERSION)
+                .header("Tus-Extension", "creation,termination,checksum")
+                .header("Tus-Checksum-Algorithm", "sha256")
+                .build();
+    }
+
+    @PostMapping
+    public ResponseEntity<?> create(@RequestHeader("Upload-Length") long length,
+                                    @RequestHeader(value = "Upload-Metadata", required = false) String metadata,
+                                    @RequestParam(value = "filename", required = false) String fileNameParam) {
+        String fileName = Optional.ofNullable(metadataValue(metadata, "filename")).orElse(fileNameParam);
+        if (fileName == null || fileName.isBlank()) {
+            return error(HttpStatus.BAD_REQUEST, "Dosya adı belirtilmedi (Upload-Metadata: filename)");
+        }
+        if (!imageService.isSupportedFormat(fileName)) {
+            return error(HttpStatus.UNSUPPORTED_MEDIA_TYPE, "Desteklenmeyen dosya formatı: " + fileName);
+        }
+        try {
+            ChunkedUploadService.UploadSession session = uploadService.create(fileName, length);
+            return ResponseEntity.created(URI.create("/api/images/uploads/" + session.getId()))
+                    .header("Tus-Resumable", TUS_VERSION)
+                    .header("Upload-Offset", "0")
+                    .build();
+        } catch (IllegalArgumentException e) {
+            return error(HttpStatus.BAD_REQUEST, e.getMessage());
+        } catch (IOException e) {
+            log.error("Parçalı yükleme oluşturulamadı: {}", fileName, e);
+            return error(HttpStatus.INTERNAL_SERVER_ERROR, "Yükleme oluşturulamadı: " + e.getMessage());
+        }
+    }
+
+    @RequestMapping(value = "/{id}", method = RequestMethod.HEAD)
+    public ResponseEntity<Void> head(@PathVariable String id) throws IOException {
+        Optional<ChunkedUploadService.UploadSession> session = uploadService.find(id);
+        if (session.isEmpty()) {
+            return ResponseEntity.notFound().header("Tus-Resumable", TUS_VERSION).build();
+        }
+        return ResponseEntity.ok()
+                .header("Tus-Resumable", TUS_VERSION)
+                .header("Upload-Offset", Long.toString(session.get().getOffset()))
+                .header("Upload-Length", Long.toString(session.get().getLength()))
+                .header("Cache-Control", "no-store")
+                .build();
+    }
+
+    @PatchMapping("/{id}")
+    public ResponseEntity<?> patch(@PathVariable String id,
+                                   @RequestHeader("Upload-Offset") long offset,
+                                   HttpServletRequest request) {
+        String contentType = request.getContentType();
+        if (contentType == null || !contentType.startsWith(OFFSET_CONTENT_TYPE)) {
+            return error(HttpStatus.UNSUPPORTED_MEDIA_TYPE, "Content-Type " + OFFSET_CONTENT_TYPE + " olmalı");
+        }
+        try {
+            Optional<ChunkedUploadService.UploadSession> session = uploadService.find(id);
+            if (session.isEmpty()) {
+                return error(HttpStatus.NOT_FOUND, "Yükleme bulunamadı: " + id);
+            }
+            long newOffset = uploadService.append(session.get(), offset, request.getInputStream());
+            return ResponseEntity.noContent()
+                    .header("Tus-Resumable", TUS_VERSION)
+                    .header("Upload-Offset", Long.toString(newOffset))
+                    .build();
+        } catch (ChunkedUploadService.OffsetMismatchException e) {
+            return ResponseEntity.status(HttpStatus.CONFLICT)
+                    .header("Tus-Resumable", TUS_VERSION)
+                    .header("Upload-Offset", Long.toString(e.getExpected()))
+                    .body(Map.of("error", e.getMessage()));
+        } catch (IllegalArgumentException e) {
+            return error(HttpStatus.PAYLOAD_TOO_LARGE, e.getMessage());
+        } catch (IllegalStateException e) {
+            return error(HttpStatus.GONE, e.getMessage());
+        } catch (IOException e) {
+            log.warn("Parça yazılamadı: id={}, error={}", id, e.getMessage());
+            return error(HttpStatus.INTERNAL_SERVER_ERROR, "Parça yazılamadı: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Yüklemeyi tamamlar, isteğe bağlı olarak özeti doğrular ve görüntüyü tile üretimine verir.
+     */
+    @PostMapping("/{id}/finalize")
+    public ResponseEntity<?> finalizeUpload(@PathVariable String id,
+                                            @RequestHeader(value = "Upload-Checksum", required = false) String checksum) {
+        ChunkedUploadService.CompletedUpload completed;
+        try {
+            Optional<ChunkedUploadService.UploadSession> session = uploadService.find(id);
+            if (session.isEmpty()) {
+                return error(HttpStatus.NOT_FOUND, "Yükleme bulunamadı: " + id);
+            }
+            completed = uploadService.complete(session.get());
+        } catch (IllegalStateException e) {
+            return error(HttpStatus.CONFLICT, e.getMessage());
+        } catch (IOException e) {
+            log.error("Yükleme tamamlanamadı: id={}", id, e);
+            return error(HttpStatus.INTERNAL_SERVER_ERROR, "Yükleme tamamlanamadı: " + e.getMessage());
+        }
+
+        if (checksum != null && !checksumMatches(checksum, completed.sha256())) {
+            log.warn("Yükleme özeti uyuşmuyor: id={}, beklenen={}, hesaplanan={}", id, checksum, completed.sha256());
+            deleteQuietly(completed);
+            return ResponseEntity.status(CHECKSUM_MISMATCH)
+                    .header("Tus-Resumable", TUS_VERSION)
+                    .body(Map.of("error", "Checksum uyuşmuyor", "sha256", completed.sha256()));
+        }
+
+        ImageDTO dto;
+        try {
+            dto = imageService.create(completed.fileName(), completed.file().toString(), completed.sha256());
+            log.info("Image entity oluşturuldu: ID={}", dto.getId());
+        } catch (Exception e) {
+            log.error("Image entity oluşturma hatası: {}", e.getMessage(), e);
+            deleteQuietly(completed);
+            return error(HttpStatus.INTERNAL_SERVER_ERROR, "Veritabanı kaydetme hatası: " + e.getMessage());
+        }
+
+        try {
+            imageService.generateTilesAsync(dto.getId());
+            log.info("Tile üretimi başlatıldı için ID: {}", dto.getId());
+        } catch (Exception e) {
+            log.error("Tile üretimi başlatma hatası: {}", e.getMessage(), e);
+        }
+
+        String sha256Base64 = Base64.getEncoder().encodeToString(HexFormat.of().parseHex(completed.sha256()));
+        return ResponseEntity.ok()
+                .header("Tus-Resumable", TUS_VERSION)
+                .header("Upload-Checksum", "sha256 " + sha256Base64)
+                .body(dto);
+    }
+
+    @DeleteMapping("/{id}")
+    public ResponseEntity<?> abort(@PathVariable String id) {
+        try {
+            Optional<ChunkedUploadService.UploadSession> session = uploadService.find(id);
+            if (session.isEmpty()) {
+                return error(HttpStatus.NOT_FOUND, "Yükleme bulunamadı: " + id);
+            }
+            uploadService.abort(session.get());
+            return ResponseEntity.noContent().header("Tus-Resumable", TUS_VERSION).build();
+        } catch (IOException e) {
+            return error(HttpStatus.INTERNAL_SERVER_ERROR, "Yükleme iptal edilemedi: " + e.getMessage());
+        }
+    }
+
+    /** Upload-Metadata: "anahtar base64değer,anahtar2 base64değer2" */
+    private static String metadataValue(String metadata, String key) {
+        if (metadata == null) {
+            return null;
+        }
+        for (String pair : metadata.split(",")) {
+            String[] parts = pair.trim().split(" ", 2);
+            if (parts[0].equals(key) && parts.length == 2) {
+                try {
+                    return new String(Base64.getDecoder().decode(parts[1].trim()), StandardCharsets.UTF_8);
+                } catch (IllegalArgumentException e) {
+                    return null;
+                }
+            }
+        }
+        return null;
+    }
+
+    /** "sha256 &lt;base64&gt;" (tus) ya da düz hex kabul edilir */
+    private static boolean checksumMatches(String header, String sha256Hex) {
+        String[] parts = header.trim().split(" ", 2);
+        if (parts.length == 2) {
+            if (!parts[0].equalsIgnoreCase("sha256")) {
+                return false;
+            }
+            try {
+                return HexFormat.of().formatHex(Base64.getDecoder().decode(parts[1].trim())).equals(sha256Hex);
+            } catch (IllegalArgumentException e) {
+                return false;
+            }
+        }
+        return parts[0].equalsIgnoreCase(sha256Hex);
+    }
+
+    private static void deleteQuietly(ChunkedUploadService.CompletedUpload completed) {
+        try {
+            Files.deleteIfExists(completed.file());
+        } catch (IOException cleanupError) {
+            log.warn("Cleanup hatası: {}", cleanupError.getMessage());
+        }
+    }
+
+    private static ResponseEntity<Map<String, String>> error(HttpStatus status, String message) {
+        Map<String, String> error = new HashMap<>();
+        error.put("error", message);
+        return ResponseEntity.status(status).header("Tus-Resumable", TUS_VERSION).body(error);
+    }
+}
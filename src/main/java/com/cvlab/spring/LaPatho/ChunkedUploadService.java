@@ -0,0 +1,321 @@
+package com.cvlab.spring.LaPatho;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HexFormat;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Properties;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Parçalı, kaldığı yerden devam edebilen yükleme (tus protokolüne benzer: oluştur, PATCH ile
+ * ofsetli parçalar, tamamla).
+ *
+ * Parçalar doğrudan nihai dosyaya konumlu NIO yazımıyla yazılır; multipart'taki geçici dosya
+ * ve transferTo kopyası yoktur, boyut sınırı yoktur. SHA-256 özeti veri akarken hesaplanır.
+ * Yükleme bilgileri {upload-base-path}/.uploads/{id}.properties dosyasında tutulur; sunucu
+ * yeniden başlarsa yükleme dosyanın mevcut boyutundan devam eder (özet bir kez dosyadan
+ * yeniden hesaplanır).
+ */
+@Service
+@Slf4j
+public class ChunkedUploadService {
+
+    @Value("${upload.base-path:/app/uploads}")
+    private String uploadBasePath;
+
+    // Bu süre boyunca parça gelmeyen yüklemeler silinir
+    @Value("${upload.chunked.expire-hours:24}")
+    private long expireHours;
+
+    private static final int COPY_BUFFER_SIZE = 1 << 20;
+
+    private final Map<String, UploadSession> sessions = new ConcurrentHashMap<>();
+
+    /** Tamamlanan yükleme: nihai dosya, özgün ad ve içeriğin SHA-256 özeti (hex) */
+    public record CompletedUpload(Path file, String fileName, String sha256) {}
+
+    /** PATCH ofseti yüklemenin mevcut ofsetiyle uyuşmuyor */
+    public static class OffsetMismatchException extends RuntimeException {
+        private final long expected;
+
+        public OffsetMismatchException(long expected) {
+            super("Beklenen ofset: " + expected);
+            this.expected = expected;
+        }
+
+        public long getExpected() {
+            return expected;
+        }
+    }
+
+    /**
+     * Yeni bir yükleme başlatır; nihai dosya boş olarak oluşturulur.
+     */
+    public UploadSession create(String fileName, long length) throws IOException {
+        if (length < 0) {
+            throw new IllegalArgumentException("Geçersiz Upload-Length: " + length);
+        }
+        String safeName = Paths.get(fileName).getFileName().toString();
+        Path uploadDir = Paths.get(uploadBasePath);
+        Files.createDirectories(metadataDir());
+
+        String id = UUID.randomUUID().toString();
+        Path target = uploadDir.resolve(id + "-" + safeName);
+        UploadSession session = new UploadSession(id, safeName, target, length, System.currentTimeMillis());
+        session.channel = FileChannel.open(target, StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE);
+        session.digest = sha256();
+        writeMetadata(session);
+        sessions.put(id, session);
+        log.info("Parçalı yükleme başladı: id={}, dosya={}, boyut={}", id, safeName, length);
+        return session;
+    }
+
+    /** Yükleme; bellekte yoksa (sunucu yeniden başladıysa) kayıtlı bilgilerinden açılır */
+    public Optional<UploadSession> find(String id) throws IOException {
+        if (!id.matches("[0-9a-fA-F-]{36}")) {
+            return Optional.empty();
+        }
+        UploadSession session = sessions.get(id);
+        if (session != null) {
+            return Optional.of(session);
+        }
+        Path metadata = metadataPath(id);
+        if (!Files.exists(metadata)) {
+            return Optional.empty();
+        }
+        Properties props = new Properties();
+        try (Reader in = Files.newBufferedReader(metadata)) {
+            props.load(in);
+        }
+        Path target = Paths.get(props.getProperty("target"));
+        if (!Files.exists(target)) {
+            Files.deleteIfExists(metadata);
+            return Optional.empty();
+        }
+        UploadSession loaded = new UploadSession(id, props.getProperty("fileName"), target,
+                Long.parseLong(props.getProperty("length")), Long.parseLong(props.getProperty("created")));
+        loaded.offset = Files.size(target);
+        loaded.lastActivity = Files.getLastModifiedTime(target).toMillis();
+        return Optional.of(sessions.computeIfAbsent(id, k -> loaded));
+    }
+
+    /**
+     * Gövdeyi yüklemenin sonuna ekler. Aynı yükleme için PATCH'ler sırayla işlenir.
+     *
+     * @return yeni ofset
+     * @throws OffsetMismatchException offset mevcut ofset değilse
+     */
+    public long append(UploadSession session, long offset, InputStream body) throws IOException {
+        synchronized (session) {
+            if (session.completed) {
+                throw new IllegalStateException("Yükleme tamamlanmış: " + session.id);
+            }
+            if (offset != session.offset) {
+                throw new OffsetMismatchException(session.offset);
+            }
+            ensureOpen(session);
+
+            ByteBuffer buffer = ByteBuffer.allocate(COPY_BUFFER_SIZE);
+            byte[] array = buffer.array();
+            long position = session.offset;
+            try {
+                int read;
+                while ((read = body.read(array)) > 0) {
+                    if (position + read > session.length) {
+                        throw new IllegalArgumentException("Yükleme bildirilen boyutu aşıyor: " + session.length);
+                    }
+                    buffer.clear().limit(read);
+                    while (buffer.hasRemaining()) {
+                        position += session.channel.write(buffer, position);
+                    }
+                    session.digest.update(array, 0, read);
+                    session.offset = position;
+                }
+            } catch (IOException | RuntimeException e) {
+                // Kesilen bağlantıda o ana kadar yazılanlar korunur; istemci HEAD ile ofseti öğrenip devam eder
+                log.info("Parça yarıda kaldı: id={}, ofset={}, error={}", session.id, session.offset, e.getMessage());
+                throw e;
+            } finally {
+                session.lastActivity = System.currentTimeMillis();
+            }
+            return session.offset;
+        }
+    }
+
+    /**
+     * Tüm veri geldiyse dosyayı diske zorlar ve yüklemeyi kapatır.
+     *
+     * @throws IllegalStateException veri eksikse
+     */
+    public CompletedUpload complete(UploadSession session) throws IOException {
+        synchronized (session) {
+            if (session.offset != session.length) {
+                throw new IllegalStateException(String.format("Yükleme eksik: %d/%d bayt", session.offset, session.length));
+            }
+            ensureOpen(session);
+            session.channel.force(true);
+            session.channel.close();
+            session.completed = true;
+            String sha256 = HexFormat.of().formatHex(session.digest.digest());
+            sessions.remove(session.id);
+            Files.deleteIfExists(metadataPath(session.id));
+            log.info("Parçalı yükleme tamamlandı: id={}, boyut={}, sha256={}", session.id, session.length, sha256);
+            return new CompletedUpload(session.target, session.fileName, sha256);
+        }
+    }
+
+    /** Yüklemeyi iptal eder; yarım dosya silinir */
+    public void abort(UploadSession session) throws IOException {
+        synchronized (session) {
+            closeQuietly(session);
+            session.completed = true;
+            sessions.remove(session.id);
+            Files.deleteIfExists(session.target);
+            Files.deleteIfExists(metadataPath(session.id));
+        }
+    }
+
+    /**
+     * Süresi dolan yüklemeleri temizler (sunucu yeniden başladıktan sonra bellekte olmayanlar dahil).
+     */
+    @Scheduled(fixedDelayString = "${upload.chunked.purge-interval-ms:3600000}")
+    public void purgeExpired() {
+        Path dir = metadataDir();
+        if (!Files.isDirectory(dir)) {
+            return;
+        }
+        long cutoff = System.currentTimeMillis() - expireHours * 3_600_000L;
+        try (var files = Files.list(dir)) {
+            for (Path metadata : (Iterable<Path>) files::iterator) {
+                String name = metadata.getFileName().toString();
+                if (!name.endsWith(".properties")) {
+                    continue;
+                }
+                Optional<UploadSession> session = find(name.substring(0, name.length() - ".properties".length()));
+                if (session.isPresent() && session.get().lastActivity < cutoff) {
+                    log.info("Süresi dolan yükleme siliniyor: id={}", session.get().id);
+                    abort(session.get());
+                }
+            }
+        } catch (IOException e) {
+            log.warn("Yükleme temizliği başarısız: {}", e.getMessage());
+        }
+    }
+
+    /**
+     * Sunucu yeniden başladıktan sonraki ilk parçada dosyayı açar ve özeti mevcut içerikten yeniden hesaplar.
+     */
+    private void ensureOpen(UploadSession session) throws IOException {
+        if (session.channel != null && session.channel.isOpen()) {
+            return;
+        }
+        session.channel = FileChannel.open(session.target, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        session.digest = sha256();
+        ByteBuffer buffer = ByteBuffer.allocate(COPY_BUFFER_SIZE);
+        long position = 0;
+        while (position < session.offset) {
+            buffer.clear().limit((int) Math.min(buffer.capacity(), session.offset - position));
+            int read = session.channel.read(buffer, position);
+            if (read < 0) {
+                break;
+            }
+            session.digest.update(buffer.array(), 0, read);
+            position += read;
+        }
+        session.offset = position;
+    }
+
+    private void writeMetadata(UploadSession session) throws IOException {
+        Properties props = new Properties();
+        props.setProperty("fileName", session.fileName);
+        props.setProperty("target", session.target.toAbsolutePath().toString());
+        props.setProperty("length", Long.toString(session.length));
+        props.setProperty("created", Long.toString(session.createdAt));
+        try (Writer out = Files.newBufferedWriter(metadataPath(session.id))) {
+            props.store(out, "LaPatho parçalı yükleme");
+        }
+    }
+
+    private Path metadataDir() {
+        return Paths.get(uploadBasePath, ".uploads");
+    }
+
+    private Path metadataPath(String id) {
+        return metadataDir().resolve(id + ".properties");
+    }
+
+    private static void closeQuietly(UploadSession session) {
+        if (session.channel != null) {
+            try {
+                session.channel.close();
+            } catch (IOException e) {
+                log.debug("Yükleme dosyası kapatılamadı: {}", e.getMessage());
+            }
+        }
+    }
+
+    private static MessageDigest sha256() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /** Devam eden bir yükleme; alanları oturum üzerinde senkronize erişilir */
+    public static final class UploadSession {
+        private final String id;
+        private final String fileName;
+        private final Path target;
+        private final long length;
+        private final long createdAt;
+        private FileChannel channel;
+        private MessageDigest digest;
+        private long offset;
+        private volatile long lastActivity;
+        private boolean completed;
+
+        UploadSession(String id, String fileName, Path target, long length, long createdAt) {
+            this.id = id;
+            this.fileName = fileName;
+            this.target = target;
+            this.length = length;
+            this.createdAt = createdAt;
+            this.lastActivity = System.currentTimeMillis();
+        }
+
+        public String getId() {
+            return id;
+        }
+
+        public String getFileName() {
+            return fileName;
+        }
+
+        public long getLength() {
+            return length;
+        }
+
+        public synchronized long getOffset() {
+            return offset;
+        }
+    }
+}
@@ -27,8 +27,11 @@ public class CorsConfig implements WebMvcConfigurer {
                     "https://193.140.169.245:443", // HTTPS explicit port
                     "http://193.140.169.245:4200" // Development port on server
                 )
-                .allowedMethods("GET", "POST", "PUT", "DELETE", "OPTIONS", "PATCH")
+                .allowedMethods("GET", "POST", "PUT", "DELETE", "OPTIONS", "PATCH", "HEAD")
                 .allowedHeaders("*")
+                // Parçalı yükleme (tus) ve toplu tile yanıt başlıkları
+                .exposedHeaders("Location", "Upload-Offset", "Upload-Length", "Upload-Checksum", "Tus-Resumable",
+                        "X-Tile-Generation")
                 .allowCredentials(true)
                 .maxAge(3600);
     }
@@ -0,0 +1,171 @@
+package com.cvlab.spring.LaPatho;
+
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferByte;
+import java.util.Arrays;
+
+/**
+ * TYPE_3BYTE_BGR / TYPE_BYTE_GRAY raster'lar üzerinde alan ortalamalı (box filter) küçültme.
+ *
+ * Java2D drawImage varsayılan ayarlarda en yakın komşu örnekler ve düşük zoom'da
+ * aliasing üretir. Burada her hedef piksel, kapsadığı kaynak piksellerin alan ağırlıklı
+ * ortalamasıdır. Piramitteki 2x2 birleştirmeler için halve() hızlı yoldur; native
+ * çözünürlükten oranla okunan bölgeler AreaAverager ile blok blok biriktirilir.
+ */
+public final class Downsampler {
+
+    private Downsampler() {
+    }
+
+    /**
+     * Tam 2x küçültme: her hedef piksel 2x2 kaynak pikselin ortalamasıdır. Kaynağın tek
+     * sayılı kenarında mevcut pikseller tekrarlanır. width/height kaynağın yarısının
+     * tabanı veya tavanı olabilir.
+     */
+    public static BufferedImage halve(BufferedImage source, int width, int height) {
+        BufferedImage dest = new BufferedImage(width, height, source.getType());
+        int channels = channels(source);
+        byte[] src = data(source);
+        byte[] dst = data(dest);
+        int srcWidth = source.getWidth();
+        int srcHeight = source.getHeight();
+        int srcStride = srcWidth * channels;
+
+        // Tam 2x2 bloğu olan sütunlar sınır kontrolü olmadan işlenir
+        int fullColumns = Math.min(width, srcWidth / 2);
+        int rowBytes = fullColumns * channels;
+
+        int d = 0;
+        for (int y = 0; y < height; y++) {
+            int sy0 = Math.min(2 * y, srcHeight - 1);
+            int row0 = sy0 * srcStride;
+            int row1 = Math.min(sy0 + 1, srcHeight - 1) * srcStride;
+
+            int s0 = row0;
+            int s1 = row1;
+            int rowEnd = d + rowBytes;
+            while (d < rowEnd) {
+                for (int c = 0; c < channels; c++, s0++, s1++) {
+                    int sum = (src[s0] & 0xFF) + (src[s0 + channels] & 0xFF)
+                            + (src[s1] & 0xFF) + (src[s1 + channels] & 0xFF);
+                    dst[d++] = (byte) ((sum + 2) >> 2);
+                }
+                s0 += channels;
+                s1 += channels;
+            }
+
+            // Tek sayılı kenar: son sütun kendisiyle ortalanır
+            for (int x = fullColumns; x < width; x++) {
+                int o0 = Math.min(2 * x, srcWidth - 1) * channels;
+                for (int c = 0; c < channels; c++) {
+                    int sum = (src[row0 + o0 + c] & 0xFF) + (src[row1 + o0 + c] & 0xFF);
+                    dst[d++] = (byte) ((sum + 1) >> 1);
+                }
+            }
+        }
+        return dest;
+    }
+
+    /**
+     * Keyfi oranlı alan ortalaması. srcWidth x srcHeight kaynak bölgesi bloklar halinde
+     * add() ile verilir, sonuç targetWidth x targetHeight olarak toImage() ile alınır.
+     * Bloklar bölgeyi eksiksiz kapladığında blok sınırlarında dikiş oluşmaz; bellek
+     * kullanımı kaynak boyutundan bağımsız, sadece hedef boyutuyla orantılıdır.
+     */
+    public static final class AreaAverager {
+        private final int targetWidth;
+        private final int targetHeight;
+        private final int channels;
+        private final double xScale;
+        private final double yScale;
+        private final float[] sums;
+        private final float[] row;
+
+        public AreaAverager(int srcWidth, int srcHeight, int targetWidth, int targetHeight, int channels) {
+            this.targetWidth = targetWidth;
+            this.targetHeight = targetHeight;
+            this.channels = channels;
+            this.xScale = (double) targetWidth / srcWidth;
+            this.yScale = (double) targetHeight / srcHeight;
+            this.sums = new float[targetWidth * targetHeight * channels];
+            this.row = new float[targetWidth * channels];
+        }
+
+        /**
+         * block görüntüsünün sol üst blockWidth x blockHeight bölgesini, kaynak bölgedeki
+         * (srcX, srcY) konumuna ait pikseller olarak ekler.
+         */
+        public void add(BufferedImage block, int blockWidth, int blockHeight, int srcX, int srcY) {
+            byte[] src = data(block);
+            int stride = block.getWidth() * channels;
+
+            // Bu bloğun etkilediği hedef sütun aralığı
+            int colStart = (int) (srcX * xScale);
+            int colEnd = Math.min(targetWidth, (int) Math.ceil((srcX + blockWidth) * xScale));
+
+            for (int by = 0; by < blockHeight; by++) {
+                Arrays.fill(row, colStart * channels, colEnd * channels, 0f);
+
+                // Yatay geçiş: kaynak satırı hedef sütunlara dağıt
+                int s = by * stride;
+                for (int bx = 0; bx < blockWidth; bx++, s += channels) {
+                    double a = (srcX + bx) * xScale;
+                    double b = a + xScale;
+                    int last = Math.min(targetWidth, (int) Math.ceil(b));
+                    for (int dx = (int) a; dx < last; dx++) {
+                        float w = (float) (Math.min(b, dx + 1) - Math.max(a, dx));
+                        if (w <= 0f) {
+                            continue;
+                        }
+                        int o = dx * channels;
+                        for (int c = 0; c < channels; c++) {
+                            row[o + c] += w * (src[s + c] & 0xFF);
+                        }
+                    }
+                }
+
+                // Dikey geçiş: satırı kapsadığı hedef satırlara ekle
+                double a = (srcY + by) * yScale;
+                double b = a + yScale;
+                int last = Math.min(targetHeight, (int) Math.ceil(b));
+                for (int dy = (int) a; dy < last; dy++) {
+                    float w = (float) (Math.min(b, dy + 1) - Math.max(a, dy));
+                    if (w <= 0f) {
+                        continue;
+                    }
+                    int base = dy * targetWidth * channels;
+                    for (int i = colStart * channels; i < colEnd * channels; i++) {
+                        sums[base + i] += w * row[i];
+                    }
+                }
+            }
+        }
+
+        /** Toplam ve satır dizilerinin kapladığı bellek (bayt) */
+        public long bytes() {
+            return 4L * (sums.length + row.length);
+        }
+
+        /**
+         * Biriken ortalamaları görüntüye yazar. Hedef piksellerin alanı 1 olduğundan
+         * tamamen kaplanmış her pikselin ağırlık toplamı 1'dir, ayrıca bölme gerekmez.
+         */
+        public BufferedImage toImage(int imageType) {
+            BufferedImage dest = new BufferedImage(targetWidth, targetHeight, imageType);
+            byte[] dst = data(dest);
+            for (int i = 0; i < sums.length; i++) {
+                int v = (int) (sums[i] + 0.5f);
+                dst[i] = (byte) (v > 255 ? 255 : v);
+            }
+            return dest;
+        }
+    }
+
+    private static byte[] data(BufferedImage image) {
+        return ((DataBufferByte) image.getRaster().getDataBuffer()).getData();
+    }
+
+    private static int channels(BufferedImage image) {
+        return image.getRaster().getNumBands();
+    }
+}
@@ -12,11 +12,15 @@ import org.springframework.web.bind.annotation.*;
 import org.springframework.web.multipart.MultipartFile;
 
 import java.io.IOException;
+import java.io.InputStream;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.nio.file.attribute.PosixFilePermissions;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
 import java.util.HashMap;
+import java.util.HexFormat;
 import java.util.Map;
 import java.util.UUID;
 
@@ -87,7 +91,13 @@ public class FileUploadController {
                 target = uploadDir.resolve(filename);
             }
 
-            file.transferTo(target);
+            // Dosya diske yazılırken SHA-256 özeti çıkarılır; aynı içerik daha önce yüklendiyse
+            // yeni kayıt mevcut piramidi paylaşır
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            try (InputStream in = new DigestInputStream(file.getInputStream(), digest)) {
+                Files.copy(in, target);
+            }
+            String contentHash = HexFormat.of().formatHex(digest.digest());
 
             // Verify file was written successfully
             if (!Files.exists(target) || Files.size(target) == 0) {
@@ -102,7 +112,7 @@ public class FileUploadController {
             // ImageEntity oluştur ve kaydet - with better error handling
             ImageDTO dto;
             try {
-                dto = imageService.create(file.getOriginalFilename(), target.toString());
+                dto = imageService.create(file.getOriginalFilename(), target.toString(), contentHash);
                 log.info("Image entity oluşturuldu: ID={}", dto.getId());
             } catch (Exception e) {
                 log.error("Image entity oluşturma hatası: {}", e.getMessage(), e);
@@ -156,15 +166,24 @@ public class FileUploadController {
     }
 
     @GetMapping("/status/{id}")
-    public ResponseEntity<Map<String, String>> status(@PathVariable Long id) {
+    public ResponseEntity<Map<String, Object>> status(@PathVariable Long id) {
         try {
             Status s = imageService.getStatus(id);
-            Map<String, String> response = new HashMap<>();
+            Map<String, Object> response = new HashMap<>();
             response.put("status", s.name());
+            // Üretim sürüyorsa ilerleme ve tahmini kalan süre
+            tileService.progress(id.toString()).ifPresent(progress -> {
+                response.put("completedTiles", progress.completedTiles());
+                response.put("totalTiles", progress.totalTiles());
+                response.put("percent", progress.totalTiles() > 0
+                        ? Math.round(1000.0 * progress.completedTiles() / progress.totalTiles()) / 10.0 : 0.0);
+                response.put("etaSeconds", progress.etaSeconds());
+                response.put("resumed", progress.resumed());
+            });
             return ResponseEntity.ok(response);
         } catch (Exception e) {
             log.error("Status alma hatası:", e);
-            Map<String, String> error = new HashMap<>();
+            Map<String, Object> error = new HashMap<>();
             error.put("error", e.getMessage());
             return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).body(error);
         }
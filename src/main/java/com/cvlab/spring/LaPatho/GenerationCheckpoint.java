@@ -0,0 +1,139 @@
+package com.cvlab.spring.LaPatho;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.Arrays;
+import java.util.BitSet;
+
+/**
+ * Piramit üretiminin kaldığı yer: paralel fazda tamamlanmış (seviye, tile satırı) birimleri.
+ *
+ * Bir satır, kök tile'ları ve altlarındaki tüm tile'lar depoya yazıldıktan sonra işaretlenir.
+ * JVM üretim ortasında durursa üretim aynı geometri ve seviye planıyla yeniden başladığında
+ * işaretli satırlar atlanır. Kaba seviyeler (ikinci faz) az tile içerdiğinden her seferinde
+ * yeniden üretilir. Görüntü başına {id}.checkpoint dosyasında saklanır:
+ * <pre>
+ *   int magic, int version, int width, int height, int tileSize, int splitLevel
+ *   int planLength, int plan[planLength], long completedTiles
+ *   her seviye için: int wordCount, long words[wordCount]
+ * </pre>
+ */
+public class GenerationCheckpoint {
+
+    private static final int MAGIC = 0x4C50434B; // "LPCK"
+    private static final int VERSION = 1;
+
+    private final TilePyramid pyramid;
+    private final int[] plan;
+    private final int splitLevel;
+    private final BitSet[] rows;
+    /** İşaretli satırlarda üretilen tile sayısı */
+    private long completedTiles;
+    private boolean dirty;
+
+    public GenerationCheckpoint(TilePyramid pyramid, int[] plan, int splitLevel) {
+        this.pyramid = pyramid;
+        this.plan = plan.clone();
+        this.splitLevel = splitLevel;
+        this.rows = new BitSet[plan.length];
+        for (int level = 0; level < rows.length; level++) {
+            rows[level] = new BitSet();
+        }
+    }
+
+    /**
+     * Dosyadaki checkpoint aynı geometri ve planla üretilmişse onu, değilse null döndürür.
+     */
+    public static GenerationCheckpoint resume(Path file, TilePyramid pyramid, int[] plan) throws IOException {
+        if (!Files.exists(file)) {
+            return null;
+        }
+        GenerationCheckpoint checkpoint = load(file);
+        TilePyramid saved = checkpoint.pyramid;
+        if (saved.getWidth() != pyramid.getWidth() || saved.getHeight() != pyramid.getHeight()
+                || saved.getTileSize() != pyramid.getTileSize() || !Arrays.equals(checkpoint.plan, plan)) {
+            return null;
+        }
+        return checkpoint;
+    }
+
+    public int getSplitLevel() {
+        return splitLevel;
+    }
+
+    public synchronized long getCompletedTiles() {
+        return completedTiles;
+    }
+
+    public synchronized boolean isRowDone(int level, int row) {
+        return rows[level].get(row);
+    }
+
+    public synchronized void markRow(int level, int row, long tiles) {
+        if (!rows[level].get(row)) {
+            rows[level].set(row);
+            completedTiles += tiles;
+            dirty = true;
+        }
+    }
+
+    /** Değişiklik varsa dosyaya yazar (geçici dosya + taşıma) */
+    public synchronized void saveIfDirty(Path file) throws IOException {
+        if (!dirty) {
+            return;
+        }
+        Path temp = file.resolveSibling(file.getFileName() + ".tmp");
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(temp)))) {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeInt(pyramid.getWidth());
+            out.writeInt(pyramid.getHeight());
+            out.writeInt(pyramid.getTileSize());
+            out.writeInt(splitLevel);
+            out.writeInt(plan.length);
+            for (int resolution : plan) {
+                out.writeInt(resolution);
+            }
+            out.writeLong(completedTiles);
+            for (BitSet level : rows) {
+                long[] words = level.toLongArray();
+                out.writeInt(words.length);
+                for (long word : words) {
+                    out.writeLong(word);
+                }
+            }
+        }
+        Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        dirty = false;
+    }
+
+    private static GenerationCheckpoint load(Path file) throws IOException {
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file)))) {
+            if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+                throw new IOException("Geçersiz checkpoint dosyası: " + file);
+            }
+            TilePyramid pyramid = new TilePyramid(in.readInt(), in.readInt(), in.readInt());
+            int splitLevel = in.readInt();
+            int[] plan = new int[in.readInt()];
+            for (int i = 0; i < plan.length; i++) {
+                plan[i] = in.readInt();
+            }
+            GenerationCheckpoint checkpoint = new GenerationCheckpoint(pyramid, plan, splitLevel);
+            checkpoint.completedTiles = in.readLong();
+            for (int level = 0; level < plan.length; level++) {
+                long[] words = new long[in.readInt()];
+                for (int i = 0; i < words.length; i++) {
+                    words[i] = in.readLong();
+                }
+                checkpoint.rows[level] = BitSet.valueOf(words);
+            }
+            return checkpoint;
+        }
+    }
+}
@@ -0,0 +1,96 @@
+package com.cvlab.spring.LaPatho;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.core.io.Resource;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.support.ServletUriComponentsBuilder;
+
+import java.net.URI;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.RejectedExecutionException;
+
+/**
+ * IIIF Image API 3.0: /iiif/{imageId}/info.json ve
+ * /iiif/{imageId}/{region}/{size}/{rotation}/{quality}.{format}
+ */
+@RestController
+@RequestMapping("/iiif")
+@Slf4j
+public class IiifController {
+
+    @Autowired
+    private IiifService iiifService;
+
+    @Autowired
+    private ImageService imageService;
+
+    @GetMapping("/{imageId}")
+    public ResponseEntity<Void> base(@PathVariable String imageId) {
+        URI info = ServletUriComponentsBuilder.fromCurrentRequestUri().path("/info.json").build().toUri();
+        return ResponseEntity.status(HttpStatus.SEE_OTHER).location(info).build();
+    }
+
+    @GetMapping("/{imageId}/info.json")
+    public ResponseEntity<Map<String, Object>> info(@PathVariable String imageId) {
+        Optional<ImageEntity> image = findImage(imageId);
+        if (image.isEmpty()) {
+            return ResponseEntity.notFound().build();
+        }
+        String id = ServletUriComponentsBuilder.fromCurrentContextPath()
+                .path("/iiif/{imageId}").buildAndExpand(imageId).toUriString();
+        return ResponseEntity.ok()
+                .contentType(IiifService.INFO_MEDIA_TYPE)
+                .body(iiifService.info(image.get(), id));
+    }
+
+    @GetMapping("/{imageId}/{region}/{size}/{rotation}/{quality}.{format}")
+    public ResponseEntity<Resource> image(
+            @PathVariable String imageId,
+            @PathVariable String region,
+            @PathVariable String size,
+            @PathVariable String rotation,
+            @PathVariable String quality,
+            @PathVariable String format) {
+
+        Optional<ImageEntity> image = findImage(imageId);
+        if (image.isEmpty()) {
+            return ResponseEntity.notFound().build();
+        }
+
+        try {
+            Optional<IiifService.IiifImage> result = iiifService.render(image.get(), region, size, rotation, quality, format);
+            if (result.isEmpty()) {
+                // Bölgenin tile'ları henüz üretilmedi
+                return ResponseEntity.notFound().build();
+            }
+            return ResponseEntity.ok()
+                    .contentType(result.get().contentType())
+                    .header("Link", "<http://iiif.io/api/image/3/level1.json>;rel=\"profile\"")
+                    .body(result.get().body());
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().build();
+        } catch (UnsupportedOperationException e) {
+            return ResponseEntity.status(HttpStatus.NOT_IMPLEMENTED).build();
+        } catch (RejectedExecutionException e) {
+            return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE).header(HttpHeaders.RETRY_AFTER, "1").build();
+        } catch (Exception e) {
+            log.error("IIIF isteği karşılanamadı: imageId={}, region={}, size={}, rotation={}, quality={}, format={}",
+                    imageId, region, size, rotation, quality, format, e);
+            return ResponseEntity.status(500).build();
+        }
+    }
+
+    private Optional<ImageEntity> findImage(String imageId) {
+        try {
+            return imageService.findById(Long.parseLong(imageId))
+                    .filter(img -> img.getStatus() != Status.ERROR);
+        } catch (NumberFormatException e) {
+            return Optional.empty();
+        }
+    }
+}
@@ -0,0 +1,512 @@
+package com.cvlab.spring.LaPatho;
+
+import jakarta.annotation.PostConstruct;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.io.ByteArrayResource;
+import org.springframework.core.io.Resource;
+import org.springframework.http.MediaType;
+import org.springframework.stereotype.Service;
+
+import javax.imageio.ImageIO;
+import java.awt.Graphics2D;
+import java.awt.geom.AffineTransform;
+import java.awt.image.AffineTransformOp;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * IIIF Image API 3.0 (level 1 ve bazı ek özellikler) istekleri.
+ *
+ * Yanıtlar sadece üretilmiş tile'lardan oluşturulur, kaynak slayt açılmaz: istenen boyutu
+ * karşılayan en kaba piramit seviyesi seçilir, bölgeyi kapsayan tile'lar birleştirilip
+ * kırpılır ve alan ortalamasıyla hedef boyuta getirilir. Seviyede eksik tile varsa daha kaba
+ * seviyeler denenir. Tile sınırlarıyla birebir örtüşen istekler depodaki tile'ı olduğu gibi döndürür.
+ *
+ * Birleştirme tuvali en fazla max-area piksel olur; gerekirse bir kaba seviye seçilip hafifçe
+ * büyütülür. Aynı anda en fazla max-concurrent-renders istek birleştirilir, diğerleri
+ * render-wait-ms kadar bekler; sıra gelmezse RejectedExecutionException (503) atılır.
+ */
+@Service
+@Slf4j
+public class IiifService {
+
+    public static final String CONTEXT = "http://iiif.io/api/image/3/context.json";
+    public static final MediaType INFO_MEDIA_TYPE = MediaType.parseMediaType(
+            "application/ld+json;profile=\"" + CONTEXT + "\"");
+
+    @Value("${iiif.max-width:8192}")
+    private int maxWidth;
+
+    @Value("${iiif.max-height:8192}")
+    private int maxHeight;
+
+    @Value("${iiif.max-area:33554432}")
+    private long maxArea;
+
+    @Value("${iiif.max-concurrent-renders:2}")
+    private int maxConcurrentRenders;
+
+    @Value("${iiif.render-wait-ms:10000}")
+    private long renderWaitMs;
+
+    private Semaphore renderPermits;
+
+    @PostConstruct
+    void init() {
+        renderPermits = new Semaphore(Math.max(1, maxConcurrentRenders), true);
+    }
+
+    @Autowired
+    private TileStore tileStore;
+
+    @Autowired
+    private TileEncoder tileEncoder;
+
+    /** İstenen görüntünün gövdesi ve içerik türü */
+    public record IiifImage(Resource body, MediaType contentType) {}
+
+    /**
+     * info.json içeriği.
+     *
+     * @param id servisin tam URI'si (http://host/iiif/{imageId})
+     */
+    public Map<String, Object> info(ImageEntity image, String id) {
+        TilePyramid pyramid = pyramid(image);
+
+        List<Integer> scaleFactors = new ArrayList<>();
+        List<Map<String, Integer>> sizes = new ArrayList<>();
+        for (int level = pyramid.getMaxLevel(); level >= 0; level--) {
+            scaleFactors.add((int) pyramid.downsample(level));
+        }
+        for (int level = 0; level <= pyramid.getMaxLevel(); level++) {
+            int w = pyramid.levelWidth(level);
+            int h = pyramid.levelHeight(level);
+            if (withinLimits(w, h)) {
+                sizes.add(Map.of("width", w, "height", h));
+            }
+        }
+
+        Map<String, Object> info = new LinkedHashMap<>();
+        info.put("@context", CONTEXT);
+        info.put("id", id);
+        info.put("type", "ImageService3");
+        info.put("protocol", "http://iiif.io/api/image");
+        info.put("profile", "level1");
+        info.put("width", pyramid.getWidth());
+        info.put("height", pyramid.getHeight());
+        info.put("maxWidth", maxWidth);
+        info.put("maxHeight", maxHeight);
+        info.put("maxArea", maxArea);
+        info.put("sizes", sizes);
+        info.put("tiles", List.of(Map.of(
+                "width", pyramid.getTileSize(),
+                "height", pyramid.getTileSize(),
+                "scaleFactors", scaleFactors)));
+        info.put("extraQualities", List.of("color", "gray"));
+        info.put("extraFormats", List.of("png"));
+        info.put("extraFeatures", List.of(
+                "mirroring", "regionByPct", "regionByPx", "regionSquare", "rotationBy90s",
+                "sizeByConfinedWh", "sizeByH", "sizeByPct", "sizeByW", "sizeByWh", "sizeUpscaling"));
+        return info;
+    }
+
+    /**
+     * Bir görüntü isteğini karşılar.
+     *
+     * @return istenen bölge için gereken tile'lar henüz üretilmediyse boş
+     * @throws IllegalArgumentException parametreler geçersizse (400)
+     * @throws UnsupportedOperationException geçerli ama desteklenmeyen bir özellik istendiyse (501)
+     * @throws RejectedExecutionException eşzamanlı birleştirme sınırı dolu kaldıysa (503)
+     */
+    public Optional<IiifImage> render(ImageEntity image, String region, String size, String rotation,
+                                      String quality, String format) throws IOException {
+        TilePyramid pyramid = pyramid(image);
+        String imageId = image.getId().toString();
+
+        int[] r = parseRegion(region, pyramid);
+        int[] s = parseSize(size, r[2], r[3]);
+        boolean mirror = rotation.startsWith("!");
+        int degrees = parseRotation(mirror ? rotation.substring(1) : rotation);
+        boolean gray = parseQuality(quality);
+        MediaType contentType = parseFormat(format);
+
+        long ds = chooseDownsample(pyramid, r[2], r[3], s[0], s[1]);
+        int level = pyramid.getMaxLevel() - Long.numberOfTrailingZeros(ds);
+
+        // Tile ile birebir örtüşen istek: depodaki JPEG olduğu gibi
+        if (!mirror && degrees == 0 && !gray && contentType.equals(MediaType.IMAGE_JPEG)) {
+            Optional<Resource> tile = alignedTile(imageId, pyramid, level, ds, r, s);
+            if (tile.isPresent()) {
+                return Optional.of(new IiifImage(tile.get(), MediaType.IMAGE_JPEG));
+            }
+        }
+
+        // Tuval (bölgenin seviyedeki karşılığı) max-area'yı aşmasın
+        while (level > 0 && ceilDiv(r[2], ds) * ceilDiv(r[3], ds) > maxArea) {
+            level--;
+            ds *= 2;
+        }
+
+        acquireRenderPermit();
+        try {
+            return compose(imageId, pyramid, level, r, s, mirror, degrees, gray, contentType);
+        } finally {
+            renderPermits.release();
+        }
+    }
+
+    private void acquireRenderPermit() {
+        try {
+            if (!renderPermits.tryAcquire(renderWaitMs, TimeUnit.MILLISECONDS)) {
+                throw new RejectedExecutionException("IIIF birleştirme sırası dolu");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RejectedExecutionException("IIIF isteği kesildi", e);
+        }
+    }
+
+    private Optional<IiifImage> compose(String imageId, TilePyramid pyramid, int level, int[] r, int[] s,
+                                        boolean mirror, int degrees, boolean gray, MediaType contentType) throws IOException {
+        BufferedImage assembled = null;
+        for (; level >= 0 && assembled == null; level--) {
+            assembled = assemble(imageId, pyramid, level, r);
+        }
+        if (assembled == null) {
+            return Optional.empty();
+        }
+
+        BufferedImage result = assembled;
+        if (result.getWidth() != s[0] || result.getHeight() != s[1]) {
+            Downsampler.AreaAverager averager = new Downsampler.AreaAverager(
+                    result.getWidth(), result.getHeight(), s[0], s[1], 3);
+            averager.add(result, result.getWidth(), result.getHeight(), 0, 0);
+            result = averager.toImage(BufferedImage.TYPE_3BYTE_BGR);
+        }
+        result = transform(result, mirror, degrees);
+        if (gray) {
+            result = toGray(result);
+        }
+
+        byte[] body;
+        if (contentType.equals(MediaType.IMAGE_JPEG)) {
+            body = tileEncoder.encode(result);
+        } else {
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            ImageIO.write(result, "png", out);
+            body = out.toByteArray();
+        }
+        return Optional.of(new IiifImage(new ByteArrayResource(body), contentType));
+    }
+
+    private TilePyramid pyramid(ImageEntity image) {
+        return new TilePyramid(image.getWidth(), image.getHeight(), image.getTileSize());
+    }
+
+    private boolean withinLimits(long w, long h) {
+        return w <= maxWidth && h <= maxHeight && w * h <= maxArea;
+    }
+
+    /**
+     * region: full | square | x,y,w,h | pct:x,y,w,h. Görüntü dışına taşan kısım kırpılır.
+     *
+     * @return tam çözünürlükte {x, y, w, h}
+     */
+    int[] parseRegion(String region, TilePyramid pyramid) {
+        int width = pyramid.getWidth();
+        int height = pyramid.getHeight();
+        long x, y, w, h;
+        if ("full".equals(region)) {
+            return new int[]{0, 0, width, height};
+        } else if ("square".equals(region)) {
+            int side = Math.min(width, height);
+            return new int[]{(width - side) / 2, (height - side) / 2, side, side};
+        } else if (region.startsWith("pct:")) {
+            double[] p = parseNumbers(region.substring(4), 4);
+            x = Math.round(p[0] * width / 100);
+            y = Math.round(p[1] * height / 100);
+            w = Math.round(p[2] * width / 100);
+            h = Math.round(p[3] * height / 100);
+        } else {
+            double[] p = parseNumbers(region, 4);
+            for (double v : p) {
+                if (v != Math.floor(v)) {
+                    throw new IllegalArgumentException("Bölge tam sayı olmalı: " + region);
+                }
+            }
+            x = (long) p[0];
+            y = (long) p[1];
+            w = (long) p[2];
+            h = (long) p[3];
+        }
+        if (w <= 0 || h <= 0 || x >= width || y >= height) {
+            throw new IllegalArgumentException("Bölge görüntü dışında veya boş: " + region);
+        }
+        return new int[]{(int) x, (int) y, (int) Math.min(w, width - x), (int) Math.min(h, height - y)};
+    }
+
+    /**
+     * size: [^]max | [^]w, | [^],h | [^]pct:n | [^]w,h | [^]!w,h
+     *
+     * @return {w, h}
+     */
+    int[] parseSize(String size, int regionWidth, int regionHeight) {
+        boolean upscale = size.startsWith("^");
+        String spec = upscale ? size.substring(1) : size;
+        long w, h;
+
+        if ("max".equals(spec)) {
+            w = regionWidth;
+            h = regionHeight;
+            // max: sınırları aşmayan en büyük boyut
+            double scale = Math.min(1.0, Math.min((double) maxWidth / w, (double) maxHeight / h));
+            scale = Math.min(scale, Math.sqrt((double) maxArea / ((double) w * h)));
+            if (scale < 1.0) {
+                w = Math.max(1, (long) Math.floor(w * scale));
+                h = Math.max(1, (long) Math.floor(h * scale));
+            }
+        } else if (spec.startsWith("pct:")) {
+            double pct = parseNumbers(spec.substring(4), 1)[0];
+            if (pct <= 0) {
+                throw new IllegalArgumentException("Geçersiz yüzde: " + size);
+            }
+            w = Math.round(regionWidth * pct / 100);
+            h = Math.round(regionHeight * pct / 100);
+        } else if (spec.startsWith("!")) {
+            double[] p = parseNumbers(spec.substring(1), 2);
+            double scale = Math.min(p[0] / regionWidth, p[1] / regionHeight);
+            w = Math.round(regionWidth * scale);
+            h = Math.round(regionHeight * scale);
+        } else {
+            int comma = spec.indexOf(',');
+            if (comma < 0) {
+                throw new IllegalArgumentException("Geçersiz boyut: " + size);
+            }
+            String ws = spec.substring(0, comma);
+            String hs = spec.substring(comma + 1);
+            if (ws.isEmpty() && hs.isEmpty()) {
+                throw new IllegalArgumentException("Geçersiz boyut: " + size);
+            }
+            if (hs.isEmpty()) {
+                w = parseInt(ws, size);
+                h = Math.round((double) regionHeight * w / regionWidth);
+            } else if (ws.isEmpty()) {
+                h = parseInt(hs, size);
+                w = Math.round((double) regionWidth * h / regionHeight);
+            } else {
+                w = parseInt(ws, size);
+                h = parseInt(hs, size);
+            }
+        }
+
+        w = Math.max(1, w);
+        h = Math.max(1, h);
+        if (!upscale && (w > regionWidth || h > regionHeight)) {
+            throw new IllegalArgumentException("Büyütme için boyut ^ ile başlamalı: " + size);
+        }
+        if (!withinLimits(w, h)) {
+            throw new IllegalArgumentException("İstenen boyut sunucu sınırlarını aşıyor: " + size);
+        }
+        return new int[]{(int) w, (int) h};
+    }
+
+    private int parseRotation(String rotation) {
+        double degrees = parseNumbers(rotation, 1)[0];
+        if (degrees < 0 || degrees > 360) {
+            throw new IllegalArgumentException("Geçersiz döndürme: " + rotation);
+        }
+        if (degrees % 90 != 0) {
+            throw new UnsupportedOperationException("Sadece 90 derecenin katları destekleniyor: " + rotation);
+        }
+        return (int) degrees % 360;
+    }
+
+    /** @return gri çıktı istendiyse true */
+    private boolean parseQuality(String quality) {
+        return switch (quality) {
+            case "default", "color" -> false;
+            case "gray" -> true;
+            case "bitonal" -> throw new UnsupportedOperationException("bitonal kalite desteklenmiyor");
+            default -> throw new IllegalArgumentException("Geçersiz kalite: " + quality);
+        };
+    }
+
+    private MediaType parseFormat(String format) {
+        return switch (format) {
+            case "jpg" -> MediaType.IMAGE_JPEG;
+            case "png" -> MediaType.IMAGE_PNG;
+            default -> throw new UnsupportedOperationException("Desteklenmeyen format: " + format);
+        };
+    }
+
+    /**
+     * İstenen çözünürlüğü karşılayan en büyük küçültme oranı (2'nin kuvveti): seçilen seviyedeki
+     * bölge en az hedef boyut kadar piksel içermelidir.
+     */
+    private long chooseDownsample(TilePyramid pyramid, int regionWidth, int regionHeight, int width, int height) {
+        long ds = 1;
+        long maxDs = pyramid.downsample(0);
+        while (ds * 2 <= maxDs
+                && ceilDiv(regionWidth, ds * 2) >= width
+                && ceilDiv(regionHeight, ds * 2) >= height) {
+            ds *= 2;
+        }
+        return ds;
+    }
+
+    /**
+     * Bölge ve boyut tek bir tile'a denk geliyorsa o tile'ı döndürür.
+     */
+    private Optional<Resource> alignedTile(String imageId, TilePyramid pyramid, int level, long ds,
+                                           int[] r, int[] s) throws IOException {
+        long span = pyramid.getTileSize() * ds;
+        if (r[0] % span != 0 || r[1] % span != 0) {
+            return Optional.empty();
+        }
+        int tileX = (int) (r[0] / span);
+        int tileY = (int) (r[1] / span);
+        if (!pyramid.contains(level, tileX, tileY)) {
+            return Optional.empty();
+        }
+        int tileWidth = pyramid.tileWidth(level, tileX);
+        int tileHeight = pyramid.tileHeight(level, tileY);
+        if (s[0] != tileWidth || s[1] != tileHeight
+                || ceilDiv(r[2], ds) != tileWidth || ceilDiv(r[3], ds) != tileHeight) {
+            return Optional.empty();
+        }
+        return tileStore.find(imageId, level, tileX, tileY);
+    }
+
+    /**
+     * Bölgeyi verilen seviyenin tile'larından birleştirir; eksik tile varsa null.
+     */
+    private BufferedImage assemble(String imageId, TilePyramid pyramid, int level, int[] r) throws IOException {
+        long ds = pyramid.downsample(level);
+        int tileSize = pyramid.getTileSize();
+        int levelWidth = pyramid.levelWidth(level);
+        int levelHeight = pyramid.levelHeight(level);
+
+        int x0 = (int) Math.min(levelWidth - 1, r[0] / ds);
+        int y0 = (int) Math.min(levelHeight - 1, r[1] / ds);
+        int x1 = (int) Math.max(x0 + 1, Math.min(levelWidth, ceilDiv((long) r[0] + r[2], ds)));
+        int y1 = (int) Math.max(y0 + 1, Math.min(levelHeight, ceilDiv((long) r[1] + r[3], ds)));
+
+        BufferedImage canvas = new BufferedImage(x1 - x0, y1 - y0, BufferedImage.TYPE_3BYTE_BGR);
+        Graphics2D g = null;
+        try {
+            for (int tileY = y0 / tileSize; tileY <= (y1 - 1) / tileSize; tileY++) {
+                for (int tileX = x0 / tileSize; tileX <= (x1 - 1) / tileSize; tileX++) {
+                    Optional<Resource> resource = tileStore.find(imageId, level, tileX, tileY);
+                    if (resource.isEmpty()) {
+                        return null;
+                    }
+                    BufferedImage tile;
+                    try (InputStream in = resource.get().getInputStream()) {
+                        tile = ImageIO.read(in);
+                    }
+                    if (tile == null) {
+                        throw new IOException("Tile çözümlenemedi: " + resource.get().getDescription());
+                    }
+                    int dx = tileX * tileSize - x0;
+                    int dy = tileY * tileSize - y0;
+                    if (tile.getType() == canvas.getType()) {
+                        canvas.getRaster().setRect(dx, dy, tile.getRaster());
+                    } else {
+                        if (g == null) {
+                            g = canvas.createGraphics();
+                        }
+                        g.drawImage(tile, dx, dy, null);
+                    }
+                }
+            }
+        } finally {
+            if (g != null) {
+                g.dispose();
+            }
+        }
+        return canvas;
+    }
+
+    /** Önce yatay ayna, sonra saat yönünde döndürme */
+    private static BufferedImage transform(BufferedImage image, boolean mirror, int degrees) {
+        if (!mirror && degrees == 0) {
+            return image;
+        }
+        int w = image.getWidth();
+        int h = image.getHeight();
+        AffineTransform t = new AffineTransform();
+        switch (degrees) {
+            case 90 -> t.translate(h, 0);
+            case 180 -> t.translate(w, h);
+            case 270 -> t.translate(0, w);
+            default -> { }
+        }
+        t.rotate(Math.toRadians(degrees));
+        if (mirror) {
+            t.translate(w, 0);
+            t.scale(-1, 1);
+        }
+        int outW = degrees % 180 == 0 ? w : h;
+        int outH = degrees % 180 == 0 ? h : w;
+        BufferedImage out = new BufferedImage(outW, outH, image.getType());
+        return new AffineTransformOp(t, AffineTransformOp.TYPE_NEAREST_NEIGHBOR).filter(image, out);
+    }
+
+    private static BufferedImage toGray(BufferedImage image) {
+        BufferedImage gray = new BufferedImage(image.getWidth(), image.getHeight(), BufferedImage.TYPE_BYTE_GRAY);
+        Graphics2D g = gray.createGraphics();
+        try {
+            g.drawImage(image, 0, 0, null);
+        } finally {
+            g.dispose();
+        }
+        return gray;
+    }
+
+    private static double[] parseNumbers(String value, int count) {
+        String[] parts = value.split(",", -1);
+        if (parts.length != count) {
+            throw new IllegalArgumentException("Geçersiz parametre: " + value);
+        }
+        double[] numbers = new double[count];
+        for (int i = 0; i < count; i++) {
+            try {
+                numbers[i] = Double.parseDouble(parts[i]);
+            } catch (NumberFormatException e) {
+                throw new IllegalArgumentException("Geçersiz sayı: " + value);
+            }
+            if (numbers[i] < 0 || Double.isNaN(numbers[i]) || Double.isInfinite(numbers[i])) {
+                throw new IllegalArgumentException("Geçersiz sayı: " + value);
+            }
+        }
+        return numbers;
+    }
+
+    private static long parseInt(String value, String size) {
+        try {
+            long v = Long.parseLong(value);
+            if (v <= 0) {
+                throw new IllegalArgumentException("Geçersiz boyut: " + size);
+            }
+            return v;
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Geçersiz boyut: " + size);
+        }
+    }
+
+    private static long ceilDiv(long a, long b) {
+        return (a + b - 1) / b;
+    }
+}
@@ -3,11 +3,21 @@ package com.cvlab.spring.LaPatho;
 import jakarta.servlet.http.HttpServletRequest;
 import lombok.RequiredArgsConstructor;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.io.Resource;
+import org.springframework.http.CacheControl;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.context.request.WebRequest;
 
 import java.net.URI;
+import java.util.Base64;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Locale;
+import java.util.Optional;
 import java.util.stream.Collectors;
 import java.nio.file.Files;
 import java.nio.file.Paths;
@@ -20,6 +30,15 @@ public class ImageController {
     @Autowired
     private ImageService imageService;
 
+    @Autowired
+    private AssociatedImageService associatedImageService;
+
+    @Autowired
+    private ThumbnailService thumbnailService;
+
+    @Value("${thumbnail.batch-max:200}")
+    private int thumbnailBatchMax;
+
     @PostMapping
     public ResponseEntity<ImageDTO> createImage(@RequestBody CreateImageDTO dto) {
         ImageEntity img = new ImageEntity();
@@ -44,66 +63,79 @@ public class ImageController {
                 .body(response);
     }
 
+    // GET metadata; ETag kaydın durumu ve son güncellemesinden türetilir, değişmediyse 304 döner
     @GetMapping("/metadata/{id}")
-    public ResponseEntity<ImageMetadataDTO> metadata(@PathVariable Long id) {
-        return imageService.findById(id)
-                .map(img -> {
-                    // Create comprehensive metadata DTO
-                    ImageMetadataDTO metadata = new ImageMetadataDTO();
-
-                    // Basic image properties
-                    metadata.setWidth(img.getWidth());
-                    metadata.setHeight(img.getHeight());
-                    metadata.setTileSize(img.getTileSize());
-                    metadata.setMaxLevel(img.getMaxLevel());
-
-                    // File information
-                    metadata.setFileName(img.getName());
-                    // Fallback: file size from disk if missing
-                    Long fileSize = img.getFileSize();
-                    if (fileSize == null && img.getPath() != null) {
-                        try { fileSize = Files.size(Paths.get(img.getPath())); } catch (Exception ignored) {}
-                    }
-                    metadata.setFileSize(fileSize);
-
-                    // Format with fallback detection by extension
-                    String format = img.getFormat();
-                    if (format == null || format.isBlank() || "Unknown".equalsIgnoreCase(format)) {
-                        format = detectFormatFromPath(img.getPath());
-                    }
-                    metadata.setFormat(format);
-
-                    metadata.setPath(img.getPath());
-
-                    // Technical details
-                    metadata.setPixelSizeX(img.getPixelSizeX());
-                    metadata.setPixelSizeY(img.getPixelSizeY());
-                    metadata.setBitDepth(img.getBitDepth());
-                    metadata.setChannels(img.getChannels());
-                    metadata.setColorSpace(img.getColorSpace());
-                    metadata.setCompression(img.getCompression());
-
-                    // Microscopy-specific metadata
-                    metadata.setMagnification(img.getMagnification());
-                    metadata.setObjective(img.getObjective());
-                    metadata.setScanner(img.getScanner());
-                    metadata.setScanDate(img.getScanDate());
-
-                    // Timestamps and status
-                    metadata.setCreated(img.getCreated());
-                    metadata.setUpdated(img.getUpdated());
-                    metadata.setStatus(img.getStatus() != null ? img.getStatus().toString() : "UNKNOWN");
-
-                    // Calculate derived properties
-                    metadata.setTotalArea((double) img.getWidth() * img.getHeight());
-                    if (img.getPixelSizeX() != null && img.getPixelSizeY() != null) {
-                        metadata.setPhysicalWidth(img.getWidth() * img.getPixelSizeX());
-                        metadata.setPhysicalHeight(img.getHeight() * img.getPixelSizeY());
-                    }
-
-                    return ResponseEntity.ok(metadata);
-                })
-                .orElseGet(() -> ResponseEntity.notFound().build());
+    public ResponseEntity<ImageMetadataDTO> metadata(@PathVariable Long id, WebRequest webRequest) {
+        Optional<ImageEntity> found = imageService.findById(id);
+        if (found.isEmpty()) {
+            return ResponseEntity.notFound().build();
+        }
+        ImageEntity img = found.get();
+        String tileGeneration = img.getStatus() != Status.ERROR ? ImageService.tileGeneration(img) : null;
+        String etag = String.format("\"m-%d-%s-%s-%s\"", img.getId(), img.getStatus(),
+                img.getUpdated() != null ? img.getUpdated().toEpochMilli() : 0, tileGeneration);
+        if (webRequest.checkNotModified(etag)) {
+            return null;
+        }
+
+        // Create comprehensive metadata DTO
+        ImageMetadataDTO metadata = new ImageMetadataDTO();
+
+        // Basic image properties
+        metadata.setWidth(img.getWidth());
+        metadata.setHeight(img.getHeight());
+        metadata.setTileSize(img.getTileSize());
+        metadata.setMaxLevel(img.getMaxLevel());
+
+        // File information
+        metadata.setFileName(img.getName());
+        // Fallback: file size from disk if missing
+        Long fileSize = img.getFileSize();
+        if (fileSize == null && img.getPath() != null) {
+            try { fileSize = Files.size(Paths.get(img.getPath())); } catch (Exception ignored) {}
+        }
+        metadata.setFileSize(fileSize);
+
+        // Format with fallback detection by extension
+        String format = img.getFormat();
+        if (format == null || format.isBlank() || "Unknown".equalsIgnoreCase(format)) {
+            format = detectFormatFromPath(img.getPath());
+        }
+        metadata.setFormat(format);
+
+        metadata.setPath(img.getPath());
+
+        // Technical details
+        metadata.setPixelSizeX(img.getPixelSizeX());
+        metadata.setPixelSizeY(img.getPixelSizeY());
+        metadata.setBitDepth(img.getBitDepth());
+        metadata.setChannels(img.getChannels());
+        metadata.setColorSpace(img.getColorSpace());
+        metadata.setCompression(img.getCompression());
+
+        // Microscopy-specific metadata
+        metadata.setMagnification(img.getMagnification());
+        metadata.setObjective(img.getObjective());
+        metadata.setScanner(img.getScanner());
+        metadata.setScanDate(img.getScanDate());
+
+        // Timestamps and status
+        metadata.setCreated(img.getCreated());
+        metadata.setUpdated(img.getUpdated());
+        metadata.setStatus(img.getStatus() != null ? img.getStatus().toString() : "UNKNOWN");
+        metadata.setTileGeneration(tileGeneration);
+
+        // Calculate derived properties
+        metadata.setTotalArea((double) img.getWidth() * img.getHeight());
+        if (img.getPixelSizeX() != null && img.getPixelSizeY() != null) {
+            metadata.setPhysicalWidth(img.getWidth() * img.getPixelSizeX());
+            metadata.setPhysicalHeight(img.getHeight() * img.getPixelSizeY());
+        }
+
+        return ResponseEntity.ok()
+                .cacheControl(CacheControl.noCache())
+                .eTag(etag)
+                .body(metadata);
     }
 
     // Simple extension-based format detector for legacy records
@@ -124,8 +156,11 @@ public class ImageController {
     public ResponseEntity<List<ImageOverviewDTO>> listImages(HttpServletRequest request) {
         List<ImageOverviewDTO> list = imageService.findAll().stream()
                 .map(img -> {
-                    String preview = (img.getStatus() == Status.READY)
-                            ? String.format("%s://%s/api/tiles/%d/0/0_0.jpg",
+                    // Önizleme ingest başında üretilir; işlenmekte olan görüntülerde de olabilir
+                    boolean hasPreview = img.getStatus() == Status.READY
+                            || (img.getStatus() != Status.ERROR && thumbnailService.exists(img.getId().toString()));
+                    String preview = hasPreview
+                            ? String.format("%s://%s/api/images/%d/thumbnail",
                             request.getScheme(), request.getServerName() + ":" + request.getServerPort(), img.getId())
                             : null;
                     return new ImageOverviewDTO(
@@ -136,6 +171,32 @@ public class ImageController {
         return ResponseEntity.ok(list);
     }
 
+    // GET liste önizlemesi
+    @GetMapping("/{id}/thumbnail")
+    public ResponseEntity<byte[]> getThumbnail(@PathVariable Long id) {
+        return imageService.findById(id)
+                .flatMap(thumbnailService::find)
+                .map(jpeg -> ResponseEntity.ok().contentType(MediaType.IMAGE_JPEG).body(jpeg))
+                .orElse(ResponseEntity.notFound().build());
+    }
+
+    // GET bir sayfa önizleme tek yanıtta: id -> data URI (önizlemesi olmayanlar yanıtta yer almaz);
+    // sınır aşılırsa 400 yanıtının maxIds alanı sınırı bildirir
+    @GetMapping("/thumbnails")
+    public ResponseEntity<?> getThumbnails(@RequestParam List<Long> ids) {
+        if (ids.size() > thumbnailBatchMax) {
+            return ResponseEntity.badRequest().body(Map.of(
+                    "error", "En fazla " + thumbnailBatchMax + " görüntü istenebilir", "maxIds", thumbnailBatchMax));
+        }
+        Map<Long, String> thumbnails = new LinkedHashMap<>();
+        Base64.Encoder encoder = Base64.getEncoder();
+        for (ImageEntity img : imageService.findAllById(ids)) {
+            thumbnailService.find(img).ifPresent(jpeg ->
+                    thumbnails.put(img.getId(), "data:image/jpeg;base64," + encoder.encodeToString(jpeg)));
+        }
+        return ResponseEntity.ok(thumbnails);
+    }
+
     // GET specific image by ID
     @GetMapping("/{id}")
     public ResponseEntity<ImageEntity> getImage(@PathVariable Long id) {
@@ -144,6 +205,49 @@ public class ImageController {
                 .orElse(ResponseEntity.notFound().build());
     }
 
+    // GET tile üretim performans kaydı (all=true: tüm üretimler, en yeniden eskiye)
+    @GetMapping("/{id}/ingest-profile")
+    public ResponseEntity<?> getIngestProfile(@PathVariable Long id,
+                                              @RequestParam(defaultValue = "false") boolean all) {
+        if (imageService.findById(id).isEmpty()) {
+            return ResponseEntity.notFound().build();
+        }
+        if (all) {
+            return ResponseEntity.ok(imageService.findIngestProfiles(id));
+        }
+        return imageService.findLatestIngestProfile(id)
+                .<ResponseEntity<?>>map(ResponseEntity::ok)
+                .orElse(ResponseEntity.notFound().build());
+    }
+
+    // GET slayttaki yardımcı görüntülerin listesi (etiket, makro, küçük resim)
+    @GetMapping("/{id}/associated")
+    public ResponseEntity<?> listAssociatedImages(@PathVariable Long id) throws Exception {
+        Optional<ImageEntity> image = imageService.findById(id);
+        if (image.isEmpty()) {
+            return ResponseEntity.notFound().build();
+        }
+        return ResponseEntity.ok(associatedImageService.list(image.get()).values());
+    }
+
+    // GET yardımcı görüntü; kind: label, macro, thumbnail
+    @GetMapping("/{id}/associated/{kind}")
+    public ResponseEntity<Resource> getAssociatedImage(@PathVariable Long id, @PathVariable String kind) throws Exception {
+        AssociatedImageService.Kind parsed;
+        try {
+            parsed = AssociatedImageService.Kind.valueOf(kind.toUpperCase(Locale.ROOT));
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.notFound().build();
+        }
+        Optional<ImageEntity> image = imageService.findById(id);
+        if (image.isEmpty()) {
+            return ResponseEntity.notFound().build();
+        }
+        return associatedImageService.find(image.get(), parsed)
+                .map(resource -> ResponseEntity.ok().contentType(MediaType.IMAGE_JPEG).body(resource))
+                .orElse(ResponseEntity.notFound().build());
+    }
+
     // PUT - Update image
     @PutMapping("/{id}")
     public ResponseEntity<ImageEntity> updateImage(
@@ -83,6 +83,18 @@ public class ImageEntity {
     @Column(name = "scan_date")
     private String scanDate;
 
+    // Kaynak dosyanın SHA-256 özeti (hex); aynı içerik tekrar yüklendiğinde eşleştirmek için
+    @Column(name = "content_hash", length = 64)
+    private String contentHash;
+
+    // Piramidi ve kaynak dosyayı paylaştığı görüntü; null ise kendi piramidi vardır
+    @Column(name = "tile_source_id")
+    private Long tileSourceId;
+
+    // Piramidin son tamamlandığı zaman; tile nesil belirtecine girer, yeniden üretimde değişir
+    @Column(name = "tiles_generated")
+    private Instant tilesGenerated;
+
     @PrePersist
     public void prePersist() {
         if (created == null) {
@@ -41,6 +41,9 @@ public class ImageMetadataDTO {
     private Instant updated;
     private String status;
 
+    // Tile URL'lerine ?v= olarak eklenen piramit nesil belirteci
+    private String tileGeneration;
+
     // Calculated properties
     private Double totalArea; // in square pixels
     private Double physicalWidth; // in micrometers
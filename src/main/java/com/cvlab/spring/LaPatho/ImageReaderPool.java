@@ -0,0 +1,296 @@
+package com.cvlab.spring.LaPatho;
+
+import jakarta.annotation.PreDestroy;
+import loci.formats.FormatException;
+import loci.formats.IFormatReader;
+import loci.formats.ImageReader;
+import loci.formats.Memoizer;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Dosya yoluna göre açık Bio-Formats reader havuzu.
+ *
+ * setId büyük NDPI/MRXS dosyalarında saniyeler sürer; havuz açılmış reader'ları
+ * tekrar kullanır ve Memoizer sayesinde header parse sonucu memo dizinine yazılır,
+ * böylece yeniden başlatmadan sonra bile setId hızlıdır.
+ *
+ * Reader'lar thread-safe değildir: ödünç alınan reader close() edilene kadar sadece
+ * ödünç alan thread tarafından kullanılmalıdır. Havuzdaki tüm reader'lar
+ * flattenedResolutions=false ile açılır (alt çözünürlükler setResolution ile okunur).
+ */
+@Component
+@Slf4j
+public class ImageReaderPool {
+
+    @Value("${tile.reader.max-open:64}")
+    private int maxOpen;
+
+    @Value("${tile.reader.idle-timeout-ms:300000}")
+    private long idleTimeoutMs;
+
+    @Value("${tile.reader.memo-dir:${tile.output-base-path}/.bfmemo}")
+    private String memoDir;
+
+    /** setId bu süreden uzun sürerse memo dosyası yazılır */
+    @Value("${tile.reader.memo-min-elapsed-ms:100}")
+    private long memoMinElapsedMs;
+
+    private final Map<String, Deque<IdleReader>> idleReaders = new HashMap<>();
+    private int openCount = 0;
+
+    /**
+     * Dosya için bir reader ödünç alır; havuzda boşta reader yoksa yenisini açar.
+     * Açık reader sayısı sınırdaysa başka dosyanın boştaki reader'ı kapatılır,
+     * o da yoksa bir reader geri verilene kadar beklenir.
+     */
+    public PooledReader borrow(String path) throws IOException, FormatException {
+        PooledReader reader = tryBorrow(path, Long.MAX_VALUE);
+        if (reader == null) {
+            throw new IOException("Reader havuzu dolu: " + path);
+        }
+        return reader;
+    }
+
+    /**
+     * borrow ile aynı, ancak sınıra takılınca en fazla timeoutMs bekler ve
+     * reader alamazsa null döner.
+     */
+    public PooledReader tryBorrow(String path, long timeoutMs) throws IOException, FormatException {
+        IFormatReader evicted = null;
+        long deadline = timeoutMs == Long.MAX_VALUE ? Long.MAX_VALUE : System.currentTimeMillis() + timeoutMs;
+
+        synchronized (this) {
+            while (true) {
+                Deque<IdleReader> idle = idleReaders.get(path);
+                if (idle != null && !idle.isEmpty()) {
+                    IFormatReader reader = idle.pollFirst().reader;
+                    if (idle.isEmpty()) {
+                        idleReaders.remove(path);
+                    }
+                    return new PooledReader(this, path, reader);
+                }
+                if (openCount < maxOpen) {
+                    openCount++;
+                    break;
+                }
+                evicted = pollOldestIdle();
+                if (evicted != null) {
+                    // Kapatılan reader'ın yeri yeni reader'a geçer, openCount değişmez
+                    break;
+                }
+                long remaining = deadline - System.currentTimeMillis();
+                if (remaining <= 0) {
+                    return null;
+                }
+                try {
+                    wait(Math.min(remaining, 1000));
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new IOException("Reader beklenirken kesildi: " + path, e);
+                }
+            }
+        }
+
+        closeQuietly(evicted);
+        try {
+            return new PooledReader(this, path, open(path));
+        } catch (IOException | FormatException | RuntimeException e) {
+            synchronized (this) {
+                openCount--;
+                notifyAll();
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * Dosyaya ait boştaki tüm reader'ları kapatır (dosya silindiğinde veya değiştiğinde).
+     */
+    public void invalidate(String path) {
+        Deque<IdleReader> idle;
+        synchronized (this) {
+            idle = idleReaders.remove(path);
+            if (idle != null) {
+                openCount -= idle.size();
+                notifyAll();
+            }
+        }
+        if (idle != null) {
+            idle.forEach(r -> closeQuietly(r.reader));
+        }
+    }
+
+    @Scheduled(fixedDelayString = "${tile.reader.evict-interval-ms:30000}")
+    public void evictIdle() {
+        long cutoff = System.currentTimeMillis() - idleTimeoutMs;
+        List<IFormatReader> expired = new ArrayList<>();
+        synchronized (this) {
+            Iterator<Map.Entry<String, Deque<IdleReader>>> it = idleReaders.entrySet().iterator();
+            while (it.hasNext()) {
+                Deque<IdleReader> idle = it.next().getValue();
+                idle.removeIf(r -> {
+                    if (r.since < cutoff) {
+                        expired.add(r.reader);
+                        return true;
+                    }
+                    return false;
+                });
+                if (idle.isEmpty()) {
+                    it.remove();
+                }
+            }
+            openCount -= expired.size();
+            if (!expired.isEmpty()) {
+                notifyAll();
+            }
+        }
+        expired.forEach(this::closeQuietly);
+        if (!expired.isEmpty()) {
+            log.debug("{} boştaki reader kapatıldı", expired.size());
+        }
+    }
+
+    @PreDestroy
+    public void closeAll() {
+        List<IFormatReader> all = new ArrayList<>();
+        synchronized (this) {
+            idleReaders.values().forEach(idle -> idle.forEach(r -> all.add(r.reader)));
+            openCount -= all.size();
+            idleReaders.clear();
+        }
+        all.forEach(this::closeQuietly);
+    }
+
+    synchronized void release(String path, IFormatReader reader) {
+        try {
+            reader.setSeries(0);
+            reader.setResolution(0);
+        } catch (RuntimeException e) {
+            discard(reader);
+            return;
+        }
+        idleReaders.computeIfAbsent(path, p -> new ArrayDeque<>())
+                .addFirst(new IdleReader(reader, System.currentTimeMillis()));
+        notifyAll();
+    }
+
+    void discard(IFormatReader reader) {
+        closeQuietly(reader);
+        synchronized (this) {
+            openCount--;
+            notifyAll();
+        }
+    }
+
+    private IFormatReader pollOldestIdle() {
+        String oldestPath = null;
+        long oldest = Long.MAX_VALUE;
+        for (Map.Entry<String, Deque<IdleReader>> e : idleReaders.entrySet()) {
+            IdleReader last = e.getValue().peekLast();
+            if (last != null && last.since < oldest) {
+                oldest = last.since;
+                oldestPath = e.getKey();
+            }
+        }
+        if (oldestPath == null) {
+            return null;
+        }
+        Deque<IdleReader> idle = idleReaders.get(oldestPath);
+        IFormatReader reader = idle.pollLast().reader;
+        if (idle.isEmpty()) {
+            idleReaders.remove(oldestPath);
+        }
+        return reader;
+    }
+
+    private IFormatReader open(String path) throws IOException, FormatException {
+        long start = System.currentTimeMillis();
+
+        File memoDirectory = new File(memoDir);
+        if (!memoDirectory.exists() && !memoDirectory.mkdirs()) {
+            log.warn("Memo dizini oluşturulamadı: {}", memoDirectory.getAbsolutePath());
+        }
+
+        IFormatReader reader = new Memoizer(new ImageReader(), memoMinElapsedMs, memoDirectory);
+        reader.setFlattenedResolutions(false);
+
+        // BIF dosyaları için özel yapılandırma; setId'den önce yapılmalı
+        if (path.toLowerCase().endsWith(".bif")) {
+            reader.setMetadataFiltered(true);
+            reader.setOriginalMetadataPopulated(true);
+            reader.setGroupFiles(false); // BIF dosyaları için grup dosya desteğini kapat
+        }
+
+        try {
+            reader.setId(path);
+        } catch (IOException | FormatException | RuntimeException e) {
+            closeQuietly(reader);
+            throw e;
+        }
+
+        log.info("Reader açıldı: path={}, format={}, süre={}ms", path, reader.getFormat(),
+                System.currentTimeMillis() - start);
+        return reader;
+    }
+
+    private void closeQuietly(IFormatReader reader) {
+        if (reader == null) {
+            return;
+        }
+        try {
+            reader.close();
+        } catch (Exception e) {
+            log.warn("Reader kapatma hatası: {}", e.getMessage());
+        }
+    }
+
+    private record IdleReader(IFormatReader reader, long since) {}
+
+    /**
+     * Havuzdan ödünç alınmış reader. close() reader'ı kapatmaz, havuza geri verir;
+     * reader hatalı duruma düştüyse discard() ile havuzdan tamamen çıkarılmalıdır.
+     */
+    public static class PooledReader implements AutoCloseable {
+        private final ImageReaderPool pool;
+        private final String path;
+        private IFormatReader reader;
+
+        PooledReader(ImageReaderPool pool, String path, IFormatReader reader) {
+            this.pool = pool;
+            this.path = path;
+            this.reader = reader;
+        }
+
+        public IFormatReader get() {
+            return reader;
+        }
+
+        public void discard() {
+            if (reader != null) {
+                pool.discard(reader);
+                reader = null;
+            }
+        }
+
+        @Override
+        public void close() {
+            if (reader != null) {
+                pool.release(path, reader);
+                reader = null;
+            }
+        }
+    }
+}
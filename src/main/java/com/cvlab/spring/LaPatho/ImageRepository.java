@@ -1,7 +1,37 @@
 package com.cvlab.spring.LaPatho;
 
+import jakarta.persistence.LockModeType;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Lock;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
+import java.util.Collection;
+import java.util.List;
+import java.util.Optional;
+
 @Repository
-public interface ImageRepository extends JpaRepository<ImageEntity, Long> {}
+public interface ImageRepository extends JpaRepository<ImageEntity, Long> {
+
+    List<ImageEntity> findByStatusIn(Collection<Status> statuses);
+
+    Optional<ImageEntity> findFirstByContentHashAndStatusNotOrderByIdAsc(String contentHash, Status status);
+
+    List<ImageEntity> findByTileSourceId(Long tileSourceId);
+
+    List<ImageEntity> findByTileSourceIdIsNotNull();
+
+    long countByTileSourceId(Long tileSourceId);
+
+    long countByPath(String path);
+
+    /**
+     * Piramidin sahibini ve onu paylaşan kayıtları işlem sonuna kadar kilitler (SELECT ... FOR UPDATE).
+     * Kopya ekleme ve silme aynı satırları kilitlediği için referans sayımı eşzamanlı bir kopyayı
+     * kaçırmaz. Kilitlenme olmasın diye satırlar ID sırasıyla kilitlenir.
+     */
+    @Lock(LockModeType.PESSIMISTIC_WRITE)
+    @Query("SELECT i FROM ImageEntity i WHERE i.id = :pyramidId OR i.tileSourceId = :pyramidId ORDER BY i.id")
+    List<ImageEntity> lockPyramid(@Param("pyramidId") Long pyramidId);
+}
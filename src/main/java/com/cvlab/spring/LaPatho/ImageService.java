@@ -1,8 +1,10 @@
 package com.cvlab.spring.LaPatho;
 
 import loci.formats.FormatException;
-import loci.formats.ImageReader;
+import loci.formats.IFormatReader;
 import loci.formats.FormatTools;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import jakarta.annotation.PostConstruct;
 import jakarta.persistence.EntityNotFoundException;
 import jakarta.transaction.Transactional;
 import lombok.extern.slf4j.Slf4j;
@@ -10,14 +12,22 @@ import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.context.ApplicationEventPublisher;
 import org.springframework.scheduling.annotation.Async;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
 
 import java.io.IOException;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.nio.charset.StandardCharsets;
 import java.util.Arrays;
+import java.util.Comparator;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.zip.CRC32;
 
 @Service
 @Slf4j
@@ -25,12 +35,26 @@ public class ImageService {
     @Autowired private ImageRepository imageRepository;
     @Autowired private TileService tileService;
     @Autowired private ApplicationEventPublisher events;
+    @Autowired private ImageReaderPool readerPool;
+    @Autowired private IngestProfileRepository ingestProfileRepository;
+    @Autowired private ObjectMapper objectMapper;
+    @Autowired private TileStore tileStore;
+    @Autowired private ThumbnailService thumbnailService;
+    @Autowired private TransactionTemplate transactionTemplate;
 
     // Desteklenen formatların listesi
     private static final List<String> SUPPORTED_EXTENSIONS = Arrays.asList(
         ".tiff", ".tif", ".bif", ".ome.tiff", ".ome.tif", ".svs", ".ndpi", ".scn", ".mrxs"
     );
 
+    // imageId -> tile nesil belirteci; her tile isteğinde veritabanına gidilmesin diye tutulur,
+    // durum değişince ve silinince, değişiklik commit edildikten sonra düşürülür
+    private final Map<String, String> tileGenerations = new ConcurrentHashMap<>();
+
+    // contentHash -> kilit; aynı içeriğin eşzamanlı yüklemeleri sırayla kaydedilir ki ikincisi
+    // birincinin kopyası olsun, iki ayrı piramit üretilmesin
+    private final Map<String, Object> hashLocks = new ConcurrentHashMap<>();
+
     public ImageEntity save(ImageEntity img) {
         return imageRepository.save(img);
     }
@@ -43,7 +67,72 @@ public class ImageService {
         return imageRepository.findAll();
     }
 
+    public List<ImageEntity> findAllById(Iterable<Long> ids) {
+        return imageRepository.findAllById(ids);
+    }
+
+    /**
+     * Görüntünün tile nesil belirteci (tile URL'sindeki ?v=). Piramit ve tile boyutuyla birlikte
+     * görüntünün hazır olup olmadığına da bağlıdır: işlenirken istek anında üretilen tile'lar
+     * piramit tamamlanınca yenileriyle değişebileceği için hazır olunca belirteç de değişir.
+     * Piramit yeniden üretildiğinde üretim zamanı (tilesGenerated) değiştiği için yine değişir.
+     * Görüntü yoksa ya da hatalıysa boş.
+     */
+    public Optional<String> findTileGeneration(String imageId) {
+        String cached = tileGenerations.get(imageId);
+        if (cached != null) {
+            return Optional.of(cached);
+        }
+        long id;
+        try {
+            id = Long.parseLong(imageId);
+        } catch (NumberFormatException e) {
+            return Optional.empty();
+        }
+        Optional<String> generation = imageRepository.findById(id)
+                .filter(img -> img.getStatus() != Status.ERROR)
+                .map(ImageService::tileGeneration);
+        generation.ifPresent(token -> tileGenerations.put(imageId, token));
+        return generation;
+    }
+
+    /** Tile nesil belirteci hazır (READY) görüntülerde değişmez */
+    public boolean isImmutableGeneration(String generation) {
+        return generation.endsWith("r");
+    }
+
+    static String tileGeneration(ImageEntity img) {
+        Long pyramidId = img.getTileSourceId() != null ? img.getTileSourceId() : img.getId();
+        String source = pyramidId + ":" + img.getTileSize() + ":" + img.getCreated() + ":" + img.getContentHash()
+                + ":" + img.getTilesGenerated();
+        CRC32 crc = new CRC32();
+        crc.update(source.getBytes(StandardCharsets.UTF_8));
+        return Long.toHexString(crc.getValue()) + (img.getStatus() == Status.READY ? "r" : "p");
+    }
+
+    /** Piramidi paylaşan görüntüleri tile deposuna bildirir */
+    @PostConstruct
+    public void registerSharedPyramids() {
+        try {
+            List<ImageEntity> shared = imageRepository.findByTileSourceIdIsNotNull();
+            shared.forEach(img -> tileStore.share(img.getId().toString(), img.getTileSourceId().toString()));
+            if (!shared.isEmpty()) {
+                log.info("Piramit paylaşan görüntü sayısı: {}", shared.size());
+            }
+        } catch (Exception e) {
+            log.warn("Paylaşılan piramitler yüklenemedi: {}", e.getMessage());
+        }
+    }
+
     public ImageDTO create(String name, String inputPath) throws IOException, FormatException {
+        return create(name, inputPath, null);
+    }
+
+    /**
+     * @param contentHash yüklenen dosyanın SHA-256 özeti (hex); aynı içerikte bir görüntü
+     *                    varsa yeni kayıt onun kaynak dosyasını ve piramidini paylaşır
+     */
+    public ImageDTO create(String name, String inputPath, String contentHash) throws IOException, FormatException {
         log.info("Creating image: name={}, path={}", name, inputPath);
 
         // Format doğrulama
@@ -51,11 +140,27 @@ public class ImageService {
             log.warn("Desteklenmeyen format: {}", inputPath);
             throw new FormatException("Desteklenmeyen dosya formatı: " + inputPath);
         }
+        if (contentHash == null) {
+            return createRecord(name, inputPath, null);
+        }
+
+        Object lock = hashLocks.computeIfAbsent(contentHash, hash -> new Object());
+        try {
+            synchronized (lock) {
+                Optional<ImageDTO> duplicate = createDuplicate(name, inputPath, contentHash);
+                return duplicate.isPresent() ? duplicate.get() : createRecord(name, inputPath, contentHash);
+            }
+        } finally {
+            hashLocks.remove(contentHash, lock);
+        }
+    }
 
+    private ImageDTO createRecord(String name, String inputPath, String contentHash) throws FormatException {
         // 1) Yeni ImageEntity oluşturup temel alanları set et
         ImageEntity img = new ImageEntity();
         img.setName(name);
         img.setPath(inputPath);
+        img.setContentHash(contentHash);
         img.setStatus(Status.PENDING);
 
         // Dosya boyutu ve formatı (uzantıdan) önden tespit et
@@ -70,20 +175,18 @@ public class ImageService {
         // Uzantıya göre formatı belirle (BIF gibi vendor formatlarını doğru göster)
         img.setFormat(detectFormatFromPath(inputPath));
 
-        // 2) Bio-Formats ImageReader ile boyutları ve teknik bilgileri oku
-        ImageReader reader = new ImageReader();
+        // 2) Bio-Formats reader ile boyutları ve teknik bilgileri oku.
+        // Reader havuza geri verilir, tile üretimi aynı reader'ı setId tekrarlanmadan kullanır.
+        ImageReaderPool.PooledReader pooled = null;
         try {
             log.info("Bio-Formats ile dosya okunuyor: {}", inputPath);
+            pooled = readerPool.borrow(inputPath);
+            IFormatReader reader = pooled.get();
 
             // Bio-Formats format bilgisini al
-            String bfFormat = reader.getFormat(inputPath);
+            String bfFormat = reader.getFormat();
             log.info("Tespit edilen BF format: {}", bfFormat);
 
-            reader.setId(inputPath);
-
-            // Format'a özgü yapılandırma
-            configureReaderForFormat(reader, bfFormat);
-
             int seriesCount = reader.getSeriesCount();
             log.info("Toplam seri sayısı: {}", seriesCount);
 
@@ -149,20 +252,15 @@ public class ImageService {
             img.setHeight(1024);
             log.warn("Default boyutlar atandı: 1024x1024");
         } finally {
-            try {
-                reader.close();
-            } catch (Exception e) {
-                log.warn("ImageReader kapatma hatası: {}", e.getMessage());
+            if (pooled != null) {
+                pooled.close();
             }
         }
 
         // 3) Tile boyutu ve maxLevel hesaplama
         int tileSize = 512;
         img.setTileSize(tileSize);
-        int maxLevel = (int) Math.ceil(
-                Math.log(Math.max(img.getWidth(), img.getHeight()) / (double) tileSize)
-                        / Math.log(2)
-        );
+        int maxLevel = TilePyramid.computeMaxLevel(img.getWidth(), img.getHeight(), tileSize);
         img.setMaxLevel(maxLevel);
         log.info("Tile yapılandırması: tileSize={}, maxLevel={}", tileSize, maxLevel);
 
@@ -187,6 +285,79 @@ public class ImageService {
         );
     }
 
+    /**
+     * Aynı içerik daha önce yüklenmişse: yeni kayıt özgün dosyayı ve piramidi kullanır,
+     * yüklenen kopya silinir, tile üretimi yapılmaz. Kayıt, piramidi paylaşan satırlar
+     * kilitliyken eklenir (bkz. delete). Özgün kayıt bu arada silinmiş ya da hata vermişse
+     * boş döner; yükleme ayrı bir görüntü olarak işlenir.
+     */
+    private Optional<ImageDTO> createDuplicate(String name, String uploadedPath, String contentHash) {
+        Optional<ImageEntity> candidate = imageRepository
+                .findFirstByContentHashAndStatusNotOrderByIdAsc(contentHash, Status.ERROR)
+                .filter(existing -> Files.exists(Paths.get(existing.getPath())));
+        if (candidate.isEmpty()) {
+            return Optional.empty();
+        }
+        Long sourceId = candidate.get().getTileSourceId() != null ? candidate.get().getTileSourceId() : candidate.get().getId();
+
+        ImageEntity img = transactionTemplate.execute(tx -> imageRepository.lockPyramid(sourceId).stream()
+                .filter(locked -> locked.getId().equals(candidate.get().getId()) && locked.getStatus() != Status.ERROR)
+                .findFirst()
+                .map(original -> imageRepository.save(copyOf(original, name, sourceId)))
+                .orElse(null));
+        if (img == null) {
+            log.info("Aynı içerikteki görüntü kullanılamıyor, yükleme ayrıca işlenecek: ID={}", candidate.get().getId());
+            return Optional.empty();
+        }
+        tileStore.share(img.getId().toString(), sourceId.toString());
+
+        if (!uploadedPath.equals(img.getPath())) {
+            try {
+                Files.deleteIfExists(Paths.get(uploadedPath));
+            } catch (IOException e) {
+                log.warn("Tekrar yüklenen dosya silinemedi: {}", e.getMessage());
+            }
+        }
+        log.info("Aynı içerik zaten var: yeni ID={}, piramit={}, status={}", img.getId(), sourceId, img.getStatus());
+
+        return Optional.of(new ImageDTO(
+                img.getId(),
+                img.getName(),
+                img.getWidth(),
+                img.getHeight(),
+                img.getTileSize(),
+                img.getMaxLevel(),
+                img.getPath()
+        ));
+    }
+
+    private static ImageEntity copyOf(ImageEntity original, String name, Long sourceId) {
+        ImageEntity img = new ImageEntity();
+        img.setName(name);
+        img.setPath(original.getPath());
+        img.setContentHash(original.getContentHash());
+        img.setTileSourceId(sourceId);
+        img.setStatus(original.getStatus());
+        img.setWidth(original.getWidth());
+        img.setHeight(original.getHeight());
+        img.setTileSize(original.getTileSize());
+        img.setMaxLevel(original.getMaxLevel());
+        img.setFileSize(original.getFileSize());
+        img.setFormat(original.getFormat());
+        img.setPixelSizeX(original.getPixelSizeX());
+        img.setPixelSizeY(original.getPixelSizeY());
+        img.setBitDepth(original.getBitDepth());
+        img.setChannels(original.getChannels());
+        img.setColorSpace(original.getColorSpace());
+        img.setCompression(original.getCompression());
+        img.setMagnification(original.getMagnification());
+        img.setObjective(original.getObjective());
+        img.setScanner(original.getScanner());
+        img.setScanDate(original.getScanDate());
+        img.setTilesGenerated(original.getTilesGenerated());
+        return img;
+    }
+
     // Uzantıya göre format tespiti (kısa ve kullanıcı dostu)
     private String detectFormatFromPath(String filePath) {
         String lower = filePath == null ? "" : filePath.toLowerCase();
@@ -216,40 +387,153 @@ public class ImageService {
             existing.setStatus(imageData.getStatus());
         }
         existing.setUpdated(java.time.Instant.now());
-
-        return imageRepository.save(existing);
+        ImageEntity saved = imageRepository.save(existing);
+        afterCommit(() -> tileGenerations.remove(id.toString()));
+        return saved;
     }
 
+    /**
+     * Kaydı siler. Kaynak dosya ve tile piramidi başka kayıtlarla paylaşılıyor olabilir;
+     * bunlar ancak son kayıt da silindiğinde (işlem commit edildikten sonra) diskten kaldırılır.
+     * Piramidi paylaşan satırlar kilitlenir; eşzamanlı eklenen bir kopya ya da silinen diğer
+     * bir kayıt sayımda görülür.
+     */
     @Transactional
     public void delete(Long id) {
-        if (!imageRepository.existsById(id)) {
-            throw new EntityNotFoundException("Image not found");
-        }
+        ImageEntity img = imageRepository.findById(id)
+                .orElseThrow(() -> new EntityNotFoundException("Image not found"));
+        Long pyramidId = img.getTileSourceId() != null ? img.getTileSourceId() : id;
+        imageRepository.lockPyramid(pyramidId);
+
+        ingestProfileRepository.deleteByImageId(id);
         imageRepository.deleteById(id);
+        imageRepository.flush();
+
+        long pyramidRefs = imageRepository.countByTileSourceId(pyramidId)
+                + (imageRepository.existsById(pyramidId) ? 1 : 0);
+        long fileRefs = img.getPath() != null ? imageRepository.countByPath(img.getPath()) : 1;
+        afterCommit(() -> releaseStorage(id, pyramidId, pyramidRefs == 0, fileRefs == 0 ? img.getPath() : null));
+    }
+
+    /**
+     * İşlem varsa commit edildikten sonra, yoksa hemen çalıştırır. Önbellekten düşürme commit'ten
+     * önce yapılırsa araya giren bir okuma eski satırı tekrar önbelleğe koyabilir.
+     */
+    private static void afterCommit(Runnable action) {
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    action.run();
+                }
+            });
+        } else {
+            action.run();
+        }
+    }
+
+    private void releaseStorage(Long id, Long pyramidId, boolean deletePyramid, String sourcePath) {
+        tileStore.unshare(id.toString());
+        tileGenerations.remove(id.toString());
+        try {
+            if (deletePyramid) {
+                thumbnailService.evict(pyramidId.toString());
+                tileStore.delete(pyramidId.toString());
+            }
+            if (sourcePath != null) {
+                Files.deleteIfExists(Paths.get(sourcePath));
+                log.info("Kaynak dosya silindi: {}", sourcePath);
+            }
+        } catch (IOException e) {
+            log.warn("Görüntü dosyaları silinemedi: imageId={}, error={}", id, e.getMessage());
+        }
+    }
+
+    /** Görüntünün en son tile üretim performans kaydı */
+    public Optional<IngestProfileEntity> findLatestIngestProfile(Long imageId) {
+        return ingestProfileRepository.findFirstByImageIdOrderByCreatedDesc(imageId);
+    }
+
+    /** Görüntünün tüm tile üretim performans kayıtları, en yeniden eskiye */
+    public List<IngestProfileEntity> findIngestProfiles(Long imageId) {
+        return ingestProfileRepository.findByImageIdOrderByCreatedDesc(imageId);
+    }
+
+    /**
+     * Üretim ölçümlerini kaydeder. Kayıt hatası üretimi başarısız saymaz.
+     */
+    private void saveIngestProfile(ImageEntity img, IngestProfiler profiler) {
+        try {
+            IngestProfileEntity profile = new IngestProfileEntity();
+            profile.setImage(img);
+            profile.setFormat(img.getFormat());
+            profile.setPyramidMode(profiler.getPyramidMode());
+            profile.setTileStore(profiler.getTileStore());
+            profile.setWorkers(profiler.getWorkers());
+            profile.setResumed(profiler.isResumed());
+            profile.setTotalMs(profiler.totalMillis());
+            profile.setOpenMs(profiler.stageMillis(IngestProfiler.Stage.OPEN));
+            profile.setReadMs(profiler.stageMillis(IngestProfiler.Stage.READ));
+            profile.setConvertMs(profiler.stageMillis(IngestProfiler.Stage.CONVERT));
+            profile.setScaleMs(profiler.stageMillis(IngestProfiler.Stage.SCALE));
+            profile.setEncodeMs(profiler.stageMillis(IngestProfiler.Stage.ENCODE));
+            profile.setWriteMs(profiler.stageMillis(IngestProfiler.Stage.WRITE));
+            profile.setBytesRead(profiler.getBytesRead());
+            profile.setTilesWritten(profiler.getTilesWritten());
+            profile.setTilesBlank(profiler.getTilesBlank());
+            profile.setTilesSkipped(profiler.getTilesSkipped());
+            profile.setPeakBufferBytes(profiler.getPeakBufferBytes());
+            profile.setLevelMs(objectMapper.writeValueAsString(profiler.levelMillis()));
+            ingestProfileRepository.save(profile);
+            log.info("Ingest profili kaydedildi: imageId={}, süre={} ms, okunan={} bayt, yazılan tile={}",
+                    img.getId(), profile.getTotalMs(), profile.getBytesRead(), profile.getTilesWritten());
+        } catch (Exception e) {
+            log.warn("Ingest profili kaydedilemedi: imageId={}, error={}", img.getId(), e.getMessage());
+        }
     }
 
-    // Async tile üretimi
-    @Async
+    // Async tile üretimi; etkileşimli tile işleri TileScheduler'da öncelikli çalışır
+    @Async("ingestExecutor")
     public void generateTilesAsync(Long imageId) {
+        generateTiles(imageId, true);
+    }
+
+    /**
+     * @param promoteShared üretim başarısız olursa piramidi paylaşan kayıtlar hatayı devralmak
+     *                      yerine bir kez kendi piramitleriyle yeniden işlensin mi
+     */
+    private void generateTiles(Long imageId, boolean promoteShared) {
         log.info("Async tile üretimi başladı: imageId={}, thread={}", imageId, Thread.currentThread().getName());
+        Long promoted = null;
 
         try {
             ImageEntity img = imageRepository.findById(imageId).orElseThrow();
             log.info("Image bulundu: {}", img.getName());
+            if (img.getTileSourceId() != null) {
+                // Piramit sahibinin üretimi bitince durum güncellenir (bkz. updateSharedImages)
+                log.info("Görüntü piramidini paylaşıyor, tile üretimi atlanıyor: imageId={}, piramit={}",
+                        imageId, img.getTileSourceId());
+                return;
+            }
 
             img.setStatus(Status.PROCESSING);
             imageRepository.save(img);
+            tileGenerations.remove(imageId.toString());
             log.info("Status PROCESSING olarak güncellendi");
 
-            tileService.generateTiles(img.getPath(), img.getId().toString());
+            IngestProfiler profiler = tileService.generateTiles(img.getPath(), img.getId().toString());
             log.info("Tile üretimi tamamlandı");
+            saveIngestProfile(img, profiler);
 
             img.setStatus(Status.READY);
+            img.setTilesGenerated(java.time.Instant.now());
             imageRepository.save(img);
+            tileGenerations.remove(imageId.toString());
             log.info("Status READY olarak güncellendi");
 
             events.publishEvent(new ImageReadyEvent(this, imageId));
             log.info("ImageReadyEvent gönderildi");
+            updateSharedImages(img);
 
         } catch (Exception ex) {
             log.error("Tile üretimi hatası: imageId={}", imageId, ex);
@@ -258,53 +542,88 @@ public class ImageService {
                 if (img != null) {
                     img.setStatus(Status.ERROR);
                     imageRepository.save(img);
+                    tileGenerations.remove(imageId.toString());
                     log.info("Status ERROR olarak güncellendi");
+                    promoted = promoteShared ? promoteShared(imageId) : null;
+                    if (promoted == null) {
+                        updateSharedImages(img);
+                    }
                 }
             } catch (Exception saveEx) {
                 log.error("Status güncelleme hatası: {}", saveEx.getMessage());
             }
         }
+        if (promoted != null) {
+            generateTiles(promoted, false);
+        }
     }
 
     /**
-     * Dosya formatının desteklenip desteklenmediğini kontrol eder
+     * Piramit sahibinin üretimi başarısız olunca onu paylaşan kayıtları ayırır: en eski kopya
+     * ortak kaynak dosyadan kendi piramidini üretecek yeni sahip olur, diğerleri onu paylaşır.
+     * Yeni sahip de başarısız olursa kopyalar hatayı devralır.
+     *
+     * @return yeni sahibin ID'si; piramidi paylaşan kayıt yoksa null
      */
-    private boolean isSupportedFormat(String filePath) {
-        String lowerPath = filePath.toLowerCase();
-        return SUPPORTED_EXTENSIONS.stream().anyMatch(lowerPath::endsWith);
+    private Long promoteShared(Long ownerId) {
+        List<ImageEntity> shared = transactionTemplate.execute(tx -> {
+            List<ImageEntity> group = imageRepository.lockPyramid(ownerId).stream()
+                    .filter(img -> ownerId.equals(img.getTileSourceId()))
+                    .sorted(Comparator.comparing(ImageEntity::getId))
+                    .toList();
+            if (group.isEmpty()) {
+                return group;
+            }
+            Long newOwnerId = group.get(0).getId();
+            for (ImageEntity img : group) {
+                img.setTileSourceId(img.getId().equals(newOwnerId) ? null : newOwnerId);
+                img.setStatus(Status.PENDING);
+                imageRepository.save(img);
+            }
+            return group;
+        });
+        if (shared.isEmpty()) {
+            return null;
+        }
+        Long newOwnerId = shared.get(0).getId();
+        for (ImageEntity img : shared) {
+            tileStore.unshare(img.getId().toString());
+            if (!img.getId().equals(newOwnerId)) {
+                tileStore.share(img.getId().toString(), newOwnerId.toString());
+            }
+            tileGenerations.remove(img.getId().toString());
+        }
+        log.info("Piramit sahibi başarısız, paylaşan {} kayıt yeniden işlenecek: eski sahip={}, yeni sahip={}",
+                shared.size(), ownerId, newOwnerId);
+        return newOwnerId;
     }
 
-    /**
-     * Format'a özgü reader yapılandırması
-     */
-    private void configureReaderForFormat(ImageReader reader, String format) {
-        try {
-            if (format != null) {
-                String lowerFormat = format.toLowerCase();
-
-                // BIF/Ventana dosyaları için özel ayarlar
-                if (lowerFormat.contains("ventana") || lowerFormat.contains("bif")) {
-                    log.info("Ventana BIF format için reader yapılandırılıyor");
-                    // BIF dosyaları için metadata seçenekleri
-                    reader.setMetadataFiltered(true);
-                    reader.setOriginalMetadataPopulated(true);
-                }
-
-                // TIFF dosyaları için optimizasyon
-                else if (lowerFormat.contains("tiff") || lowerFormat.contains("tif")) {
-                    log.info("TIFF format için reader yapılandırılıyor");
-                    reader.setNormalized(false);
-                }
+    /** Piramidi bu görüntüden paylaşan kayıtların durumunu ve üretim zamanını sahibininkiyle eşitler */
+    private void updateSharedImages(ImageEntity owner) {
+        Status status = owner.getStatus();
+        for (ImageEntity shared : imageRepository.findByTileSourceId(owner.getId())) {
+            shared.setStatus(status);
+            shared.setTilesGenerated(owner.getTilesGenerated());
+            imageRepository.save(shared);
+            tileGenerations.remove(shared.getId().toString());
+            if (status == Status.READY) {
+                events.publishEvent(new ImageReadyEvent(this, shared.getId()));
             }
-        } catch (Exception e) {
-            log.warn("Reader yapılandırma hatası: {}", e.getMessage());
         }
     }
 
+    /**
+     * Dosya formatının desteklenip desteklenmediğini kontrol eder
+     */
+    public boolean isSupportedFormat(String filePath) {
+        String lowerPath = filePath.toLowerCase();
+        return SUPPORTED_EXTENSIONS.stream().anyMatch(lowerPath::endsWith);
+    }
+
     /**
      * BIF dosyaları için metadata bilgilerini logla
      */
-    private void logBifMetadata(ImageReader reader) {
+    private void logBifMetadata(IFormatReader reader) {
         try {
             log.info("BIF Metadata:");
             log.info("  - Pixel Type: {}", FormatTools.getPixelTypeString(reader.getPixelType()));
@@ -335,7 +654,7 @@ public class ImageService {
      * BIF dosyalarında WSI serisini bulur (3 kanallı olanı)
      * Maske serilerini atlar (1 kanallı olanları)
      */
-    private int findWSISeries(ImageReader reader) throws FormatException, IOException {
+    private int findWSISeries(IFormatReader reader) throws FormatException, IOException {
         int seriesCount = reader.getSeriesCount();
 
         for (int series = 0; series < seriesCount; series++) {
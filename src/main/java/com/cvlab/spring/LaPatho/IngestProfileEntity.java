@@ -0,0 +1,97 @@
+package com.cvlab.spring.LaPatho;
+
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import com.fasterxml.jackson.annotation.JsonRawValue;
+import jakarta.persistence.*;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.Instant;
+
+/**
+ * Bir görüntünün tile üretim (ingest) performans kaydı; her başarılı üretim bir satır ekler.
+ * Formatları, tarayıcıları ve sürümleri karşılaştırmak için kullanılır.
+ */
+@Entity
+@Table(name = "ingest_profiles")
+@AllArgsConstructor
+@NoArgsConstructor
+@Data
+public class IngestProfileEntity {
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    @JsonIgnore
+    @ManyToOne
+    @JoinColumn(name = "image_id")
+    private ImageEntity image;
+
+    @Column(name = "format")
+    private String format;
+
+    @Column(name = "pyramid_mode")
+    private String pyramidMode;
+
+    @Column(name = "tile_store")
+    private String tileStore;
+
+    @Column(name = "workers")
+    private Integer workers;
+
+    @Column(name = "resumed")
+    private Boolean resumed;
+
+    @Column(name = "total_ms")
+    private Long totalMs;
+
+    @Column(name = "open_ms")
+    private Long openMs;
+
+    @Column(name = "read_ms")
+    private Long readMs;
+
+    @Column(name = "convert_ms")
+    private Long convertMs;
+
+    @Column(name = "scale_ms")
+    private Long scaleMs;
+
+    @Column(name = "encode_ms")
+    private Long encodeMs;
+
+    @Column(name = "write_ms")
+    private Long writeMs;
+
+    @Column(name = "bytes_read")
+    private Long bytesRead;
+
+    @Column(name = "tiles_written")
+    private Long tilesWritten;
+
+    @Column(name = "tiles_blank")
+    private Long tilesBlank;
+
+    @Column(name = "tiles_skipped")
+    private Long tilesSkipped;
+
+    // Üretimin aynı anda kullandığı en yüksek tampon belleği
+    @Column(name = "peak_buffer_bytes")
+    private Long peakBufferBytes;
+
+    // Seviye -> milisaniye, JSON
+    @JsonRawValue
+    @Column(name = "level_ms", columnDefinition = "TEXT")
+    private String levelMs;
+
+    @Column(name = "created")
+    private Instant created;
+
+    @PrePersist
+    public void prePersist() {
+        if (created == null) {
+            created = Instant.now();
+        }
+    }
+}
@@ -0,0 +1,16 @@
+package com.cvlab.spring.LaPatho;
+
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.stereotype.Repository;
+
+import java.util.List;
+import java.util.Optional;
+
+@Repository
+public interface IngestProfileRepository extends JpaRepository<IngestProfileEntity, Long> {
+    Optional<IngestProfileEntity> findFirstByImageIdOrderByCreatedDesc(Long imageId);
+
+    List<IngestProfileEntity> findByImageIdOrderByCreatedDesc(Long imageId);
+
+    void deleteByImageId(Long imageId);
+}
@@ -0,0 +1,132 @@
+package com.cvlab.spring.LaPatho;
+
+import lombok.Getter;
+import lombok.Setter;
+
+import java.awt.image.BufferedImage;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Bir piramit üretiminin performans ölçümleri. Aşama süreleri tüm thread'lerde harcanan
+ * sürelerin toplamıdır (paralel üretimde toplam süreyi aşabilir); seviye süreleri bir seviyenin
+ * tile'larını üretmek için harcanan süredir (alt seviyeler ve arka plandaki kodlama hariç).
+ *
+ * Tampon belleği JVM heap'inden değil, işin kendi ayırdığı tamponların (okuma tamponu, blok
+ * raster'ı, alan ortalaması satırları, çeyrek görüntüler, kodlama kuyruğu) boyutlarından
+ * hesaplanır; böylece çöp ve eşzamanlı diğer işler ölçüme karışmaz.
+ */
+public class IngestProfiler {
+
+    public enum Stage { OPEN, READ, CONVERT, SCALE, ENCODE, WRITE }
+
+    private final long startedAt = System.nanoTime();
+    private final LongAdder[] stageNanos = new LongAdder[Stage.values().length];
+    private final Map<Integer, LongAdder> levelNanos = new ConcurrentHashMap<>();
+    private final LongAdder bytesRead = new LongAdder();
+    private final LongAdder tilesWritten = new LongAdder();
+    private final LongAdder tilesBlank = new LongAdder();
+    private final LongAdder tilesSkipped = new LongAdder();
+    private final AtomicLong bufferBytes = new AtomicLong();
+    private final AtomicLong peakBufferBytes = new AtomicLong();
+    private volatile long finishedAt;
+
+    @Getter @Setter
+    private String pyramidMode;
+    @Getter @Setter
+    private String tileStore;
+    @Getter @Setter
+    private int workers;
+    /** Üretim bir checkpoint'ten devam ettiyse */
+    @Getter @Setter
+    private boolean resumed;
+
+    public IngestProfiler() {
+        for (int i = 0; i < stageNanos.length; i++) {
+            stageNanos[i] = new LongAdder();
+        }
+    }
+
+    public void add(Stage stage, long nanos) {
+        stageNanos[stage.ordinal()].add(nanos);
+    }
+
+    public void level(int level, long nanos) {
+        levelNanos.computeIfAbsent(level, l -> new LongAdder()).add(nanos);
+    }
+
+    public void bytesRead(long bytes) {
+        bytesRead.add(bytes);
+    }
+
+    public void tileWritten() {
+        tilesWritten.increment();
+    }
+
+    public void tileBlank() {
+        tilesBlank.increment();
+    }
+
+    /** Doku dışında kaldığı için hiç üretilmeyen tile'lar */
+    public void tilesSkipped(long count) {
+        tilesSkipped.add(count);
+    }
+
+    /** İşin kullanmaya başladığı tampon; aynı anda kullanılan en yüksek toplam saklanır */
+    public void bufferAcquired(long bytes) {
+        long inUse = bufferBytes.addAndGet(bytes);
+        peakBufferBytes.accumulateAndGet(inUse, Math::max);
+    }
+
+    /** bufferAcquired ile sayılan tampon artık kullanılmıyor */
+    public void bufferReleased(long bytes) {
+        bufferBytes.addAndGet(-bytes);
+    }
+
+    /** Görüntünün raster tamponunun boyutu (bayt tabanlı görüntüler için) */
+    public static long bytes(BufferedImage image) {
+        return image.getRaster().getDataBuffer().getSize();
+    }
+
+    public void finish() {
+        finishedAt = System.nanoTime();
+    }
+
+    public long totalMillis() {
+        return ((finishedAt != 0 ? finishedAt : System.nanoTime()) - startedAt) / 1_000_000;
+    }
+
+    public long stageMillis(Stage stage) {
+        return stageNanos[stage.ordinal()].sum() / 1_000_000;
+    }
+
+    /** Seviye -> milisaniye, seviye sırasıyla */
+    public Map<Integer, Long> levelMillis() {
+        Map<Integer, Long> result = new TreeMap<>();
+        levelNanos.forEach((level, nanos) -> result.put(level, nanos.sum() / 1_000_000));
+        return result;
+    }
+
+    public long getBytesRead() {
+        return bytesRead.sum();
+    }
+
+    public long getTilesWritten() {
+        return tilesWritten.sum();
+    }
+
+    public long getTilesBlank() {
+        return tilesBlank.sum();
+    }
+
+    public long getTilesSkipped() {
+        return tilesSkipped.sum();
+    }
+
+    public long getPeakBufferBytes() {
+        return peakBufferBytes.get();
+    }
+}
@@ -0,0 +1,42 @@
+package com.cvlab.spring.LaPatho;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+
+import java.util.EnumSet;
+import java.util.List;
+
+/**
+ * Uygulama yeniden başladığında yarım kalmış tile üretimlerini tekrar kuyruğa koyar.
+ * PROCESSING (üretim ortasında kesilmiş) ve PENDING (hiç başlamamış) görüntüler yeniden
+ * üretilir; TileService varsa checkpoint'ten kaldığı yerden devam eder.
+ */
+@Component
+@Slf4j
+public class IngestRecovery {
+
+    @Autowired
+    private ImageRepository imageRepository;
+
+    @Autowired
+    private ImageService imageService;
+
+    @Value("${tile.resume-on-startup:true}")
+    private boolean enabled;
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void resumeInterruptedIngests() {
+        if (!enabled) {
+            return;
+        }
+        List<ImageEntity> interrupted = imageRepository.findByStatusIn(EnumSet.of(Status.PENDING, Status.PROCESSING));
+        for (ImageEntity img : interrupted) {
+            log.info("Yarım kalmış tile üretimi yeniden başlatılıyor: imageId={}, status={}", img.getId(), img.getStatus());
+            imageService.generateTilesAsync(img.getId());
+        }
+    }
+}
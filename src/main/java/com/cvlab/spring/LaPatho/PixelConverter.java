@@ -0,0 +1,263 @@
+package com.cvlab.spring.LaPatho;
+
+import loci.formats.FormatException;
+import loci.formats.FormatTools;
+import loci.formats.IFormatReader;
+
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferByte;
+import java.io.IOException;
+import java.lang.ref.SoftReference;
+
+/**
+ * Bio-Formats openBytes çıktısını doğrudan BufferedImage raster'ına yazar.
+ *
+ * Hedef her zaman TYPE_3BYTE_BGR (renkli) veya TYPE_BYTE_GRAY (tek kanal) olur; pikseller
+ * DataBuffer'a döngüde yazılır, ara int[] veya setRGB kopyası yoktur. Yaygın düzenler
+ * (8-bit interleaved, 8-bit planar, 8-bit gri) için ayrı döngüler vardır, 16-bit ve üstü
+ * her örneğin en anlamlı baytını alır. Kanalları ayrı düzlemlerde duran 3 kanallı görüntüler
+ * (floresan) kanal 0/1/2 -> R/G/B olarak okunur; başka kanal düzenleri reddedilir.
+ *
+ * Tile boyutundaki okuma tamponları thread başına tekrar kullanılır. Daha büyük tamponlar
+ * (genel görünüm, yardımcı görüntüler) thread'de tutulmaz; çağıran bölgeyi okurken bir kez
+ * alıp bloklar arasında kendisi tekrar kullanır.
+ */
+public final class PixelConverter {
+
+    /** openBytes tamponu ve küçültme öncesi blok görüntüsü, thread başına tekrar kullanılır */
+    private static final ThreadLocal<SoftReference<byte[]>> READ_BUFFER = new ThreadLocal<>();
+    private static final ThreadLocal<SoftReference<BufferedImage>> BLOCK_IMAGE = new ThreadLocal<>();
+
+    /**
+     * Thread'de tutulan en büyük tampon (bayt). 512 px'lik bir tile'ın bir üst native
+     * çözünürlükten 16-bit okunmasına yeter; blok boyutundaki (4096 px, ~48 MB) tamponlar tutulmaz.
+     */
+    static final int MAX_RETAINED_BYTES = 8 << 20;
+
+    private PixelConverter() {
+    }
+
+    /**
+     * read() ile okunan bir bölgenin bayt düzeni.
+     *
+     * @param channels        tampondaki kanal sayısı (RGB dosyalarda 3, gri görüntülerde 1)
+     * @param interleaved     RGBRGB... (true) veya RRR...GGG...BBB... (false)
+     * @param littleEndian    çok baytlı örneklerde bayt sırası
+     * @param planes          okunacak openBytes düzlemleri; kanallar ayrı düzlemdeyse R, G, B sırasıyla üç düzlem
+     */
+    public record PixelLayout(int bytesPerPixel, int channels, boolean interleaved, boolean littleEndian, int[] planes) {
+
+        /**
+         * Reader'ın seçili serisinin düzeni.
+         *
+         * @throws IllegalArgumentException kanal düzeni desteklenmiyorsa (ör. 2 ya da 3'ten fazla
+         *         ayrı kanal düzlemi); ilk düzlemi gri olarak okumak sessizce veri kaybederdi
+         */
+        public static PixelLayout of(IFormatReader reader) {
+            int bytesPerPixel = FormatTools.getBytesPerPixel(reader.getPixelType());
+            int rgbChannels = reader.getRGBChannelCount();
+            int sizeC = reader.getSizeC();
+            if (rgbChannels == sizeC && rgbChannels != 2) {
+                return new PixelLayout(bytesPerPixel, rgbChannels, reader.isInterleaved(), reader.isLittleEndian(),
+                        new int[]{0});
+            }
+            if (rgbChannels == 1 && sizeC == 3) {
+                int[] planes = new int[3];
+                for (int c = 0; c < planes.length; c++) {
+                    planes[c] = reader.getIndex(0, c, 0);
+                }
+                return new PixelLayout(bytesPerPixel, 3, false, reader.isLittleEndian(), planes);
+            }
+            throw new IllegalArgumentException(String.format(
+                    "Desteklenmeyen kanal düzeni: kanal=%d, düzlem başına kanal=%d", sizeC, rgbChannels));
+        }
+
+        public boolean isGray() {
+            return channels < 3;
+        }
+
+        public int imageType() {
+            return isGray() ? BufferedImage.TYPE_BYTE_GRAY : BufferedImage.TYPE_3BYTE_BGR;
+        }
+
+        public int bufferSize(int width, int height) {
+            return width * height * bytesPerPixel * channels;
+        }
+
+        /** Örnek içinde en anlamlı baytın konumu */
+        int highByteOffset() {
+            return littleEndian ? bytesPerPixel - 1 : 0;
+        }
+    }
+
+    public static BufferedImage createImage(int width, int height, PixelLayout layout) {
+        return new BufferedImage(width, height, layout.imageType());
+    }
+
+    /**
+     * En az size bayt uzunluğunda okuma tamponu. MAX_RETAINED_BYTES'a kadar thread'e ait tampon
+     * döner ve bir sonraki readBuffer çağrısına kadar kullanılabilir; daha büyükleri her çağrıda
+     * yeni ayrılır ve tutulmaz.
+     */
+    public static byte[] readBuffer(int size) {
+        if (size > MAX_RETAINED_BYTES) {
+            return new byte[size];
+        }
+        SoftReference<byte[]> ref = READ_BUFFER.get();
+        byte[] buffer = ref != null ? ref.get() : null;
+        if (buffer == null || buffer.length < size) {
+            buffer = new byte[size];
+            READ_BUFFER.set(new SoftReference<>(buffer));
+        }
+        return buffer;
+    }
+
+    /**
+     * En az width x height boyutunda blok görüntüsü. Dönen görüntü daha büyük olabilir; çağıran
+     * sadece sol üst width x height bölgesini kullanmalıdır. readBuffer gibi yalnızca
+     * MAX_RETAINED_BYTES'a kadar olanlar thread'de tutulur.
+     */
+    public static BufferedImage blockImage(int width, int height, PixelLayout layout) {
+        int bytesPerPixel = layout.isGray() ? 1 : 3;
+        if ((long) width * height * bytesPerPixel > MAX_RETAINED_BYTES) {
+            return createImage(width, height, layout);
+        }
+        SoftReference<BufferedImage> ref = BLOCK_IMAGE.get();
+        BufferedImage image = ref != null ? ref.get() : null;
+        if (image == null || image.getType() != layout.imageType()
+                || image.getWidth() < width || image.getHeight() < height) {
+            boolean reuse = image != null && image.getType() == layout.imageType()
+                    && (long) Math.max(width, image.getWidth()) * Math.max(height, image.getHeight()) * bytesPerPixel
+                    <= MAX_RETAINED_BYTES;
+            int w = reuse ? Math.max(width, image.getWidth()) : width;
+            int h = reuse ? Math.max(height, image.getHeight()) : height;
+            image = createImage(w, h, layout);
+            BLOCK_IMAGE.set(new SoftReference<>(image));
+        }
+        return image;
+    }
+
+    /**
+     * Bölgeyi layout düzeninde buffer'a okur. Kanallar ayrı düzlemlerdeyse düzlemler sondan başa
+     * buffer'ın başına okunup yerlerine taşınır; planar RGB için ayrı düzlem tamponu ayrılmaz.
+     */
+    public static void read(IFormatReader reader, PixelLayout layout, byte[] buffer,
+                            int x, int y, int width, int height) throws FormatException, IOException {
+        int[] planes = layout.planes();
+        if (planes.length == 1) {
+            reader.openBytes(planes[0], buffer, x, y, width, height);
+            return;
+        }
+        int planeBytes = width * height * layout.bytesPerPixel();
+        for (int c = planes.length - 1; c >= 0; c--) {
+            reader.openBytes(planes[c], buffer, x, y, width, height);
+            if (c > 0) {
+                System.arraycopy(buffer, 0, buffer, c * planeBytes, planeBytes);
+            }
+        }
+    }
+
+    /**
+     * width x height boyutundaki ham düzlemi dest görüntüsünün (destX, destY) konumuna yazar.
+     * dest, layout.imageType() türünde olmalıdır.
+     */
+    public static void convert(byte[] src, int width, int height, PixelLayout layout,
+                               BufferedImage dest, int destX, int destY) {
+        byte[] dst = ((DataBufferByte) dest.getRaster().getDataBuffer()).getData();
+        int destWidth = dest.getWidth();
+
+        if (layout.isGray()) {
+            convertGray(src, width, height, layout, dst, destWidth, destX, destY);
+        } else if (layout.bytesPerPixel() == 1 && layout.interleaved()) {
+            convertInterleaved8(src, width, height, layout.channels(), dst, destWidth, destX, destY);
+        } else if (layout.bytesPerPixel() == 1) {
+            convertPlanar8(src, width, height, dst, destWidth, destX, destY);
+        } else {
+            convertWide(src, width, height, layout, dst, destWidth, destX, destY);
+        }
+    }
+
+    private static void convertGray(byte[] src, int width, int height, PixelLayout layout,
+                                    byte[] dst, int destWidth, int destX, int destY) {
+        int bpp = layout.bytesPerPixel();
+        int pixelStride = layout.interleaved() ? layout.channels() * bpp : bpp;
+
+        if (pixelStride == 1) {
+            for (int y = 0; y < height; y++) {
+                System.arraycopy(src, y * width, dst, (destY + y) * destWidth + destX, width);
+            }
+            return;
+        }
+
+        int s = layout.highByteOffset();
+        for (int y = 0; y < height; y++) {
+            int d = (destY + y) * destWidth + destX;
+            for (int x = 0; x < width; x++) {
+                dst[d++] = src[s];
+                s += pixelStride;
+            }
+        }
+    }
+
+    private static void convertInterleaved8(byte[] src, int width, int height, int channels,
+                                            byte[] dst, int destWidth, int destX, int destY) {
+        int s = 0;
+        for (int y = 0; y < height; y++) {
+            int d = ((destY + y) * destWidth + destX) * 3;
+            for (int x = 0; x < width; x++) {
+                dst[d] = src[s + 2];
+                dst[d + 1] = src[s + 1];
+                dst[d + 2] = src[s];
+                d += 3;
+                s += channels;
+            }
+        }
+    }
+
+    private static void convertPlanar8(byte[] src, int width, int height,
+                                       byte[] dst, int destWidth, int destX, int destY) {
+        int planeSize = width * height;
+        int r = 0;
+        int g = planeSize;
+        int b = 2 * planeSize;
+        for (int y = 0; y < height; y++) {
+            int d = ((destY + y) * destWidth + destX) * 3;
+            for (int x = 0; x < width; x++) {
+                dst[d] = src[b++];
+                dst[d + 1] = src[g++];
+                dst[d + 2] = src[r++];
+                d += 3;
+            }
+        }
+    }
+
+    /**
+     * 16-bit (ve üstü) RGB: her örneğin en anlamlı baytı 8-bit değer olarak alınır.
+     */
+    private static void convertWide(byte[] src, int width, int height, PixelLayout layout,
+                                    byte[] dst, int destWidth, int destX, int destY) {
+        int bpp = layout.bytesPerPixel();
+        int hi = layout.highByteOffset();
+        int pixelStride;
+        int channelStride;
+        if (layout.interleaved()) {
+            pixelStride = layout.channels() * bpp;
+            channelStride = bpp;
+        } else {
+            pixelStride = bpp;
+            channelStride = width * height * bpp;
+        }
+
+        int s = hi;
+        for (int y = 0; y < height; y++) {
+            int d = ((destY + y) * destWidth + destX) * 3;
+            for (int x = 0; x < width; x++) {
+                dst[d] = src[s + 2 * channelStride];
+                dst[d + 1] = src[s + channelStride];
+                dst[d + 2] = src[s];
+                d += 3;
+                s += pixelStride;
+            }
+        }
+    }
+}
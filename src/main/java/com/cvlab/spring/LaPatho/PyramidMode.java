@@ -0,0 +1,10 @@
+package com.cvlab.spring.LaPatho;
+
+/**
+ * SOURCE: her seviye orijinal çözünürlükten okunur (eski davranış).
+ * CASCADE: sadece en detaylı seviye kaynaktan okunur, üst seviyeler alt seviyenin 2x2 birleşimidir.
+ * NATIVE: dosyanın kendi alt çözünürlükleriyle eşleşen seviyeler oradan okunur, diğerleri CASCADE gibi üretilir.
+ *         Yalnızca küçültme katsayısı 2'nin bir kuvvetine (%2 içinde) denk gelen çözünürlükler eşleşir;
+ *         arada kalanlar (ör. 3x) kullanılmaz, bkz. TileService.planNativeLevels.
+ */
+public enum PyramidMode { SOURCE, CASCADE, NATIVE }
@@ -0,0 +1,203 @@
+package com.cvlab.spring.LaPatho;
+
+import loci.formats.IFormatReader;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.io.Resource;
+import org.springframework.stereotype.Service;
+
+import javax.imageio.ImageIO;
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Görüntü listesi için küçük önizlemeler.
+ *
+ * Önizleme ingest başında, tile üretiminden önce ana serinin en küçük native çözünürlüğünden
+ * çıkarılır ({output-base-path}/{imageId}.thumb.jpg); böylece işlenmekte olan görüntüler de
+ * listede görünür. En küçük çözünürlük çok büyükse (tek çözünürlüklü dosyalar) önizleme
+ * piramit hazır olunca en kaba tile'dan üretilir. Okunan önizlemeler bayt sınırlı bir LRU
+ * önbellekte tutulur; liste sayfası tüm önizlemeleri toplu uç noktadan tek istekte alır.
+ */
+@Service
+@Slf4j
+public class ThumbnailService {
+
+    /** Önizlemenin uzun kenarı (piksel) */
+    @Value("${thumbnail.size:256}")
+    private int size;
+
+    @Value("${thumbnail.cache-max-bytes:67108864}")
+    private long cacheMaxBytes;
+
+    @Value("${tile.block-size:4096}")
+    private int blockSize;
+
+    @Autowired
+    private TileStore tileStore;
+
+    @Autowired
+    private TileEncoder tileEncoder;
+
+    /** En küçük native çözünürlük önizlemenin bu katından büyükse kaynaktan okunmaz */
+    private static final int MAX_SOURCE_FACTOR = 16;
+
+    /** Piramit ID'si -> önizleme JPEG'i, erişim sırasıyla; this ile korunur */
+    private final LinkedHashMap<String, byte[]> cache = new LinkedHashMap<>(256, 0.75f, true);
+    private long cacheBytes;
+    /** Piramit ID'si -> önizleme dosyası var mı; exists() için dosya sistemi yoklamasının sonucu */
+    private final Map<String, Boolean> present = new ConcurrentHashMap<>();
+
+    /**
+     * Ana serinin en küçük çözünürlüğünden önizleme üretip kaydeder. Hata tile üretimini
+     * durdurmaz. Reader'ın çözünürlüğü sonunda 0'a geri alınır.
+     *
+     * @return önizleme üretildiyse true
+     */
+    public boolean generate(IFormatReader reader, int mainSeries, String imageId) {
+        try {
+            reader.setSeries(mainSeries);
+            reader.setResolution(reader.getResolutionCount() - 1);
+            if (Math.max(reader.getSizeX(), reader.getSizeY()) > size * MAX_SOURCE_FACTOR) {
+                log.info("En küçük çözünürlük önizleme için çok büyük ({}x{}), piramitten üretilecek: imageId={}",
+                        reader.getSizeX(), reader.getSizeY(), imageId);
+                return false;
+            }
+            store(imageId, AssociatedImageService.readScaled(reader, size, blockSize));
+            log.info("Önizleme oluşturuldu: imageId={}", imageId);
+            return true;
+        } catch (Exception e) {
+            log.warn("Önizleme oluşturulamadı: imageId={}, error={}", imageId, e.getMessage());
+            return false;
+        } finally {
+            reader.setResolution(0);
+        }
+    }
+
+    /**
+     * Görüntünün önizlemesi: önbellekten, diskten ya da (eski görüntülerde) en kaba tile'dan.
+     * Hiçbiri yoksa boş.
+     */
+    public Optional<byte[]> find(ImageEntity image) {
+        String imageId = image.getId().toString();
+        String key = tileStore.resolve(imageId);
+        byte[] cached = cached(key);
+        if (cached != null) {
+            return Optional.of(cached);
+        }
+        try {
+            Path path = tileStore.thumbnailPath(imageId);
+            if (!Files.exists(path)) {
+                if (!createFromPyramid(imageId)) {
+                    return Optional.empty();
+                }
+            }
+            byte[] jpeg = Files.readAllBytes(path);
+            put(key, jpeg);
+            return Optional.of(jpeg);
+        } catch (IOException e) {
+            log.warn("Önizleme okunamadı: imageId={}, error={}", imageId, e.getMessage());
+            return Optional.empty();
+        }
+    }
+
+    /**
+     * Önizleme önbellekte ya da diskte hazır mı (üretim tetiklemez). Liste her yoklamada tüm
+     * işlenen görüntüler için sorduğundan dosya sistemine görüntü başına bir kez bakılır; sonuç
+     * önizleme kaydedilince ya da görüntü silinince güncellenir.
+     */
+    public boolean exists(String imageId) {
+        String key = tileStore.resolve(imageId);
+        return cached(key) != null || present.computeIfAbsent(key, k -> Files.exists(tileStore.thumbnailPath(imageId)));
+    }
+
+    /** Görüntü silindiğinde önizlemeyi önbellekten çıkarır */
+    public void evict(String imageId) {
+        present.remove(tileStore.resolve(imageId));
+        dropCached(imageId);
+    }
+
+    private synchronized void dropCached(String imageId) {
+        byte[] removed = cache.remove(tileStore.resolve(imageId));
+        if (removed != null) {
+            cacheBytes -= removed.length;
+        }
+    }
+
+    private boolean createFromPyramid(String imageId) throws IOException {
+        Optional<Resource> root = tileStore.find(imageId, 0, 0, 0);
+        if (root.isEmpty()) {
+            return false;
+        }
+        BufferedImage tile;
+        try (InputStream in = root.get().getInputStream()) {
+            tile = ImageIO.read(in);
+        }
+        if (tile == null) {
+            return false;
+        }
+        store(imageId, scale(tile));
+        return true;
+    }
+
+    /** En-boy oranını koruyarak uzun kenarı size'a indirir */
+    private BufferedImage scale(BufferedImage source) {
+        int type = source.getRaster().getNumBands() < 3 ? BufferedImage.TYPE_BYTE_GRAY : BufferedImage.TYPE_3BYTE_BGR;
+        if (source.getType() != type) {
+            BufferedImage converted = new BufferedImage(source.getWidth(), source.getHeight(), type);
+            Graphics2D g = converted.createGraphics();
+            g.drawImage(source, 0, 0, null);
+            g.dispose();
+            source = converted;
+        }
+        double ratio = Math.min(1.0, (double) size / Math.max(source.getWidth(), source.getHeight()));
+        if (ratio == 1.0) {
+            return source;
+        }
+        int width = Math.max(1, (int) Math.round(source.getWidth() * ratio));
+        int height = Math.max(1, (int) Math.round(source.getHeight() * ratio));
+        Downsampler.AreaAverager averager = new Downsampler.AreaAverager(
+                source.getWidth(), source.getHeight(), width, height, type == BufferedImage.TYPE_BYTE_GRAY ? 1 : 3);
+        averager.add(source, source.getWidth(), source.getHeight(), 0, 0);
+        return averager.toImage(type);
+    }
+
+    private void store(String imageId, BufferedImage image) throws IOException {
+        Path target = tileStore.thumbnailPath(imageId);
+        Files.createDirectories(target.getParent());
+        Path temp = target.resolveSibling(target.getFileName() + ".tmp");
+        Files.write(temp, tileEncoder.encode(image));
+        Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        dropCached(imageId);
+        present.put(tileStore.resolve(imageId), Boolean.TRUE);
+    }
+
+    private synchronized byte[] cached(String key) {
+        return cache.get(key);
+    }
+
+    private synchronized void put(String key, byte[] jpeg) {
+        byte[] previous = cache.put(key, jpeg);
+        cacheBytes += jpeg.length - (previous != null ? previous.length : 0);
+        Iterator<Map.Entry<String, byte[]>> it = cache.entrySet().iterator();
+        while (cacheBytes > cacheMaxBytes && it.hasNext()) {
+            Map.Entry<String, byte[]> eldest = it.next();
+            if (eldest.getKey().equals(key)) {
+                continue;
+            }
+            cacheBytes -= eldest.getValue().length;
+            it.remove();
+        }
+    }
+}
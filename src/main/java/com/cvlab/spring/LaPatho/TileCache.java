@@ -0,0 +1,192 @@
+package com.cvlab.spring.LaPatho;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.stats.CacheStats;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import jakarta.annotation.PostConstruct;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Sık istenen tile'ların bellekteki kopyaları; TileStore dosya/paket okumasının önünde durur.
+ *
+ * Aynı slayt birçok ekranda açıldığında aynı birkaç yüz tile tekrar tekrar istenir; bunlar
+ * NFS'teki tile dizinine gitmeden bellekten servis edilir. Sınır bayt cinsindendir, çıkarma
+ * Caffeine'in W-TinyLFU politikasıyla yapılır: bir kez okunup geçilen tile'lar (tarama, ingest)
+ * sık kullanılanları önbellekten atamaz. İstenirse içerik heap dışında (direct buffer) tutulur;
+ * bu durumda -XX:MaxDirectMemorySize en az tile.cache.max-bytes olmalıdır.
+ *
+ * Anahtarlar piramidin sahibine çözülmüş ID'dir; piramidi paylaşan görüntüler aynı girdileri kullanır.
+ */
+@Component
+@Slf4j
+public class TileCache {
+
+    /** Önbellek toplam boyutu (bayt); 0 önbelleği kapatır */
+    @Value("${tile.cache.max-bytes:268435456}")
+    private long maxBytes;
+
+    @Value("${tile.cache.off-heap:false}")
+    private boolean offHeap;
+
+    /** Bundan büyük tile'lar önbelleğe alınmaz */
+    @Value("${tile.cache.max-entry-bytes:1048576}")
+    private int maxEntryBytes;
+
+    @Autowired
+    private ObjectProvider<MeterRegistry> meterRegistry;
+
+    /** Girdi başına anahtar, buffer ve Caffeine düğümü için yaklaşık ek yük (bayt) */
+    private static final int ENTRY_OVERHEAD = 160;
+
+    /** Bir kez ıskalanmış tile'ların hatırlandığı en fazla girdi */
+    private static final int MAX_RECENT_MISSES = 65536;
+
+    private Cache<TileKey, ByteBuffer> cache;
+    /** Önbellekte olmayıp yakın zamanda bir kez istenen tile'lar; ikinci istekte önbelleğe alınır */
+    private Cache<TileKey, Boolean> recentMisses;
+
+    record TileKey(String pyramidId, int level, int tileX, int tileY) {}
+
+    @PostConstruct
+    void init() {
+        if (maxBytes <= 0) {
+            log.info("Tile önbelleği kapalı");
+            return;
+        }
+        cache = Caffeine.newBuilder()
+                .maximumWeight(maxBytes)
+                .weigher((TileKey key, ByteBuffer tile) -> tile.capacity() + ENTRY_OVERHEAD)
+                .recordStats()
+                .build();
+        recentMisses = Caffeine.newBuilder().maximumSize(MAX_RECENT_MISSES).build();
+        meterRegistry.ifAvailable(registry -> CaffeineCacheMetrics.monitor(registry, cache, "tiles"));
+        log.info("Tile önbelleği: {} MB, {}", maxBytes >> 20, offHeap ? "heap dışı" : "heap");
+    }
+
+    public boolean isEnabled() {
+        return cache != null;
+    }
+
+    /**
+     * Önbellekteki tile; yoksa null. Buffer istekler arasında paylaşılır: içeriği değiştirilmemeli,
+     * okurken duplicate() edilmelidir (heap buffer'lar array() ile kopyasız yazılabilsin diye salt okunur değildir).
+     */
+    public ByteBuffer get(String pyramidId, int level, int tileX, int tileY) {
+        return cache != null ? cache.getIfPresent(new TileKey(pyramidId, level, tileX, tileY)) : null;
+    }
+
+    /** Tile önbellekte mi (isabet/ıska istatistiğine sayılmaz) */
+    public boolean contains(String pyramidId, int level, int tileX, int tileY) {
+        return cache != null && cache.asMap().containsKey(new TileKey(pyramidId, level, tileX, tileY));
+    }
+
+    /** Önbellekteki tile'ın boyutu (bayt); yoksa 0. İstatistiğe sayılmaz */
+    public long sizeOf(String pyramidId, int level, int tileX, int tileY) {
+        ByteBuffer tile = cache != null ? cache.asMap().get(new TileKey(pyramidId, level, tileX, tileY)) : null;
+        return tile != null ? tile.capacity() : 0;
+    }
+
+    /**
+     * Iskalanan tile şimdi önbelleğe okunmalı mı. İlk ıskada false döner ve tile hatırlanır;
+     * çağıran tile'ı kaynaktan kopyasız servis eder. Yakın zamanda tekrar istenirse true döner.
+     * Böylece bir kez okunup geçilen tile'lar için buffer ayrılmaz.
+     */
+    public boolean shouldLoad(String pyramidId, int level, int tileX, int tileY, long size) {
+        if (!admits(size)) {
+            return false;
+        }
+        TileKey key = new TileKey(pyramidId, level, tileX, tileY);
+        if (recentMisses.asMap().remove(key) != null) {
+            return true;
+        }
+        recentMisses.put(key, Boolean.TRUE);
+        return false;
+    }
+
+    /** Bu boyuttaki bir tile önbelleğe alınır mı */
+    public boolean admits(long size) {
+        return cache != null && size <= maxEntryBytes;
+    }
+
+    /**
+     * Tile içeriğini önbelleğe kopyalar ve önbellekteki kopyayı döner. Önbellek kapalıysa
+     * ya da tile çok büyükse içerik olduğu gibi döner. Kopya her çağrıda ayrıldığı için istek
+     * yolunda önce shouldLoad ile sorulmalıdır.
+     */
+    public ByteBuffer put(String pyramidId, int level, int tileX, int tileY, ByteBuffer content) {
+        if (!admits(content.remaining())) {
+            return content;
+        }
+        ByteBuffer copy = allocate(content.remaining());
+        copy.put(content.duplicate()).flip();
+        cache.put(new TileKey(pyramidId, level, tileX, tileY), copy);
+        return copy;
+    }
+
+    /**
+     * Tile dosyasını ara kopya olmadan doğrudan önbellek buffer'ına okur ve önbelleğe alır.
+     * Çağıran shouldLoad (istek yolu) ya da admits (ön yükleme) ile kontrol etmiş olmalıdır.
+     */
+    public ByteBuffer load(String pyramidId, int level, int tileX, int tileY, FileChannel channel, int size) throws IOException {
+        ByteBuffer content = allocate(size);
+        while (content.hasRemaining()) {
+            if (channel.read(content, content.position()) < 0) {
+                throw new EOFException("Tile dosyası beklenenden kısa: " + pyramidId + "/" + level + "/" + tileX + "_" + tileY);
+            }
+        }
+        content.flip();
+        cache.put(new TileKey(pyramidId, level, tileX, tileY), content);
+        return content;
+    }
+
+    private ByteBuffer allocate(int size) {
+        return offHeap ? ByteBuffer.allocateDirect(size) : ByteBuffer.allocate(size);
+    }
+
+    /** Tile yeniden yazıldığında ya da boş olarak işaretlendiğinde */
+    public void invalidate(String pyramidId, int level, int tileX, int tileY) {
+        if (cache != null) {
+            cache.invalidate(new TileKey(pyramidId, level, tileX, tileY));
+        }
+    }
+
+    /** Piramit silindiğinde tüm tile'larını çıkarır */
+    public void invalidateAll(String pyramidId) {
+        if (cache != null) {
+            cache.asMap().keySet().removeIf(key -> key.pyramidId().equals(pyramidId));
+        }
+    }
+
+    /** İsabet/ıska/çıkarma sayıları ve doluluk */
+    public Map<String, Object> stats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("enabled", cache != null);
+        if (cache == null) {
+            return stats;
+        }
+        CacheStats s = cache.stats();
+        stats.put("offHeap", offHeap);
+        stats.put("maxBytes", maxBytes);
+        stats.put("weightedBytes", cache.policy().eviction().map(e -> e.weightedSize().orElse(0L)).orElse(0L));
+        stats.put("entries", cache.estimatedSize());
+        stats.put("hits", s.hitCount());
+        stats.put("misses", s.missCount());
+        stats.put("hitRate", s.hitRate());
+        stats.put("evictions", s.evictionCount());
+        stats.put("evictedBytes", s.evictionWeight());
+        return stats;
+    }
+}
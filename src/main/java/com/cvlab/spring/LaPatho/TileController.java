@@ -1,45 +1,413 @@
 package com.cvlab.spring.LaPatho;
 
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.catalina.connector.ClientAbortException;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.core.io.Resource;
-import org.springframework.core.io.UrlResource;
+import org.springframework.http.CacheControl;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
 import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.context.request.WebRequest;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
-import java.net.MalformedURLException;
-import java.nio.file.Files;
-import java.nio.file.Path;
-import java.nio.file.Paths;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 
 @RestController
 @RequestMapping("/api/tiles")
+@Slf4j
 public class TileController {
 
-    @Value("${tile.output-base-path}")
-    String baseOutputPath;
+    @Value("${tile.on-demand.enabled:true}")
+    boolean onDemandEnabled;
 
+    // Tekil istek, istek anında üretilen tile'ı en fazla bu kadar bekler; aşılırsa 503 döner
+    // ve üretim arka planda sürer (istemcinin yeniden denemesi depodan okur)
+    @Value("${tile.on-demand.timeout-ms:30000}")
+    private long onDemandTimeoutMs;
+
+    // Nesil belirteçli (?v=) hazır tile'ların tarayıcı/nginx önbelleğinde kalma süresi
+    @Value("${tile.http.max-age-seconds:31536000}")
+    private long maxAgeSeconds;
+
+    // Toplu istekte en fazla tile sayısı
+    @Value("${tile.batch.max-tiles:64}")
+    private int batchMaxTiles;
+
+    // Toplu yanıt, istek anında üretilen tile'ları en fazla bu kadar bekler; kalanlar FRAME_PENDING olur
+    @Value("${tile.batch.render-timeout-ms:10000}")
+    private long batchRenderTimeoutMs;
+
+    /** Toplu tile yanıtının içerik türü; çerçeve biçimi için bkz. getTiles */
+    static final String TILE_FRAMES_CONTENT_TYPE = "application/vnd.lapatho.tile-frames";
+    static final int FRAME_MISSING = -1;
+    static final int FRAME_ERROR = -2;
+    static final int FRAME_PENDING = -3;
+    /** Toplu yanıttaki çerçevelerin ait olduğu değişmez piramit nesli */
+    static final String TILE_GENERATION_HEADER = "X-Tile-Generation";
+
+    @Autowired
+    private TileService tileService;
+
+    @Autowired
+    private ImageService imageService;
+
+    @Autowired
+    private ViewportTracker viewportTracker;
+
+    @Autowired
+    private TileStore tileStore;
+
+    @Autowired
+    private TileCache tileCache;
+
+    @Autowired
+    private TileResponseWriter tileWriter;
+
+    @Autowired
+    private TilePrefetcher prefetcher;
+
+    @Autowired
+    private TileWarmup warmup;
+
+    /**
+     * Tile'ı döner. URL'deki v, metadata'daki tileGeneration ile aynıysa ve görüntü hazırsa yanıt
+     * immutable olarak önbelleğe alınabilir; aksi halde her kullanımda ETag ile doğrulanır.
+     * ETag nesil belirteci ve koordinattan türetildiği için If-None-Match eşleşmesinde tile açılmaz.
+     * Gövde TileResponseWriter ile sendfile/transferTo üzerinden kopyasız yazılır.
+     */
     @GetMapping("/{imageId}/{level}/{tileX}_{tileY}.jpg")
     public ResponseEntity<Resource> getTile(
             @PathVariable String imageId,
             @PathVariable int level,
             @PathVariable int tileX,
-            @PathVariable int tileY) {
+            @PathVariable int tileY,
+            @RequestParam(value = "v", required = false) String version,
+            WebRequest webRequest,
+            HttpServletRequest request,
+            HttpServletResponse response) {
 
-        String filename = String.format("tile_%d_%d.jpg", tileX, tileY);
-        Path tilePath = Paths.get(baseOutputPath, imageId, String.valueOf(level), filename);
+        viewportTracker.record(imageId, level, tileX, tileY);
+        prefetcher.record(TilePrefetcher.sessionOf(request), imageId, level, tileX, tileY);
+        warmup.record(imageId, level, tileX, tileY);
+        prefetcher.requestStarted();
+        try {
+            return serveTile(imageId, level, tileX, tileY, version, webRequest, request, response);
+        } finally {
+            prefetcher.requestFinished();
+        }
+    }
 
-        if (!Files.exists(tilePath)) {
-            return ResponseEntity.notFound().build();
+    private ResponseEntity<Resource> serveTile(String imageId, int level, int tileX, int tileY, String version,
+                                               WebRequest webRequest, HttpServletRequest request,
+                                               HttpServletResponse response) {
+        Optional<String> generation = imageService.findTileGeneration(imageId);
+        CacheControl cacheControl = CacheControl.noCache();
+        String etag = null;
+        if (generation.isPresent()) {
+            etag = "\"" + generation.get() + "-" + level + "-" + tileX + "_" + tileY + "\"";
+            if (generation.get().equals(version) && imageService.isImmutableGeneration(version)) {
+                cacheControl = CacheControl.maxAge(maxAgeSeconds, TimeUnit.SECONDS).cachePublic().immutable();
+            }
+            if (webRequest.checkNotModified(etag)) {
+                response.setHeader(HttpHeaders.CACHE_CONTROL, cacheControl.getHeaderValue());
+                return null;
+            }
         }
 
+        Optional<Resource> tile;
         try {
-            Resource file = new UrlResource(tilePath.toUri());
-            return ResponseEntity.ok()
-                    .contentType(MediaType.IMAGE_JPEG)
-                    .body(file);
-        } catch (MalformedURLException e) {
+            tile = tileStore.find(imageId, level, tileX, tileY);
+        } catch (IOException e) {
+            log.error("Tile okunamadı: imageId={}, level={}, tileX={}, tileY={}", imageId, level, tileX, tileY, e);
             return ResponseEntity.status(500).build();
         }
+
+        if (tile.isEmpty()) {
+            // Piramit henüz bu tile'a ulaşmadıysa (veya hiç üretilmeyecekse) kaynaktan üret
+            Optional<ImageEntity> image = onDemandEnabled ? findImage(imageId) : Optional.empty();
+            if (image.isEmpty() || image.get().getStatus() == Status.ERROR) {
+                return ResponseEntity.notFound().build();
+            }
+            try {
+                tileService.renderTileOnDemand(image.get().getPath(), imageId, level, tileX, tileY)
+                        .get(onDemandTimeoutMs, TimeUnit.MILLISECONDS);
+                tile = tileStore.find(imageId, level, tileX, tileY);
+                if (tile.isEmpty()) {
+                    log.error("Üretilen tile depoda bulunamadı: imageId={}, level={}, tileX={}, tileY={}",
+                            imageId, level, tileX, tileY);
+                    return ResponseEntity.status(500).build();
+                }
+            } catch (TimeoutException e) {
+                log.warn("İstek anında tile üretimi zaman aşımına uğradı: imageId={}, level={}, tileX={}, tileY={}",
+                        imageId, level, tileX, tileY);
+                return serviceUnavailable();
+            } catch (ExecutionException e) {
+                if (e.getCause() instanceof IllegalArgumentException) {
+                    return ResponseEntity.notFound().build();
+                }
+                if (e.getCause() instanceof TimeoutException) {
+                    // Reader havuzu dolu
+                    return serviceUnavailable();
+                }
+                log.error("İstek anında tile üretilemedi: imageId={}, level={}, tileX={}, tileY={}",
+                        imageId, level, tileX, tileY, e.getCause());
+                return ResponseEntity.status(500).build();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return serviceUnavailable();
+            } catch (Exception e) {
+                log.error("İstek anında tile üretilemedi: imageId={}, level={}, tileX={}, tileY={}",
+                        imageId, level, tileX, tileY, e);
+                return ResponseEntity.status(500).build();
+            }
+        }
+
+        response.setHeader(HttpHeaders.CACHE_CONTROL, cacheControl.getHeaderValue());
+        if (etag != null) {
+            response.setHeader(HttpHeaders.ETAG, etag);
+        }
+        try {
+            tileWriter.write(tile.get(), request, response);
+        } catch (ClientAbortException e) {
+            // İstemci bağlantıyı kapatmış (hızlı kaydırma)
+            log.debug("Tile yazılamadı, bağlantı kapandı: imageId={}, level={}, tileX={}, tileY={}",
+                    imageId, level, tileX, tileY);
+        } catch (IOException e) {
+            log.error("Tile yazılamadı: imageId={}, level={}, tileX={}, tileY={}", imageId, level, tileX, tileY, e);
+        }
+        return null;
+    }
+
+    /**
+     * Bir görüntünün birden çok tile'ını tek yanıtta döner; gövde [[level, x, y], ...].
+     *
+     * Yanıt çerçevelerden oluşur, her çerçeve big-endian int32 level, x, y, uzunluk ve ardından
+     * uzunluk kadar JPEG baytıdır. Uzunluk -1 ise tile yok (tekil uçtaki 404), -2 ise okunamadı,
+     * -3 ise tile tile.batch.render-timeout-ms içinde üretilemedi; üretim arka planda sürer ve
+     * istemci tile'ı kısa süre sonra yeniden ister. Depodaki tile'lar hemen yazılır, istek anında
+     * üretilenler hazır oldukça aynı yanıtta gönderilir; çerçevelerin sırası istek sırası değildir.
+     * Her istenen tile için tam bir çerçeve gönderilir. En fazla tile aşılırsa 400 yanıtının
+     * maxTiles alanı sınırı bildirir.
+     *
+     * Yanıt servlet thread'inde değil, MVC async executor'ünde (bkz. AsyncConfig) yazılır;
+     * üretim beklenirken Tomcat'in istek thread'leri tutulmaz.
+     *
+     * Yanıt POST olduğu için HTTP önbelleğine girmez. İstemcinin gönderdiği v hazır bir
+     * piramidin güncel nesli ise X-Tile-Generation başlığında geri döner; istemci çerçeveleri
+     * ancak bu durumda, tekil GET'teki immutable yanıtlar gibi kendi belleğinde tutabilir.
+     */
+    @PostMapping("/{imageId}/batch")
+    public ResponseEntity<?> getTiles(@PathVariable String imageId,
+                                      @RequestBody List<int[]> tiles,
+                                      @RequestParam(value = "v", required = false) String version,
+                                      HttpServletRequest request) {
+        if (tiles.isEmpty() || tiles.size() > batchMaxTiles) {
+            return ResponseEntity.badRequest().body(Map.of(
+                    "error", "1-" + batchMaxTiles + " tile istenebilir", "maxTiles", batchMaxTiles));
+        }
+        for (int[] tile : tiles) {
+            if (tile == null || tile.length != 3) {
+                return ResponseEntity.badRequest().body(Map.of("error", "Her tile [level, x, y] olmalı"));
+            }
+        }
+        String session = TilePrefetcher.sessionOf(request);
+        for (int[] tile : tiles) {
+            viewportTracker.record(imageId, tile[0], tile[1], tile[2]);
+            prefetcher.record(session, imageId, tile[0], tile[1], tile[2]);
+            warmup.record(imageId, tile[0], tile[1], tile[2]);
+        }
+
+        ResponseEntity.BodyBuilder response = ResponseEntity.ok()
+                .contentType(MediaType.parseMediaType(TILE_FRAMES_CONTENT_TYPE))
+                .cacheControl(CacheControl.noStore());
+        Optional<String> generation = imageService.findTileGeneration(imageId);
+        if (version != null && generation.isPresent() && generation.get().equals(version)
+                && imageService.isImmutableGeneration(version)) {
+            response.header(TILE_GENERATION_HEADER, version);
+        }
+        StreamingResponseBody body = out -> {
+            prefetcher.requestStarted();
+            try {
+                writeTiles(imageId, tiles, out);
+            } finally {
+                prefetcher.requestFinished();
+            }
+        };
+        return response.body(body);
+    }
+
+    private void writeTiles(String imageId, List<int[]> tiles, OutputStream out) {
+        try {
+            List<int[]> missing = new ArrayList<>();
+            for (int[] tile : tiles) {
+                Optional<Resource> stored = findQuietly(imageId, tile);
+                if (stored == null) {
+                    writeFrame(out, tile, null, FRAME_ERROR);
+                } else if (stored.isPresent()) {
+                    writeFrame(out, tile, stored.get(), 0);
+                } else {
+                    missing.add(tile);
+                }
+            }
+            if (!missing.isEmpty()) {
+                // Hazır tile'lar üretim beklenmeden istemciye ulaşır
+                out.flush();
+                renderMissing(imageId, missing, out);
+            }
+        } catch (ClientAbortException e) {
+            log.debug("Toplu tile yanıtı yazılamadı, bağlantı kapandı: imageId={}", imageId);
+        } catch (IOException e) {
+            log.error("Toplu tile yanıtı yazılamadı: imageId={}", imageId, e);
+        }
+    }
+
+    /** Biten bir istek anında üretim; error null ise tile depoya yazıldı */
+    private record RenderedTile(int[] tile, Throwable error) {}
+
+    /**
+     * Eksik tile'ların istek anında üretimini başlatır ve her tile'ın çerçevesini üretimi
+     * bittikçe yazar. tile.batch.render-timeout-ms dolduğunda hâlâ üretilen tile'lar için
+     * FRAME_PENDING yazılır; üretimleri arka planda tamamlanır.
+     */
+    private void renderMissing(String imageId, List<int[]> missing, OutputStream out) throws IOException {
+        Optional<ImageEntity> image = onDemandEnabled ? findImage(imageId) : Optional.empty();
+        if (image.isEmpty() || image.get().getStatus() == Status.ERROR) {
+            for (int[] tile : missing) {
+                writeFrame(out, tile, null, FRAME_MISSING);
+            }
+            return;
+        }
+
+        TilePyramid pyramid = new TilePyramid(image.get().getWidth(), image.get().getHeight(), image.get().getTileSize());
+        BlockingQueue<RenderedTile> rendered = new LinkedBlockingQueue<>();
+        List<int[]> rendering = new ArrayList<>();
+        for (int[] tile : missing) {
+            if (!pyramid.contains(tile[0], tile[1], tile[2])) {
+                writeFrame(out, tile, null, FRAME_MISSING);
+                continue;
+            }
+            rendering.add(tile);
+            tileService.renderTileOnDemand(image.get().getPath(), imageId, tile[0], tile[1], tile[2])
+                    .whenComplete((done, error) -> {
+                        Throwable cause = error instanceof CompletionException && error.getCause() != null
+                                ? error.getCause() : error;
+                        if (cause != null && !(cause instanceof IllegalArgumentException)
+                                && !(cause instanceof TimeoutException)) {
+                            log.error("İstek anında tile üretilemedi: imageId={}, level={}, tileX={}, tileY={}",
+                                    imageId, tile[0], tile[1], tile[2], cause);
+                        }
+                        rendered.add(new RenderedTile(tile, cause));
+                    });
+        }
+
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(batchRenderTimeoutMs);
+        try {
+            while (!rendering.isEmpty()) {
+                RenderedTile next = rendered.poll(deadline - System.nanoTime(), TimeUnit.NANOSECONDS);
+                if (next == null) {
+                    break;
+                }
+                rendering.remove(next.tile());
+                writeRendered(imageId, next, out);
+                out.flush();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        for (int[] tile : rendering) {
+            writeFrame(out, tile, null, FRAME_PENDING);
+        }
+    }
+
+    private void writeRendered(String imageId, RenderedTile rendered, OutputStream out) throws IOException {
+        int[] tile = rendered.tile();
+        if (rendered.error() instanceof IllegalArgumentException) {
+            writeFrame(out, tile, null, FRAME_MISSING);
+            return;
+        }
+        if (rendered.error() instanceof TimeoutException) {
+            // Reader havuzu dolu; istemci kısa süre sonra yeniden dener
+            writeFrame(out, tile, null, FRAME_PENDING);
+            return;
+        }
+        Optional<Resource> stored = rendered.error() == null ? findQuietly(imageId, tile) : null;
+        if (stored != null && stored.isPresent()) {
+            writeFrame(out, tile, stored.get(), 0);
+            return;
+        }
+        if (stored != null) {
+            log.error("Üretilen tile depoda bulunamadı: imageId={}, level={}, tileX={}, tileY={}",
+                    imageId, tile[0], tile[1], tile[2]);
+        }
+        writeFrame(out, tile, null, FRAME_ERROR);
+    }
+
+    /** Depo okuma hatasında null */
+    private Optional<Resource> findQuietly(String imageId, int[] tile) {
+        try {
+            return tileStore.find(imageId, tile[0], tile[1], tile[2]);
+        } catch (IOException e) {
+            log.error("Tile okunamadı: imageId={}, level={}, tileX={}, tileY={}", imageId, tile[0], tile[1], tile[2], e);
+            return null;
+        }
+    }
+
+    /** Çerçeve: level, x, y, uzunluk (ya da FRAME_MISSING/FRAME_ERROR/FRAME_PENDING) ve JPEG */
+    private void writeFrame(OutputStream out, int[] tile, Resource content, int status) throws IOException {
+        int length = content != null ? (int) content.contentLength() : status;
+        ByteBuffer header = ByteBuffer.allocate(16).putInt(tile[0]).putInt(tile[1]).putInt(tile[2]).putInt(length);
+        out.write(header.array());
+        if (content != null) {
+            tileWriter.writeContent(content, out);
+        }
+    }
+
+    // GET tile önbelleği isabet/ıska/çıkarma sayıları (ayrıca /actuator/metrics altında cache.* olarak)
+    @GetMapping("/cache/stats")
+    public ResponseEntity<Map<String, Object>> cacheStats() {
+        return ResponseEntity.ok(tileCache.stats());
+    }
+
+    // GET ön yükleme tahmin/yükleme/iptal sayıları
+    @GetMapping("/prefetch/stats")
+    public ResponseEntity<Map<String, Object>> prefetchStats() {
+        return ResponseEntity.ok(prefetcher.stats());
+    }
+
+    // GET önbellek ısıtma sayıları (hazır görüntüler ve açılıştaki yeniden yükleme)
+    @GetMapping("/warmup/stats")
+    public ResponseEntity<Map<String, Object>> warmupStats() {
+        return ResponseEntity.ok(warmup.stats());
+    }
+
+    private Optional<ImageEntity> findImage(String imageId) {
+        try {
+            return imageService.findById(Long.parseLong(imageId));
+        } catch (NumberFormatException e) {
+            return Optional.empty();
+        }
+    }
+
+    /** Geçici yoğunluk: istemci kısa süre sonra yeniden denemeli */
+    private static <T> ResponseEntity<T> serviceUnavailable() {
+        return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE).header(HttpHeaders.RETRY_AFTER, "1").build();
     }
 }
@@ -0,0 +1,268 @@
+package com.cvlab.spring.LaPatho;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import javax.imageio.IIOImage;
+import javax.imageio.ImageIO;
+import javax.imageio.ImageWriteParam;
+import javax.imageio.ImageWriter;
+import javax.imageio.plugins.jpeg.JPEGImageWriteParam;
+import javax.imageio.stream.ImageOutputStream;
+import javax.imageio.stream.MemoryCacheImageOutputStream;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.RejectedExecutionHandler;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Tile JPEG kodlama ve yazma aşamaları.
+ *
+ * Piramit üretiminde okuma/çevirme/küçültme worker'larda kalır, kodlama ve diske yazma
+ * ayrı thread havuzlarında sınırlı kuyruklarla çalışır; kuyruk dolunca üretici bekler
+ * (backpressure), böylece bellek sınırlı kalırken I/O ile CPU işi örtüşür. Her thread
+ * kendi ImageWriter'ını ve yazma parametrelerini tekrar kullanır.
+ */
+@Component
+@Slf4j
+public class TileEncoder {
+
+    @Value("${tile.jpeg.quality:0.85}")
+    private float quality;
+
+    @Value("${tile.jpeg.optimize-huffman:true}")
+    private boolean optimizeHuffman;
+
+    @Value("${tile.jpeg.progressive:false}")
+    private boolean progressive;
+
+    // 0: işlemci sayısının yarısı (en az 1)
+    @Value("${tile.encoder.threads:0}")
+    private int encoderThreads;
+
+    @Value("${tile.encoder.io-threads:2}")
+    private int ioThreads;
+
+    /** Kodlama ve yazma kuyruklarının her birindeki en fazla tile sayısı */
+    @Value("${tile.encoder.queue-capacity:64}")
+    private int queueCapacity;
+
+    private final ThreadLocal<JpegWriter> writers = ThreadLocal.withInitial(this::newWriter);
+
+    private ThreadPoolExecutor encodeExecutor;
+    private ThreadPoolExecutor writeExecutor;
+
+    @PostConstruct
+    void start() {
+        int threads = encoderThreads > 0
+                ? encoderThreads
+                : Math.max(1, Runtime.getRuntime().availableProcessors() / 2);
+        encodeExecutor = boundedExecutor("tile-encode-", threads);
+        writeExecutor = boundedExecutor("tile-write-", ioThreads);
+        log.info("Tile kodlayıcı başlatıldı: {} kodlama, {} yazma thread'i, kalite={}, progressive={}",
+                threads, ioThreads, quality, progressive);
+    }
+
+    @PreDestroy
+    void stop() {
+        encodeExecutor.shutdownNow();
+        writeExecutor.shutdownNow();
+    }
+
+    /**
+     * Görüntüyü çağıran thread'de, thread'e ait writer ile JPEG olarak kodlar.
+     */
+    public byte[] encode(BufferedImage image) throws IOException {
+        return writers.get().encode(image);
+    }
+
+    /**
+     * Arka plan üretimi için yeni bir kodlama grubu. Gruba verilen tile'lar kodlama ve
+     * yazma aşamalarından geçer; await() hepsi diske yazılana kadar bekler. Kuyrukta bekleyen
+     * görüntüler ve kodlanmış tile'lar profiler'a tampon olarak sayılır.
+     */
+    public Batch newBatch(IngestProfiler profiler) {
+        return new Batch(profiler);
+    }
+
+    /** Kodlanmış tile'ı depoya yazan aşama */
+    @FunctionalInterface
+    public interface TileSink {
+        void write(byte[] jpeg) throws IOException;
+    }
+
+    public final class Batch {
+        private final IngestProfiler profiler;
+        private final AtomicInteger pending = new AtomicInteger();
+        private final AtomicReference<Throwable> failure = new AtomicReference<>();
+        private final LongAdder encodeNanos = new LongAdder();
+        private final LongAdder writeNanos = new LongAdder();
+
+        private Batch(IngestProfiler profiler) {
+            this.profiler = profiler;
+        }
+
+        /**
+         * Tile'ı kodlama kuyruğuna koyar; kuyruk doluysa yer açılana kadar bekler.
+         * Görüntü kuyruğa verildikten sonra değiştirilmemelidir.
+         */
+        public void submit(BufferedImage image, TileSink sink) throws IOException {
+            rethrowFailure();
+            pending.incrementAndGet();
+            long imageBytes = IngestProfiler.bytes(image);
+            profiler.bufferAcquired(imageBytes);
+            try {
+                encodeExecutor.execute(() -> encodeStage(image, imageBytes, sink));
+            } catch (RejectedExecutionException e) {
+                profiler.bufferReleased(imageBytes);
+                finish(e);
+                rethrowFailure();
+            }
+        }
+
+        /**
+         * Gruptaki tüm tile'lar yazılana kadar bekler; herhangi biri başarısız olduysa ilk hatayı fırlatır.
+         */
+        public void await() throws IOException {
+            synchronized (this) {
+                while (pending.get() > 0) {
+                    try {
+                        wait();
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                        throw new IOException("Tile yazımı beklenirken kesildi", e);
+                    }
+                }
+            }
+            rethrowFailure();
+        }
+
+        /** Kodlama aşamasında harcanan toplam süre (tüm thread'ler) */
+        public long encodeNanos() {
+            return encodeNanos.sum();
+        }
+
+        /** Yazma aşamasında harcanan toplam süre (tüm thread'ler) */
+        public long writeNanos() {
+            return writeNanos.sum();
+        }
+
+        private void encodeStage(BufferedImage image, long imageBytes, TileSink sink) {
+            byte[] jpeg;
+            long start = System.nanoTime();
+            try {
+                jpeg = encode(image);
+                encodeNanos.add(System.nanoTime() - start);
+            } catch (Throwable t) {
+                finish(t);
+                return;
+            } finally {
+                profiler.bufferReleased(imageBytes);
+            }
+            profiler.bufferAcquired(jpeg.length);
+            try {
+                writeExecutor.execute(() -> writeStage(jpeg, sink));
+            } catch (RejectedExecutionException e) {
+                profiler.bufferReleased(jpeg.length);
+                finish(e);
+            }
+        }
+
+        private void writeStage(byte[] jpeg, TileSink sink) {
+            long start = System.nanoTime();
+            try {
+                sink.write(jpeg);
+                writeNanos.add(System.nanoTime() - start);
+                finish(null);
+            } catch (Throwable t) {
+                finish(t);
+            } finally {
+                profiler.bufferReleased(jpeg.length);
+            }
+        }
+
+        private void finish(Throwable error) {
+            if (error != null && failure.compareAndSet(null, error)) {
+                log.error("Tile kodlama/yazma hatası: {}", error.getMessage(), error);
+            }
+            if (pending.decrementAndGet() == 0) {
+                synchronized (this) {
+                    notifyAll();
+                }
+            }
+        }
+
+        private void rethrowFailure() throws IOException {
+            Throwable error = failure.get();
+            if (error instanceof IOException io) {
+                throw io;
+            }
+            if (error != null) {
+                throw new IOException("Tile kodlama/yazma hatası: " + error.getMessage(), error);
+            }
+        }
+    }
+
+    /**
+     * Sabit boyutlu havuz; kuyruk doluyken execute() çağıran thread'i yer açılana kadar bekletir.
+     */
+    private ThreadPoolExecutor boundedExecutor(String prefix, int threads) {
+        AtomicInteger threadIndex = new AtomicInteger();
+        RejectedExecutionHandler blockWhenFull = (task, executor) -> {
+            if (executor.isShutdown()) {
+                throw new RejectedExecutionException("Tile kodlayıcı kapatıldı");
+            }
+            try {
+                executor.getQueue().put(task);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new RejectedExecutionException("Kuyruk beklenirken kesildi", e);
+            }
+        };
+        return new ThreadPoolExecutor(threads, threads, 60, TimeUnit.SECONDS,
+                new ArrayBlockingQueue<>(Math.max(1, queueCapacity)),
+                r -> {
+                    Thread t = new Thread(r, prefix + threadIndex.incrementAndGet());
+                    t.setDaemon(true);
+                    return t;
+                },
+                blockWhenFull);
+    }
+
+    private JpegWriter newWriter() {
+        ImageWriter writer = ImageIO.getImageWritersByFormatName("jpeg").next();
+        JPEGImageWriteParam param = (JPEGImageWriteParam) writer.getDefaultWriteParam();
+        param.setCompressionMode(ImageWriteParam.MODE_EXPLICIT);
+        param.setCompressionQuality(quality);
+        param.setOptimizeHuffmanTables(optimizeHuffman);
+        if (progressive) {
+            param.setProgressiveMode(ImageWriteParam.MODE_DEFAULT);
+        }
+        return new JpegWriter(writer, param, new ByteArrayOutputStream(64 * 1024));
+    }
+
+    /** Bir thread'e ait writer, parametreler ve çıktı tamponu */
+    private record JpegWriter(ImageWriter writer, ImageWriteParam param, ByteArrayOutputStream buffer) {
+
+        byte[] encode(BufferedImage image) throws IOException {
+            buffer.reset();
+            try (ImageOutputStream out = new MemoryCacheImageOutputStream(buffer)) {
+                writer.setOutput(out);
+                writer.write(null, new IIOImage(image, null, null), param);
+            } finally {
+                writer.setOutput(null);
+            }
+            return buffer.toByteArray();
+        }
+    }
+}
@@ -0,0 +1,305 @@
+package com.cvlab.spring.LaPatho;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Bir görüntünün tüm piramidini tek dosyada tutan, sadece sona eklenen tile paketi.
+ *
+ * Dosya düzeni (big-endian):
+ * <pre>
+ *   int magic, int version, int width, int height, int tileSize, int reserved
+ *   long index[tileCount]     // seviye sırasıyla, seviye içinde satır satır
+ *   tile verileri ...          // sona eklenir
+ * </pre>
+ * Her index girdisi (offset &lt;&lt; 24 | length) şeklinde tek bir long'dur, 0 = tile yok.
+ * Piramit geometrisi sabit olduğundan index boyutu baştan bellidir ve her tile'ın yeri
+ * hesaplanabilir. Okuma tarafı veriyi SEGMENT_SIZE'lık parçalar halinde bellek eşlemeli
+ * (mmap) açar; yazıcı bir tile'ı asla segment sınırına bölmez, böylece her tile tek bir
+ * eşlemenin dilimi olarak döndürülebilir. Her segment bir kez ve tam boyuyla eşlenir; bunun
+ * için dosya, veri içeren son segmentin sonuna kadar seyrek olarak büyütülür. Bu yüzden dosya
+ * boyutu verinin sonunu göstermez; açılışta veri sonu index'ten bulunur.
+ *
+ * Aynı tile tekrar yazılırsa yeni kopya sona eklenir ve index güncellenir. Birden fazla
+ * index girdisi aynı veriyi gösterebilir (içerik tekilleştirme, bkz. link()).
+ */
+public class TilePack implements Closeable {
+
+    private static final int MAGIC = 0x4C505450; // "LPTP"
+    private static final int VERSION = 1;
+    private static final int HEADER_SIZE = 24;
+
+    /** Bellek eşleme birimi; bir tile iki segmente bölünmez */
+    static final long SEGMENT_SIZE = 1L << 30;
+
+    private static final int LENGTH_BITS = 24;
+    private static final long LENGTH_MASK = (1L << LENGTH_BITS) - 1;
+
+    private final Path file;
+    private final FileChannel channel;
+    private final TilePyramid pyramid;
+    /** Seviyenin ilk tile'ının index sırası */
+    private final long[] levelBase;
+    private final AtomicLongArray index;
+
+    /** Sıradaki tile'ın yazılacağı konum; this ile korunur */
+    private long end;
+    /** Dosyanın ayrılmış boyutu, segment sınırında; this ile korunur */
+    private long allocated;
+    private volatile MappedByteBuffer[] segments = new MappedByteBuffer[0];
+
+    private TilePack(Path file, FileChannel channel, TilePyramid pyramid) {
+        this.file = file;
+        this.channel = channel;
+        this.pyramid = pyramid;
+        this.levelBase = new long[pyramid.getMaxLevel() + 2];
+        for (int level = 0; level <= pyramid.getMaxLevel(); level++) {
+            levelBase[level + 1] = levelBase[level] + pyramid.tileCount(level);
+        }
+        long tileCount = levelBase[pyramid.getMaxLevel() + 1];
+        if (tileCount > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("Tile paketi için çok fazla tile: " + tileCount);
+        }
+        this.index = new AtomicLongArray((int) tileCount);
+    }
+
+    /**
+     * Var olan paketi açar ya da verilen geometriyle boş bir paket oluşturur.
+     *
+     * @throws IOException dosya farklı bir piramit geometrisiyle oluşturulmuşsa
+     */
+    public static TilePack openOrCreate(Path file, TilePyramid pyramid) throws IOException {
+        FileChannel channel = FileChannel.open(file,
+                StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        try {
+            if (channel.size() == 0) {
+                TilePack pack = new TilePack(file, channel, pyramid);
+                pack.writeHeader();
+                return pack;
+            }
+            TilePack pack = load(file, channel);
+            TilePyramid existing = pack.pyramid;
+            if (existing.getWidth() != pyramid.getWidth() || existing.getHeight() != pyramid.getHeight()
+                    || existing.getTileSize() != pyramid.getTileSize()) {
+                throw new IOException(String.format("Tile paketi geometrisi uyuşmuyor: %s (%dx%d/%d), beklenen %dx%d/%d",
+                        file, existing.getWidth(), existing.getHeight(), existing.getTileSize(),
+                        pyramid.getWidth(), pyramid.getHeight(), pyramid.getTileSize()));
+            }
+            return pack;
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Var olan bir paketi geometrisini başlıktan okuyarak açar.
+     */
+    public static TilePack open(Path file) throws IOException {
+        FileChannel channel = FileChannel.open(file, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        try {
+            return load(file, channel);
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    private static TilePack load(Path file, FileChannel channel) throws IOException {
+        ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+        readFully(channel, header, 0);
+        header.flip();
+        if (header.getInt() != MAGIC || header.getInt() != VERSION) {
+            throw new IOException("Geçersiz tile paketi: " + file);
+        }
+        TilePyramid pyramid = new TilePyramid(header.getInt(), header.getInt(), header.getInt());
+        TilePack pack = new TilePack(file, channel, pyramid);
+
+        long size = channel.size();
+        ByteBuffer entries = ByteBuffer.allocate(pack.index.length() * Long.BYTES);
+        readFully(channel, entries, HEADER_SIZE);
+        entries.flip();
+        long end = pack.dataStart();
+        for (int i = 0; i < pack.index.length(); i++) {
+            long entry = entries.getLong();
+            long entryEnd = (entry >>> LENGTH_BITS) + (entry & LENGTH_MASK);
+            // Çökme sonrası yarım kalmış girdiler yok sayılır
+            if (entry != 0 && entryEnd <= size) {
+                pack.index.set(i, entry);
+                end = Math.max(end, entryEnd);
+            }
+        }
+        pack.end = end;
+        pack.allocated = size;
+        pack.reserve(size);
+        return pack;
+    }
+
+    private void writeHeader() throws IOException {
+        ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+        header.putInt(MAGIC).putInt(VERSION)
+                .putInt(pyramid.getWidth()).putInt(pyramid.getHeight()).putInt(pyramid.getTileSize())
+                .putInt(0);
+        header.flip();
+        writeFully(channel, header, 0);
+        // Index alanı sıfırlarla ayrılır (seyrek dosya)
+        end = dataStart();
+        reserve(end);
+    }
+
+    /**
+     * Dosyayı limit'i içeren segmentin sonuna kadar büyütür; this ile çağrılır. Yazılan sıfır
+     * bayt ayrılmış alanın dışındadır, yani daha önce yer ayrılmış bir tile'ın üzerine gelmez.
+     * Böylece segment() eşlerken dosyayı hiçbir zaman kendisi büyütmez (ya da kısaltmaz).
+     */
+    private void reserve(long limit) throws IOException {
+        long segmentEnd = (limit + SEGMENT_SIZE - 1) / SEGMENT_SIZE * SEGMENT_SIZE;
+        if (segmentEnd > allocated) {
+            writeFully(channel, ByteBuffer.allocate(1), segmentEnd - 1);
+            allocated = segmentEnd;
+        }
+    }
+
+    public TilePyramid getPyramid() {
+        return pyramid;
+    }
+
+    public Path getFile() {
+        return file;
+    }
+
+    public boolean contains(int level, int tileX, int tileY) {
+        return pyramid.contains(level, tileX, tileY) && index.get(slot(level, tileX, tileY)) != 0;
+    }
+
+    /**
+     * Tile'ı bellek eşlemeli dosyanın salt okunur dilimi olarak döndürür, yoksa null.
+     */
+    public ByteBuffer read(int level, int tileX, int tileY) throws IOException {
+        if (!pyramid.contains(level, tileX, tileY)) {
+            return null;
+        }
+        long entry = index.get(slot(level, tileX, tileY));
+        if (entry == 0) {
+            return null;
+        }
+        long offset = entry >>> LENGTH_BITS;
+        int length = (int) (entry & LENGTH_MASK);
+        int position = (int) (offset % SEGMENT_SIZE);
+        return segment((int) (offset / SEGMENT_SIZE)).slice(position, length);
+    }
+
+    /**
+     * Tile'ı dosyanın sonuna ekler ve index'i günceller. Farklı tile'lar için
+     * eşzamanlı çağrılabilir.
+     *
+     * @return tile'ın index girdisi; aynı içerikteki başka tile'lar link() ile buna bağlanabilir
+     */
+    public long append(int level, int tileX, int tileY, byte[] data) throws IOException {
+        if (!pyramid.contains(level, tileX, tileY)) {
+            throw new IllegalArgumentException(String.format(
+                    "Tile piramit dışında: level=%d, tileX=%d, tileY=%d", level, tileX, tileY));
+        }
+        if (data.length == 0 || data.length > LENGTH_MASK) {
+            throw new IOException("Tile boyutu paket sınırları dışında: " + data.length);
+        }
+
+        long offset;
+        synchronized (this) {
+            offset = end;
+            if (offset / SEGMENT_SIZE != (offset + data.length - 1) / SEGMENT_SIZE) {
+                offset = (offset / SEGMENT_SIZE + 1) * SEGMENT_SIZE;
+            }
+            end = offset + data.length;
+            reserve(end);
+        }
+        writeFully(channel, ByteBuffer.wrap(data), offset);
+
+        // Veri yazıldıktan sonra index girdisi yayınlanır
+        long entry = (offset << LENGTH_BITS) | data.length;
+        publish(slot(level, tileX, tileY), entry);
+        return entry;
+    }
+
+    /**
+     * Tile'ı veri yazmadan, daha önce eklenmiş aynı içerikteki bir tile'ın verisine bağlar.
+     */
+    public void link(int level, int tileX, int tileY, long entry) throws IOException {
+        if (!pyramid.contains(level, tileX, tileY)) {
+            throw new IllegalArgumentException(String.format(
+                    "Tile piramit dışında: level=%d, tileX=%d, tileY=%d", level, tileX, tileY));
+        }
+        publish(slot(level, tileX, tileY), entry);
+    }
+
+    private void publish(int slot, long entry) throws IOException {
+        ByteBuffer encoded = ByteBuffer.allocate(Long.BYTES).putLong(0, entry);
+        writeFully(channel, encoded, HEADER_SIZE + (long) slot * Long.BYTES);
+        index.set(slot, entry);
+    }
+
+    /** Yazılanları diske zorlar */
+    public void flush() throws IOException {
+        channel.force(false);
+    }
+
+    @Override
+    public void close() throws IOException {
+        segments = new MappedByteBuffer[0];
+        channel.close();
+    }
+
+    private long dataStart() {
+        return HEADER_SIZE + (long) index.length() * Long.BYTES;
+    }
+
+    private int slot(int level, int tileX, int tileY) {
+        return (int) (levelBase[level] + (long) tileY * pyramid.columns(level) + tileX);
+    }
+
+    /** Segmentin eşlemesi; ilk erişimde tam SEGMENT_SIZE boyunda bir kez eşlenir */
+    private MappedByteBuffer segment(int segment) throws IOException {
+        MappedByteBuffer[] current = segments;
+        if (segment < current.length && current[segment] != null) {
+            return current[segment];
+        }
+        synchronized (this) {
+            current = segments;
+            if (segment < current.length && current[segment] != null) {
+                return current[segment];
+            }
+            long start = segment * SEGMENT_SIZE;
+            if (start + SEGMENT_SIZE > allocated) {
+                throw new IOException("Tile paketi beklenenden kısa: " + file);
+            }
+            MappedByteBuffer mapped = channel.map(FileChannel.MapMode.READ_ONLY, start, SEGMENT_SIZE);
+            MappedByteBuffer[] updated = Arrays.copyOf(current, Math.max(current.length, segment + 1));
+            updated[segment] = mapped;
+            segments = updated;
+            return mapped;
+        }
+    }
+
+    private static void readFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            int read = channel.read(buffer, position + buffer.position());
+            if (read < 0) {
+                throw new IOException("Tile paketi beklenenden kısa");
+            }
+        }
+    }
+
+    private static void writeFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+        long start = position - buffer.position();
+        while (buffer.hasRemaining()) {
+            channel.write(buffer, start + buffer.position());
+        }
+    }
+}
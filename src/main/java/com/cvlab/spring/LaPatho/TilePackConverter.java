@@ -0,0 +1,192 @@
+package com.cvlab.spring.LaPatho;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.ApplicationArguments;
+import org.springframework.boot.ApplicationRunner;
+import org.springframework.boot.SpringApplication;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.ApplicationContext;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.stream.Stream;
+
+/**
+ * Dizin deposundaki ({id}/{level}/tile_X_Y.jpg) görüntüleri tek dosyalık tile paketine
+ * dönüştüren çevrimdışı araç. Sunucu trafiği almadan çalıştırılmalıdır:
+ *
+ * <pre>
+ *   java -jar LaPatho.jar --spring.main.web-application-type=none --tile.pack.convert=all
+ *   java -jar LaPatho.jar --spring.main.web-application-type=none --tile.pack.convert=12,15 --tile.pack.delete-source=true
+ * </pre>
+ *
+ * Piramit geometrisi veritabanındaki görüntü kaydından alınır. Paket önce geçici dosyaya
+ * yazılır ve tamamlanınca yerine taşınır; iş bitince uygulama kapanır.
+ */
+@Component
+@ConditionalOnProperty("tile.pack.convert")
+@Slf4j
+public class TilePackConverter implements ApplicationRunner {
+
+    private static final Pattern TILE_FILE = Pattern.compile("tile_(\\d+)_(\\d+)\\.jpg");
+
+    @Value("${tile.output-base-path}")
+    private String outputBasePath;
+
+    /** "all" veya virgülle ayrılmış görüntü id'leri */
+    @Value("${tile.pack.convert}")
+    private String convert;
+
+    /** Dönüştürme başarılıysa tile dizinini sil */
+    @Value("${tile.pack.delete-source:false}")
+    private boolean deleteSource;
+
+    @Autowired
+    private ImageRepository imageRepository;
+
+    @Autowired
+    private TileStore tileStore;
+
+    @Autowired
+    private ApplicationContext context;
+
+    @Override
+    public void run(ApplicationArguments args) {
+        List<ImageEntity> images = "all".equalsIgnoreCase(convert.trim())
+                ? imageRepository.findAll()
+                : imageRepository.findAllById(Arrays.stream(convert.split(","))
+                        .map(String::trim)
+                        .map(Long::parseLong)
+                        .toList());
+
+        int converted = 0;
+        for (ImageEntity image : images) {
+            try {
+                if (convertImage(image)) {
+                    converted++;
+                }
+            } catch (Exception e) {
+                log.error("Tile paketi dönüştürme hatası: imageId={}, error={}", image.getId(), e.getMessage(), e);
+            }
+        }
+        log.info("Tile paketi dönüştürme tamamlandı: {}/{} görüntü", converted, images.size());
+
+        System.exit(SpringApplication.exit(context));
+    }
+
+    private boolean convertImage(ImageEntity image) throws IOException {
+        String imageId = image.getId().toString();
+        Path directory = Paths.get(outputBasePath, imageId);
+        if (!Files.isDirectory(directory)) {
+            log.info("Dizin deposu yok, atlanıyor: imageId={}", imageId);
+            return false;
+        }
+        if (image.getTileSize() <= 0) {
+            log.warn("Görüntü kaydında tile boyutu yok, atlanıyor: imageId={}", imageId);
+            return false;
+        }
+
+        long start = System.currentTimeMillis();
+        TilePyramid pyramid = new TilePyramid(image.getWidth(), image.getHeight(), image.getTileSize());
+        Path target = tileStore.packPath(imageId);
+        Path temp = target.resolveSibling(imageId + ".pack.tmp");
+        Files.deleteIfExists(temp);
+
+        // Sunucu bu görüntünün paketini açık tutuyorsa bırakılır
+        tileStore.close(imageId);
+
+        long tiles = 0;
+        try (TilePack pack = TilePack.openOrCreate(temp, pyramid)) {
+            // Hedef paket zaten varsa (kısmi PACK üretimi) içindeki tile'lar korunur
+            if (Files.exists(target)) {
+                tiles += copyPack(target, pack);
+            }
+            for (int level = 0; level <= pyramid.getMaxLevel(); level++) {
+                tiles += copyLevel(directory.resolve(String.valueOf(level)), level, pack);
+            }
+            pack.flush();
+        } catch (IOException | RuntimeException e) {
+            Files.deleteIfExists(temp);
+            throw e;
+        }
+        Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+
+        log.info("Tile paketi oluşturuldu: imageId={}, tile={}, boyut={} MB, süre={}ms", imageId, tiles,
+                Files.size(target) / (1024 * 1024), System.currentTimeMillis() - start);
+
+        if (deleteSource) {
+            deleteDirectory(directory);
+            log.info("Dizin deposu silindi: {}", directory);
+        }
+        return true;
+    }
+
+    private long copyLevel(Path levelDirectory, int level, TilePack pack) throws IOException {
+        if (!Files.isDirectory(levelDirectory)) {
+            return 0;
+        }
+        long tiles = 0;
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(levelDirectory, "tile_*.jpg")) {
+            for (Path file : files) {
+                Matcher m = TILE_FILE.matcher(file.getFileName().toString());
+                if (!m.matches()) {
+                    continue;
+                }
+                int tileX = Integer.parseInt(m.group(1));
+                int tileY = Integer.parseInt(m.group(2));
+                if (!pack.getPyramid().contains(level, tileX, tileY)) {
+                    log.warn("Piramit dışındaki tile atlandı: {}", file);
+                    continue;
+                }
+                if (pack.contains(level, tileX, tileY)) {
+                    continue;
+                }
+                pack.append(level, tileX, tileY, Files.readAllBytes(file));
+                tiles++;
+            }
+        }
+        return tiles;
+    }
+
+    private long copyPack(Path source, TilePack pack) throws IOException {
+        long tiles = 0;
+        try (TilePack existing = TilePack.openOrCreate(source, pack.getPyramid())) {
+            TilePyramid pyramid = pack.getPyramid();
+            for (int level = 0; level <= pyramid.getMaxLevel(); level++) {
+                for (int y = 0; y < pyramid.rows(level); y++) {
+                    for (int x = 0; x < pyramid.columns(level); x++) {
+                        ByteBuffer tile = existing.read(level, x, y);
+                        if (tile != null) {
+                            byte[] data = new byte[tile.remaining()];
+                            tile.get(data);
+                            pack.append(level, x, y, data);
+                            tiles++;
+                        }
+                    }
+                }
+            }
+        }
+        return tiles;
+    }
+
+    private static void deleteDirectory(Path directory) throws IOException {
+        try (Stream<Path> paths = Files.walk(directory)) {
+            for (Path path : paths.sorted(Comparator.reverseOrder()).toList()) {
+                Files.delete(path);
+            }
+        }
+    }
+}
@@ -0,0 +1,422 @@
+package com.cvlab.spring.LaPatho;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import jakarta.servlet.http.HttpServletRequest;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Deque;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Tahmini tile ön yüklemesi.
+ *
+ * Her izleyici oturumu (X-Viewer-Session başlığı, yoksa istemci adresi) ve görüntü için son
+ * tile istekleri tutulur. İstekler quiet-ms kadar durulunca (bir pan/zoom karesi tamamlanınca)
+ * viewport ve hareket yönü çıkarılır. Sıradaki istekler hemen her zaman aynı seviyedeki komşular
+ * ya da bir alt seviyedeki dört çocuktur: pan sürüyorsa hareket yönündeki şerit, yakınlaştırmada
+ * ya da dururken viewport'un çocukları ve çevresi, uzaklaştırmada bir üst seviye önceden
+ * TileCache'e yüklenir. Depoda olmayanlar istek anında üretim açıksa en düşük öncelikle üretilir.
+ *
+ * Ön yükleme sınırlıdır (tahmin başına depodan max-tiles tile, ayrıca aynı anda max-renders
+ * üretim; süren üretimler tile bütçesinden düşmez, depodaki ucuz adayları engellemez); aynı
+ * oturumdan yeni bir istek süren tahmini iptal eder ve her tile'dan önce gerçek isteklerin
+ * bitmesi beklenir.
+ */
+@Component
+@Slf4j
+public class TilePrefetcher {
+
+    static final String SESSION_HEADER = "X-Viewer-Session";
+
+    @Value("${tile.prefetch.enabled:true}")
+    private boolean enabled;
+
+    /** Bir tahminde depodan en fazla yüklenecek tile */
+    @Value("${tile.prefetch.max-tiles:32}")
+    private int maxTiles;
+
+    /** Son istekten bu kadar sonra tahmin yapılır */
+    @Value("${tile.prefetch.quiet-ms:75}")
+    private long quietMs;
+
+    @Value("${tile.prefetch.threads:2}")
+    private int threads;
+
+    /** Aynı anda en fazla ön yükleme üretimi (0: depoda olmayanlar üretilmez) */
+    @Value("${tile.prefetch.max-renders:2}")
+    private int maxRenders;
+
+    /** Gerçek istekler sürerken bir tile öncesinde en fazla bekleme */
+    @Value("${tile.prefetch.max-pause-ms:200}")
+    private long maxPauseMs;
+
+    @Value("${tile.prefetch.session-idle-ms:60000}")
+    private long sessionIdleMs;
+
+    @Value("${tile.on-demand.enabled:true}")
+    private boolean onDemandEnabled;
+
+    @Autowired
+    private TileStore tileStore;
+
+    @Autowired
+    private TileService tileService;
+
+    @Autowired
+    private ImageService imageService;
+
+    @Autowired
+    private TileScheduler tileScheduler;
+
+    private static final int MAX_RECENT_REQUESTS = 128;
+    /** Son istekten geriye bu süredeki aynı seviye istekleri güncel viewport sayılır */
+    private static final long VIEWPORT_WINDOW_MS = 1000;
+
+    private final Map<String, Session> sessions = new ConcurrentHashMap<>();
+    private final AtomicInteger activeRequests = new AtomicInteger();
+    private final Object idleMonitor = new Object();
+    private final LongAdder predictions = new LongAdder();
+    private final LongAdder tilesLoaded = new LongAdder();
+    private final LongAdder tilesRendered = new LongAdder();
+    private final LongAdder cancelled = new LongAdder();
+    private Semaphore renderPermits;
+    private ScheduledThreadPoolExecutor executor;
+
+    @PostConstruct
+    void start() {
+        if (!enabled) {
+            log.info("Tile ön yüklemesi kapalı");
+            return;
+        }
+        AtomicInteger threadIndex = new AtomicInteger();
+        executor = new ScheduledThreadPoolExecutor(Math.max(1, threads), r -> {
+            Thread t = new Thread(r, "tile-prefetch-" + threadIndex.incrementAndGet());
+            t.setDaemon(true);
+            t.setPriority(Thread.MIN_PRIORITY);
+            return t;
+        });
+        renderPermits = new Semaphore(Math.max(0, maxRenders));
+        log.info("Tile ön yüklemesi başlatıldı: {} thread, tahmin başına en fazla {} tile", threads, maxTiles);
+    }
+
+    @PreDestroy
+    void stop() {
+        if (executor != null) {
+            executor.shutdownNow();
+        }
+    }
+
+    /**
+     * İsteğin izleyici oturumu: X-Viewer-Session başlığı, yoksa istemci adresi. Proxy arkasında
+     * adres server.forward-headers-strategy ile X-Forwarded-For'dan gelir.
+     */
+    public static String sessionOf(HttpServletRequest request) {
+        String session = request.getHeader(SESSION_HEADER);
+        return session != null && !session.isBlank() ? session : request.getRemoteAddr();
+    }
+
+    /** Gerçek bir tile isteği başladı; bitene kadar ön yükleme bekler */
+    public void requestStarted() {
+        activeRequests.incrementAndGet();
+    }
+
+    public void requestFinished() {
+        if (activeRequests.decrementAndGet() == 0) {
+            synchronized (idleMonitor) {
+                idleMonitor.notifyAll();
+            }
+        }
+    }
+
+    /**
+     * İstenen tile'ı oturum geçmişine ekler, süren tahmini iptal eder ve istekler durulunca
+     * yeni tahmin planlar.
+     */
+    public void record(String session, String imageId, int level, int tileX, int tileY) {
+        if (executor == null) {
+            return;
+        }
+        Session s = sessions.computeIfAbsent(session + "|" + imageId, key -> new Session(imageId));
+        synchronized (s) {
+            long now = System.currentTimeMillis();
+            s.requests.addLast(new TileRequest(level, tileX, tileY, now));
+            while (s.requests.size() > MAX_RECENT_REQUESTS) {
+                s.requests.pollFirst();
+            }
+            s.lastRequest = now;
+            s.predictionSeq++;
+            if (!s.scheduled) {
+                s.scheduled = true;
+                executor.schedule(() -> predictWhenQuiet(s), quietMs, TimeUnit.MILLISECONDS);
+            }
+        }
+    }
+
+    /** Tahmin ve yükleme sayıları */
+    public Map<String, Object> stats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("enabled", executor != null);
+        stats.put("sessions", sessions.size());
+        stats.put("predictions", predictions.sum());
+        stats.put("tilesLoaded", tilesLoaded.sum());
+        stats.put("tilesRendered", tilesRendered.sum());
+        stats.put("cancelled", cancelled.sum());
+        return stats;
+    }
+
+    @Scheduled(fixedDelayString = "${tile.viewport.purge-interval-ms:60000}")
+    public void purgeIdle() {
+        long cutoff = System.currentTimeMillis() - sessionIdleMs;
+        sessions.values().removeIf(s -> {
+            synchronized (s) {
+                return !s.scheduled && s.lastRequest < cutoff;
+            }
+        });
+    }
+
+    private void predictWhenQuiet(Session s) {
+        Bounds current;
+        Bounds previous;
+        long seq;
+        synchronized (s) {
+            long wait = s.lastRequest + quietMs - System.currentTimeMillis();
+            if (wait > 0) {
+                executor.schedule(() -> predictWhenQuiet(s), wait, TimeUnit.MILLISECONDS);
+                return;
+            }
+            s.scheduled = false;
+            current = currentBounds(s);
+            previous = s.lastBounds;
+            s.lastBounds = current;
+            seq = s.predictionSeq;
+        }
+        try {
+            Optional<ImageEntity> image = imageService.findById(Long.parseLong(s.imageId));
+            if (image.isEmpty() || image.get().getStatus() == Status.ERROR) {
+                return;
+            }
+            TilePyramid pyramid = new TilePyramid(image.get().getWidth(), image.get().getHeight(), image.get().getTileSize());
+            List<int[]> candidates = predict(pyramid, current, previous);
+            predictions.increment();
+            load(s, seq, image.get(), candidates);
+        } catch (NumberFormatException e) {
+            // Sayısal olmayan görüntü ID'si: tahmin yapılmaz
+        } catch (Exception e) {
+            log.debug("Ön yükleme başarısız: imageId={}, error={}", s.imageId, e.getMessage());
+        }
+    }
+
+    /** Son istenen seviyede, son istekten geriye VIEWPORT_WINDOW_MS içindeki isteklerin dikdörtgeni */
+    private static Bounds currentBounds(Session s) {
+        TileRequest last = s.requests.peekLast();
+        int minX = last.tileX(), minY = last.tileY(), maxX = last.tileX(), maxY = last.tileY();
+        for (TileRequest r : s.requests) {
+            if (r.level() == last.level() && r.time() >= last.time() - VIEWPORT_WINDOW_MS) {
+                minX = Math.min(minX, r.tileX());
+                minY = Math.min(minY, r.tileY());
+                maxX = Math.max(maxX, r.tileX());
+                maxY = Math.max(maxY, r.tileY());
+            }
+        }
+        return new Bounds(last.level(), minX, minY, maxX, maxY);
+    }
+
+    /**
+     * Olası sonraki tile'lar, olasılık sırasıyla: pan yönündeki iki tile derinliğinde şerit;
+     * yakınlaştırmada ya da dururken viewport merkezinden başlayarak bir alt seviyedeki çocuklar
+     * ve viewport çevresi; uzaklaştırmada bir üst seviyede viewport'u kapsayan tile'lar.
+     */
+    static List<int[]> predict(TilePyramid pyramid, Bounds now, Bounds before) {
+        int dx = 0, dy = 0;
+        boolean zoomIn = false, zoomOut = false;
+        if (before != null) {
+            if (now.level() > before.level()) {
+                zoomIn = true;
+            } else if (now.level() < before.level()) {
+                zoomOut = true;
+            } else {
+                dx = Integer.signum((now.minX() + now.maxX()) - (before.minX() + before.maxX()));
+                dy = Integer.signum((now.minY() + now.maxY()) - (before.minY() + before.maxY()));
+            }
+        }
+        boolean panning = dx != 0 || dy != 0;
+
+        Candidates out = new Candidates(pyramid);
+        if (panning) {
+            for (int depth = 1; depth <= 2; depth++) {
+                if (dx != 0) {
+                    int x = dx > 0 ? now.maxX() + depth : now.minX() - depth;
+                    for (int y = now.minY() - 1; y <= now.maxY() + 1; y++) {
+                        out.add(now.level(), x, y);
+                    }
+                }
+                if (dy != 0) {
+                    int y = dy > 0 ? now.maxY() + depth : now.minY() - depth;
+                    for (int x = now.minX() - 1; x <= now.maxX() + 1; x++) {
+                        out.add(now.level(), x, y);
+                    }
+                }
+            }
+            return out.tiles;
+        }
+        if (zoomOut) {
+            int level = now.level() - 1;
+            for (int y = (now.minY() >> 1) - 1; y <= (now.maxY() >> 1) + 1; y++) {
+                for (int x = (now.minX() >> 1) - 1; x <= (now.maxX() >> 1) + 1; x++) {
+                    out.add(level, x, y);
+                }
+            }
+        } else {
+            // Çocuklar, viewport merkezine yakınlık sırasıyla
+            List<int[]> children = new ArrayList<>();
+            for (int y = now.minY(); y <= now.maxY(); y++) {
+                for (int x = now.minX(); x <= now.maxX(); x++) {
+                    for (int c = 0; c < 4; c++) {
+                        children.add(new int[]{now.level() + 1, 2 * x + (c & 1), 2 * y + (c >> 1)});
+                    }
+                }
+            }
+            long centerX = now.minX() + now.maxX() + 1L;
+            long centerY = now.minY() + now.maxY() + 1L;
+            children.sort(Comparator.comparingLong(t -> {
+                long ddx = 2L * t[1] + 1 - 2 * centerX;
+                long ddy = 2L * t[2] + 1 - 2 * centerY;
+                return ddx * ddx + ddy * ddy;
+            }));
+            children.forEach(t -> out.add(t[0], t[1], t[2]));
+        }
+        for (int x = now.minX() - 1; x <= now.maxX() + 1; x++) {
+            out.add(now.level(), x, now.minY() - 1);
+            out.add(now.level(), x, now.maxY() + 1);
+        }
+        for (int y = now.minY(); y <= now.maxY(); y++) {
+            out.add(now.level(), now.minX() - 1, y);
+            out.add(now.level(), now.maxX() + 1, y);
+        }
+        return out.tiles;
+    }
+
+    private void load(Session s, long seq, ImageEntity image, List<int[]> candidates) {
+        boolean render = onDemandEnabled && renderPermits.availablePermits() > 0;
+        int loaded = 0;
+        for (int[] tile : candidates) {
+            if (loaded >= maxTiles) {
+                return;
+            }
+            if (isCancelled(s, seq)) {
+                cancelled.increment();
+                return;
+            }
+            waitForIdleRequests();
+            tileScheduler.yieldToInteractive();
+            try {
+                if (tileStore.prefetch(s.imageId, tile[0], tile[1], tile[2])) {
+                    tilesLoaded.increment();
+                    loaded++;
+                    continue;
+                }
+            } catch (IOException e) {
+                log.debug("Ön yükleme okunamadı: imageId={}, tile={}/{}_{}, error={}",
+                        s.imageId, tile[0], tile[1], tile[2], e.getMessage());
+                continue;
+            }
+            // Üretimler max-renders ile ayrıca sınırlıdır; bütçeyi sonucu belli olmadan tüketmez
+            if (render && renderPermits.tryAcquire()) {
+                tileService.prefetchTile(image.getPath(), s.imageId, tile[0], tile[1], tile[2])
+                        .whenComplete((done, error) -> {
+                            renderPermits.release();
+                            if (error == null) {
+                                tilesRendered.increment();
+                                try {
+                                    tileStore.prefetch(s.imageId, tile[0], tile[1], tile[2]);
+                                } catch (IOException e) {
+                                    log.debug("Üretilen tile önbelleğe alınamadı: {}", e.getMessage());
+                                }
+                            }
+                        });
+            }
+        }
+    }
+
+    private static boolean isCancelled(Session s, long seq) {
+        synchronized (s) {
+            return s.predictionSeq != seq;
+        }
+    }
+
+    private void waitForIdleRequests() {
+        if (activeRequests.get() == 0) {
+            return;
+        }
+        long deadline = System.currentTimeMillis() + maxPauseMs;
+        synchronized (idleMonitor) {
+            long remaining;
+            while (activeRequests.get() > 0 && (remaining = deadline - System.currentTimeMillis()) > 0) {
+                try {
+                    idleMonitor.wait(remaining);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return;
+                }
+            }
+        }
+    }
+
+    /** Bir oturumun bir görüntüdeki istek geçmişi; alanlarına kendisi üzerinden senkronize erişilir */
+    private static final class Session {
+        private final String imageId;
+        private final Deque<TileRequest> requests = new ArrayDeque<>();
+        private long lastRequest;
+        private boolean scheduled;
+        /** Her istek ve tahminde artar; süren yükleme bunu değişmiş görürse durur */
+        private long predictionSeq;
+        private Bounds lastBounds;
+
+        Session(String imageId) {
+            this.imageId = imageId;
+        }
+    }
+
+    private record TileRequest(int level, int tileX, int tileY, long time) {}
+
+    /** Bir seviyedeki [minX..maxX] x [minY..maxY] tile dikdörtgeni (sınırlar dahil) */
+    record Bounds(int level, int minX, int minY, int maxX, int maxY) {}
+
+    /** Piramit dışındakileri ve tekrarları eleyen sıralı aday listesi */
+    private static final class Candidates {
+        private final TilePyramid pyramid;
+        private final List<int[]> tiles = new ArrayList<>();
+        private final Set<Long> seen = new HashSet<>();
+
+        Candidates(TilePyramid pyramid) {
+            this.pyramid = pyramid;
+        }
+
+        void add(int level, int tileX, int tileY) {
+            if (pyramid.contains(level, tileX, tileY)
+                    && seen.add(((long) level << 56) | ((long) tileX << 28) | tileY)) {
+                tiles.add(new int[]{level, tileX, tileY});
+            }
+        }
+    }
+}
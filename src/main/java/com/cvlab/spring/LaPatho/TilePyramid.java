@@ -0,0 +1,81 @@
+package com.cvlab.spring.LaPatho;
+
+import lombok.Getter;
+
+/**
+ * Bir görüntünün tile piramidi geometrisi.
+ * Level 0 en küçük seviyedir (tek tile), maxLevel orijinal çözünürlüktür;
+ * her seviye bir öncekinin tam 2 katı boyutundadır.
+ */
+@Getter
+public class TilePyramid {
+
+    private final int width;
+    private final int height;
+    private final int tileSize;
+    private final int maxLevel;
+
+    public TilePyramid(int width, int height, int tileSize) {
+        this.width = width;
+        this.height = height;
+        this.tileSize = tileSize;
+        this.maxLevel = computeMaxLevel(width, height, tileSize);
+    }
+
+    public static int computeMaxLevel(int width, int height, int tileSize) {
+        int maxLevel = (int) Math.ceil(
+                Math.log(Math.max(width, height) / (double) tileSize) / Math.log(2)
+        );
+        return Math.max(0, maxLevel);
+    }
+
+    /** Orijinal çözünürlüğe göre küçültme katsayısı (maxLevel için 1). */
+    public long downsample(int level) {
+        return 1L << (maxLevel - level);
+    }
+
+    public int levelWidth(int level) {
+        return (int) (width / downsample(level));
+    }
+
+    public int levelHeight(int level) {
+        return (int) (height / downsample(level));
+    }
+
+    public int columns(int level) {
+        return (levelWidth(level) + tileSize - 1) / tileSize;
+    }
+
+    public int rows(int level) {
+        return (levelHeight(level) + tileSize - 1) / tileSize;
+    }
+
+    public int tileWidth(int level, int tileX) {
+        return Math.min(tileSize, levelWidth(level) - tileX * tileSize);
+    }
+
+    public int tileHeight(int level, int tileY) {
+        return Math.min(tileSize, levelHeight(level) - tileY * tileSize);
+    }
+
+    public boolean contains(int level, int tileX, int tileY) {
+        return level >= 0 && level <= maxLevel
+                && tileX >= 0 && tileY >= 0
+                && tileX < columns(level) && tileY < rows(level);
+    }
+
+    /**
+     * Tile'ın bir üst (daha kaba) seviyede ebeveyni yoksa true döner.
+     * Kenardaki tek piksellik sütun/satırlar (örn. 1025 px genişlik) bir alt seviyeye
+     * yansımaz; bu tile'lar piramitte kendi alt ağaçlarının kökü olur.
+     */
+    public boolean isRoot(int level, int tileX, int tileY) {
+        return level == 0
+                || tileX >= 2 * columns(level - 1)
+                || tileY >= 2 * rows(level - 1);
+    }
+
+    public long tileCount(int level) {
+        return (long) columns(level) * rows(level);
+    }
+}
@@ -0,0 +1,154 @@
+package com.cvlab.spring.LaPatho;
+
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import org.apache.catalina.connector.CoyoteOutputStream;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.io.ByteArrayResource;
+import org.springframework.core.io.Resource;
+import org.springframework.http.MediaType;
+import org.springframework.stereotype.Component;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+
+/**
+ * Tile yanıtlarını heap'e kopyalamadan yazar.
+ *
+ * Dizin deposundaki tile'lar sendfile.min-bytes'tan büyükse Tomcat'in sendfile desteğiyle
+ * (FileChannel.transferTo) çekirdekten doğrudan sokete gider; küçükler ya da sendfile yoksa
+ * (TLS, başka sunucu) transferTo ile thread'e ait geçici direct buffer üzerinden Tomcat'in
+ * çıkış tamponuna aktarılır. İstek başına bellek eşlemesi yapılmaz: eşlemeler ancak GC ile
+ * bırakıldığından yük altında vm.max_map_count sınırına dayanır. Önbellekteki ve paketteki tile'lar
+ * ByteBuffer olarak doğrudan çıkış tamponuna aktarılır. Content-Length her zaman
+ * kanal/buffer boyutundan gelir; Spring'in Resource dönüştürücüsündeki ara kopya yoktur.
+ *
+ * Toplu tile yanıtında (bkz. TileController.getTiles) her tile writeContent ile çerçevenin
+ * içine yazılır; orada sendfile kullanılamaz, dosyalar transferTo ile aktarılır.
+ */
+@Component
+public class TileResponseWriter {
+
+    private static final String SENDFILE_SUPPORTED = "org.apache.tomcat.sendfile.support";
+    private static final String SENDFILE_FILENAME = "org.apache.tomcat.sendfile.filename";
+    private static final String SENDFILE_START = "org.apache.tomcat.sendfile.start";
+    private static final String SENDFILE_END = "org.apache.tomcat.sendfile.end";
+
+    // Küçük dosyalarda sendfile'ın kurulum maliyeti kopyadan fazladır (Tomcat DefaultServlet varsayılanı)
+    @Value("${tile.sendfile.min-bytes:49152}")
+    private long sendfileMinBytes;
+
+    /**
+     * Tile'ı JPEG olarak yanıta yazar; Cache-Control/ETag gibi başlıklar önceden ayarlanmış olmalıdır.
+     * FileChannelResource'un kanalı her durumda kapatılır.
+     */
+    public void write(Resource tile, HttpServletRequest request, HttpServletResponse response) throws IOException {
+        response.setContentType(MediaType.IMAGE_JPEG_VALUE);
+
+        if (tile instanceof TileStore.FileChannelResource file) {
+            try (file) {
+                long size = file.contentLength();
+                response.setContentLengthLong(size);
+                if (size >= sendfileMinBytes && Boolean.TRUE.equals(request.getAttribute(SENDFILE_SUPPORTED))) {
+                    // Tomcat yanıt başlıklarından sonra dosyayı transferTo ile gönderir
+                    request.setAttribute(SENDFILE_FILENAME, file.getPath().toAbsolutePath().toString());
+                    request.setAttribute(SENDFILE_START, 0L);
+                    request.setAttribute(SENDFILE_END, size);
+                    return;
+                }
+                transfer(file, response.getOutputStream());
+            }
+            return;
+        }
+        response.setContentLengthLong(tile.contentLength());
+        writeContent(tile, response.getOutputStream());
+    }
+
+    /**
+     * Tile içeriğini yazar; uzunluk önceden tile.contentLength() ile bildirilmiş olmalıdır.
+     * FileChannelResource'un kanalı her durumda kapatılır.
+     */
+    public void writeContent(Resource tile, OutputStream out) throws IOException {
+        if (tile instanceof TileStore.FileChannelResource file) {
+            try (file) {
+                transfer(file, out);
+            }
+            return;
+        }
+        if (tile instanceof TileStore.ByteBufferResource buffer) {
+            write(buffer.content(), out);
+            return;
+        }
+        if (tile instanceof ByteArrayResource bytes) {
+            // Boş (arka plan) tile'lar bellekte üretilmiş JPEG'lerdir
+            out.write(bytes.getByteArray());
+            return;
+        }
+        try (InputStream in = tile.getInputStream()) {
+            in.transferTo(out);
+        }
+    }
+
+    /** Dosyanın tamamını çıkışa aktarır; dosya bildirilen boyuttan kısaysa EOFException */
+    private static void transfer(TileStore.FileChannelResource file, OutputStream out) throws IOException {
+        WritableByteChannel target = out instanceof CoyoteOutputStream coyote
+                ? new CoyoteChannel(coyote) : Channels.newChannel(out);
+        FileChannel channel = file.getChannel();
+        long size = file.contentLength();
+        long position = 0;
+        while (position < size) {
+            long n = channel.transferTo(position, size - position, target);
+            if (n <= 0) {
+                throw new EOFException("Tile dosyası beklenenden kısa: " + file.getPath());
+            }
+            position += n;
+        }
+    }
+
+    private static void write(ByteBuffer content, OutputStream out) throws IOException {
+        if (content.hasArray()) {
+            out.write(content.array(), content.arrayOffset() + content.position(), content.remaining());
+        } else if (out instanceof CoyoteOutputStream coyote) {
+            // Direct/eşlenmiş buffer Tomcat'in çıkış tamponuna ara byte[] olmadan aktarılır
+            coyote.write(content);
+        } else {
+            WritableByteChannel channel = Channels.newChannel(out);
+            while (content.hasRemaining()) {
+                channel.write(content);
+            }
+        }
+    }
+
+    /** Tomcat çıkış tamponuna ara byte[] olmadan yazan kanal; kapatılması akışı kapatmaz */
+    private static final class CoyoteChannel implements WritableByteChannel {
+        private final CoyoteOutputStream out;
+
+        CoyoteChannel(CoyoteOutputStream out) {
+            this.out = out;
+        }
+
+        @Override
+        public int write(ByteBuffer src) throws IOException {
+            int length = src.remaining();
+            out.write(src);
+            src.position(src.limit());
+            return length;
+        }
+
+        @Override
+        public boolean isOpen() {
+            return true;
+        }
+
+        @Override
+        public void close() {
+            // Akış yanıtla birlikte kapanır
+        }
+    }
+}
@@ -0,0 +1,135 @@
+package com.cvlab.spring.LaPatho;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.PriorityBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * İzleyicilerin beklediği tile işleri için öncelikli zamanlayıcı.
+ *
+ * İstek anında üretilen tile'lar kendi thread havuzunda öncelik sırasıyla çalışır:
+ * aktif viewport içindeki tile'lar diğer isteklerin önüne geçer. Arka plan piramit
+ * üretimi her tile'dan önce yieldToInteractive() çağırır; bekleyen etkileşimli iş
+ * varsa CPU'yu bırakır. Böylece yoğun ingest altında bile görüntüleyici gecikmesi
+ * arka plan yükünden bağımsız kalır.
+ *
+ * PREFETCH işleri (tahmini ön yükleme, bkz. TilePrefetcher) en sonda çalışır ve etkileşimli
+ * sayılmaz; arka plan üretimini bekletmez.
+ */
+@Component
+@Slf4j
+public class TileScheduler {
+
+    public enum Priority { VIEWPORT, REQUEST, PREFETCH }
+
+    // 0: işlemci sayısının yarısı (en az 2)
+    @Value("${tile.scheduler.interactive-threads:0}")
+    private int interactiveThreads;
+
+    /** Arka plan worker'ının tek bir tile öncesinde en fazla bekleyeceği süre (açlığı önler) */
+    @Value("${tile.scheduler.max-background-pause-ms:500}")
+    private long maxBackgroundPauseMs;
+
+    private ThreadPoolExecutor executor;
+    private final AtomicLong sequence = new AtomicLong();
+    private final AtomicInteger pendingInteractive = new AtomicInteger();
+    private final Object idleMonitor = new Object();
+
+    @PostConstruct
+    void start() {
+        int threads = interactiveThreads > 0
+                ? interactiveThreads
+                : Math.max(2, Runtime.getRuntime().availableProcessors() / 2);
+        AtomicInteger threadIndex = new AtomicInteger();
+        executor = new ThreadPoolExecutor(threads, threads, 60, TimeUnit.SECONDS,
+                new PriorityBlockingQueue<>(),
+                r -> {
+                    Thread t = new Thread(r, "tile-interactive-" + threadIndex.incrementAndGet());
+                    t.setDaemon(true);
+                    return t;
+                });
+        log.info("Tile zamanlayıcısı başlatıldı: {} etkileşimli thread", threads);
+    }
+
+    @PreDestroy
+    void stop() {
+        executor.shutdownNow();
+    }
+
+    /**
+     * Etkileşimli bir tile işini öncelik sırasına koyar.
+     */
+    public <T> CompletableFuture<T> submit(Priority priority, Callable<T> work) {
+        CompletableFuture<T> result = new CompletableFuture<>();
+        boolean interactive = priority != Priority.PREFETCH;
+        if (interactive) {
+            pendingInteractive.incrementAndGet();
+        }
+        executor.execute(new PrioritizedTask(priority.ordinal(), sequence.incrementAndGet(), () -> {
+            try {
+                result.complete(work.call());
+            } catch (Throwable t) {
+                result.completeExceptionally(t);
+            } finally {
+                if (interactive && pendingInteractive.decrementAndGet() == 0) {
+                    synchronized (idleMonitor) {
+                        idleMonitor.notifyAll();
+                    }
+                }
+            }
+        }));
+        return result;
+    }
+
+    /**
+     * Arka plan işleri her tile'dan önce çağırır: bekleyen ya da çalışan etkileşimli iş varsa
+     * bitene kadar (en fazla max-background-pause-ms) bekler.
+     */
+    public void yieldToInteractive() {
+        if (pendingInteractive.get() == 0) {
+            return;
+        }
+        long deadline = System.currentTimeMillis() + maxBackgroundPauseMs;
+        synchronized (idleMonitor) {
+            long remaining;
+            while (pendingInteractive.get() > 0 && (remaining = deadline - System.currentTimeMillis()) > 0) {
+                try {
+                    idleMonitor.wait(remaining);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return;
+                }
+            }
+        }
+    }
+
+    public int getPendingInteractive() {
+        return pendingInteractive.get();
+    }
+
+    /** Önce öncelik, aynı öncelikte geliş sırası */
+    private record PrioritizedTask(int priority, long sequence, Runnable work)
+            implements Runnable, Comparable<PrioritizedTask> {
+
+        @Override
+        public void run() {
+            work.run();
+        }
+
+        @Override
+        public int compareTo(PrioritizedTask other) {
+            int byPriority = Integer.compare(priority, other.priority);
+            return byPriority != 0 ? byPriority : Long.compare(sequence, other.sequence);
+        }
+    }
+}
@@ -1,18 +1,36 @@
 package com.cvlab.spring.LaPatho;
 
 import loci.formats.FormatException;
-import loci.formats.FormatTools;
-import loci.formats.ImageReader;
+import loci.formats.IFormatReader;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.io.Resource;
 import org.springframework.scheduling.annotation.Async;
 import org.springframework.stereotype.Service;
 
 import javax.imageio.ImageIO;
 import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferByte;
+import java.io.IOException;
+import java.io.InputStream;
 import java.nio.file.Files;
 import java.nio.file.Path;
-import java.nio.file.Paths;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
 import lombok.extern.slf4j.Slf4j;
 
 @Service
@@ -21,17 +39,103 @@ public class TileService {
 
 
     // application.properties’den okunacak
-    @Value("${tile.output-base-path}")
-    private String outputBasePath;
-
     @Value("${tile.block-size:4096}")
     private int blockSize;
 
     @Value("${tile.size:512}")
     private int tileSize;
 
+    @Value("${tile.pyramid-mode:NATIVE}")
+    private PyramidMode pyramidMode;
+
+    // 0: işlemci sayısı kadar worker
+    @Value("${tile.parallelism:0}")
+    private int parallelism;
+
+    @Autowired
+    @Qualifier("tileExecutor")
+    private Executor tileExecutor;
+
+    @Autowired
+    private ImageReaderPool readerPool;
+
+    @Value("${tile.on-demand.enabled:true}")
+    private boolean onDemandEnabled;
+
+    // İstek anında üretime bırakılacak en detaylı seviye sayısı (0: tüm piramit önceden üretilir)
+    @Value("${tile.on-demand.skip-levels:0}")
+    private int onDemandSkipLevels;
+
+    // İstek anında üretimde reader havuzu doluysa en fazla bu kadar beklenir
+    @Value("${tile.on-demand.reader-wait-ms:10000}")
+    private long onDemandReaderWaitMs;
+
+    // Boş (cam/arka plan) tile'lar kodlanmaz, depoda işaretlenir
+    @Value("${tile.blank.enabled:true}")
+    private boolean blankDetection;
+
+    @Value("${tile.blank.min-brightness:220}")
+    private int blankMinBrightness;
+
+    @Value("${tile.blank.max-stddev:6}")
+    private double blankMaxStdDev;
+
+    // Detaylı seviyeler sadece doku maskesinin kapsadığı yerlerde kaynaktan okunur
+    @Value("${tile.tissue.enabled:true}")
+    private boolean tissueDetection;
+
+    @Value("${tile.tissue.overview-size:2048}")
+    private int tissueOverviewSize;
+
+    @Value("${tile.tissue.min-score:20}")
+    private int tissueMinScore;
+
+    @Value("${tile.tissue.dilation:2}")
+    private int tissueDilation;
+
+    // Üretim ilerlemesinin diske yazılma aralığı
+    @Value("${tile.checkpoint.interval-seconds:30}")
+    private int checkpointIntervalSeconds;
+
+    @Autowired
+    private TileScheduler tileScheduler;
+
+    @Autowired
+    private ViewportTracker viewportTracker;
+
+    @Autowired
+    private TileEncoder tileEncoder;
+
+    @Autowired
+    private TileStore tileStore;
+
+    @Autowired
+    private AssociatedImageService associatedImages;
+
+    @Autowired
+    private ThumbnailService thumbnails;
+
+    /** Üretimi süren tile'lar; aynı tile için gelen istekler bu future'ı bekler */
+    private final Map<String, CompletableFuture<Void>> inFlightRenders = new ConcurrentHashMap<>();
+
+    /** Piramidi üretilmekte olan görüntüler; ilerleme raporu için */
+    private final Map<String, PyramidJob> activeJobs = new ConcurrentHashMap<>();
+
+    /** Havuz sınırdayken bir worker'ın reader için bekleyeceği en uzun süre */
+    private static final long WORKER_BORROW_TIMEOUT_MS = 5000;
+
+    /** Yük dengesi için worker başına düşen satır bandı sayısı */
+    private static final int BANDS_PER_WORKER = 4;
+
+    /** Seviye planında "alt seviyeden birleştir" işareti */
+    private static final int LEVEL_MERGED = -1;
+
+    /** Native çözünürlüğün bir seviyeyle eşleşmiş sayılması için izin verilen küçültme oranı payı */
+    private static final double NATIVE_MATCH_TOLERANCE = 1.02;
+
+    /** Genel görünüm, seviyesinden en fazla bu kat detaylı bir native çözünürlükten okunur */
+    private static final int MAX_OVERVIEW_OVERREAD = 8;
 
-    // TODO: tilegenerate ne kadar sürüyor database'e kaydet.
 
     /**
      * Tek bir tile parçasını arka planda üretir.
@@ -44,151 +148,161 @@ public class TileService {
      */
     @Async("taskExecutor")
     public CompletableFuture<Void> generateTilesChunk(String inputPath, String imageId, int level, int tileX, int tileY) throws Exception {
+        renderTile(inputPath, imageId, level, tileX, tileY);
+        return CompletableFuture.completedFuture(null);
+    }
 
-        // 1) Reader'ı aç
-        ImageReader reader = new ImageReader();
-        try {
-            log.debug("Tile üretimi başladı: imageId={}, level={}, tileX={}, tileY={}", imageId, level, tileX, tileY);
-
-            // Format kontrolü
-            String format = reader.getFormat(inputPath);
-            log.debug("Dosya formatı: {}", format);
-
-            reader.setId(inputPath);
+    /**
+     * Eksik bir tile'ı istek anında üretir. İş TileScheduler'da önceliğine göre sıraya girer;
+     * aktif viewport içindeki tile'lar diğer isteklerin önüne geçer. Aynı (piramit, level, x, y)
+     * için eşzamanlı istekler tek bir üretimi paylaşır; kaynak dosya bir kez okunur.
+     * Her istek tile'ı tamamlandıktan sonra depodan kendisi okur (açık dosya kanalları
+     * istekler arasında paylaşılmaz).
+     *
+     * @return tile depoya yazıldığında tamamlanan future
+     */
+    public CompletableFuture<Void> renderTileOnDemand(String inputPath, String imageId, int level, int tileX, int tileY) {
+        // Kopya görüntüler sahibinin piramidini paylaşır; anahtar piramide göre kurulmazsa
+        // sahip ve kopya üzerinden gelen istekler aynı tile'ı iki kez üretip aynı kayda yazar
+        String key = tileStore.resolve(imageId) + "/" + level + "/" + tileX + "_" + tileY;
+        TileScheduler.Priority priority = viewportTracker.activeViewport(imageId)
+                .filter(v -> v.contains(level, tileX, tileY))
+                .map(v -> TileScheduler.Priority.VIEWPORT)
+                .orElse(TileScheduler.Priority.REQUEST);
+
+        CompletableFuture<Void> render = inFlightRenders.computeIfAbsent(key, k -> tileScheduler.submit(priority, () -> {
+            // Sırada beklerken arka plan üretimi veya önceki bir istek tile'ı yazmış olabilir
+            if (!tileStore.contains(imageId, level, tileX, tileY)) {
+                renderTile(inputPath, imageId, level, tileX, tileY);
+            }
+            return null;
+        }));
+        render.whenComplete((tile, error) -> inFlightRenders.remove(key, render));
+        return render;
+    }
 
-            // BIF dosyaları için özel yapılandırma
-            if (format != null && (format.toLowerCase().contains("ventana") || format.toLowerCase().contains("bif"))) {
-                configureBifReader(reader);
+    /**
+     * Tahmini ön yükleme için tile üretir (en düşük öncelik). Etkileşimli isteklerin
+     * paylaştığı future'lara eklenmez; aksi halde gerçek bir istek düşük öncelikli işi beklerdi.
+     */
+    public CompletableFuture<Void> prefetchTile(String inputPath, String imageId, int level, int tileX, int tileY) {
+        return tileScheduler.submit(TileScheduler.Priority.PREFETCH, () -> {
+            if (!tileStore.contains(imageId, level, tileX, tileY)) {
+                renderTile(inputPath, imageId, level, tileX, tileY);
             }
+            return null;
+        });
+    }
 
-            // 2) Metadata
-            reader.setSeries(0);
-            int originalWidth  = reader.getSizeX();
-            int originalHeight = reader.getSizeY();
-            int pixelType      = reader.getPixelType();
-            int channels       = reader.getSizeC();
-
-            // 3) Hesaplamalar
-            int maxLevel = (int) Math.ceil(
-                    Math.log(Math.max(originalWidth, originalHeight) / (double) tileSize)
-                            / Math.log(2)
-            );
-            double scale = 1.0 / Math.pow(2, maxLevel - level);
-
-            int scaledWidth  = (int) (originalWidth  * scale);
-            int scaledHeight = (int) (originalHeight * scale);
-
-            // 4) Bu tile'ın koordinatları ve boyutu (scaled düzlemde)
-            int x0 = tileX * tileSize;
-            int y0 = tileY * tileSize;
-            int tw = Math.min(tileSize, scaledWidth  - x0);
-            int th = Math.min(tileSize, scaledHeight - y0);
-
-            // 5) Orijinalden parçayı oku ve küçült
-            int srcX = (int) (x0 / scale);
-            int srcY = (int) (y0 / scale);
-            int srcW = (int) (tw  / scale);
-            int srcH = (int) (th  / scale);
-
-            BufferedImage tileImage = readRegionInBlocks(
-                    reader, srcX, srcY, srcW, srcH,
-                    tw, th, pixelType, channels
-            );
-
-            // 6) Dosyaya yaz
-            Path levelDir = Paths.get(outputBasePath, imageId, String.valueOf(level));
-            Files.createDirectories(levelDir);
-            String filename = String.format("tile_%d_%d.jpg", tileX, tileY);
-            ImageIO.write(tileImage, "JPEG", levelDir.resolve(filename).toFile());
-
-            log.debug("Tile başarıyla oluşturuldu: {}", filename);
+    /** Üretimi süren bir piramidin ilerlemesi; etaSeconds hız henüz bilinmiyorsa null */
+    public record GenerationProgress(long completedTiles, long totalTiles, Long etaSeconds, boolean resumed) {}
 
-        } catch (Exception e) {
-            log.error("Tile üretim hatası: imageId={}, level={}, tileX={}, tileY={}, error={}",
-                     imageId, level, tileX, tileY, e.getMessage(), e);
-            throw e;
-        } finally {
-            // 7) Kaynakları kapat ve geri dön
-            try {
-                reader.close();
-            } catch (Exception e) {
-                log.warn("Reader kapatma hatası: {}", e.getMessage());
-            }
+    /**
+     * Görüntünün piramidi şu an üretiliyorsa ilerlemesi. ETA bu çalışmadaki üretim hızından
+     * hesaplanır; checkpoint'ten devam eden işlerde önceki çalışmanın tile'ları hıza katılmaz.
+     */
+    public Optional<GenerationProgress> progress(String imageId) {
+        PyramidJob job = activeJobs.get(tileStore.resolve(imageId));
+        if (job == null) {
+            return Optional.empty();
         }
-
-        return CompletableFuture.completedFuture(null);
+        long completed = Math.min(job.totalTiles, job.completedTiles.get());
+        long done = completed - job.resumedTiles;
+        long elapsedMs = System.currentTimeMillis() - job.startedAt;
+        Long eta = done > 0 && elapsedMs > 0
+                ? (long) Math.ceil((double) (job.totalTiles - completed) * elapsedMs / done / 1000.0)
+                : null;
+        return Optional.of(new GenerationProgress(completed, job.totalTiles, eta, job.resumedTiles > 0));
     }
 
+    /**
+     * Tek bir tile'ı kaynaktan üretip depoya yazar. Bölge, seviyeye en yakın
+     * (eşit ya da daha detaylı) native çözünürlükten okunup küçültülür.
+     *
+     * @throws IllegalArgumentException tile piramidin dışındaysa
+     * @throws TimeoutException reader havuzu tile.on-demand.reader-wait-ms içinde boşalmadıysa
+     */
+    public void renderTile(String inputPath, String imageId, int level, int tileX, int tileY) throws Exception {
+        ImageReaderPool.PooledReader borrowed = readerPool.tryBorrow(inputPath, onDemandReaderWaitMs);
+        if (borrowed == null) {
+            throw new TimeoutException("Reader havuzu dolu: " + inputPath);
+        }
+        try (ImageReaderPool.PooledReader pooled = borrowed) {
+            IFormatReader reader = pooled.get();
+            log.debug("Tile üretimi başladı: imageId={}, level={}, tileX={}, tileY={}", imageId, level, tileX, tileY);
 
+            reader.setSeries(findWSISeries(reader));
+            TilePyramid pyramid = new TilePyramid(reader.getSizeX(), reader.getSizeY(), tileSize);
+            if (!pyramid.contains(level, tileX, tileY)) {
+                throw new IllegalArgumentException(String.format(
+                        "Tile piramit dışında: level=%d, tileX=%d, tileY=%d", level, tileX, tileY));
+            }
 
+            PyramidJob job = new PyramidJob(pyramid, null, imageId, PixelConverter.PixelLayout.of(reader));
+            int resolution = nearestNativeResolution(reader, pyramid, level);
+            BufferedImage tileImage = readNativeTile(reader, job, resolution, level, tileX, tileY);
 
-
+            tileStore.write(imageId, pyramid, level, tileX, tileY, tileEncoder.encode(tileImage));
+            log.debug("Tile başarıyla oluşturuldu: imageId={}, level={}, tileX={}, tileY={}", imageId, level, tileX, tileY);
+        } catch (Exception e) {
+            log.error("Tile üretim hatası: imageId={}, level={}, tileX={}, tileY={}",
+                     imageId, level, tileX, tileY, e);
+            throw e;
+        }
+    }
 
     /**
      * Ana generateTiles metodu artık sadece inputPath ve imageId ister,
-     * outputBasePath config’ten gelir.
+     * çıktı yolları TileStore’dan gelir.
      */
 
-    public void generateTiles(String inputPath, String imageId) throws Exception {
-        ImageReader reader = new ImageReader();
+    public IngestProfiler generateTiles(String inputPath, String imageId) throws Exception {
+        IngestProfiler profiler = new IngestProfiler();
+        profiler.setPyramidMode(pyramidMode.name());
+        profiler.setTileStore(tileStore.getLayout().name());
+
+        // Havuzdaki reader'lar alt çözünürlükleri serinin resolution'ları olarak verir
+        long openStart = System.nanoTime();
+        ImageReaderPool.PooledReader pooled = readerPool.borrow(inputPath);
+        profiler.add(IngestProfiler.Stage.OPEN, System.nanoTime() - openStart);
         try {
+            IFormatReader reader = pooled.get();
             log.info("Tile üretimi başlıyor: inputPath={}, imageId={}", inputPath, imageId);
 
-            // Format kontrolü ve yapılandırma
-            String format = reader.getFormat(inputPath);
+            String format = reader.getFormat();
             log.info("Tespit edilen format: {}", format);
 
-            reader.setId(inputPath);
-
-            // BIF dosyaları için özel yapılandırma
-            if (format != null && (format.toLowerCase().contains("ventana") || format.toLowerCase().contains("bif"))) {
-                configureBifReader(reader);
-                log.info("BIF format için özel yapılandırma uygulandı");
-            }
-
             int seriesCount = reader.getSeriesCount();
             log.info("Toplam seri sayısı: {}", seriesCount);
 
-            // BIF dosyaları için sadece WSI serisini işle
-            if (format != null && format.toLowerCase().contains("ventana")) {
-                int wsiSeriesIndex = findWSISeriesInTileService(reader);
-                reader.setSeries(wsiSeriesIndex);
-                log.info("Sadece WSI serisi işlenecek: Series {}", wsiSeriesIndex);
-                generateTilesWithDownscaling(reader, imageId, outputBasePath, format);
-            } else {
-                // Diğer formatlar için tüm serileri işle
-                if (seriesCount > 1) {
-                    for (int series = 0; series < seriesCount; series++) {
-                        reader.setSeries(series);
-                        log.info("Seri {} işleniyor", series);
-                        generateTilesWithDownscaling(reader, imageId, outputBasePath, format);
-                    }
-                } else {
-                    reader.setSeries(0);
-                    generateTilesWithDownscaling(reader, imageId, outputBasePath, format);
-                }
-            }
+            // Sadece WSI serisi tile'lanır; etiket, makro ve küçük resim serileri tek görüntü
+            // olarak çıkarılır (hepsi aynı piramide yazılırsa ana görüntünün tile'larını ezer)
+            int wsiSeriesIndex = findWSISeries(reader);
+            associatedImages.extract(reader, wsiSeriesIndex, imageId);
+            // Liste önizlemesi tile üretiminden önce hazır olur
+            thumbnails.generate(reader, wsiSeriesIndex, imageId);
+            reader.setSeries(wsiSeriesIndex);
+            log.info("Sadece WSI serisi işlenecek: Series {}", wsiSeriesIndex);
+            generateTilesWithDownscaling(reader, inputPath, imageId, format, profiler);
 
-            log.info("Tile üretimi tamamlandı: imageId={}", imageId);
+            profiler.finish();
+            log.info("Tile üretimi tamamlandı: imageId={}, süre={} ms", imageId, profiler.totalMillis());
+            return profiler;
 
         } catch (Exception e) {
             log.error("Tile üretimi genel hatası: inputPath={}, imageId={}, error={}",
                      inputPath, imageId, e.getMessage(), e);
             throw e;
         } finally {
-            try {
-                reader.close();
-            } catch (Exception e) {
-                log.warn("Reader kapatma hatası: {}", e.getMessage());
-            }
+            pooled.close();
         }
     }
 
     /**
      * BIF dosyalarında WSI serisini bulur (3 kanallı olanı)
-     * Maske serilerini atlar (1 kanallı olanları)
+     * Maske serilerini atlar (1 kanallı olanları). Yardımcı görüntüler de ana seriyi buradan alır.
      */
-    private int findWSISeriesInTileService(ImageReader reader) throws Exception {
+    static int findWSISeries(IFormatReader reader) throws Exception {
         int seriesCount = reader.getSeriesCount();
 
         for (int series = 0; series < seriesCount; series++) {
@@ -228,202 +342,797 @@ public class TileService {
         return bestSeries;
     }
 
-    private void generateTilesWithDownscaling(ImageReader reader, String imageId, String outputBasePath, String format) throws Exception {
-        int originalWidth = reader.getSizeX();
-        int originalHeight = reader.getSizeY();
-        int pixelType = reader.getPixelType();
-        int channels = reader.getSizeC();
+    private void generateTilesWithDownscaling(IFormatReader reader, String inputPath, String imageId,
+                                              String format, IngestProfiler profiler) throws Exception {
+        int[] plan = switch (pyramidMode) {
+            case CASCADE -> planCascadeLevels(reader);
+            case NATIVE -> planNativeLevels(reader);
+            default -> planSourceLevels(reader);
+        };
+
+        // En detaylı seviyeler istek anında üretilecekse piramit daha kaba bir seviyede kesilir;
+        // kesilen son seviye kaynaktan okunmalıdır
+        if (onDemandEnabled && onDemandSkipLevels > 0) {
+            TilePyramid pyramid = new TilePyramid(reader.getSizeX(), reader.getSizeY(), tileSize);
+            int lastLevel = Math.max(0, pyramid.getMaxLevel() - onDemandSkipLevels);
+            plan = Arrays.copyOf(plan, lastLevel + 1);
+            if (plan[lastLevel] == LEVEL_MERGED) {
+                plan[lastLevel] = nearestNativeResolution(reader, pyramid, lastLevel);
+            }
+            log.info("Level {}..{} istek anında üretilecek", lastLevel + 1, pyramid.getMaxLevel());
+        }
 
-        log.info("Tile üretimi başlıyor - Format: {}, Boyutlar: {}x{}", format, originalWidth, originalHeight);
+        generatePyramid(reader, inputPath, imageId, format, plan, profiler);
+    }
 
-        int maxLevel = (int) Math.ceil(Math.log(Math.max(originalWidth, originalHeight) / (double) tileSize) / Math.log(2));
+    /**
+     * Her seviye orijinal çözünürlükten (resolution 0) okunup küçültülür.
+     */
+    private int[] planSourceLevels(IFormatReader reader) {
+        TilePyramid pyramid = new TilePyramid(reader.getSizeX(), reader.getSizeY(), tileSize);
+        return new int[pyramid.getMaxLevel() + 1];
+    }
 
-        for (int level = 0; level <= maxLevel; level++) {
-            double scale = 1.0 / Math.pow(2, maxLevel - level);
-            int scaledWidth = (int) (originalWidth * scale);
-            int scaledHeight = (int) (originalHeight * scale);
+    /**
+     * Sadece maxLevel kaynaktan (resolution 0) okunur, diğer tüm seviyeler birleştirilir.
+     */
+    private int[] planCascadeLevels(IFormatReader reader) {
+        TilePyramid pyramid = new TilePyramid(reader.getSizeX(), reader.getSizeY(), tileSize);
+        int[] plan = new int[pyramid.getMaxLevel() + 1];
+        Arrays.fill(plan, LEVEL_MERGED);
+        plan[pyramid.getMaxLevel()] = 0;
+        return plan;
+    }
 
-            Path levelDir = Paths.get(outputBasePath, imageId, String.valueOf(level));
-            Files.createDirectories(levelDir);
+    /**
+     * Her seviye için dosyanın kendi piramidindeki (SVS/NDPI/SCN/BIF) eşleşen çözünürlüğü seçer.
+     * Eşleşen native çözünürlüğü olmayan seviyeler bir alt seviyeden tek bir 2x adımla üretilir.
+     *
+     * Yalnızca küçültme katsayısı bir seviyeninkine NATIVE_MATCH_TOLERANCE içinde denk gelen
+     * çözünürlükler kullanılır. İki seviye arasına düşen bir çözünürlükten (ör. 3x) yeniden
+     * örneklemek kazanç getirmez: alt seviye zaten üretildiği için ondan 2x2 birleştirme ek okuma
+     * gerektirmez ve ardışık 2x2 alan ortalamaları tek bir 2^k alan ortalamasına eşittir. Böyle
+     * çözünürlükler planda atlanır ve loglanır.
+     */
+    private int[] planNativeLevels(IFormatReader reader) {
+        int fullWidth = reader.getSizeX();
+        int fullHeight = reader.getSizeY();
+        TilePyramid pyramid = new TilePyramid(fullWidth, fullHeight, tileSize);
+        int[] plan = planCascadeLevels(reader);
+
+        int originalResolution = reader.getResolution();
+        int resolutionCount = reader.getResolutionCount();
+        try {
+            for (int resolution = 1; resolution < resolutionCount; resolution++) {
+                reader.setResolution(resolution);
+                double nativeDownsample = (double) fullWidth / reader.getSizeX();
+
+                boolean matched = false;
+                for (int level = 0; level < pyramid.getMaxLevel(); level++) {
+                    double ratio = pyramid.downsample(level) / nativeDownsample;
+                    if (ratio >= 1.0 / NATIVE_MATCH_TOLERANCE && ratio <= NATIVE_MATCH_TOLERANCE) {
+                        matched = true;
+                        if (plan[level] == LEVEL_MERGED) {
+                            plan[level] = resolution;
+                            log.info("Level {} native çözünürlükten okunacak: resolution={}, boyutlar={}x{}",
+                                    level, resolution, reader.getSizeX(), reader.getSizeY());
+                        }
+                    }
+                }
+                if (!matched) {
+                    log.info("Native çözünürlük hiçbir seviyeye denk gelmiyor, kullanılmayacak: resolution={}, küçültme={}",
+                            resolution, String.format("%.2f", nativeDownsample));
+                }
+            }
+        } finally {
+            reader.setResolution(originalResolution);
+        }
 
-            log.debug("Level {} işleniyor - Ölçekli boyutlar: {}x{}", level, scaledWidth, scaledHeight);
+        log.info("Native çözünürlük sayısı: {}, seviye planı: {}", resolutionCount, Arrays.toString(plan));
+        return plan;
+    }
 
-            for (int y = 0; y < scaledHeight; y += tileSize) {
-                for (int x = 0; x < scaledWidth; x += tileSize) {
-                    int tileWidth = Math.min(tileSize, scaledWidth - x);
-                    int tileHeight = Math.min(tileSize, scaledHeight - y);
+    /**
+     * Seviyenin küçültme katsayısına eşit ya da ondan daha detaylı olan en kaba native çözünürlük.
+     */
+    private int nearestNativeResolution(IFormatReader reader, TilePyramid pyramid, int level) {
+        int originalResolution = reader.getResolution();
+        int best = 0;
+        try {
+            for (int resolution = 1; resolution < reader.getResolutionCount(); resolution++) {
+                reader.setResolution(resolution);
+                double nativeDownsample = (double) pyramid.getWidth() / reader.getSizeX();
+                if (nativeDownsample <= pyramid.downsample(level) * NATIVE_MATCH_TOLERANCE) {
+                    best = resolution;
+                }
+            }
+        } finally {
+            reader.setResolution(originalResolution);
+        }
+        return best;
+    }
 
-                    int srcX = (int) (x / scale);
-                    int srcY = (int) (y / scale);
-                    int srcWidth = (int) (tileWidth / scale);
-                    int srcHeight = (int) (tileHeight / scale);
+    /**
+     * Seviye planına göre piramidi üretir. plan[level] o seviyenin okunacağı native çözünürlüğü,
+     * LEVEL_MERGED ise bir alt seviyedeki dört tile'ın 2x2 birleşimiyle üretileceğini belirtir.
+     *
+     * Üretim iki fazdadır:
+     * 1) splitLevel ve daha detaylı seviyelerdeki alt ağaç kökleri satır bantlarına bölünür ve
+     *    tileExecutor üzerinde paralel üretilir. Bio-Formats reader'ları thread-safe olmadığından
+     *    her worker havuzdan aynı dosya için kendi reader'ını alır. splitLevel tile'larının ebeveyne
+     *    düşen yarım boyutlu çeyrekleri bellekte tutulur.
+     * 2) splitLevel'dan kaba seviyeler (birkaç düzine tile) bu çeyreklerden tek thread'de birleştirilir.
+     *
+     * Alt ağaçlar derinlik öncelikli (quadtree) gezildiği için her worker bellekte seviye başına
+     * en fazla dört kardeş tile tutar; bir ebeveyn üretildiği anda çocukları serbest kalır.
+     *
+     * Birinci fazda tüm tile'ları yazılan satırlar periyodik olarak checkpoint'e kaydedilir;
+     * üretim yarıda kalırsa bir sonraki çalışma bu satırları atlar.
+     */
+    private void generatePyramid(IFormatReader reader, String inputPath, String imageId,
+                                 String format, int[] plan, IngestProfiler profiler) throws Exception {
+        int workerCount = effectiveParallelism();
+        PyramidJob job = new PyramidJob(
+                new TilePyramid(reader.getSizeX(), reader.getSizeY(), tileSize),
+                plan, imageId, PixelConverter.PixelLayout.of(reader));
+        TilePyramid pyramid = job.pyramid;
+        job.encodes = tileEncoder.newBatch(profiler);
+        job.profiler = profiler;
+        profiler.setWorkers(workerCount);
+
+        // Önceki bir çalışma yarıda kaldıysa aynı geometri ve planla kaldığı yerden devam edilir
+        GenerationCheckpoint checkpoint = GenerationCheckpoint.resume(tileStore.checkpointPath(imageId), pyramid, plan);
+        if (checkpoint != null) {
+            job.splitLevel = checkpoint.getSplitLevel();
+            job.resumedTiles = checkpoint.getCompletedTiles();
+            job.completedTiles.set(job.resumedTiles);
+            profiler.setResumed(true);
+            log.info("Tile üretimi checkpoint'ten devam ediyor: imageId={}, tamamlanan tile={}/{}",
+                    imageId, job.resumedTiles, job.totalTiles);
+        } else {
+            job.splitLevel = chooseSplitLevel(pyramid, job.lastLevel, workerCount);
+            checkpoint = new GenerationCheckpoint(pyramid, plan, job.splitLevel);
+        }
+        job.checkpoint = checkpoint;
+        job.checkpointPath = tileStore.checkpointPath(imageId);
 
-                    BufferedImage scaledTile = readRegionInBlocks(
-                            reader, srcX, srcY, srcWidth, srcHeight,
-                            tileWidth, tileHeight, pixelType, channels
-                    );
+        log.info("Tile üretimi başlıyor - Format: {}, Boyutlar: {}x{}, maxLevel: {}, splitLevel: {}, worker: {}",
+                format, pyramid.getWidth(), pyramid.getHeight(), job.lastLevel, job.splitLevel, workerCount);
 
-                    String filename = String.format("tile_%d_%d.jpg", x / tileSize, y / tileSize);
-                    ImageIO.write(scaledTile, "JPEG", levelDir.resolve(filename).toFile());
-                }
+        activeJobs.put(imageId, job);
+        try {
+            tileStore.prepare(imageId, pyramid, job.lastLevel);
+            tileStore.beginGeneration(imageId);
+            if (tissueDetection) {
+                job.tissue = detectTissue(reader, job);
             }
-            log.debug("Level {} tamamlandı", level);
+            runPyramidJob(reader, inputPath, job, workerCount);
+        } catch (Exception e) {
+            // Kuyruktaki yazımlar bitince yazılmış satırlar bir sonraki denemede tekrar üretilmez
+            awaitEncodes(job, e);
+            saveCheckpoint(job);
+            throw e;
+        } finally {
+            activeJobs.remove(imageId, job);
+            profiler.add(IngestProfiler.Stage.ENCODE, job.encodes.encodeNanos());
+            profiler.add(IngestProfiler.Stage.WRITE, job.encodes.writeNanos());
         }
 
+        Files.deleteIfExists(job.checkpointPath);
+        reader.setResolution(0);
         log.info("Tüm tile seviyeleri tamamlandı - Format: {}", format);
     }
 
+    private void runPyramidJob(IFormatReader reader, String inputPath, PyramidJob job, int workerCount) throws Exception {
+        TilePyramid pyramid = job.pyramid;
+
+        // Faz 1: detaylı seviyeler, tile blokları halinde paralel. Satır sayısı worker başına
+        // yeterli bant çıkarmıyorsa (geniş, alçak slaytlar) satırlar sütun aralıklarına da bölünür.
+        BandQueue bands = new BandQueue();
+        int targetBands = workerCount * BANDS_PER_WORKER;
+        job.columnBands = new int[job.lastLevel + 1];
+        for (int level = job.splitLevel; level <= job.lastLevel; level++) {
+            int rows = pyramid.rows(level);
+            int columns = pyramid.columns(level);
+            int rowsPerBand = Math.max(1, rows / targetBands);
+            int rowBands = (rows + rowsPerBand - 1) / rowsPerBand;
+            int columnSplits = Math.max(1, Math.min(columns, targetBands / rowBands));
+            int columnsPerBand = (columns + columnSplits - 1) / columnSplits;
+            job.columnBands[level] = (columns + columnsPerBand - 1) / columnsPerBand;
+            for (int row = 0; row < rows; row += rowsPerBand) {
+                for (int column = 0; column < columns; column += columnsPerBand) {
+                    bands.add(new TileBand(level, row, Math.min(rows, row + rowsPerBand),
+                            column, Math.min(columns, column + columnsPerBand)));
+                }
+            }
+        }
+        log.info("Level {}..{} için {} tile bandı oluşturuldu", job.splitLevel, job.lastLevel, bands.size());
+
+        int series = reader.getSeries();
+        AtomicReference<Exception> failure = new AtomicReference<>();
+        List<CompletableFuture<Void>> workers = new ArrayList<>();
+        for (int i = 0; i < Math.min(workerCount, bands.size()); i++) {
+            workers.add(CompletableFuture.runAsync(
+                    () -> runBandWorker(job, inputPath, series, bands, failure), tileExecutor));
+        }
+        CompletableFuture.allOf(workers.toArray(new CompletableFuture[0])).join();
+        if (failure.get() != null) {
+            throw failure.get();
+        }
+        // Reader alamayan worker'lardan kalan bantlar
+        processBands(reader, job, bands, failure);
+
+        // Faz 2: splitLevel'dan kaba seviyeler, worker'ların bıraktığı çeyreklerden
+        for (int level = 0; level < job.splitLevel; level++) {
+            for (int y = 0; y < pyramid.rows(level); y++) {
+                for (int x = firstRootColumn(job, level, y); x < pyramid.columns(level); x++) {
+                    buildCascadeTile(reader, job, level, x, y, null);
+                }
+            }
+        }
+
+        // Kodlama/yazma kuyruğunda kalan tile'lar diske yazılana kadar beklenir
+        job.encodes.await();
+        tileStore.flush(job.imageId);
+    }
+
     /**
-     * BIF dosyaları için özel reader yapılandırması
+     * Bir worker: kendi reader'ını açar ve kuyruk boşalana kadar bant alır.
+     * Bir worker hata alırsa diğerleri yeni bant almayı bırakır.
      */
-    private void configureBifReader(ImageReader reader) {
+    private void runBandWorker(PyramidJob job, String inputPath, int series,
+                               BandQueue bands, AtomicReference<Exception> failure) {
+        ImageReaderPool.PooledReader pooled = null;
         try {
-            log.info("BIF reader yapılandırması uygulanıyor");
-            reader.setMetadataFiltered(true);
-            reader.setOriginalMetadataPopulated(true);
-            reader.setNormalized(false);
-            reader.setGroupFiles(false); // BIF dosyaları için grup dosya desteğini kapat
+            long openStart = System.nanoTime();
+            pooled = readerPool.tryBorrow(inputPath, WORKER_BORROW_TIMEOUT_MS);
+            job.profiler.add(IngestProfiler.Stage.OPEN, System.nanoTime() - openStart);
+            if (pooled == null) {
+                // Havuz sınırda; kalan bantları diğer worker'lar ve çağıran thread üstlenir
+                log.warn("Tile worker reader alamadı, çıkılıyor: imageId={}", job.imageId);
+                return;
+            }
+            IFormatReader workerReader = pooled.get();
+            workerReader.setSeries(series);
+            processBands(workerReader, job, bands, failure);
         } catch (Exception e) {
-            log.warn("BIF reader yapılandırma hatası: {}", e.getMessage());
+            log.error("Tile worker hatası: imageId={}, error={}", job.imageId, e.getMessage(), e);
+            failure.compareAndSet(null, e);
+        } finally {
+            if (pooled != null) {
+                pooled.close();
+            }
         }
     }
 
-    private BufferedImage createImageFromBytes(byte[] bytes, int width, int height, int pixelType, int channels) {
-        try {
-            int bpp = FormatTools.getBytesPerPixel(pixelType);
-            BufferedImage img = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
-            int[] pixelBuffer = new int[width * height];
-
-            // BIF dosyaları için güvenli pixel okuma
-            int expectedSize = width * height * channels * bpp;
-            if (bytes.length < expectedSize) {
-                log.warn("Byte array boyutu beklenen değerden küçük: {} < {}, varsayılan renk kullanılıyor",
-                        bytes.length, expectedSize);
-                // Varsayılan gri renk
-                for (int i = 0; i < pixelBuffer.length; i++) {
-                    pixelBuffer[i] = 0x808080; // Gri renk
+    private void processBands(IFormatReader reader, PyramidJob job, BandQueue bands,
+                              AtomicReference<Exception> failure) throws Exception {
+        TileBand band;
+        while (failure.get() == null && (band = bands.poll(viewportTracker.activeViewport(job.imageId))) != null) {
+            for (int y = band.rowStart; y < band.rowEnd; y++) {
+                if (job.checkpoint.isRowDone(band.level, y)) {
+                    if (band.level == job.splitLevel) {
+                        restoreQuarters(job, y, band.colStart, band.colEnd);
+                    }
+                    continue;
+                }
+                RowProgress row = job.rowProgress(band.level, y);
+                for (int x = Math.max(band.colStart, firstRootColumn(job, band.level, y)); x < band.colEnd; x++) {
+                    BufferedImage tile = buildCascadeTile(reader, job, band.level, x, y, row);
+                    if (band.level == job.splitLevel && parentMerges(job, band.level, x, y)) {
+                        long start = System.nanoTime();
+                        job.putQuarter(x, y, Downsampler.halve(tile, (tile.getWidth() + 1) / 2, (tile.getHeight() + 1) / 2));
+                        job.profiler.add(IngestProfiler.Stage.SCALE, System.nanoTime() - start);
+                    }
                 }
-                img.setRGB(0, 0, width, height, pixelBuffer, 0, width);
-                return img;
+                // Bandın bu satırdaki tile'ları kuyruğa verildi; satırın son yazımı checkpoint'e işler
+                rowWritten(job, row);
             }
+            log.debug("Bant tamamlandı: level={}, satırlar={}..{}, sütunlar={}..{}",
+                    band.level, band.rowStart, band.rowEnd - 1, band.colStart, band.colEnd - 1);
+        }
+    }
 
-            // BIF dosyaları genellikle interleaved değildir (planar format)
-            boolean interleaved = channels <= 1;
-            boolean isRGB = channels >= 3;
-
-            int planeSize = width * height * bpp;
-
-            for (int y = 0; y < height; y++) {
-                for (int x = 0; x < width; x++) {
-                    int index = y * width + x;
-                    int r = 0, g = 0, b = 0;
-
-                    try {
-                        if (channels == 1) {
-                            // Grayscale - tek kanal
-                            int offset = index * bpp;
-                            if (offset < bytes.length) {
-                                int gray = bytes[offset] & 0xFF;
-                                if (bpp > 1 && offset + 1 < bytes.length) {
-                                    gray = ((bytes[offset + 1] & 0xFF) << 8) | gray;
-                                    gray = gray >> 8; // 16-bit'i 8-bit'e çevir
-                                }
-                                r = g = b = gray;
-                            }
-                        } else if (isRGB) {
-                            // RGB channels
-                            if (interleaved) {
-                                // RGBRGBRGB... (nadiren kullanılır BIF'de)
-                                int offset = index * channels * bpp;
-                                if (offset + (channels * bpp) <= bytes.length) {
-                                    r = bytes[offset] & 0xFF;
-                                    g = (channels > 1 && offset + bpp < bytes.length) ? bytes[offset + bpp] & 0xFF : r;
-                                    b = (channels > 2 && offset + 2 * bpp < bytes.length) ? bytes[offset + 2 * bpp] & 0xFF : r;
-                                }
-                            } else {
-                                // RRR...GGG...BBB... (BIF dosyalarında yaygın)
-                                int offset = index * bpp;
-                                if (offset < bytes.length) {
-                                    r = bytes[offset] & 0xFF;
-                                    // Güvenli kanal erişimi
-                                    if (channels > 1 && offset + planeSize < bytes.length) {
-                                        g = bytes[offset + planeSize] & 0xFF;
-                                    } else {
-                                        g = r; // Fallback
-                                    }
-
-                                    if (channels > 2 && offset + 2 * planeSize < bytes.length) {
-                                        b = bytes[offset + 2 * planeSize] & 0xFF;
-                                    } else {
-                                        b = r; // Fallback
-                                    }
-                                }
-                            }
-                        } else {
-                            // Fallback - tek kanal olarak işle
-                            int offset = index * bpp;
-                            if (offset < bytes.length) {
-                                int gray = bytes[offset] & 0xFF;
-                                r = g = b = gray;
-                            }
-                        }
+    /**
+     * Checkpoint'te tamamlanmış görünen splitLevel satırının [colStart, colEnd) aralığında
+     * ebeveyne düşen çeyreklerini depodaki tile'lardan yeniden oluşturur.
+     */
+    private void restoreQuarters(PyramidJob job, int tileY, int colStart, int colEnd) throws IOException {
+        int level = job.splitLevel;
+        for (int x = Math.max(colStart, firstRootColumn(job, level, tileY)); x < colEnd; x++) {
+            if (!parentMerges(job, level, x, tileY)) {
+                continue;
+            }
+            Resource stored = tileStore.find(job.imageId, level, x, tileY).orElseThrow(() -> new IOException(
+                    "Checkpoint'te tamamlanmış tile depoda yok: " + job.imageId + "/" + level + "/" + x + "_" + tileY));
+            BufferedImage tile;
+            try (InputStream in = stored.getInputStream()) {
+                tile = ImageIO.read(in);
+            }
+            if (tile == null) {
+                throw new IOException("Tile çözümlenemedi: " + stored.getDescription());
+            }
+            if (tile.getType() != job.layout.imageType()) {
+                BufferedImage converted = PixelConverter.createImage(tile.getWidth(), tile.getHeight(), job.layout);
+                converted.createGraphics().drawImage(tile, 0, 0, null);
+                tile = converted;
+            }
+            job.putQuarter(x, tileY, Downsampler.halve(tile, (tile.getWidth() + 1) / 2, (tile.getHeight() + 1) / 2));
+        }
+    }
 
-                        pixelBuffer[index] = (r << 16) | (g << 8) | b;
+    /**
+     * Satırın bir tile'ı yazıldı (ya da satırın tüm tile'ları kuyruğa verildi). Sayaç sıfırlandığında
+     * satırın tamamı depodadır ve checkpoint'e işlenir.
+     */
+    private void rowWritten(PyramidJob job, RowProgress row) {
+        if (row.pending.decrementAndGet() == 0) {
+            job.rows.remove(quarterKey(row.row, row.level), row);
+            job.checkpoint.markRow(row.level, row.row, row.tiles.get());
+            if (System.currentTimeMillis() - job.lastCheckpointAt >= checkpointIntervalSeconds * 1000L) {
+                saveCheckpoint(job);
+            }
+        }
+    }
 
-                    } catch (Exception e) {
-                        // Hata durumunda varsayılan renk
-                        pixelBuffer[index] = 0x808080;
+    /**
+     * Hata yolunda kodlama/yazma kuyruğunun boşalmasını bekler. Kuyruktaki bir yazım hatası
+     * asıl hatanın yerine geçmez, ona bastırılmış hata olarak eklenir.
+     */
+    private static void awaitEncodes(PyramidJob job, Exception failure) {
+        if (job.encodes == null) {
+            return;
+        }
+        try {
+            job.encodes.await();
+        } catch (IOException e) {
+            if (e != failure) {
+                failure.addSuppressed(e);
+            }
+        }
+    }
+
+    /**
+     * Depoyu eşitleyip checkpoint'i yazar. Hata üretimi durdurmaz; en kötü durumda bir
+     * sonraki çalışma daha geriden başlar.
+     */
+    private void saveCheckpoint(PyramidJob job) {
+        if (job.checkpoint == null) {
+            return;
+        }
+        synchronized (job.checkpoint) {
+            try {
+                tileStore.sync(job.imageId);
+                job.checkpoint.saveIfDirty(job.checkpointPath);
+                job.lastCheckpointAt = System.currentTimeMillis();
+            } catch (IOException e) {
+                log.warn("Checkpoint yazılamadı: imageId={}, error={}", job.imageId, e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * Tile'ın alt ağacındaki (birleştirme ile üretilen alt seviyeler dahil) tile sayısı.
+     */
+    private long subtreeTileCount(PyramidJob job, int level, int tileX, int tileY) {
+        TilePyramid pyramid = job.pyramid;
+        long count = 0;
+        long x0 = tileX, y0 = tileY, x1 = tileX + 1L, y1 = tileY + 1L;
+        for (int l = level; ; l++) {
+            count += Math.max(0, Math.min(x1, pyramid.columns(l)) - x0) * Math.max(0, Math.min(y1, pyramid.rows(l)) - y0);
+            if (l >= job.lastLevel || job.plan[l] != LEVEL_MERGED) {
+                return count;
+            }
+            x0 *= 2;
+            y0 *= 2;
+            x1 *= 2;
+            y1 *= 2;
+        }
+    }
+
+    /**
+     * Paralel fazın başlayacağı seviye: worker başına yeterli iş çıkaran en kaba seviye.
+     * Daha kaba seviyeler az sayıda tile içerdiğinden ikinci fazda tek thread'de üretilir.
+     * Bantlar gerektiğinde sütunlara da bölündüğü için satır sayısı değil tile sayısı belirleyicidir;
+     * daha detaylı bir seviye seçmek bellekte tutulan çeyrekleri büyütürdü.
+     */
+    private int chooseSplitLevel(TilePyramid pyramid, int lastLevel, int workerCount) {
+        for (int level = 0; level < lastLevel; level++) {
+            if (pyramid.tileCount(level) >= (long) workerCount * BANDS_PER_WORKER) {
+                return level;
+            }
+        }
+        return lastLevel;
+    }
+
+    private int effectiveParallelism() {
+        return parallelism > 0 ? parallelism : Runtime.getRuntime().availableProcessors();
+    }
+
+    /**
+     * Ebeveyni 2x2 birleştirme ile üretiliyorsa tile o ebeveynin alt ağacındadır.
+     */
+    private boolean parentMerges(PyramidJob job, int level, int tileX, int tileY) {
+        return level > 0 && job.plan[level - 1] == LEVEL_MERGED && !job.pyramid.isRoot(level, tileX, tileY);
+    }
+
+    /**
+     * Verilen satırda kendi alt ağacının kökü olan ilk sütun. splitLevel'daki tüm tile'lar
+     * paralel fazın kökleridir; diğer seviyelerde ebeveyni birleştirilmeyen tile'lar köktür
+     * (level 0, native okunan bir seviyenin hemen altı ve kenarda ebeveyni olmayan tile'lar).
+     */
+    private int firstRootColumn(PyramidJob job, int level, int tileY) {
+        if (level == job.splitLevel || level == 0 || job.plan[level - 1] != LEVEL_MERGED) {
+            return 0;
+        }
+        return tileY >= 2 * job.pyramid.rows(level - 1) ? 0 : 2 * job.pyramid.columns(level - 1);
+    }
+
+    private static long quarterKey(int tileX, int tileY) {
+        return ((long) tileX << 32) | (tileY & 0xFFFFFFFFL);
+    }
+
+    /**
+     * (level, tileX, tileY) tile'ını ve birleştirme için gereken alt tile'ları üretip diske yazar,
+     * ebeveynin birleştirebilmesi için üretilen tile'ı döndürür.
+     */
+    private BufferedImage buildCascadeTile(IFormatReader reader, PyramidJob job, int level, int tileX, int tileY,
+                                           RowProgress row) throws Exception {
+        TilePyramid pyramid = job.pyramid;
+        if (!pyramid.contains(level, tileX, tileY)) {
+            return null;
+        }
+
+        int tileWidth = pyramid.tileWidth(level, tileX);
+        int tileHeight = pyramid.tileHeight(level, tileY);
+
+        // Doku dışındaki alt ağaçlar kaynaktan okunmaz ve yazılmaz; depo bu tile'ları maskeden
+        // arka plan olarak servis eder. Ebeveyn birleştirmesi için arka plan rengi döndürülür.
+        if (job.tissue != null && level >= job.splitLevel && !job.tissue.intersects(level, tileX, tileY)) {
+            long skipped = subtreeTileCount(job, level, tileX, tileY);
+            job.tileDone(row, skipped);
+            job.profiler.tilesSkipped(skipped);
+            return job.backgroundTile(tileWidth, tileHeight);
+        }
+
+        // Arka plan üretimi tile sınırlarında etkileşimli işlere yol verir
+        tileScheduler.yieldToInteractive();
+
+        // Seviye süresi alt seviyelerde geçen süre hariç tutularak ölçülür
+        long start = System.nanoTime();
+        long childNanos = 0;
+        BufferedImage tile;
+
+        if (job.plan[level] != LEVEL_MERGED) {
+            tile = readNativeTile(reader, job, job.plan[level], level, tileX, tileY);
+        } else if (level + 1 == job.splitLevel) {
+            // Çocuklar paralel fazda üretildi, sadece yarım boyutlu çeyrekleri birleştirilir
+            tile = PixelConverter.createImage(tileWidth, tileHeight, job.layout);
+            for (int dy = 0; dy < 2; dy++) {
+                for (int dx = 0; dx < 2; dx++) {
+                    BufferedImage quarter = job.takeQuarter(2 * tileX + dx, 2 * tileY + dy);
+                    if (quarter != null) {
+                        copyInto(tile, quarter, dx * tileSize / 2, dy * tileSize / 2);
                     }
                 }
             }
+        } else {
+            int childLevel = level + 1;
+            int mosaicWidth = Math.min(2 * tileSize, pyramid.levelWidth(childLevel) - 2 * tileX * tileSize);
+            int mosaicHeight = Math.min(2 * tileSize, pyramid.levelHeight(childLevel) - 2 * tileY * tileSize);
+            BufferedImage mosaic = PixelConverter.createImage(mosaicWidth, mosaicHeight, job.layout);
+            long mosaicBytes = IngestProfiler.bytes(mosaic);
+            job.profiler.bufferAcquired(mosaicBytes);
+            for (int dy = 0; dy < 2; dy++) {
+                for (int dx = 0; dx < 2; dx++) {
+                    long childStart = System.nanoTime();
+                    BufferedImage child = buildCascadeTile(reader, job, childLevel, 2 * tileX + dx, 2 * tileY + dy, row);
+                    childNanos += System.nanoTime() - childStart;
+                    if (child != null) {
+                        copyInto(mosaic, child, dx * tileSize, dy * tileSize);
+                    }
+                }
+            }
+            long scaleStart = System.nanoTime();
+            tile = Downsampler.halve(mosaic, tileWidth, tileHeight);
+            job.profiler.add(IngestProfiler.Stage.SCALE, System.nanoTime() - scaleStart);
+            job.profiler.bufferReleased(mosaicBytes);
+        }
+
+        int background = blankDetection ? BlankTiles.backgroundColor(tile, blankMinBrightness, blankMaxStdDev) : -1;
+        if (background >= 0 && tileStore.markBlank(job.imageId, pyramid, level, tileX, tileY, background)) {
+            job.profiler.tileBlank();
+        } else if (row != null) {
+            row.pending.incrementAndGet();
+            job.encodes.submit(tile, jpeg -> {
+                tileStore.write(job.imageId, pyramid, level, tileX, tileY, jpeg);
+                job.profiler.tileWritten();
+                rowWritten(job, row);
+            });
+        } else {
+            job.encodes.submit(tile, jpeg -> {
+                tileStore.write(job.imageId, pyramid, level, tileX, tileY, jpeg);
+                job.profiler.tileWritten();
+            });
+        }
+        job.tileDone(row, 1);
+        job.profiler.level(level, System.nanoTime() - start - childNanos);
+        return tile;
+    }
 
-            img.setRGB(0, 0, width, height, pixelBuffer, 0, width);
-            return img;
+    /** Aynı türdeki görüntüyü raster kopyasıyla (x, y) konumuna yerleştirir; taşan kısım kırpılır */
+    private static void copyInto(BufferedImage target, BufferedImage source, int x, int y) {
+        target.getRaster().setRect(x, y, source.getRaster());
+    }
 
-        } catch (Exception e) {
-            log.error("createImageFromBytes hatası: width={}, height={}, channels={}, bytesLength={}",
-                     width, height, channels, bytes.length, e);
-
-            // Fallback: Boş görüntü oluştur
-            BufferedImage fallbackImg = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
-            int[] fallbackPixels = new int[width * height];
-            for (int i = 0; i < fallbackPixels.length; i++) {
-                fallbackPixels[i] = 0x808080; // Gri renk
+    /**
+     * Düşük çözünürlüklü genel görünümden doku maskesini çıkarıp depoya kaydeder. Dosyada
+     * genel görünüme yakın bir native çözünürlük yoksa (tam çözünürlükten okumak gerekirse)
+     * ya da maskede hiç doku çıkmazsa maske kullanılmaz.
+     */
+    private TissueMask detectTissue(IFormatReader reader, PyramidJob job) throws Exception {
+        TilePyramid pyramid = job.pyramid;
+        int level = TissueMask.overviewLevel(pyramid, tissueOverviewSize);
+        if (level >= job.lastLevel) {
+            return null;
+        }
+
+        int resolution = nearestNativeResolution(reader, pyramid, level);
+        reader.setResolution(resolution);
+        int nativeWidth = reader.getSizeX();
+        int nativeHeight = reader.getSizeY();
+        if ((double) pyramid.getWidth() / nativeWidth * MAX_OVERVIEW_OVERREAD < pyramid.downsample(level)) {
+            log.info("Doku maskesi atlandı, genel görünüm için uygun native çözünürlük yok: imageId={}", job.imageId);
+            return null;
+        }
+
+        long start = System.currentTimeMillis();
+        BufferedImage overview = readRegionInBlocks(reader, 0, 0, nativeWidth, nativeHeight,
+                pyramid.levelWidth(level), pyramid.levelHeight(level), job);
+        TissueMask mask = TissueMask.detect(pyramid, level, overview, tissueMinScore, tissueDilation);
+        if (mask.tissueFraction() == 0) {
+            log.warn("Doku maskesinde doku bulunamadı, maske kullanılmayacak: imageId={}", job.imageId);
+            return null;
+        }
+        tileStore.saveTissueMask(job.imageId, mask);
+        log.info("Doku maskesi: imageId={}, level={}, doku oranı={}, süre={} ms", job.imageId, level,
+                String.format("%.3f", mask.tissueFraction()), System.currentTimeMillis() - start);
+        return mask;
+    }
+
+    /**
+     * Tile bölgesini verilen native çözünürlükten okur. Native boyutlar seviye boyutlarıyla
+     * birebir örtüşmeyebilir (NDPI/SCN yuvarlamaları), bu yüzden bölge oranla eşlenir.
+     */
+    private BufferedImage readNativeTile(IFormatReader reader, PyramidJob job, int resolution, int level,
+                                         int tileX, int tileY) throws Exception {
+        TilePyramid pyramid = job.pyramid;
+        reader.setResolution(resolution);
+        int nativeWidth = reader.getSizeX();
+        int nativeHeight = reader.getSizeY();
+
+        double fx = (double) nativeWidth * pyramid.downsample(level) / pyramid.getWidth();
+        double fy = (double) nativeHeight * pyramid.downsample(level) / pyramid.getHeight();
+
+        int tileWidth = pyramid.tileWidth(level, tileX);
+        int tileHeight = pyramid.tileHeight(level, tileY);
+        int srcX = Math.min(nativeWidth - 1, (int) (tileX * tileSize * fx));
+        int srcY = Math.min(nativeHeight - 1, (int) (tileY * tileSize * fy));
+        int srcWidth = Math.max(1, Math.min(nativeWidth, (int) Math.ceil((tileX * tileSize + tileWidth) * fx)) - srcX);
+        int srcHeight = Math.max(1, Math.min(nativeHeight, (int) Math.ceil((tileY * tileSize + tileHeight) * fy)) - srcY);
+
+        return readRegionInBlocks(
+                reader, srcX, srcY, srcWidth, srcHeight,
+                tileWidth, tileHeight, job
+        );
+    }
+
+    /**
+     * Tek bir görüntü serisi için piramit üretim durumu.
+     */
+    private static class PyramidJob {
+        final TilePyramid pyramid;
+        final int[] plan;
+        /** Üretilecek en detaylı seviye (istek anında üretim açıksa maxLevel'dan küçük olabilir) */
+        final int lastLevel;
+        final String imageId;
+        /** openBytes bayt düzeni; üretilen tüm görüntüler layout.imageType() türündedir */
+        final PixelConverter.PixelLayout layout;
+        int splitLevel;
+        /** splitLevel tile'larının ebeveyn için yarım boyutlu kopyaları, (x, y) anahtarıyla */
+        final Map<Long, BufferedImage> quarters = new ConcurrentHashMap<>();
+        /** Üretilen tile'ların kodlama/yazma grubu */
+        TileEncoder.Batch encodes;
+        /** Performans ölçümleri; tek tile üretiminde kaydedilmez */
+        IngestProfiler profiler = new IngestProfiler();
+        /** Doku maskesi; null ise tüm tile'lar kaynaktan okunur */
+        TissueMask tissue;
+        /** Doku dışı tile'lar için salt okunur arka plan görüntüleri, (genişlik, yükseklik) anahtarıyla */
+        final Map<Long, BufferedImage> backgroundTiles = new ConcurrentHashMap<>();
+        /** Seviye başına bir satırı paylaşan sütun bandı sayısı */
+        int[] columnBands;
+        /** Yazımı süren paralel faz satırları, (satır, seviye) anahtarıyla */
+        final Map<Long, RowProgress> rows = new ConcurrentHashMap<>();
+        /** Tamamlanan paralel faz satırları; null ise tek tile üretimi */
+        GenerationCheckpoint checkpoint;
+        Path checkpointPath;
+        volatile long lastCheckpointAt = System.currentTimeMillis();
+        /** İlerleme: üretilen (ya da doku dışı olduğu için atlanan) tile sayısı */
+        final long totalTiles;
+        final AtomicLong completedTiles = new AtomicLong();
+        /** Checkpoint'ten devralınan tile sayısı ve bu çalışmanın başlangıcı (ETA için) */
+        long resumedTiles;
+        final long startedAt = System.currentTimeMillis();
+
+        PyramidJob(TilePyramid pyramid, int[] plan, String imageId, PixelConverter.PixelLayout layout) {
+            this.pyramid = pyramid;
+            this.plan = plan;
+            this.lastLevel = plan != null ? plan.length - 1 : pyramid.getMaxLevel();
+            this.imageId = imageId;
+            this.layout = layout;
+            long total = 0;
+            for (int level = 0; level <= lastLevel; level++) {
+                total += pyramid.tileCount(level);
+            }
+            this.totalTiles = total;
+        }
+
+        /** Satırın ilerlemesi; satırı paylaşan her sütun bandı bir pay tutar */
+        RowProgress rowProgress(int level, int row) {
+            return rows.computeIfAbsent(quarterKey(row, level), k -> new RowProgress(level, row, columnBands[level]));
+        }
+
+        void tileDone(RowProgress row, long tiles) {
+            completedTiles.addAndGet(tiles);
+            if (row != null) {
+                row.tiles.addAndGet(tiles);
+            }
+        }
+
+        /** splitLevel tile'ının çeyreğini ebeveyn birleştirmesine kadar saklar */
+        void putQuarter(int tileX, int tileY, BufferedImage quarter) {
+            profiler.bufferAcquired(IngestProfiler.bytes(quarter));
+            quarters.put(quarterKey(tileX, tileY), quarter);
+        }
+
+        BufferedImage takeQuarter(int tileX, int tileY) {
+            BufferedImage quarter = quarters.remove(quarterKey(tileX, tileY));
+            if (quarter != null) {
+                profiler.bufferReleased(IngestProfiler.bytes(quarter));
+            }
+            return quarter;
+        }
+
+        BufferedImage backgroundTile(int width, int height) {
+            return backgroundTiles.computeIfAbsent(quarterKey(width, height), k -> {
+                BufferedImage image = PixelConverter.createImage(width, height, layout);
+                byte[] data = ((DataBufferByte) image.getRaster().getDataBuffer()).getData();
+                int rgb = tissue.getBackgroundRgb();
+                if (layout.isGray()) {
+                    Arrays.fill(data, (byte) (((rgb >> 16 & 0xFF) + (rgb >> 8 & 0xFF) + (rgb & 0xFF)) / 3));
+                } else {
+                    for (int i = 0; i < data.length; i += 3) {
+                        data[i] = (byte) rgb;
+                        data[i + 1] = (byte) (rgb >> 8);
+                        data[i + 2] = (byte) (rgb >> 16);
+                    }
+                }
+                return image;
+            });
+        }
+    }
+
+    /**
+     * Paralel fazda bir kök satırı: yazılmayı bekleyen tile sayısı ve satırda üretilen tile sayısı.
+     * Sayaç, satırı paylaşan her sütun bandının kendi tile'larını kuyruğa verirken tuttuğu birer
+     * payla başlar.
+     */
+    private static final class RowProgress {
+        final int level;
+        final int row;
+        final AtomicInteger pending;
+        final AtomicLong tiles = new AtomicLong();
+
+        RowProgress(int level, int row, int shares) {
+            this.level = level;
+            this.row = row;
+            this.pending = new AtomicInteger(shares);
+        }
+    }
+
+    /** Bir seviyenin [rowStart, rowEnd) x [colStart, colEnd) tile bloğu */
+    private record TileBand(int level, int rowStart, int rowEnd, int colStart, int colEnd) {}
+
+    /**
+     * Worker'ların paylaştığı bant kuyruğu. Görüntü o an izleniyorsa viewport ile kesişen
+     * bantlar önce verilir, diğerleri sırayla.
+     */
+    private static class BandQueue {
+        private final Deque<TileBand> bands = new ArrayDeque<>();
+
+        synchronized void add(TileBand band) {
+            bands.addLast(band);
+        }
+
+        synchronized int size() {
+            return bands.size();
+        }
+
+        synchronized TileBand poll(Optional<ViewportTracker.Viewport> viewport) {
+            if (viewport.isPresent()) {
+                Iterator<TileBand> it = bands.iterator();
+                while (it.hasNext()) {
+                    TileBand band = it.next();
+                    if (viewport.get().intersectsTiles(band.level, band.colStart, band.colEnd, band.rowStart, band.rowEnd)) {
+                        it.remove();
+                        return band;
+                    }
+                }
             }
-            fallbackImg.setRGB(0, 0, width, height, fallbackPixels, 0, width);
-            return fallbackImg;
+            return bands.pollFirst();
         }
     }
 
+    /**
+     * Kaynak bölgeyi blockSize'lık bloklar halinde okuyup hedef boyuta yerleştirir.
+     * Okuma tamponu ve blok görüntüsü çağrı başına bir kez alınıp bloklar arasında tekrar
+     * kullanılır. Bloklar doğrudan sonuç raster'ına çevrilir; ölçek gerekiyorsa blok
+     * görüntüsüne çevrilip alan ortalamasıyla biriktirilir. Kullanılan tamponlar okuma
+     * süresince profiler'a sayılır.
+     */
     private BufferedImage readRegionInBlocks(
-            ImageReader reader,
+            IFormatReader reader,
             int startX, int startY,
             int srcWidth, int srcHeight,
             int targetWidth, int targetHeight,
-            int pixelType, int channels
+            PyramidJob job
     ) throws Exception {
-        BufferedImage result = new BufferedImage(targetWidth, targetHeight, BufferedImage.TYPE_INT_RGB);
-        double xScale = (double) targetWidth / srcWidth;
-        double yScale = (double) targetHeight / srcHeight;
-
-        for (int y = 0; y < srcHeight; y += blockSize) {
-            for (int x = 0; x < srcWidth; x += blockSize) {
-                int blockWidth = Math.min(blockSize, srcWidth - x);
-                int blockHeight = Math.min(blockSize, srcHeight - y);
-                int fileX = startX + x;
-                int fileY = startY + y;
-
-                byte[] blockBytes = reader.openBytes(0, fileX, fileY, blockWidth, blockHeight);
-                BufferedImage blockImage = createImageFromBytes(blockBytes, blockWidth, blockHeight, pixelType, channels);
-
-                int destX = (int) (x * xScale);
-                int destY = (int) (y * yScale);
-                int destW = (int) (blockWidth * xScale);
-                int destH = (int) (blockHeight * yScale);
-
-                result.getGraphics().drawImage(blockImage, destX, destY, destW, destH, null);
+        PixelConverter.PixelLayout layout = job.layout;
+        IngestProfiler profiler = job.profiler;
+        boolean unscaled = srcWidth == targetWidth && srcHeight == targetHeight;
+        BufferedImage result = unscaled ? PixelConverter.createImage(targetWidth, targetHeight, layout) : null;
+        Downsampler.AreaAverager averager = unscaled ? null : new Downsampler.AreaAverager(
+                srcWidth, srcHeight, targetWidth, targetHeight, layout.isGray() ? 1 : 3);
+        int maxBlockWidth = Math.min(blockSize, srcWidth);
+        int maxBlockHeight = Math.min(blockSize, srcHeight);
+        byte[] buffer = PixelConverter.readBuffer(layout.bufferSize(maxBlockWidth, maxBlockHeight));
+        BufferedImage block = unscaled ? null : PixelConverter.blockImage(maxBlockWidth, maxBlockHeight, layout);
+        long buffers = buffer.length + (unscaled ? IngestProfiler.bytes(result) : IngestProfiler.bytes(block) + averager.bytes());
+        profiler.bufferAcquired(buffers);
+        try {
+            for (int y = 0; y < srcHeight; y += blockSize) {
+                for (int x = 0; x < srcWidth; x += blockSize) {
+                    int blockWidth = Math.min(blockSize, srcWidth - x);
+                    int blockHeight = Math.min(blockSize, srcHeight - y);
+
+                    int size = layout.bufferSize(blockWidth, blockHeight);
+                    long start = System.nanoTime();
+                    PixelConverter.read(reader, layout, buffer, startX + x, startY + y, blockWidth, blockHeight);
+                    long read = System.nanoTime();
+                    profiler.add(IngestProfiler.Stage.READ, read - start);
+                    profiler.bytesRead(size);
+
+                    if (unscaled) {
+                        PixelConverter.convert(buffer, blockWidth, blockHeight, layout, result, x, y);
+                        profiler.add(IngestProfiler.Stage.CONVERT, System.nanoTime() - read);
+                    } else {
+                        PixelConverter.convert(buffer, blockWidth, blockHeight, layout, block, 0, 0);
+                        long converted = System.nanoTime();
+                        profiler.add(IngestProfiler.Stage.CONVERT, converted - read);
+                        averager.add(block, blockWidth, blockHeight, x, y);
+                        profiler.add(IngestProfiler.Stage.SCALE, System.nanoTime() - converted);
+                    }
+                }
             }
+            if (unscaled) {
+                return result;
+            }
+            long start = System.nanoTime();
+            BufferedImage scaled = averager.toImage(layout.imageType());
+            profiler.add(IngestProfiler.Stage.SCALE, System.nanoTime() - start);
+            return scaled;
+        } finally {
+            profiler.bufferReleased(buffers);
         }
-        return result;
     }
 }
@@ -0,0 +1,743 @@
+package com.cvlab.spring.LaPatho;
+
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.io.AbstractResource;
+import org.springframework.core.io.ByteArrayResource;
+import org.springframework.core.io.Resource;
+import org.springframework.stereotype.Component;
+
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferByte;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Comparator;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Stream;
+
+/**
+ * Üretilen tile'ların saklandığı yer.
+ *
+ * DIRECTORY: her tile ayrı dosya, {output-base-path}/{imageId}/{level}/tile_X_Y.jpg.
+ * PACK: her görüntü için tek bir {output-base-path}/{imageId}.pack dosyası (bkz. TilePack);
+ * büyük slaytlarda yüz binlerce küçük dosya ve istek başına stat + open maliyeti ortadan kalkar.
+ *
+ * Okuma her iki düzene de bakar; PACK'e geçildiğinde eski dizin deposundaki görüntüler
+ * dönüştürülene kadar (TilePackConverter) servis edilmeye devam eder.
+ *
+ * Boş (arka plan) tile'lar hiç yazılmaz, BlankTiles kümesinde işaretlenir ve görüntünün
+ * arka plan renginde önbellekteki tek tip bir JPEG olarak servis edilir. Küçük tile'lar
+ * üretim sırasında içerik özetiyle tekilleştirilir: aynı içerik pakette tek kopya olarak
+ * tutulur, dizin deposunda hard link ile paylaşılır.
+ *
+ * Görüntünün doku maskesi (TissueMask) varsa, depoda bulunmayan ve maskeye göre doku
+ * içermeyen tile'lar da arka plan tile'ı olarak servis edilir.
+ *
+ * Aynı içerikle yeniden yüklenen görüntüler ilk kopyanın piramidini paylaşır (bkz. share());
+ * tüm public metotlar görüntü ID'sini önce piramidin sahibine çözer.
+ *
+ * Paketten ya da dizinden okunan tile'lar ikinci kez istendiklerinde TileCache'e alınır;
+ * sık istenenler sonraki isteklerde diske gidilmeden servis edilir, ilk istek ise kopyasız
+ * (sendfile/transferTo) servis edilir. Yazma ve silme önbelleği de günceller.
+ */
+@Component
+@Slf4j
+public class TileStore {
+
+    public enum Layout { DIRECTORY, PACK }
+
+    @Value("${tile.output-base-path}")
+    private String outputBasePath;
+
+    @Value("${tile.store:DIRECTORY}")
+    private Layout layout;
+
+    /** Bu boyuttan küçük tile'lar içerik özetiyle tekilleştirilir (0: kapalı) */
+    @Value("${tile.dedup.max-bytes:16384}")
+    private int dedupMaxBytes;
+
+    @Autowired
+    private TileEncoder tileEncoder;
+
+    @Autowired
+    private TileCache tileCache;
+
+    private final Map<String, TilePack> packs = new ConcurrentHashMap<>();
+    /** Paketi olmadığı bilinen piramitler (dizin deposu); her istekte paket dosyası yoklanmaz */
+    private final Set<String> withoutPack = ConcurrentHashMap.newKeySet();
+    private final Map<String, BlankTiles> blankTiles = new ConcurrentHashMap<>();
+    /** Boş tile kümesi olmadığı bilinen piramitler; her istekte .blank dosyası yoklanmaz */
+    private final Set<String> withoutBlankTiles = ConcurrentHashMap.newKeySet();
+    private final Map<String, TissueMask> tissueMasks = new ConcurrentHashMap<>();
+    /** Doku maskesi olmadığı bilinen piramitler; eksik tile başına .tissue dosyası yoklanmaz */
+    private final Set<String> withoutTissueMask = ConcurrentHashMap.newKeySet();
+    /** Üretimi süren görüntülerin içerik özeti -> ilk yazılan konum */
+    private final Map<String, ContentIndex> contentIndexes = new ConcurrentHashMap<>();
+    /** (renk, genişlik, yükseklik) -> boş tile JPEG'i */
+    private final Map<BlankKey, byte[]> blankJpegs = new ConcurrentHashMap<>();
+    private static final int MAX_BLANK_JPEGS = 256;
+    /** Piramidi başka bir görüntüden paylaşan görüntü ID'si -> piramidin sahibi */
+    private final Map<String, String> sharedPyramids = new ConcurrentHashMap<>();
+
+    public Layout getLayout() {
+        return layout;
+    }
+
+    /**
+     * Görüntünün tile'larını sourceId'nin piramidinden servis eder; görüntü için ayrıca tile üretilmez.
+     */
+    public void share(String imageId, String sourceId) {
+        sharedPyramids.put(imageId, resolve(sourceId));
+    }
+
+    /** Görüntünün piramit paylaşımını kaldırır (görüntü silindiğinde) */
+    public void unshare(String imageId) {
+        sharedPyramids.remove(imageId);
+    }
+
+    /** Görüntünün tile'larının saklandığı piramidin ID'si */
+    public String resolve(String imageId) {
+        return sharedPyramids.getOrDefault(imageId, imageId);
+    }
+
+    /**
+     * Piramit üretimi başlamadan önce depoyu hazırlar (seviye dizinleri veya paket dosyası).
+     */
+    public void prepare(String imageId, TilePyramid pyramid, int lastLevel) throws IOException {
+        imageId = resolve(imageId);
+        if (layout == Layout.PACK) {
+            pack(imageId, pyramid);
+            return;
+        }
+        for (int level = 0; level <= lastLevel; level++) {
+            Files.createDirectories(Paths.get(outputBasePath, imageId, String.valueOf(level)));
+        }
+    }
+
+    public boolean contains(String imageId, int level, int tileX, int tileY) throws IOException {
+        imageId = resolve(imageId);
+        BlankTiles blank = blankTiles(imageId);
+        if (blank != null && blank.isBlank(level, tileX, tileY)) {
+            return true;
+        }
+        TilePack pack = existingPack(imageId);
+        if (pack != null && pack.contains(level, tileX, tileY)) {
+            return true;
+        }
+        if (Files.exists(tilePath(imageId, level, tileX, tileY))) {
+            return true;
+        }
+        TissueMask tissue = tissueMask(imageId);
+        return tissue != null && tissue.getPyramid().contains(level, tileX, tileY)
+                && !tissue.intersects(level, tileX, tileY);
+    }
+
+    /**
+     * Tile'ı servis edilecek kaynak olarak döndürür: önbellekteyse bellekteki kopya, paketteyse
+     * bellek eşlemeli dilim, dizin deposundaysa açık dosya kanalı. Paketteki ya da dosyadaki tile yakın
+     * zamanda ikinci kez isteniyorsa önbelleğe kopyalanır (bkz. TileCache.shouldLoad). Dosya bir kez
+     * açılır; yokluğu açma sırasında anlaşılır. Dönen FileChannelResource okunmadan bırakılacaksa
+     * kapatılmalıdır.
+     */
+    public Optional<Resource> find(String imageId, int level, int tileX, int tileY) throws IOException {
+        imageId = resolve(imageId);
+        BlankTiles blank = blankTiles(imageId);
+        int blankColor = blank != null ? blank.colorOf(level, tileX, tileY) : -1;
+        if (blankColor >= 0) {
+            TilePyramid pyramid = blank.getPyramid();
+            return Optional.of(new ByteArrayResource(blankJpeg(blankColor,
+                    pyramid.tileWidth(level, tileX), pyramid.tileHeight(level, tileY))));
+        }
+        String description = imageId + "/" + level + "/" + tileX + "_" + tileY;
+        ByteBuffer cached = tileCache.get(imageId, level, tileX, tileY);
+        if (cached != null) {
+            return Optional.of(new ByteBufferResource(cached, description));
+        }
+        TilePack pack = existingPack(imageId);
+        if (pack != null) {
+            ByteBuffer tile = pack.read(level, tileX, tileY);
+            if (tile != null) {
+                if (tileCache.shouldLoad(imageId, level, tileX, tileY, tile.remaining())) {
+                    tile = tileCache.put(imageId, level, tileX, tileY, tile);
+                }
+                return Optional.of(new ByteBufferResource(tile, description));
+            }
+        }
+        Path path = tilePath(imageId, level, tileX, tileY);
+        FileChannel channel = openIfExists(path);
+        if (channel != null) {
+            try {
+                long size = channel.size();
+                if (tileCache.shouldLoad(imageId, level, tileX, tileY, size)) {
+                    try (channel) {
+                        return Optional.of(new ByteBufferResource(
+                                tileCache.load(imageId, level, tileX, tileY, channel, (int) size), description));
+                    }
+                }
+                return Optional.of(new FileChannelResource(path, channel, size));
+            } catch (IOException | RuntimeException e) {
+                channel.close();
+                throw e;
+            }
+        }
+        TissueMask tissue = tissueMask(imageId);
+        if (tissue != null && tissue.getPyramid().contains(level, tileX, tileY) && !tissue.intersects(level, tileX, tileY)) {
+            TilePyramid pyramid = tissue.getPyramid();
+            return Optional.of(new ByteArrayResource(blankJpeg(tissue.getBackgroundRgb(),
+                    pyramid.tileWidth(level, tileX), pyramid.tileHeight(level, tileY))));
+        }
+        return Optional.empty();
+    }
+
+    /**
+     * Tahmini ön yükleme: tile depodaysa önbelleğe alır (bkz. TilePrefetcher). Önbellek
+     * istatistiklerine sayılmaz; boş ve doku dışı tile'lar zaten bellekte üretildiği için okunmaz.
+     *
+     * @return tile depoda (ya da önbellekte) varsa true
+     */
+    public boolean prefetch(String imageId, int level, int tileX, int tileY) throws IOException {
+        imageId = resolve(imageId);
+        if (tileCache.contains(imageId, level, tileX, tileY)) {
+            return true;
+        }
+        BlankTiles blank = blankTiles(imageId);
+        if (blank != null && blank.isBlank(level, tileX, tileY)) {
+            return true;
+        }
+        TilePack pack = existingPack(imageId);
+        if (pack != null) {
+            ByteBuffer tile = pack.read(level, tileX, tileY);
+            if (tile != null) {
+                tileCache.put(imageId, level, tileX, tileY, tile);
+                return true;
+            }
+        }
+        FileChannel channel = openIfExists(tilePath(imageId, level, tileX, tileY));
+        if (channel != null) {
+            try (channel) {
+                long size = channel.size();
+                if (tileCache.admits(size)) {
+                    tileCache.load(imageId, level, tileX, tileY, channel, (int) size);
+                }
+            }
+            return true;
+        }
+        TissueMask tissue = tissueMask(imageId);
+        return tissue != null && tissue.getPyramid().contains(level, tileX, tileY) && !tissue.intersects(level, tileX, tileY);
+    }
+
+    /**
+     * Kodlanmış tile'ı yazar. Dizin deposunda geçici dosya + taşıma kullanılır, böylece
+     * eşzamanlı okuyucular yarım dosya görmez. Önbellekteki eski kopya yazmadan sonra çıkarılır;
+     * önce çıkarılsaydı arada okuyan bir istek eski tile'ı yeniden önbelleğe alabilirdi.
+     */
+    public void write(String imageId, TilePyramid pyramid, int level, int tileX, int tileY, byte[] jpeg) throws IOException {
+        imageId = resolve(imageId);
+        try {
+            writeTile(imageId, pyramid, level, tileX, tileY, jpeg);
+        } finally {
+            tileCache.invalidate(imageId, level, tileX, tileY);
+        }
+    }
+
+    private void writeTile(String imageId, TilePyramid pyramid, int level, int tileX, int tileY, byte[] jpeg) throws IOException {
+        ContentIndex index = jpeg.length <= dedupMaxBytes ? contentIndexes.get(imageId) : null;
+        ContentKey key = index != null ? ContentKey.of(jpeg) : null;
+        TileLocation existing = key != null ? index.locations.get(key) : null;
+
+        if (layout == Layout.PACK) {
+            TilePack pack = pack(imageId, pyramid);
+            if (existing != null) {
+                pack.link(level, tileX, tileY, existing.packEntry());
+                index.hits.incrementAndGet();
+                return;
+            }
+            long entry = pack.append(level, tileX, tileY, jpeg);
+            if (key != null) {
+                index.locations.putIfAbsent(key, new TileLocation(entry, null));
+            }
+            return;
+        }
+
+        Path target = tilePath(imageId, level, tileX, tileY);
+        Files.createDirectories(target.getParent());
+        if (existing != null && linkTo(existing.path(), target)) {
+            index.hits.incrementAndGet();
+            return;
+        }
+        Path temp = Files.createTempFile(target.getParent(), "tile_", ".tmp");
+        try {
+            Files.write(temp, jpeg);
+            Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(temp);
+        }
+        if (key != null) {
+            index.locations.putIfAbsent(key, new TileLocation(0, target));
+        }
+    }
+
+    /**
+     * Boş tile'ı yazmak yerine işaretler.
+     *
+     * @param rgb tile'ın ortalama rengi (bkz. BlankTiles.backgroundColor)
+     * @return tile işaretlenemediyse (renk paleti dolu) false; tile normal yazılmalıdır
+     */
+    public boolean markBlank(String imageId, TilePyramid pyramid, int level, int tileX, int tileY, int rgb) throws IOException {
+        imageId = resolve(imageId);
+        BlankTiles blank = blankTiles(imageId);
+        if (blank == null) {
+            blank = blankTiles.computeIfAbsent(imageId, id -> new BlankTiles(pyramid));
+        }
+        boolean marked = blank.mark(level, tileX, tileY, rgb);
+        if (marked) {
+            tileCache.invalidate(imageId, level, tileX, tileY);
+        }
+        return marked;
+    }
+
+    /**
+     * Doku maskesini kaydeder; bundan sonra maske dışındaki eksik tile'lar arka plan olarak servis edilir.
+     */
+    public void saveTissueMask(String imageId, TissueMask mask) throws IOException {
+        imageId = resolve(imageId);
+        Files.createDirectories(Paths.get(outputBasePath));
+        mask.save(tissuePath(imageId));
+        tissueMasks.put(imageId, mask);
+        withoutTissueMask.remove(imageId);
+    }
+
+    /**
+     * Kayıtlı doku maskesi, yoksa null. Maskenin yokluğu da hatırlanır; maske saveTissueMask
+     * ile kaydedildiğinde ya da close() ile unutulur.
+     */
+    public TissueMask tissueMask(String imageId) throws IOException {
+        imageId = resolve(imageId);
+        TissueMask mask = tissueMasks.get(imageId);
+        if (mask != null || withoutTissueMask.contains(imageId)) {
+            return mask;
+        }
+        if (!Files.exists(tissuePath(imageId))) {
+            withoutTissueMask.add(imageId);
+            return null;
+        }
+        try {
+            return tissueMasks.computeIfAbsent(imageId, id -> {
+                try {
+                    return TissueMask.load(tissuePath(id));
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            });
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+    }
+
+    /**
+     * Piramit üretimi boyunca içerik tekilleştirmeyi açar; flush() ile kapanır.
+     */
+    public void beginGeneration(String imageId) {
+        imageId = resolve(imageId);
+        if (dedupMaxBytes > 0) {
+            contentIndexes.put(imageId, new ContentIndex());
+        }
+    }
+
+    /**
+     * Hedefi mevcut dosyaya hard link olarak oluşturur; dosya sistemi desteklemiyorsa false.
+     */
+    private boolean linkTo(Path existing, Path target) {
+        Path link = target.resolveSibling(target.getFileName() + "." + Thread.currentThread().getId() + ".lnk");
+        try {
+            Files.deleteIfExists(link);
+            Files.createLink(link, existing);
+            Files.move(link, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            return true;
+        } catch (IOException | UnsupportedOperationException e) {
+            log.debug("Hard link oluşturulamadı, tile kopyalanacak: {}", e.getMessage());
+            try {
+                Files.deleteIfExists(link);
+            } catch (IOException ignored) {
+                // yazma yoluna düşülür
+            }
+            return false;
+        }
+    }
+
+    /**
+     * O ana kadar yazılan tile'ları ve boş tile kümesini kalıcı hale getirir; üretim
+     * checkpoint'i kaydedilmeden önce çağrılır.
+     */
+    public void sync(String imageId) throws IOException {
+        imageId = resolve(imageId);
+        TilePack pack = packs.get(imageId);
+        if (pack != null) {
+            pack.flush();
+        }
+        BlankTiles blank = blankTiles.get(imageId);
+        if (blank != null) {
+            Files.createDirectories(Paths.get(outputBasePath));
+            blank.saveIfDirty(blankPath(imageId));
+        }
+    }
+
+    /**
+     * Üretim sonunda çağrılır: paketi diske zorlar, boş tile kümesini kaydeder ve
+     * tekilleştirme indeksini bırakır.
+     */
+    public void flush(String imageId) throws IOException {
+        imageId = resolve(imageId);
+        sync(imageId);
+        BlankTiles blank = blankTiles.get(imageId);
+        ContentIndex index = contentIndexes.remove(imageId);
+        log.info("Tile deposu: imageId={}, boş tile={}, tekilleştirilen tile={}", imageId,
+                blank != null ? blank.getCount() : 0, index != null ? index.hits.get() : 0);
+    }
+
+    /** Görüntünün açık paketini kapatır (silme veya dönüştürme öncesi) */
+    public void close(String imageId) {
+        imageId = resolve(imageId);
+        blankTiles.remove(imageId);
+        withoutBlankTiles.remove(imageId);
+        tissueMasks.remove(imageId);
+        withoutTissueMask.remove(imageId);
+        withoutPack.remove(imageId);
+        contentIndexes.remove(imageId);
+        TilePack pack = packs.remove(imageId);
+        if (pack != null) {
+            closeQuietly(pack);
+        }
+    }
+
+    /**
+     * Görüntünün piramidini (paket, dizin, boş tile kümesi, doku maskesi, checkpoint) siler.
+     * Piramidi paylaşan görüntü kalmadığında çağrılmalıdır.
+     */
+    public void delete(String imageId) throws IOException {
+        imageId = resolve(imageId);
+        close(imageId);
+        tileCache.invalidateAll(imageId);
+        Files.deleteIfExists(packPath(imageId));
+        Files.deleteIfExists(blankPath(imageId));
+        Files.deleteIfExists(tissuePath(imageId));
+        Files.deleteIfExists(checkpointPath(imageId));
+        for (AssociatedImageService.Kind kind : AssociatedImageService.Kind.values()) {
+            Files.deleteIfExists(associatedPath(imageId, kind.name().toLowerCase(Locale.ROOT)));
+        }
+        Files.deleteIfExists(associatedIndexPath(imageId));
+        Files.deleteIfExists(thumbnailPath(imageId));
+        Path directory = Paths.get(outputBasePath, imageId);
+        if (Files.isDirectory(directory)) {
+            try (Stream<Path> paths = Files.walk(directory)) {
+                for (Path path : (Iterable<Path>) paths.sorted(Comparator.reverseOrder())::iterator) {
+                    Files.deleteIfExists(path);
+                }
+            }
+        }
+        log.info("Tile piramidi silindi: imageId={}", imageId);
+    }
+
+    @PreDestroy
+    public void closeAll() {
+        packs.values().forEach(this::closeQuietly);
+        packs.clear();
+    }
+
+    public Path tilePath(String imageId, int level, int tileX, int tileY) {
+        return Paths.get(outputBasePath, resolve(imageId), String.valueOf(level), String.format("tile_%d_%d.jpg", tileX, tileY));
+    }
+
+    public Path packPath(String imageId) {
+        return Paths.get(outputBasePath, resolve(imageId) + ".pack");
+    }
+
+    public Path blankPath(String imageId) {
+        return Paths.get(outputBasePath, resolve(imageId) + ".blank");
+    }
+
+    public Path tissuePath(String imageId) {
+        return Paths.get(outputBasePath, resolve(imageId) + ".tissue");
+    }
+
+    public Path checkpointPath(String imageId) {
+        return Paths.get(outputBasePath, resolve(imageId) + ".checkpoint");
+    }
+
+    /** Yardımcı görüntü (etiket, makro, küçük resim), bkz. AssociatedImageService */
+    public Path associatedPath(String imageId, String kind) {
+        return Paths.get(outputBasePath, resolve(imageId) + "." + kind + ".jpg");
+    }
+
+    public Path associatedIndexPath(String imageId) {
+        return Paths.get(outputBasePath, resolve(imageId) + ".associated");
+    }
+
+    /** Liste önizlemesi, bkz. ThumbnailService */
+    public Path thumbnailPath(String imageId) {
+        return Paths.get(outputBasePath, resolve(imageId) + ".thumb.jpg");
+    }
+
+    /** Önceki çalışmanın en çok istenen tile'ları, bkz. TileWarmup */
+    public Path hotTilesPath() {
+        return Paths.get(outputBasePath, "hot-tiles.bin");
+    }
+
+    /** Dosya yoksa null */
+    private static FileChannel openIfExists(Path path) throws IOException {
+        try {
+            return FileChannel.open(path, StandardOpenOption.READ);
+        } catch (NoSuchFileException e) {
+            return null;
+        }
+    }
+
+    /** Bellekte yoksa dosyasından yükler; hiç boş tile yoksa null (yokluk close()'a kadar hatırlanır) */
+    private BlankTiles blankTiles(String imageId) throws IOException {
+        BlankTiles blank = blankTiles.get(imageId);
+        if (blank != null || withoutBlankTiles.contains(imageId)) {
+            return blank;
+        }
+        if (!Files.exists(blankPath(imageId))) {
+            withoutBlankTiles.add(imageId);
+            return null;
+        }
+        try {
+            return blankTiles.computeIfAbsent(imageId, id -> {
+                try {
+                    return BlankTiles.load(blankPath(id));
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            });
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+    }
+
+    private byte[] blankJpeg(int rgb, int width, int height) throws IOException {
+        BlankKey key = new BlankKey(rgb, width, height);
+        byte[] jpeg = blankJpegs.get(key);
+        if (jpeg == null) {
+            BufferedImage image = new BufferedImage(width, height, BufferedImage.TYPE_3BYTE_BGR);
+            byte[] data = ((DataBufferByte) image.getRaster().getDataBuffer()).getData();
+            for (int i = 0; i < data.length; i += 3) {
+                data[i] = (byte) rgb;
+                data[i + 1] = (byte) (rgb >> 8);
+                data[i + 2] = (byte) (rgb >> 16);
+            }
+            jpeg = tileEncoder.encode(image);
+            if (blankJpegs.size() >= MAX_BLANK_JPEGS) {
+                blankJpegs.clear();
+            }
+            blankJpegs.put(key, jpeg);
+        }
+        return jpeg;
+    }
+
+    private TilePack pack(String imageId, TilePyramid pyramid) throws IOException {
+        try {
+            withoutPack.remove(imageId);
+            return packs.computeIfAbsent(imageId, id -> {
+                try {
+                    Files.createDirectories(Paths.get(outputBasePath));
+                    return TilePack.openOrCreate(packPath(id), pyramid);
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            });
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+    }
+
+    /**
+     * Dosyası varsa paketi açar, yoksa null. Paketin yokluğu close()'a kadar hatırlanır;
+     * TilePackConverter ayrı bir süreçte çalıştığından dönüştürülen paketler sunucu yeniden
+     * başlatılınca görülür.
+     */
+    private TilePack existingPack(String imageId) throws IOException {
+        TilePack pack = packs.get(imageId);
+        if (pack != null || withoutPack.contains(imageId)) {
+            return pack;
+        }
+        if (!Files.exists(packPath(imageId))) {
+            withoutPack.add(imageId);
+            return null;
+        }
+        try {
+            return packs.computeIfAbsent(imageId, id -> {
+                try {
+                    return TilePack.open(packPath(id));
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            });
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+    }
+
+    private void closeQuietly(TilePack pack) {
+        try {
+            pack.close();
+        } catch (IOException e) {
+            log.warn("Tile paketi kapatma hatası: {}", e.getMessage());
+        }
+    }
+
+    private record BlankKey(int rgb, int width, int height) {}
+
+    /** Pakette index girdisi, dizin deposunda dosya yolu */
+    private record TileLocation(long packEntry, Path path) {}
+
+    private static class ContentIndex {
+        final Map<ContentKey, TileLocation> locations = new ConcurrentHashMap<>();
+        final AtomicLong hits = new AtomicLong();
+    }
+
+    /** JPEG içeriğinin SHA-256 özetinin ilk 128 biti */
+    private record ContentKey(long high, long low) {
+        private static final ThreadLocal<MessageDigest> SHA256 = ThreadLocal.withInitial(() -> {
+            try {
+                return MessageDigest.getInstance("SHA-256");
+            } catch (NoSuchAlgorithmException e) {
+                throw new IllegalStateException(e);
+            }
+        });
+
+        static ContentKey of(byte[] data) {
+            ByteBuffer digest = ByteBuffer.wrap(SHA256.get().digest(data));
+            return new ContentKey(digest.getLong(), digest.getLong());
+        }
+    }
+
+    /**
+     * Bellek eşlemeli tile dilimi ya da önbellekteki kopya; içerik kopyalanmadan yanıt akışına yazılır.
+     */
+    static class ByteBufferResource extends AbstractResource {
+        private final ByteBuffer buffer;
+        private final String description;
+
+        ByteBufferResource(ByteBuffer buffer, String description) {
+            this.buffer = buffer;
+            this.description = description;
+        }
+
+        @Override
+        public String getDescription() {
+            return "Bellekteki tile [" + description + "]";
+        }
+
+        /** İçeriğin bağımsız konumlu bir görünümü */
+        ByteBuffer content() {
+            return buffer.duplicate();
+        }
+
+        @Override
+        public long contentLength() {
+            return buffer.remaining();
+        }
+
+        @Override
+        public boolean exists() {
+            return true;
+        }
+
+        @Override
+        public InputStream getInputStream() {
+            ByteBuffer source = buffer.duplicate();
+            return new InputStream() {
+                @Override
+                public int read() {
+                    return source.hasRemaining() ? source.get() & 0xFF : -1;
+                }
+
+                @Override
+                public int read(byte[] b, int off, int len) {
+                    if (!source.hasRemaining()) {
+                        return -1;
+                    }
+                    int n = Math.min(len, source.remaining());
+                    source.get(b, off, n);
+                    return n;
+                }
+
+                @Override
+                public int available() {
+                    return source.remaining();
+                }
+            };
+        }
+    }
+
+    /**
+     * Dizin deposundaki tile dosyası, açık kanalıyla. Boyut kanaldan alınır; yanıt yazılırken
+     * içerik sendfile ya da transferTo ile heap'e kopyalanmadan gönderilir (bkz. TileResponseWriter).
+     * Kanal, getInputStream() akışı ya da close() ile kapanır.
+     */
+    static class FileChannelResource extends AbstractResource implements Closeable {
+        private final Path path;
+        private final FileChannel channel;
+        private final long size;
+
+        FileChannelResource(Path path, FileChannel channel, long size) {
+            this.path = path;
+            this.channel = channel;
+            this.size = size;
+        }
+
+        @Override
+        public String getDescription() {
+            return "Tile dosyası [" + path + "]";
+        }
+
+        @Override
+        public long contentLength() {
+            return size;
+        }
+
+        @Override
+        public boolean exists() {
+            return true;
+        }
+
+        @Override
+        public InputStream getInputStream() {
+            return Channels.newInputStream(channel);
+        }
+
+        Path getPath() {
+            return path;
+        }
+
+        FileChannel getChannel() {
+            return channel;
+        }
+
+        @Override
+        public void close() throws IOException {
+            channel.close();
+        }
+    }
+}
@@ -0,0 +1,315 @@
+package com.cvlab.spring.LaPatho;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Yeniden başlatma sonrası soğuk önbelleğin ilk izleyicilere yansımaması için TileCache'i ısıtır.
+ *
+ * İki iş yapar: ImageReadyEvent geldiğinde yeni piramidin kaba seviyelerini (toplam en fazla
+ * ready-max-tiles tile) önbelleğe alır; uygulama açılınca önceki çalışmanın en çok istenen
+ * tile'larını süre ve bayt bütçesi içinde, en sık istenenden başlayarak yeniden yükler.
+ *
+ * İstek sayıları piramit sahibine çözülmüş ID ile tutulur ve persist-interval-ms'de bir en sık
+ * persist-max-tiles tanesi {output-base-path}/hot-tiles.bin dosyasına yazılır. Her yazımda
+ * sayılar yarıya iner; açılışta dosyadaki sayılar geri yüklendiği için eski sıcak bölgeler
+ * birkaç çalışma içinde yerini yenilerine bırakır. Yüklemeler tek bir düşük öncelikli thread'de
+ * çalışır ve her tile'dan önce etkileşimli işlere yol verir.
+ */
+@Component
+@Slf4j
+public class TileWarmup {
+
+    @Value("${tile.warmup.enabled:true}")
+    private boolean enabled;
+
+    /** Hazır olan görüntüde önbelleğe alınacak kaba seviyelerin toplam tile sınırı */
+    @Value("${tile.warmup.ready-max-tiles:341}")
+    private long readyMaxTiles;
+
+    /** Açılışta yeniden yükleme için süre ve bayt bütçesi */
+    @Value("${tile.warmup.startup-budget-ms:60000}")
+    private long startupBudgetMs;
+
+    @Value("${tile.warmup.startup-max-bytes:134217728}")
+    private long startupMaxBytes;
+
+    /** Dosyaya yazılan en sık istenen tile sayısı */
+    @Value("${tile.warmup.persist-max-tiles:20000}")
+    private int persistMaxTiles;
+
+    /** Bellekte sayılan farklı tile sınırı; dolunca yeni tile'lar bir sonraki yazıma kadar sayılmaz */
+    @Value("${tile.warmup.max-tracked:200000}")
+    private int maxTracked;
+
+    @Autowired
+    private TileStore tileStore;
+
+    @Autowired
+    private TileCache tileCache;
+
+    @Autowired
+    private ImageService imageService;
+
+    @Autowired
+    private TileScheduler tileScheduler;
+
+    private static final int FILE_MAGIC = 0x4C504854; // "LPHT"
+    private static final int FILE_VERSION = 1;
+
+    private record HotTile(String pyramidId, int level, int tileX, int tileY) {}
+
+    private final Map<HotTile, LongAdder> accessCounts = new ConcurrentHashMap<>();
+    private final LongAdder readyTilesLoaded = new LongAdder();
+    private final LongAdder replayTilesLoaded = new LongAdder();
+    private final LongAdder replayBytesLoaded = new LongAdder();
+    private ExecutorService executor;
+
+    @PostConstruct
+    void start() {
+        if (!enabled || !tileCache.isEnabled()) {
+            log.info("Tile önbelleği ısıtma kapalı");
+            enabled = false;
+            return;
+        }
+        AtomicInteger threadIndex = new AtomicInteger();
+        executor = Executors.newSingleThreadExecutor(r -> {
+            Thread t = new Thread(r, "tile-warmup-" + threadIndex.incrementAndGet());
+            t.setDaemon(true);
+            t.setPriority(Thread.MIN_PRIORITY);
+            return t;
+        });
+    }
+
+    @PreDestroy
+    void stop() {
+        if (executor == null) {
+            return;
+        }
+        executor.shutdownNow();
+        persist();
+    }
+
+    /** Bir tile isteğini sayar */
+    public void record(String imageId, int level, int tileX, int tileY) {
+        if (!enabled) {
+            return;
+        }
+        HotTile tile = new HotTile(tileStore.resolve(imageId), level, tileX, tileY);
+        // Sayaç eşleme içinde artırılır; persist'in yaşlandırıp silmesiyle arada kaybolmaz
+        if (accessCounts.computeIfPresent(tile, (key, count) -> increment(count)) == null
+                && accessCounts.size() < maxTracked) {
+            accessCounts.compute(tile, (key, count) -> increment(count == null ? new LongAdder() : count));
+        }
+    }
+
+    private static LongAdder increment(LongAdder count) {
+        count.increment();
+        return count;
+    }
+
+    /** Yeni hazır olan piramidin kaba seviyelerini önbelleğe alır */
+    @EventListener
+    public void onImageReady(ImageReadyEvent event) {
+        if (enabled) {
+            executor.execute(() -> warmCoarseLevels(event.getImageId()));
+        }
+    }
+
+    /** Önceki çalışmanın sıcak tile'larını yeniden yükler */
+    @EventListener(ApplicationReadyEvent.class)
+    public void replayOnStartup() {
+        if (enabled) {
+            executor.execute(this::replayHotTiles);
+        }
+    }
+
+    @Scheduled(fixedDelayString = "${tile.warmup.persist-interval-ms:600000}",
+            initialDelayString = "${tile.warmup.persist-interval-ms:600000}")
+    public void persistPeriodically() {
+        if (enabled) {
+            persist();
+        }
+    }
+
+    /** Isıtma sayıları */
+    public Map<String, Object> stats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("enabled", enabled);
+        stats.put("trackedTiles", accessCounts.size());
+        stats.put("readyTilesLoaded", readyTilesLoaded.sum());
+        stats.put("replayTilesLoaded", replayTilesLoaded.sum());
+        stats.put("replayBytesLoaded", replayBytesLoaded.sum());
+        return stats;
+    }
+
+    private void warmCoarseLevels(Long imageId) {
+        Optional<ImageEntity> image = imageService.findById(imageId);
+        if (image.isEmpty() || image.get().getStatus() != Status.READY) {
+            return;
+        }
+        TilePyramid pyramid = new TilePyramid(image.get().getWidth(), image.get().getHeight(), image.get().getTileSize());
+        String id = imageId.toString();
+        long budget = readyMaxTiles;
+        int loaded = 0;
+        try {
+            for (int level = 0; level <= pyramid.getMaxLevel() && pyramid.tileCount(level) <= budget; level++) {
+                budget -= pyramid.tileCount(level);
+                for (int y = 0; y < pyramid.rows(level); y++) {
+                    for (int x = 0; x < pyramid.columns(level); x++) {
+                        if (Thread.currentThread().isInterrupted()) {
+                            return;
+                        }
+                        tileScheduler.yieldToInteractive();
+                        if (tileStore.prefetch(id, level, x, y)) {
+                            loaded++;
+                        }
+                    }
+                }
+            }
+            readyTilesLoaded.add(loaded);
+            log.info("Kaba seviyeler önbelleğe alındı: imageId={}, {} tile", imageId, loaded);
+        } catch (IOException e) {
+            log.warn("Kaba seviyeler önbelleğe alınamadı: imageId={}, error={}", imageId, e.getMessage());
+        }
+    }
+
+    private void replayHotTiles() {
+        List<Map.Entry<HotTile, Long>> hot;
+        try {
+            hot = load();
+        } catch (NoSuchFileException e) {
+            return;
+        } catch (IOException e) {
+            log.warn("Sıcak tile listesi okunamadı: {}", e.getMessage());
+            return;
+        }
+
+        long start = System.currentTimeMillis();
+        long deadline = start + startupBudgetMs;
+        long bytes = 0;
+        int loaded = 0;
+        for (Map.Entry<HotTile, Long> entry : hot) {
+            // Önceki çalışmanın sayıları bu çalışmanınkilerle birleşir; bir sonraki yazımda yarıya iner
+            accessCounts.compute(entry.getKey(), (key, count) -> {
+                LongAdder merged = count == null ? new LongAdder() : count;
+                merged.add(entry.getValue());
+                return merged;
+            });
+        }
+        for (Map.Entry<HotTile, Long> entry : hot) {
+            if (bytes >= startupMaxBytes || System.currentTimeMillis() >= deadline
+                    || Thread.currentThread().isInterrupted()) {
+                break;
+            }
+            HotTile tile = entry.getKey();
+            tileScheduler.yieldToInteractive();
+            try {
+                if (tileStore.prefetch(tile.pyramidId(), tile.level(), tile.tileX(), tile.tileY())) {
+                    loaded++;
+                    bytes += tileCache.sizeOf(tile.pyramidId(), tile.level(), tile.tileX(), tile.tileY());
+                }
+            } catch (IOException e) {
+                // Piramit silinmiş ya da taşınmış olabilir
+                log.debug("Sıcak tile okunamadı: {}, error={}", tile, e.getMessage());
+            }
+        }
+        replayTilesLoaded.add(loaded);
+        replayBytesLoaded.add(bytes);
+        log.info("Önceki çalışmanın sıcak tile'ları önbelleğe alındı: {}/{} tile, {} MB, {} ms",
+                loaded, hot.size(), bytes >> 20, System.currentTimeMillis() - start);
+    }
+
+    /** En sık istenen tile'ları yazar ve sayıları yarıya indirir */
+    private synchronized void persist() {
+        List<Map.Entry<HotTile, Long>> hot = new ArrayList<>();
+        accessCounts.forEach((tile, count) -> {
+            long value = count.sum();
+            if (value > 0) {
+                hot.add(Map.entry(tile, value));
+            }
+        });
+        if (hot.isEmpty()) {
+            return;
+        }
+        hot.sort(Map.Entry.<HotTile, Long>comparingByValue(Comparator.reverseOrder()));
+        List<Map.Entry<HotTile, Long>> top = hot.subList(0, Math.min(persistMaxTiles, hot.size()));
+
+        Path target = tileStore.hotTilesPath();
+        Path temp = target.resolveSibling(target.getFileName() + ".tmp");
+        try {
+            Files.createDirectories(target.getParent());
+            try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(temp)))) {
+                out.writeInt(FILE_MAGIC);
+                out.writeInt(FILE_VERSION);
+                out.writeInt(top.size());
+                for (Map.Entry<HotTile, Long> entry : top) {
+                    HotTile tile = entry.getKey();
+                    out.writeUTF(tile.pyramidId());
+                    out.writeByte(tile.level());
+                    out.writeInt(tile.tileX());
+                    out.writeInt(tile.tileY());
+                    out.writeLong(entry.getValue());
+                }
+            }
+            Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            log.warn("Sıcak tile listesi yazılamadı: {}", e.getMessage());
+            return;
+        }
+
+        // Yaşlandırma: eski sıcak bölgeler zamanla yerini yenilerine bırakır
+        // (yazımdan sonra gelen istekler yarılanmaz; hiç sayımı kalmayan tile bırakılır)
+        for (Map.Entry<HotTile, Long> entry : hot) {
+            accessCounts.computeIfPresent(entry.getKey(), (key, count) -> {
+                count.add(entry.getValue() / 2 - entry.getValue());
+                return count.sum() > 0 ? count : null;
+            });
+        }
+        log.debug("Sıcak tile listesi yazıldı: {} tile", top.size());
+    }
+
+    /** Dosyadaki tile'lar, en sık istenenden başlayarak */
+    private List<Map.Entry<HotTile, Long>> load() throws IOException {
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(tileStore.hotTilesPath())))) {
+            if (in.readInt() != FILE_MAGIC || in.readInt() != FILE_VERSION) {
+                throw new IOException("Tanınmayan sıcak tile dosyası");
+            }
+            int count = in.readInt();
+            List<Map.Entry<HotTile, Long>> hot = new ArrayList<>(Math.min(count, persistMaxTiles));
+            for (int i = 0; i < count; i++) {
+                HotTile tile = new HotTile(in.readUTF(), in.readUnsignedByte(), in.readInt(), in.readInt());
+                hot.add(Map.entry(tile, in.readLong()));
+            }
+            return hot;
+        }
+    }
+}
@@ -0,0 +1,255 @@
+package com.cvlab.spring.LaPatho;
+
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferByte;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.BitSet;
+
+/**
+ * Düşük çözünürlüklü genel görünümden çıkarılan doku maskesi.
+ *
+ * Maskenin her pikseli piramidin bir seviyesindeki (getLevel) bir piksele karşılık gelir.
+ * Renkli görüntülerde doku, piksel doygunluğunun (max - min kanal) Otsu eşiğini aşmasıyla;
+ * gri görüntülerde koyuluğun eşiği aşmasıyla ayrılır. Kenarlarda doku kaçırmamak için maske
+ * birkaç piksel genişletilir. Maske dışındaki tile'lar kaynaktan okunmaz, arka plan rengiyle
+ * servis edilir.
+ *
+ * Görüntü başına {id}.tissue dosyasında saklanır:
+ * <pre>
+ *   int magic, int version, int width, int height, int tileSize, int level, int rgb
+ *   int wordCount, long words[wordCount]
+ * </pre>
+ */
+public class TissueMask {
+
+    private static final int MAGIC = 0x4C50544D; // "LPTM"
+    private static final int VERSION = 1;
+
+    private final TilePyramid pyramid;
+    private final int level;
+    private final int width;
+    private final int height;
+    private final BitSet bits;
+    /** Doku dışı piksellerin ortalama rengi (0xRRGGBB) */
+    private final int backgroundRgb;
+
+    private TissueMask(TilePyramid pyramid, int level, BitSet bits, int backgroundRgb) {
+        this.pyramid = pyramid;
+        this.level = level;
+        this.width = pyramid.levelWidth(level);
+        this.height = pyramid.levelHeight(level);
+        this.bits = bits;
+        this.backgroundRgb = backgroundRgb;
+    }
+
+    /**
+     * Genişliği ve yüksekliği maxSize'ı aşmayan en detaylı seviye.
+     */
+    public static int overviewLevel(TilePyramid pyramid, int maxSize) {
+        int level = 0;
+        while (level < pyramid.getMaxLevel()
+                && Math.max(pyramid.levelWidth(level + 1), pyramid.levelHeight(level + 1)) <= maxSize) {
+            level++;
+        }
+        return level;
+    }
+
+    /**
+     * Verilen seviyedeki genel görünümden maskeyi çıkarır.
+     *
+     * @param overview      TYPE_3BYTE_BGR ya da TYPE_BYTE_GRAY, seviye boyutlarında
+     * @param minScore      Otsu eşiği bundan düşük çıkarsa kullanılacak en küçük eşik (0-255)
+     * @param dilation      maskenin her yönde genişletileceği piksel sayısı
+     */
+    public static TissueMask detect(TilePyramid pyramid, int level, BufferedImage overview, int minScore, int dilation) {
+        int width = pyramid.levelWidth(level);
+        int height = pyramid.levelHeight(level);
+        byte[] data = ((DataBufferByte) overview.getRaster().getDataBuffer()).getData();
+        int channels = overview.getRaster().getNumBands();
+
+        byte[] scores = new byte[width * height];
+        int[] histogram = new int[256];
+        for (int i = 0, p = 0; p < scores.length; i += channels, p++) {
+            int score;
+            if (channels < 3) {
+                score = 255 - (data[i] & 0xFF);
+            } else {
+                int b = data[i] & 0xFF;
+                int g = data[i + 1] & 0xFF;
+                int r = data[i + 2] & 0xFF;
+                score = Math.max(r, Math.max(g, b)) - Math.min(r, Math.min(g, b));
+            }
+            scores[p] = (byte) score;
+            histogram[score]++;
+        }
+
+        int threshold = Math.max(minScore, otsuThreshold(histogram, scores.length));
+        BitSet tissue = new BitSet(scores.length);
+        long[] background = new long[3];
+        long backgroundPixels = 0;
+        for (int p = 0; p < scores.length; p++) {
+            if ((scores[p] & 0xFF) > threshold) {
+                tissue.set(p);
+            } else {
+                int i = p * channels;
+                for (int c = 0; c < 3; c++) {
+                    background[c] += data[i + (channels < 3 ? 0 : c)] & 0xFF;
+                }
+                backgroundPixels++;
+            }
+        }
+
+        int rgb = 0xFFFFFF;
+        if (backgroundPixels > 0) {
+            // Bantlar B, G, R sırasındadır
+            rgb = (int) (background[2] / backgroundPixels) << 16
+                    | (int) (background[1] / backgroundPixels) << 8
+                    | (int) (background[0] / backgroundPixels);
+        }
+        return new TissueMask(pyramid, level, dilate(tissue, width, height, dilation), rgb);
+    }
+
+    /** Sınıflar arası varyansı en büyük yapan eşik */
+    private static int otsuThreshold(int[] histogram, long total) {
+        long sum = 0;
+        for (int i = 0; i < histogram.length; i++) {
+            sum += (long) i * histogram[i];
+        }
+        long sumBelow = 0;
+        long countBelow = 0;
+        double best = -1;
+        int threshold = 0;
+        for (int t = 0; t < histogram.length; t++) {
+            countBelow += histogram[t];
+            if (countBelow == 0) {
+                continue;
+            }
+            long countAbove = total - countBelow;
+            if (countAbove == 0) {
+                break;
+            }
+            sumBelow += (long) t * histogram[t];
+            double meanBelow = (double) sumBelow / countBelow;
+            double meanAbove = (double) (sum - sumBelow) / countAbove;
+            double variance = (double) countBelow * countAbove * (meanBelow - meanAbove) * (meanBelow - meanAbove);
+            if (variance > best) {
+                best = variance;
+                threshold = t;
+            }
+        }
+        return threshold;
+    }
+
+    /** Kare yapı elemanıyla genişletme: önce yatay, sonra dikey */
+    private static BitSet dilate(BitSet bits, int width, int height, int radius) {
+        if (radius <= 0) {
+            return bits;
+        }
+        BitSet horizontal = new BitSet(bits.size());
+        for (int p = bits.nextSetBit(0); p >= 0; p = bits.nextSetBit(p + 1)) {
+            int row = p / width * width;
+            int x = p - row;
+            horizontal.set(row + Math.max(0, x - radius), row + Math.min(width, x + radius + 1));
+        }
+        BitSet result = new BitSet(bits.size());
+        for (int p = horizontal.nextSetBit(0); p >= 0; p = horizontal.nextSetBit(p + 1)) {
+            int x = p % width;
+            int y = p / width;
+            for (int yy = Math.max(0, y - radius); yy <= Math.min(height - 1, y + radius); yy++) {
+                result.set(yy * width + x);
+            }
+        }
+        return result;
+    }
+
+    public TilePyramid getPyramid() {
+        return pyramid;
+    }
+
+    public int getLevel() {
+        return level;
+    }
+
+    public int getBackgroundRgb() {
+        return backgroundRgb;
+    }
+
+    /** Doku içeren mask piksellerinin oranı */
+    public double tissueFraction() {
+        return width * height == 0 ? 0 : (double) bits.cardinality() / ((long) width * height);
+    }
+
+    /**
+     * Tile'ın kapladığı alanda doku olup olmadığı. Alan maske pikseline tam denk gelmezse
+     * kısmen kesişen pikseller de sayılır.
+     */
+    public boolean intersects(int tileLevel, int tileX, int tileY) {
+        if (!pyramid.contains(tileLevel, tileX, tileY)) {
+            return false;
+        }
+        long ds = pyramid.downsample(tileLevel);
+        long maskDs = pyramid.downsample(level);
+        int tileSize = pyramid.getTileSize();
+
+        long x0 = (long) tileX * tileSize * ds;
+        long y0 = (long) tileY * tileSize * ds;
+        long x1 = ((long) tileX * tileSize + pyramid.tileWidth(tileLevel, tileX)) * ds;
+        long y1 = ((long) tileY * tileSize + pyramid.tileHeight(tileLevel, tileY)) * ds;
+
+        int mx0 = (int) Math.min(width - 1, x0 / maskDs);
+        int my0 = (int) Math.min(height - 1, y0 / maskDs);
+        int mx1 = (int) Math.max(mx0 + 1, Math.min(width, (x1 + maskDs - 1) / maskDs));
+        int my1 = (int) Math.max(my0 + 1, Math.min(height, (y1 + maskDs - 1) / maskDs));
+
+        for (int my = my0; my < my1; my++) {
+            int next = bits.nextSetBit(my * width + mx0);
+            if (next >= 0 && next < my * width + mx1) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /** Dosyaya yazar (geçici dosya + taşıma) */
+    public void save(Path file) throws IOException {
+        Path temp = file.resolveSibling(file.getFileName() + ".tmp");
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(temp)))) {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeInt(pyramid.getWidth());
+            out.writeInt(pyramid.getHeight());
+            out.writeInt(pyramid.getTileSize());
+            out.writeInt(level);
+            out.writeInt(backgroundRgb);
+            long[] words = bits.toLongArray();
+            out.writeInt(words.length);
+            for (long word : words) {
+                out.writeLong(word);
+            }
+        }
+        Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    public static TissueMask load(Path file) throws IOException {
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file)))) {
+            if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+                throw new IOException("Geçersiz doku maskesi dosyası: " + file);
+            }
+            TilePyramid pyramid = new TilePyramid(in.readInt(), in.readInt(), in.readInt());
+            int level = in.readInt();
+            int rgb = in.readInt();
+            long[] words = new long[in.readInt()];
+            for (int i = 0; i < words.length; i++) {
+                words[i] = in.readLong();
+            }
+            return new TissueMask(pyramid, level, BitSet.valueOf(words), rgb);
+        }
+    }
+}
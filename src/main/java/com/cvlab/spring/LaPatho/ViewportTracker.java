@@ -0,0 +1,113 @@
+package com.cvlab.spring.LaPatho;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * /api/tiles isteklerinden her görüntü için izleyicinin o an baktığı bölgeyi çıkarır.
+ * Son istenen seviyedeki, zaman penceresi içindeki isteklerin kapsadığı tile dikdörtgeni
+ * aktif viewport kabul edilir.
+ */
+@Component
+public class ViewportTracker {
+
+    private static final int MAX_RECENT_REQUESTS = 64;
+
+    @Value("${tile.viewport.window-ms:5000}")
+    private long windowMs;
+
+    private final Map<String, Deque<TileRequest>> recentRequests = new ConcurrentHashMap<>();
+
+    public void record(String imageId, int level, int tileX, int tileY) {
+        Deque<TileRequest> requests = recentRequests.computeIfAbsent(imageId, id -> new ArrayDeque<>());
+        synchronized (requests) {
+            requests.addLast(new TileRequest(level, tileX, tileY, System.currentTimeMillis()));
+            while (requests.size() > MAX_RECENT_REQUESTS) {
+                requests.pollFirst();
+            }
+        }
+    }
+
+    public Optional<Viewport> activeViewport(String imageId) {
+        Deque<TileRequest> requests = recentRequests.get(imageId);
+        if (requests == null) {
+            return Optional.empty();
+        }
+
+        long cutoff = System.currentTimeMillis() - windowMs;
+        synchronized (requests) {
+            while (!requests.isEmpty() && requests.peekFirst().time < cutoff) {
+                requests.pollFirst();
+            }
+            if (requests.isEmpty()) {
+                return Optional.empty();
+            }
+
+            int level = requests.peekLast().level;
+            int minX = Integer.MAX_VALUE, minY = Integer.MAX_VALUE;
+            int maxX = Integer.MIN_VALUE, maxY = Integer.MIN_VALUE;
+            for (TileRequest r : requests) {
+                if (r.level == level) {
+                    minX = Math.min(minX, r.tileX);
+                    minY = Math.min(minY, r.tileY);
+                    maxX = Math.max(maxX, r.tileX);
+                    maxY = Math.max(maxY, r.tileY);
+                }
+            }
+            return Optional.of(new Viewport(level, minX, minY, maxX, maxY));
+        }
+    }
+
+    @Scheduled(fixedDelayString = "${tile.viewport.purge-interval-ms:60000}")
+    public void purgeIdle() {
+        long cutoff = System.currentTimeMillis() - windowMs;
+        recentRequests.entrySet().removeIf(e -> {
+            synchronized (e.getValue()) {
+                TileRequest last = e.getValue().peekLast();
+                return last == null || last.time < cutoff;
+            }
+        });
+    }
+
+    private record TileRequest(int level, int tileX, int tileY, long time) {}
+
+    /**
+     * Bir seviyedeki [minX..maxX] x [minY..maxY] tile dikdörtgeni (sınırlar dahil).
+     */
+    public record Viewport(int level, int minX, int minY, int maxX, int maxY) {
+
+        public boolean contains(int tileLevel, int tileX, int tileY) {
+            return intersects(tileLevel, tileX, tileX + 1, tileY, tileY + 1);
+        }
+
+        /** [colStart, colEnd) x [rowStart, rowEnd) tile aralığı viewport ile kesişiyor mu */
+        public boolean intersectsTiles(int tileLevel, int colStart, int colEnd, int rowStart, int rowEnd) {
+            return intersects(tileLevel, colStart, colEnd, rowStart, rowEnd);
+        }
+
+        /**
+         * Başka bir seviyedeki [xStart, xEnd) x [yStart, yEnd) tile aralığı viewport ile kesişiyor mu?
+         * Karşılaştırma daha detaylı olan seviyenin tile koordinatlarında yapılır.
+         */
+        private boolean intersects(int tileLevel, long xStart, long xEnd, long yStart, long yEnd) {
+            long vMinX = minX, vMaxX = maxX + 1L, vMinY = minY, vMaxY = maxY + 1L;
+            if (tileLevel > level) {
+                int shift = tileLevel - level;
+                vMinX <<= shift; vMaxX <<= shift; vMinY <<= shift; vMaxY <<= shift;
+            } else if (tileLevel < level) {
+                int shift = level - tileLevel;
+                xStart <<= shift; yStart <<= shift;
+                xEnd <<= shift;
+                yEnd <<= shift;
+            }
+            return xStart < vMaxX && vMinX < xEnd && yStart < vMaxY && vMinY < yEnd;
+        }
+    }
+}
@@ -0,0 +1,15 @@
+-- Migration script to add content-hash deduplication columns to images table
+-- Run this script to update your existing database schema
+
+ALTER TABLE images
+ADD COLUMN IF NOT EXISTS content_hash VARCHAR(64),
+ADD COLUMN IF NOT EXISTS tile_source_id BIGINT;
+
+CREATE INDEX IF NOT EXISTS idx_images_content_hash ON images(content_hash);
+CREATE INDEX IF NOT EXISTS idx_images_tile_source_id ON images(tile_source_id);
+
+-- Verify the changes
+SELECT column_name, data_type, is_nullable
+FROM information_schema.columns
+WHERE table_name = 'images'
+ORDER BY ordinal_position;
@@ -0,0 +1,35 @@
+-- Migration script to add the ingest_profiles table (tile üretim performans kayıtları)
+-- Run this script to update your existing database schema
+
+CREATE TABLE IF NOT EXISTS ingest_profiles (
+    id BIGSERIAL PRIMARY KEY,
+    image_id BIGINT NOT NULL,
+    format VARCHAR(50),
+    pyramid_mode VARCHAR(20),
+    tile_store VARCHAR(20),
+    workers INTEGER,
+    resumed BOOLEAN,
+    total_ms BIGINT,
+    open_ms BIGINT,
+    read_ms BIGINT,
+    convert_ms BIGINT,
+    scale_ms BIGINT,
+    encode_ms BIGINT,
+    write_ms BIGINT,
+    bytes_read BIGINT,
+    tiles_written BIGINT,
+    tiles_blank BIGINT,
+    tiles_skipped BIGINT,
+    peak_buffer_bytes BIGINT,
+    level_ms TEXT,
+    created TIMESTAMP DEFAULT CURRENT_TIMESTAMP,
+    FOREIGN KEY (image_id) REFERENCES images(id) ON DELETE CASCADE
+);
+
+CREATE INDEX IF NOT EXISTS idx_ingest_profiles_image_id ON ingest_profiles(image_id);
+
+-- Verify the changes
+SELECT column_name, data_type, is_nullable
+FROM information_schema.columns
+WHERE table_name = 'ingest_profiles'
+ORDER BY ordinal_position;
@@ -0,0 +1,11 @@
+-- Migration script to add the pyramid generation timestamp to images table
+-- Run this script to update your existing database schema
+
+ALTER TABLE images
+ADD COLUMN IF NOT EXISTS tiles_generated TIMESTAMP;
+
+-- Verify the changes
+SELECT column_name, data_type, is_nullable
+FROM information_schema.columns
+WHERE table_name = 'images'
+ORDER BY ordinal_position;
@@ -27,8 +27,35 @@ CREATE TABLE IF NOT EXISTS annotations (
     FOREIGN KEY (image_id) REFERENCES images(id) ON DELETE CASCADE
 );
 
+-- Tile üretim performans kayıtları - sadece yoksa oluştur
+CREATE TABLE IF NOT EXISTS ingest_profiles (
+    id BIGSERIAL PRIMARY KEY,
+    image_id BIGINT NOT NULL,
+    format VARCHAR(50),
+    pyramid_mode VARCHAR(20),
+    tile_store VARCHAR(20),
+    workers INTEGER,
+    resumed BOOLEAN,
+    total_ms BIGINT,
+    open_ms BIGINT,
+    read_ms BIGINT,
+    convert_ms BIGINT,
+    scale_ms BIGINT,
+    encode_ms BIGINT,
+    write_ms BIGINT,
+    bytes_read BIGINT,
+    tiles_written BIGINT,
+    tiles_blank BIGINT,
+    tiles_skipped BIGINT,
+    peak_buffer_bytes BIGINT,
+    level_ms TEXT,
+    created TIMESTAMP DEFAULT CURRENT_TIMESTAMP,
+    FOREIGN KEY (image_id) REFERENCES images(id) ON DELETE CASCADE
+);
+
 -- Create indexes for better performance - sadece yoksa oluştur
 CREATE INDEX IF NOT EXISTS idx_images_status ON images(status);
 CREATE INDEX IF NOT EXISTS idx_images_name ON images(name);
 CREATE INDEX IF NOT EXISTS idx_annotations_image_id ON annotations(image_id);
 CREATE INDEX IF NOT EXISTS idx_annotations_type ON annotations(type);
+CREATE INDEX IF NOT EXISTS idx_ingest_profiles_image_id ON ingest_profiles(image_id);
@@ -50,6 +50,7 @@ export const ApiGateway = {
     getImageStatus: ApiGateway.api + ApiGateway.imagesPath + "/status/",
     getImageMetadata: ApiGateway.api + ApiGateway.imagesPath + "/metadata/",
     getImagesList: ApiGateway.api + ApiGateway.imagesPath + "/get-images-list",
+    getThumbnails: ApiGateway.api + ApiGateway.imagesPath + "/thumbnails",
     updateImage: ApiGateway.api + ApiGateway.imagesPath + "/",
     deleteImage: ApiGateway.api + ApiGateway.imagesPath + "/",
     getImageById: ApiGateway.api + ApiGateway.imagesPath + "/",
@@ -1,7 +1,7 @@
 import { CommonModule } from '@angular/common';
 import { Component, ElementRef, OnDestroy, OnInit, ViewChild } from '@angular/core';
 import { Router, RouterModule } from '@angular/router';
-import { interval, Subject, switchMap, takeUntil, startWith } from 'rxjs';
+import { catchError, from, interval, map, mergeMap, Observable, Subject, switchMap, takeUntil, startWith, throwError } from 'rxjs';
 import { ImageOverview, ImageService } from '../../services/image.service';
 import { ImageUploadService, UploadProgress } from '../../services/image-upload.service';
 import { ImageEditModalComponent } from '../image-edit-modal/image-edit-modal.component';
@@ -38,6 +38,14 @@ export class HomeComponent implements OnInit, OnDestroy {
   // destroy sinyali
   private destroy$ = new Subject<void>();
 
+  // Önizlemeler sunucudan bu büyüklükte gruplar halinde istenir; sunucu daha azına izin
+  // veriyorsa (thumbnail.batch-max) 400 yanıtındaki maxIds ile güncellenir
+  private thumbnailBatch = 200;
+  // Liste her yenilendiğinde aynı önizlemeler tekrar indirilmez
+  private thumbnailCache = new Map<number, string>();
+  // Önizlemesi gelmeyen görüntüler, o andaki durumlarıyla; durum değişene kadar tekrar istenmez
+  private thumbnailMisses = new Map<number, ImageOverview['status']>();
+
   // Hazır görüntü sayısı için getter
   get readyImagesCount(): number {
     return this.allImages.filter(img => img.status === 'READY').length;
@@ -86,6 +94,7 @@ export class HomeComponent implements OnInit, OnDestroy {
       next: list => {
         this.allImages = list;
         this.images = list; // Backward compatibility için
+        this.loadThumbnails(list);
       },
       error: err => console.error('Liste yüklenirken hata:', err)
     });
@@ -252,13 +261,68 @@ export class HomeComponent implements OnInit, OnDestroy {
         next: list => {
           this.allImages = list;
           this.images = list;
+          this.loadThumbnails(list);
         },
         error: err => console.error('Liste yüklenirken hata:', err)
       });
   }
 
+  /** Önizlemeleri görüntü başına bir istek yerine gruplar halinde yükler */
+  private loadThumbnails(list: ImageOverview[]) {
+    for (const img of list) {
+      img.thumbnail = this.thumbnailCache.get(img.id);
+    }
+    const pending = list.filter(img => img.previewUrl && !img.thumbnail
+      && this.thumbnailMisses.get(img.id) !== img.status);
+    const statuses = new Map(pending.map(img => [img.id, img.status]));
+    from(chunk(pending.map(img => img.id), this.thumbnailBatch)).pipe(
+      mergeMap(batch => this.fetchThumbnails(batch), 2),
+      takeUntil(this.destroy$)
+    ).subscribe({
+      next: ({ ids, thumbnails }) => {
+        for (const id of ids) {
+          if (thumbnails[id]) {
+            this.thumbnailCache.set(id, thumbnails[id]);
+            this.thumbnailMisses.delete(id);
+          } else {
+            this.thumbnailMisses.set(id, statuses.get(id)!);
+          }
+        }
+        for (const img of list) {
+          if (!img.thumbnail) {
+            img.thumbnail = this.thumbnailCache.get(img.id);
+          }
+        }
+      },
+      error: err => console.error('Önizlemeler yüklenirken hata:', err)
+    });
+  }
+
+  /** Bir grubun önizlemeleri; sunucu grubu büyük bulursa bildirdiği sınırla bölünüp tekrar istenir */
+  private fetchThumbnails(ids: number[]): Observable<{ ids: number[], thumbnails: { [id: number]: string } }> {
+    return this.imageService.getThumbnails(ids).pipe(
+      map(thumbnails => ({ ids, thumbnails })),
+      catchError(err => {
+        const limit = err?.error?.maxIds;
+        if (err?.status === 400 && typeof limit === 'number' && limit > 0 && limit < ids.length) {
+          this.thumbnailBatch = limit;
+          return from(chunk(ids, limit)).pipe(mergeMap(part => this.fetchThumbnails(part), 2));
+        }
+        return throwError(() => err);
+      })
+    );
+  }
+
   ngOnDestroy() {
     this.destroy$.next();
     this.destroy$.complete();
   }
 }
+
+function chunk<T>(items: T[], size: number): T[][] {
+  const chunks: T[][] = [];
+  for (let i = 0; i < items.length; i += size) {
+    chunks.push(items.slice(i, i + size));
+  }
+  return chunks;
+}
@@ -18,6 +18,7 @@ import {
   import { AnnotationService } from '../../services/annotation.service';
   import { TilesApi } from '../../app-const/api-gateway';
   import { AnnotoriousIntegration } from './annotorious-integration'; // yolu konumuna göre düzelt
+  import { TileBatchLoader } from './tile-batch-loader';
   // Basic Interfaces
   interface Point {
     x: number;
@@ -84,6 +85,8 @@ import {
     // Core Properties
     imageId!: number;
     viewer!: any; // Use global OpenSeadragon viewer
+    // Viewport dolduran tile istekleri tek toplu istekte alınır
+    private tileBatchLoader!: TileBatchLoader;
     private anno = new AnnotoriousIntegration();
     currentTool: string | null = null;
 
@@ -659,6 +662,8 @@ import {
 
     private createViewer(metadata: any, width: number, height: number, tileSize: number, maxLevel: number): void {
       try {
+        this.tileBatchLoader = new TileBatchLoader(`${TilesApi.getTileByIdLevel}${this.imageId}/batch`,
+          undefined, undefined, metadata?.tileGeneration ?? null);
         this.viewer = OpenSeadragon({
           element: this.viewerContainer.nativeElement,
           prefixUrl: '/assets/openseadragon-images/',
@@ -690,17 +695,22 @@ import {
           smoothTileEdgesMinZoom: 1.1,
           crossOriginPolicy: false,
           ajaxWithCredentials: false,
-          loadTilesWithAjax: false,
+          // Tekil tile GET'leri de oturum başlığını taşır (bkz. TilePrefetcher.sessionOf)
+          loadTilesWithAjax: true,
+          ajaxHeaders: { 'X-Viewer-Session': this.tileBatchLoader.session },
           tileSources: {
             width: width,
             height: height,
             tileSize: tileSize,
             maxLevel: maxLevel,
             getTileUrl: (level: number, x: number, y: number) => {
-              const tileUrl = `${TilesApi.getTileByIdLevel}${this.imageId}/${level}/${x}_${y}.jpg`;
+              const version = metadata?.tileGeneration ? `?v=${metadata.tileGeneration}` : '';
+              const tileUrl = `${TilesApi.getTileByIdLevel}${this.imageId}/${level}/${x}_${y}.jpg${version}`;
               console.log('Tile isteniyor:', level, x, y, '->', tileUrl);
               return tileUrl;
-            }
+            },
+            downloadTileStart: (context: any) => this.tileBatchLoader.start(context),
+            downloadTileAbort: (context: any) => this.tileBatchLoader.abort(context)
           }
         });
 
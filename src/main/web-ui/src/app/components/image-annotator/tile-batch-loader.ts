@@ -0,0 +1,276 @@
+// tile-batch-loader.ts
+// OpenSeadragon tile isteklerini kısa bir pencerede toplayıp tek POST /api/tiles/{id}/batch
+// isteğiyle alır. Yanıt çerçeveleri geldikçe ilgili tile'lar tamamlanır (bkz. TileController.getTiles):
+// her çerçeve big-endian int32 level, x, y, uzunluk ve JPEG baytlarıdır; uzunluk -1 tile yok,
+// -2 okunamadı, -3 sunucuda hâlâ üretiliyor demektir. Sunucu istek anında ürettiği tile'ları
+// hazır oldukça aynı yanıtta gönderir; süre sınırında bitmeyenler (-3) artan aralıklarla yeniden
+// istenir. Toplu istek başarısız olursa tile'lar tek tek yüklenir.
+// İstek başına tile sınırı sunucunun 400 yanıtındaki maxTiles ile güncellenir.
+//
+// Toplu yanıt POST olduğu için tarayıcının HTTP önbelleğine girmez. Bu yüzden tek başına kalan
+// tile'lar ve daha önce GET ile alınmış olanlar (immutable ?v= yanıtı önbellekte) tekil GET ile
+// yüklenir. Toplu gelen tile'lar, sunucu X-Tile-Generation ile neslin değişmez olduğunu
+// bildirdiyse sınırlı bir bellek önbelleğinde tutulur; OpenSeadragon önbelleğinden düşüp tekrar
+// istendiklerinde ağa gidilmez.
+//
+// X-Viewer-Session başlığı sunucudaki ön yüklemenin (TilePrefetcher) bu görüntüleyicinin
+// hareketini aynı adresteki diğer sekmelerden ayırmasını sağlar. Tekil GET'lerde başlığı
+// OpenSeadragon ekler (loadTilesWithAjax + ajaxHeaders).
+
+declare const OpenSeadragon: any;
+
+const FRAME_HEADER_BYTES = 16;
+const FRAME_MISSING = -1;
+const FRAME_PENDING = -3;
+// Üretilmekte olan tile'lar için yeniden deneme: 200 ms'den 2 s'ye artan aralık, ~25 s sonra tekil GET
+const PENDING_RETRY_MS = 200;
+const PENDING_RETRY_MAX_MS = 2000;
+const MAX_PENDING_RETRIES = 15;
+const TILE_URL_PATTERN = /\/(\d+)\/(\d+)_(\d+)\.jpg(?:\?|$)/;
+const TILE_GENERATION_HEADER = 'X-Tile-Generation';
+
+interface PendingTile {
+  level: number;
+  x: number;
+  y: number;
+  context: any;
+}
+
+export class TileBatchLoader {
+  private queue: PendingTile[] = [];
+  private timer: ReturnType<typeof setTimeout> | null = null;
+  /** Toplu gelen değişmez tile'lar, erişim sırasıyla (Map ekleme sırası LRU olarak kullanılır) */
+  private memory = new Map<string, Blob>();
+  private memoryBytes = 0;
+  /** GET ile istenmiş, tarayıcı önbelleğinde olması beklenen tile'lar */
+  private fetchedWithGet = new Set<string>();
+  // crypto.randomUUID yalnızca güvenli bağlamda (HTTPS) var; ayırt edici olması yeterli.
+  // Tekil GET'ler de aynı oturumu taşısın diye görüntüleyicinin ajaxHeaders'ına verilir.
+  readonly session = Math.random().toString(36).slice(2) + Date.now().toString(36);
+
+  /**
+   * @param batchUrl toplu tile uç noktası
+   * @param windowMs isteklerin toplandığı süre; bir pan/zoom karesindeki tile'lar aynı isteğe girer
+   * @param maxTiles istek başına en fazla tile; sunucu daha azına izin veriyorsa 400 yanıtından öğrenilir
+   * @param generation tile URL'lerindeki ?v= nesil belirteci
+   * @param maxMemoryBytes toplu gelen tile'lar için bellek önbelleği sınırı
+   */
+  constructor(private batchUrl: string, private windowMs = 10, private maxTiles = 64,
+              private generation: string | null = null, private maxMemoryBytes = 64 * 1024 * 1024) {}
+
+  /** tileSource.downloadTileStart yerine kullanılır */
+  start(context: any): void {
+    const match = TILE_URL_PATTERN.exec(context.src);
+    if (!match) {
+      this.loadSingle(context);
+      return;
+    }
+    const key = `${match[1]}/${match[2]}_${match[3]}`;
+    const remembered = this.memory.get(key);
+    if (remembered) {
+      this.memory.delete(key);
+      this.memory.set(key, remembered);
+      finishWithImage(context, remembered);
+      return;
+    }
+    if (this.fetchedWithGet.has(key)) {
+      this.loadSingle(context);
+      return;
+    }
+    context.userData.batched = true;
+    this.enqueue({ level: +match[1], x: +match[2], y: +match[3], context });
+  }
+
+  /** tileSource.downloadTileAbort yerine kullanılır */
+  abort(context: any): void {
+    if (!context.userData.batched) {
+      OpenSeadragon.TileSource.prototype.downloadTileAbort.call(context.source, context);
+      return;
+    }
+    context.userData.aborted = true;
+    this.queue = this.queue.filter(tile => tile.context !== context);
+  }
+
+  private enqueue(tile: PendingTile): void {
+    this.queue.push(tile);
+    if (this.queue.length >= this.maxTiles) {
+      this.flush();
+    } else if (!this.timer) {
+      this.timer = setTimeout(() => this.flush(), this.windowMs);
+    }
+  }
+
+  private flush(): void {
+    if (this.timer) {
+      clearTimeout(this.timer);
+      this.timer = null;
+    }
+    if (this.queue.length === 1 && !this.queue[0].context.userData.pendingRetries) {
+      // Tek tile için toplu istek HTTP önbelleğini boşa harcar
+      this.loadSingle(this.queue.pop()!.context);
+      return;
+    }
+    while (this.queue.length > 0) {
+      this.fetchBatch(this.queue.splice(0, this.maxTiles));
+    }
+  }
+
+  private async fetchBatch(batch: PendingTile[]): Promise<void> {
+    // Aynı tile'ı bekleyen birden çok istek tek çerçeveyle tamamlanır
+    const waiting = new Map<string, PendingTile[]>();
+    for (const tile of batch) {
+      const key = `${tile.level}/${tile.x}_${tile.y}`;
+      waiting.set(key, [...(waiting.get(key) ?? []), tile]);
+    }
+    const coords = Array.from(waiting.values()).map(([tile]) => [tile.level, tile.x, tile.y]);
+    const url = this.generation ? `${this.batchUrl}?v=${encodeURIComponent(this.generation)}` : this.batchUrl;
+
+    try {
+      const response = await fetch(url, {
+        method: 'POST',
+        headers: { 'Content-Type': 'application/json', 'X-Viewer-Session': this.session },
+        body: JSON.stringify(coords)
+      });
+      if (response.status === 400) {
+        const limit = (await response.json().catch(() => null))?.maxTiles;
+        if (typeof limit === 'number' && limit > 0 && limit < batch.length) {
+          this.maxTiles = limit;
+          for (let i = 0; i < batch.length; i += limit) {
+            this.fetchBatch(batch.slice(i, i + limit));
+          }
+          return;
+        }
+      }
+      if (!response.ok || !response.body) {
+        throw new Error(`HTTP ${response.status}`);
+      }
+      const cacheable = this.generation !== null && response.headers.get(TILE_GENERATION_HEADER) === this.generation;
+      const reader = response.body.getReader();
+      let pending: Uint8Array = new Uint8Array(0);
+      for (;;) {
+        const { done, value } = await reader.read();
+        if (done) {
+          break;
+        }
+        pending = this.consumeFrames(concat(pending, value), waiting, cacheable);
+      }
+    } catch (error) {
+      console.warn('Toplu tile isteği başarısız, tile\'lar tek tek yükleniyor:', error);
+    }
+
+    // Çerçevesi gelmeyenler (bağlantı koptu, hata) tek tek yüklenir
+    waiting.forEach(tiles => tiles.forEach(tile => {
+      if (!tile.context.userData.aborted) {
+        this.loadSingle(tile.context);
+      }
+    }));
+  }
+
+  /** Tamamlanan çerçeveleri işler, yarım kalan baytları döner */
+  private consumeFrames(buffer: Uint8Array, waiting: Map<string, PendingTile[]>, cacheable: boolean): Uint8Array {
+    const view = new DataView(buffer.buffer, buffer.byteOffset, buffer.byteLength);
+    let offset = 0;
+    while (buffer.length - offset >= FRAME_HEADER_BYTES) {
+      const level = view.getInt32(offset);
+      const x = view.getInt32(offset + 4);
+      const y = view.getInt32(offset + 8);
+      const length = view.getInt32(offset + 12);
+      const bodyLength = Math.max(length, 0);
+      if (buffer.length - offset - FRAME_HEADER_BYTES < bodyLength) {
+        break;
+      }
+
+      const key = `${level}/${x}_${y}`;
+      const tiles = waiting.get(key) ?? [];
+      waiting.delete(key);
+      const start = offset + FRAME_HEADER_BYTES;
+      const jpeg = length >= 0 ? new Blob([buffer.slice(start, start + length)], { type: 'image/jpeg' }) : null;
+      if (jpeg && cacheable) {
+        this.remember(key, jpeg);
+      }
+      for (const tile of tiles) {
+        if (tile.context.userData.aborted) {
+          continue;
+        }
+        if (jpeg) {
+          finishWithImage(tile.context, jpeg);
+        } else if (length === FRAME_PENDING) {
+          this.retryLater(tile);
+        } else {
+          tile.context.finish(null, null, length === FRAME_MISSING ? 'Tile bulunamadı' : 'Tile okunamadı');
+        }
+      }
+      offset = start + bodyLength;
+    }
+    return buffer.subarray(offset);
+  }
+
+  /** Sunucuda üretilmekte olan tile'ı artan aralıklarla yeniden ister; çok uzarsa tekil GET'e düşer */
+  private retryLater(tile: PendingTile): void {
+    const attempt = (tile.context.userData.pendingRetries ?? 0) + 1;
+    tile.context.userData.pendingRetries = attempt;
+    if (attempt > MAX_PENDING_RETRIES) {
+      this.loadSingle(tile.context);
+      return;
+    }
+    const delay = Math.min(PENDING_RETRY_MAX_MS, PENDING_RETRY_MS * 2 ** (attempt - 1));
+    setTimeout(() => {
+      if (!tile.context.userData.aborted) {
+        this.enqueue(tile);
+      }
+    }, delay);
+  }
+
+  private remember(key: string, jpeg: Blob): void {
+    if (jpeg.size > this.maxMemoryBytes) {
+      return;
+    }
+    const previous = this.memory.get(key);
+    if (previous) {
+      this.memory.delete(key);
+      this.memoryBytes -= previous.size;
+    }
+    this.memory.set(key, jpeg);
+    this.memoryBytes += jpeg.size;
+    for (const [eldestKey, eldest] of this.memory) {
+      if (this.memoryBytes <= this.maxMemoryBytes) {
+        break;
+      }
+      this.memory.delete(eldestKey);
+      this.memoryBytes -= eldest.size;
+    }
+  }
+
+  private loadSingle(context: any): void {
+    const match = TILE_URL_PATTERN.exec(context.src);
+    if (match && this.generation) {
+      this.fetchedWithGet.add(`${match[1]}/${match[2]}_${match[3]}`);
+    }
+    context.userData.batched = false;
+    OpenSeadragon.TileSource.prototype.downloadTileStart.call(context.source, context);
+  }
+}
+
+function finishWithImage(context: any, jpeg: Blob): void {
+  const url = URL.createObjectURL(jpeg);
+  const image = new Image();
+  image.onload = () => {
+    URL.revokeObjectURL(url);
+    context.finish(image, null, undefined);
+  };
+  image.onerror = () => {
+    URL.revokeObjectURL(url);
+    context.finish(null, null, 'Tile çözümlenemedi');
+  };
+  image.src = url;
+}
+
+function concat(a: Uint8Array, b: Uint8Array): Uint8Array {
+  if (a.length === 0) {
+    return b;
+  }
+  const joined = new Uint8Array(a.length + b.length);
+  joined.set(a);
+  joined.set(b, a.length);
+  return joined;
+}
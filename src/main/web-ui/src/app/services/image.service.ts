@@ -65,6 +65,7 @@ export interface ImageMetadata {
   created?: string;
   updated?: string;
   status?: string;
+  tileGeneration?: string; // tile URL'lerine ?v= olarak eklenir; değişmediği sürece tile'lar önbellekten gelir
 
   // Calculated properties
   totalArea?: number; // in square pixels
@@ -77,6 +78,7 @@ export interface ImageOverview {
     name: string;
     status: 'PENDING' | 'PROCESSING' | 'READY' | 'ERROR';
     previewUrl?: string;
+    thumbnail?: string; // toplu önizleme isteğinden gelen data URI (sadece istemci tarafı)
     created?: string;
     updated?: string;
 }
@@ -111,6 +113,15 @@ export class ImageService {
     return this.http.get<ImageOverview[]>(`${ImagesApi.getImagesList}`);
   }
 
+  /**
+   * Bir grup görüntünün önizlemelerini tek istekte getirir (id -> data URI)
+   */
+  getThumbnails(ids: number[]): Observable<{ [id: number]: string }> {
+    return this.http.get<{ [id: number]: string }>(ImagesApi.getThumbnails, {
+      params: { ids: ids.join(',') }
+    });
+  }
+
   /**
    * Image'ı ID ile getirir
    */
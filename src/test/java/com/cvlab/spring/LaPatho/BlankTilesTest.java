@@ -0,0 +1,152 @@
+package com.cvlab.spring.LaPatho;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.awt.image.BufferedImage;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class BlankTilesTest {
+
+    @TempDir
+    Path dir;
+
+    private final TilePyramid pyramid = new TilePyramid(2000, 1000, 256);
+
+    @Test
+    void uniformBrightTileIsBackground() {
+        // BGR bantları: B=230, G=235, R=240
+        BufferedImage tile = bgr(16, 16, 230, 235, 240);
+
+        assertEquals(0xF0EBE6, BlankTiles.backgroundColor(tile, 200, 6));
+    }
+
+    @Test
+    void paleTintedTileIsBackground() {
+        // Kanal ortalamaları farklı ama her kanal düz
+        BufferedImage tile = bgr(16, 16, 250, 215, 235);
+
+        assertEquals(0xEBD7FA, BlankTiles.backgroundColor(tile, 200, 6));
+    }
+
+    @Test
+    void darkOrTexturedTileIsNotBackground() {
+        assertEquals(-1, BlankTiles.backgroundColor(bgr(16, 16, 120, 120, 120), 200, 6));
+
+        BufferedImage textured = bgr(16, 16, 230, 230, 230);
+        byte[] pixels = DownsamplerTest.data(textured);
+        for (int i = 0; i < pixels.length; i += 6) {
+            pixels[i] = (byte) 255;
+            pixels[i + 1] = (byte) 255;
+            pixels[i + 2] = (byte) 255;
+        }
+        assertEquals(-1, BlankTiles.backgroundColor(textured, 200, 6));
+    }
+
+    @Test
+    void grayTileReturnsGrayColor() {
+        BufferedImage tile = DownsamplerTest.gray(8, 8, (x, y) -> 240);
+
+        assertEquals(0xF0F0F0, BlankTiles.backgroundColor(tile, 200, 6));
+    }
+
+    @Test
+    void marksKeepTheirColor() {
+        BlankTiles blank = new BlankTiles(pyramid);
+
+        assertTrue(blank.mark(3, 1, 1, 0xF0F0F0));
+        assertTrue(blank.mark(3, 2, 1, 0xF1EFF2));
+        assertTrue(blank.mark(2, 0, 0, 0xE0D0F0));
+
+        // Tolerans içindeki renk aynı palet girdisini kullanır
+        assertEquals(0xF0F0F0, blank.colorOf(3, 2, 1));
+        assertEquals(0xE0D0F0, blank.colorOf(2, 0, 0));
+        assertEquals(-1, blank.colorOf(3, 0, 0));
+        assertEquals(-1, blank.colorOf(9, 0, 0));
+        assertFalse(blank.isBlank(3, 0, 0));
+        assertEquals(3, blank.getCount());
+    }
+
+    @Test
+    void remarkedTileMovesToNewColor() {
+        BlankTiles blank = new BlankTiles(pyramid);
+        blank.mark(3, 1, 1, 0xF0F0F0);
+
+        blank.mark(3, 1, 1, 0xC0C0C0);
+
+        assertEquals(0xC0C0C0, blank.colorOf(3, 1, 1));
+        assertEquals(1, blank.getCount());
+    }
+
+    @Test
+    void fullPaletteRejectsNewColors() {
+        BlankTiles blank = new BlankTiles(pyramid);
+        for (int i = 0; i < BlankTiles.MAX_COLORS; i++) {
+            assertTrue(blank.mark(3, i % 8, i / 8, i * 0x080808));
+        }
+
+        assertFalse(blank.mark(3, 0, 0, 0xFFFFFF));
+        assertTrue(blank.mark(3, 0, 0, 0x080809));
+        assertEquals(0x080808, blank.colorOf(3, 0, 0));
+    }
+
+    @Test
+    void savedSetIsLoadedBack() throws IOException {
+        Path file = dir.resolve("1.blank");
+        BlankTiles blank = new BlankTiles(pyramid);
+        blank.mark(3, 7, 3, 0xF0F0F0);
+        blank.mark(1, 1, 0, 0xE0E0E0);
+        blank.saveIfDirty(file);
+
+        BlankTiles loaded = BlankTiles.load(file);
+
+        assertEquals(2000, loaded.getPyramid().getWidth());
+        assertEquals(2, loaded.getCount());
+        assertEquals(0xF0F0F0, loaded.colorOf(3, 7, 3));
+        assertEquals(0xE0E0E0, loaded.colorOf(1, 1, 0));
+        assertEquals(-1, loaded.colorOf(3, 0, 0));
+    }
+
+    @Test
+    void versionOneFileIsLoadedWithSingleColor() throws IOException {
+        Path file = dir.resolve("1.blank");
+        try (DataOutputStream out = new DataOutputStream(Files.newOutputStream(file))) {
+            out.writeInt(0x4C50424C);
+            out.writeInt(1);
+            out.writeInt(2000);
+            out.writeInt(1000);
+            out.writeInt(256);
+            out.writeInt(0xFAFAFA);
+            for (int level = 0; level <= pyramid.getMaxLevel(); level++) {
+                if (level == 3) {
+                    // Seviye 3'te bit 9: tileX=1, tileY=1
+                    out.writeInt(1);
+                    out.writeLong(1L << 9);
+                } else {
+                    out.writeInt(0);
+                }
+            }
+        }
+
+        BlankTiles loaded = BlankTiles.load(file);
+
+        assertEquals(1, loaded.getCount());
+        assertEquals(0xFAFAFA, loaded.colorOf(3, 1, 1));
+    }
+
+    static BufferedImage bgr(int width, int height, int b, int g, int r) {
+        BufferedImage image = new BufferedImage(width, height, BufferedImage.TYPE_3BYTE_BGR);
+        byte[] pixels = DownsamplerTest.data(image);
+        for (int i = 0; i < pixels.length; i += 3) {
+            pixels[i] = (byte) b;
+            pixels[i + 1] = (byte) g;
+            pixels[i + 2] = (byte) r;
+        }
+        return image;
+    }
+}
@@ -0,0 +1,129 @@
+package com.cvlab.spring.LaPatho;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.util.Arrays;
+import java.util.HexFormat;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ChunkedUploadServiceTest {
+
+    @TempDir
+    Path dir;
+
+    private final byte[] content = content(10_000);
+
+    @Test
+    void chunksAreAppendedAtTheirOffsets() throws Exception {
+        ChunkedUploadService service = service();
+        ChunkedUploadService.UploadSession session = service.create("slide.svs", content.length);
+
+        assertEquals(4000, service.append(session, 0, chunk(0, 4000)));
+        assertEquals(content.length, service.append(session, 4000, chunk(4000, content.length)));
+        ChunkedUploadService.CompletedUpload upload = service.complete(session);
+
+        assertEquals("slide.svs", upload.fileName());
+        assertArrayEquals(content, Files.readAllBytes(upload.file()));
+        assertEquals(sha256(content), upload.sha256());
+    }
+
+    @Test
+    void wrongOffsetReportsExpectedOffset() throws Exception {
+        ChunkedUploadService service = service();
+        ChunkedUploadService.UploadSession session = service.create("slide.svs", content.length);
+        service.append(session, 0, chunk(0, 4000));
+
+        ChunkedUploadService.OffsetMismatchException e = assertThrows(ChunkedUploadService.OffsetMismatchException.class,
+                () -> service.append(session, 3000, chunk(3000, content.length)));
+
+        assertEquals(4000, e.getExpected());
+        assertEquals(4000, session.getOffset());
+    }
+
+    @Test
+    void dataBeyondDeclaredLengthIsRejected() throws Exception {
+        ChunkedUploadService service = service();
+        ChunkedUploadService.UploadSession session = service.create("slide.svs", 100);
+
+        assertThrows(IllegalArgumentException.class, () -> service.append(session, 0, chunk(0, 101)));
+    }
+
+    @Test
+    void incompleteUploadCannotBeCompleted() throws Exception {
+        ChunkedUploadService service = service();
+        ChunkedUploadService.UploadSession session = service.create("slide.svs", content.length);
+        service.append(session, 0, chunk(0, 4000));
+
+        assertThrows(IllegalStateException.class, () -> service.complete(session));
+    }
+
+    @Test
+    void uploadResumesAfterRestartWithSameChecksum() throws Exception {
+        ChunkedUploadService before = service();
+        String id = before.create("../slide.svs", content.length).getId();
+        before.append(before.find(id).orElseThrow(), 0, chunk(0, 6000));
+
+        // Yeni örnek: yükleme kayıtlı bilgilerinden ve dosya boyutundan açılır
+        ChunkedUploadService after = service();
+        ChunkedUploadService.UploadSession session = after.find(id).orElseThrow();
+        assertEquals(6000, session.getOffset());
+        assertEquals("slide.svs", session.getFileName());
+
+        after.append(session, 6000, chunk(6000, content.length));
+        ChunkedUploadService.CompletedUpload upload = after.complete(session);
+
+        assertEquals(sha256(content), upload.sha256());
+        assertEquals(dir, upload.file().getParent());
+        assertTrue(after.find(id).isEmpty());
+    }
+
+    @Test
+    void abortedUploadIsRemoved() throws Exception {
+        ChunkedUploadService service = service();
+        ChunkedUploadService.UploadSession session = service.create("slide.svs", content.length);
+        service.append(session, 0, chunk(0, 4000));
+
+        service.abort(session);
+
+        assertTrue(service.find(session.getId()).isEmpty());
+        try (var files = Files.list(dir)) {
+            assertTrue(files.noneMatch(Files::isRegularFile));
+        }
+    }
+
+    @Test
+    void malformedIdIsNotFound() throws IOException {
+        assertTrue(service().find("../../etc/passwd").isEmpty());
+    }
+
+    private ChunkedUploadService service() {
+        ChunkedUploadService service = new ChunkedUploadService();
+        ReflectionTestUtils.setField(service, "uploadBasePath", dir.toString());
+        ReflectionTestUtils.setField(service, "expireHours", 24L);
+        return service;
+    }
+
+    private ByteArrayInputStream chunk(int from, int to) {
+        return new ByteArrayInputStream(Arrays.copyOfRange(content, from, to));
+    }
+
+    private static byte[] content(int length) {
+        byte[] data = new byte[length];
+        for (int i = 0; i < length; i++) {
+            data[i] = (byte) (i * 31 + i / 7);
+        }
+        return data;
+    }
+
+    private static String sha256(byte[] data) throws Exception {
+        return HexFormat.of().formatHex(MessageDigest.getInstance("SHA-256").digest(data));
+    }
+}
@@ -0,0 +1,107 @@
+package com.cvlab.spring.LaPatho;
+
+import org.junit.jupiter.api.Test;
+
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferByte;
+import java.util.function.IntBinaryOperator;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class DownsamplerTest {
+
+    @Test
+    void halveAveragesTwoByTwoBlocks() {
+        BufferedImage source = gray(4, 2, (x, y) -> 4 * x + 16 * y);
+
+        BufferedImage half = Downsampler.halve(source, 2, 1);
+
+        // (0 + 4 + 16 + 20) / 4 ve (8 + 12 + 24 + 28) / 4
+        assertArrayEquals(new byte[]{10, 18}, data(half));
+    }
+
+    @Test
+    void halveRepeatsOddEdge() {
+        BufferedImage source = gray(3, 1, (x, y) -> 10 * (x + 1));
+
+        BufferedImage half = Downsampler.halve(source, 2, 1);
+
+        assertArrayEquals(new byte[]{15, 30}, data(half));
+    }
+
+    @Test
+    void halveKeepsChannelsApart() {
+        BufferedImage source = new BufferedImage(2, 2, BufferedImage.TYPE_3BYTE_BGR);
+        byte[] pixels = data(source);
+        for (int p = 0; p < 4; p++) {
+            pixels[3 * p] = (byte) 200;
+            pixels[3 * p + 1] = (byte) (p * 20);
+            pixels[3 * p + 2] = 0;
+        }
+
+        BufferedImage half = Downsampler.halve(source, 1, 1);
+
+        assertEquals(BufferedImage.TYPE_3BYTE_BGR, half.getType());
+        assertArrayEquals(new byte[]{(byte) 200, 30, 0}, data(half));
+    }
+
+    @Test
+    void areaAveragerAveragesCoveredPixels() {
+        BufferedImage source = gray(6, 3, (x, y) -> 10 * x + y);
+        Downsampler.AreaAverager averager = new Downsampler.AreaAverager(6, 3, 2, 1, 1);
+
+        averager.add(source, 6, 3, 0, 0);
+
+        // Her hedef piksel 3x3 kaynak pikselin ortalaması
+        assertArrayEquals(new byte[]{11, 41}, data(averager.toImage(BufferedImage.TYPE_BYTE_GRAY)));
+    }
+
+    @Test
+    void areaAveragerHasNoSeamAtBlockBoundaries() {
+        IntBinaryOperator value = (x, y) -> (37 * x + 11 * y) % 256;
+        Downsampler.AreaAverager whole = new Downsampler.AreaAverager(10, 7, 4, 3, 1);
+        whole.add(gray(10, 7, value), 10, 7, 0, 0);
+
+        // Blok sınırları hedef piksel sınırlarıyla çakışmaz
+        Downsampler.AreaAverager blocks = new Downsampler.AreaAverager(10, 7, 4, 3, 1);
+        for (int y = 0; y < 7; y += 4) {
+            for (int x = 0; x < 10; x += 4) {
+                int bx = x;
+                int by = y;
+                int w = Math.min(4, 10 - x);
+                int h = Math.min(4, 7 - y);
+                blocks.add(gray(w, h, (px, py) -> value.applyAsInt(bx + px, by + py)), w, h, x, y);
+            }
+        }
+
+        assertArrayEquals(data(whole.toImage(BufferedImage.TYPE_BYTE_GRAY)),
+                data(blocks.toImage(BufferedImage.TYPE_BYTE_GRAY)));
+    }
+
+    @Test
+    void areaAveragerKeepsUniformColor() {
+        BufferedImage source = gray(9, 5, (x, y) -> 200);
+        Downsampler.AreaAverager averager = new Downsampler.AreaAverager(9, 5, 4, 2, 1);
+
+        averager.add(source, 9, 5, 0, 0);
+
+        for (byte v : data(averager.toImage(BufferedImage.TYPE_BYTE_GRAY))) {
+            assertEquals(200, v & 0xFF);
+        }
+    }
+
+    static BufferedImage gray(int width, int height, IntBinaryOperator value) {
+        BufferedImage image = new BufferedImage(width, height, BufferedImage.TYPE_BYTE_GRAY);
+        byte[] pixels = data(image);
+        for (int y = 0; y < height; y++) {
+            for (int x = 0; x < width; x++) {
+                pixels[y * width + x] = (byte) value.applyAsInt(x, y);
+            }
+        }
+        return image;
+    }
+
+    static byte[] data(BufferedImage image) {
+        return ((DataBufferByte) image.getRaster().getDataBuffer()).getData();
+    }
+}
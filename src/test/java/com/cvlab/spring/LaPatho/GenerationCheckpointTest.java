@@ -0,0 +1,76 @@
+package com.cvlab.spring.LaPatho;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class GenerationCheckpointTest {
+
+    @TempDir
+    Path dir;
+
+    private final TilePyramid pyramid = new TilePyramid(4000, 3000, 512);
+    private final int[] plan = {0, 0, 1, 1};
+
+    @Test
+    void missingFileStartsFresh() throws IOException {
+        assertNull(GenerationCheckpoint.resume(dir.resolve("1.checkpoint"), pyramid, plan));
+    }
+
+    @Test
+    void resumeRestoresCompletedRows() throws IOException {
+        Path file = dir.resolve("1.checkpoint");
+        GenerationCheckpoint checkpoint = new GenerationCheckpoint(pyramid, plan, 2);
+        checkpoint.markRow(3, 0, 8);
+        checkpoint.markRow(3, 5, 8);
+        checkpoint.markRow(2, 1, 4);
+        checkpoint.saveIfDirty(file);
+
+        GenerationCheckpoint resumed = GenerationCheckpoint.resume(file, pyramid, plan);
+
+        assertNotNull(resumed);
+        assertEquals(2, resumed.getSplitLevel());
+        assertEquals(20, resumed.getCompletedTiles());
+        assertTrue(resumed.isRowDone(3, 0));
+        assertTrue(resumed.isRowDone(3, 5));
+        assertTrue(resumed.isRowDone(2, 1));
+        assertFalse(resumed.isRowDone(3, 1));
+    }
+
+    @Test
+    void markingARowTwiceCountsItOnce() {
+        GenerationCheckpoint checkpoint = new GenerationCheckpoint(pyramid, plan, 2);
+
+        checkpoint.markRow(3, 0, 8);
+        checkpoint.markRow(3, 0, 8);
+
+        assertEquals(8, checkpoint.getCompletedTiles());
+    }
+
+    @Test
+    void cleanCheckpointIsNotWritten() throws IOException {
+        Path file = dir.resolve("1.checkpoint");
+
+        new GenerationCheckpoint(pyramid, plan, 2).saveIfDirty(file);
+
+        assertFalse(Files.exists(file));
+    }
+
+    @Test
+    void differentGeometryOrPlanStartsFresh() throws IOException {
+        Path file = dir.resolve("1.checkpoint");
+        GenerationCheckpoint checkpoint = new GenerationCheckpoint(pyramid, plan, 2);
+        checkpoint.markRow(3, 0, 8);
+        checkpoint.saveIfDirty(file);
+
+        assertNull(GenerationCheckpoint.resume(file, new TilePyramid(4000, 3001, 512), plan));
+        assertNull(GenerationCheckpoint.resume(file, new TilePyramid(4000, 3000, 256), plan));
+        assertNull(GenerationCheckpoint.resume(file, pyramid, new int[]{0, 0, 0, 0}));
+        assertNotNull(GenerationCheckpoint.resume(file, pyramid, plan.clone()));
+    }
+}
@@ -0,0 +1,110 @@
+package com.cvlab.spring.LaPatho;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.http.HttpHeaders;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.setup.MockMvcBuilders;
+
+import java.util.Optional;
+import java.util.concurrent.Semaphore;
+
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.*;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.header;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+@ExtendWith(MockitoExtension.class)
+class IiifControllerTest {
+
+    @Mock
+    private ImageService imageService;
+
+    @Mock
+    private TileStore tileStore;
+
+    @InjectMocks
+    private IiifController controller;
+
+    private IiifService iiifService;
+    private MockMvc mvc;
+
+    @BeforeEach
+    void setUp() {
+        iiifService = new IiifService();
+        ReflectionTestUtils.setField(iiifService, "maxWidth", 8192);
+        ReflectionTestUtils.setField(iiifService, "maxHeight", 8192);
+        ReflectionTestUtils.setField(iiifService, "maxArea", 33554432L);
+        ReflectionTestUtils.setField(iiifService, "maxConcurrentRenders", 1);
+        ReflectionTestUtils.setField(iiifService, "renderWaitMs", 0L);
+        ReflectionTestUtils.setField(iiifService, "tileStore", tileStore);
+        iiifService.init();
+        ReflectionTestUtils.setField(controller, "iiifService", iiifService);
+        mvc = MockMvcBuilders.standaloneSetup(controller).build();
+
+        ImageEntity image = new ImageEntity();
+        image.setId(1L);
+        image.setWidth(1000);
+        image.setHeight(800);
+        image.setTileSize(512);
+        image.setStatus(Status.READY);
+        lenient().when(imageService.findById(1L)).thenReturn(Optional.of(image));
+    }
+
+    @Test
+    void invalidParametersAreBadRequest() throws Exception {
+        for (String path : new String[]{
+                "/iiif/1/0,0,0,10/max/0/default.jpg",
+                "/iiif/1/full/2000,/0/default.jpg",
+                "/iiif/1/full/max/400/default.jpg",
+                "/iiif/1/full/max/0/sepia.jpg"}) {
+            mvc.perform(get(path)).andExpect(status().isBadRequest());
+        }
+        verifyNoInteractions(tileStore);
+    }
+
+    @Test
+    void unsupportedFeaturesAreNotImplemented() throws Exception {
+        for (String path : new String[]{
+                "/iiif/1/full/max/45/default.jpg",
+                "/iiif/1/full/max/0/bitonal.jpg",
+                "/iiif/1/full/max/0/default.gif"}) {
+            mvc.perform(get(path)).andExpect(status().isNotImplemented());
+        }
+        verifyNoInteractions(tileStore);
+    }
+
+    @Test
+    void unknownImageIsNotFound() throws Exception {
+        mvc.perform(get("/iiif/2/full/max/0/default.jpg")).andExpect(status().isNotFound());
+        mvc.perform(get("/iiif/abc/full/max/0/default.jpg")).andExpect(status().isNotFound());
+    }
+
+    @Test
+    void missingTilesAreNotFound() throws Exception {
+        when(tileStore.find(anyString(), anyInt(), anyInt(), anyInt())).thenReturn(Optional.empty());
+
+        mvc.perform(get("/iiif/1/full/max/0/default.jpg")).andExpect(status().isNotFound());
+    }
+
+    @Test
+    void busyRendererIsServiceUnavailable() throws Exception {
+        Semaphore permits = (Semaphore) ReflectionTestUtils.getField(iiifService, "renderPermits");
+        permits.acquire();
+        try {
+            mvc.perform(get("/iiif/1/full/max/0/default.jpg"))
+                    .andExpect(status().isServiceUnavailable())
+                    .andExpect(header().string(HttpHeaders.RETRY_AFTER, "1"));
+        } finally {
+            permits.release();
+        }
+        verifyNoInteractions(tileStore);
+    }
+}
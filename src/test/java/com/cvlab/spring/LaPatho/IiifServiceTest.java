@@ -0,0 +1,71 @@
+package com.cvlab.spring.LaPatho;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class IiifServiceTest {
+
+    private final TilePyramid pyramid = new TilePyramid(10000, 8000, 512);
+    private IiifService service;
+
+    @BeforeEach
+    void setUp() {
+        service = new IiifService();
+        ReflectionTestUtils.setField(service, "maxWidth", 8192);
+        ReflectionTestUtils.setField(service, "maxHeight", 8192);
+        ReflectionTestUtils.setField(service, "maxArea", 33554432L);
+        ReflectionTestUtils.setField(service, "maxConcurrentRenders", 2);
+        service.init();
+    }
+
+    @Test
+    void regionForms() {
+        assertArrayEquals(new int[]{0, 0, 10000, 8000}, service.parseRegion("full", pyramid));
+        assertArrayEquals(new int[]{1000, 0, 8000, 8000}, service.parseRegion("square", pyramid));
+        assertArrayEquals(new int[]{100, 200, 300, 400}, service.parseRegion("100,200,300,400", pyramid));
+        assertArrayEquals(new int[]{1000, 800, 5000, 4000}, service.parseRegion("pct:10,10,50,50", pyramid));
+    }
+
+    @Test
+    void regionIsClippedToImage() {
+        assertArrayEquals(new int[]{9900, 7900, 100, 100}, service.parseRegion("9900,7900,500,500", pyramid));
+    }
+
+    @Test
+    void invalidRegionsAreRejected() {
+        for (String region : new String[]{"0,0,0,10", "10000,0,5,5", "0,8000,5,5", "1.5,0,5,5",
+                "-1,0,5,5", "a,b,c,d", "1,2,3", "pct:10,10,50", ""}) {
+            assertThrows(IllegalArgumentException.class, () -> service.parseRegion(region, pyramid), region);
+        }
+    }
+
+    @Test
+    void sizeForms() {
+        assertArrayEquals(new int[]{1000, 800}, service.parseSize("max", 1000, 800));
+        assertArrayEquals(new int[]{500, 400}, service.parseSize("500,", 1000, 800));
+        assertArrayEquals(new int[]{500, 400}, service.parseSize(",400", 1000, 800));
+        assertArrayEquals(new int[]{500, 400}, service.parseSize("pct:50", 1000, 800));
+        assertArrayEquals(new int[]{500, 400}, service.parseSize("!500,500", 1000, 800));
+        assertArrayEquals(new int[]{600, 100}, service.parseSize("600,100", 1000, 800));
+        assertArrayEquals(new int[]{2000, 1600}, service.parseSize("^2000,", 1000, 800));
+    }
+
+    @Test
+    void maxSizeStaysWithinServerLimits() {
+        int[] size = service.parseSize("max", 10000, 8000);
+
+        assertTrue(size[0] <= 8192 && size[1] <= 8192);
+        assertTrue((long) size[0] * size[1] <= 33554432L);
+        assertEquals(10000.0 / 8000, (double) size[0] / size[1], 0.01);
+    }
+
+    @Test
+    void invalidSizesAreRejected() {
+        for (String size : new String[]{"2000,", "1000,801", ",", "0,", "pct:0", "abc", "10", "^20000,"}) {
+            assertThrows(IllegalArgumentException.class, () -> service.parseSize(size, 1000, 800), size);
+        }
+    }
+}
@@ -0,0 +1,166 @@
+package com.cvlab.spring.LaPatho;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.junit.jupiter.api.io.TempDir;
+import org.mockito.ArgumentCaptor;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.transaction.support.TransactionCallback;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Optional;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.*;
+
+/** İçerik tekilleştirme: paylaşılan piramit ve kaynak dosyanın referans sayımı */
+@ExtendWith(MockitoExtension.class)
+class ImageServiceTest {
+
+    private static final String HASH = "ab".repeat(32);
+
+    @TempDir
+    Path dir;
+
+    @Mock private ImageRepository imageRepository;
+    @Mock private IngestProfileRepository ingestProfileRepository;
+    @Mock private TileStore tileStore;
+    @Mock private ThumbnailService thumbnailService;
+    @Mock private TransactionTemplate transactionTemplate;
+    @Mock private ImageReaderPool readerPool;
+
+    @InjectMocks
+    private ImageService imageService;
+
+    private Path source;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        source = Files.writeString(dir.resolve("slide.svs"), "slide");
+    }
+
+    @Test
+    void sameContentSharesOwnersPyramid() throws Exception {
+        ImageEntity owner = image(1L, null, Status.READY);
+        Path upload = Files.writeString(dir.resolve("copy.svs"), "slide");
+        inTransaction();
+        when(imageRepository.findFirstByContentHashAndStatusNotOrderByIdAsc(HASH, Status.ERROR))
+                .thenReturn(Optional.of(owner));
+        when(imageRepository.lockPyramid(1L)).thenReturn(List.of(owner));
+        when(imageRepository.save(any(ImageEntity.class))).thenAnswer(invocation -> {
+            ImageEntity saved = invocation.getArgument(0);
+            saved.setId(5L);
+            return saved;
+        });
+
+        ImageDTO dto = imageService.create("copy.svs", upload.toString(), HASH);
+
+        ArgumentCaptor<ImageEntity> saved = ArgumentCaptor.forClass(ImageEntity.class);
+        verify(imageRepository).save(saved.capture());
+        assertEquals(5L, dto.getId());
+        assertEquals(1L, saved.getValue().getTileSourceId());
+        assertEquals(source.toString(), saved.getValue().getPath());
+        assertEquals(Status.READY, saved.getValue().getStatus());
+        verify(tileStore).share("5", "1");
+        // Yüklenen kopya silinir, özgün dosya kalır
+        assertFalse(Files.exists(upload));
+        assertTrue(Files.exists(source));
+    }
+
+    @Test
+    void ownerFailedBeforeLockIsNotShared() throws Exception {
+        ImageEntity owner = image(1L, null, Status.PROCESSING);
+        ImageEntity failed = image(1L, null, Status.ERROR);
+        Path upload = Files.writeString(dir.resolve("copy.svs"), "slide");
+        inTransaction();
+        when(imageRepository.findFirstByContentHashAndStatusNotOrderByIdAsc(HASH, Status.ERROR))
+                .thenReturn(Optional.of(owner));
+        when(imageRepository.lockPyramid(1L)).thenReturn(List.of(failed));
+        // Okunamayan dosya varsayılan boyutlarla kaydedilir
+        when(readerPool.borrow(upload.toString())).thenThrow(new IOException("okunamadı"));
+
+        imageService.create("copy.svs", upload.toString(), HASH);
+
+        ArgumentCaptor<ImageEntity> saved = ArgumentCaptor.forClass(ImageEntity.class);
+        verify(imageRepository).save(saved.capture());
+        assertNull(saved.getValue().getTileSourceId());
+        assertEquals(upload.toString(), saved.getValue().getPath());
+        assertEquals(HASH, saved.getValue().getContentHash());
+        verify(tileStore, never()).share(anyString(), anyString());
+        assertTrue(Files.exists(upload));
+    }
+
+    @Test
+    void deletingDuplicateKeepsSharedStorage() throws Exception {
+        ImageEntity duplicate = image(2L, 1L, Status.READY);
+        when(imageRepository.findById(2L)).thenReturn(Optional.of(duplicate));
+        when(imageRepository.existsById(1L)).thenReturn(true);
+        when(imageRepository.countByPath(source.toString())).thenReturn(1L);
+
+        imageService.delete(2L);
+
+        verify(imageRepository).lockPyramid(1L);
+        verify(imageRepository).deleteById(2L);
+        verify(tileStore).unshare("2");
+        verify(tileStore, never()).delete(anyString());
+        verifyNoInteractions(thumbnailService);
+        assertTrue(Files.exists(source));
+    }
+
+    @Test
+    void deletingOwnerWithDuplicatesKeepsSharedStorage() throws Exception {
+        ImageEntity owner = image(1L, null, Status.READY);
+        when(imageRepository.findById(1L)).thenReturn(Optional.of(owner));
+        when(imageRepository.countByTileSourceId(1L)).thenReturn(1L);
+        when(imageRepository.countByPath(source.toString())).thenReturn(1L);
+
+        imageService.delete(1L);
+
+        verify(tileStore, never()).delete(anyString());
+        assertTrue(Files.exists(source));
+    }
+
+    @Test
+    void deletingLastReferenceReleasesStorage() throws Exception {
+        ImageEntity duplicate = image(2L, 1L, Status.READY);
+        when(imageRepository.findById(2L)).thenReturn(Optional.of(duplicate));
+
+        imageService.delete(2L);
+
+        verify(imageRepository).lockPyramid(1L);
+        verify(thumbnailService).evict("1");
+        verify(tileStore).delete("1");
+        assertFalse(Files.exists(source));
+    }
+
+    /** TransactionTemplate geri çağrıyı doğrudan çalıştırır */
+    @SuppressWarnings("unchecked")
+    private void inTransaction() {
+        when(transactionTemplate.execute(any())).thenAnswer(invocation ->
+                ((TransactionCallback<Object>) invocation.getArgument(0)).doInTransaction(null));
+    }
+
+    private ImageEntity image(Long id, Long tileSourceId, Status status) {
+        ImageEntity image = new ImageEntity();
+        image.setId(id);
+        image.setName("slide.svs");
+        image.setPath(source.toString());
+        image.setContentHash(HASH);
+        image.setTileSourceId(tileSourceId);
+        image.setStatus(status);
+        image.setWidth(1000);
+        image.setHeight(800);
+        image.setTileSize(512);
+        image.setMaxLevel(1);
+        return image;
+    }
+}
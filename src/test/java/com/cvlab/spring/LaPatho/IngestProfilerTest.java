@@ -0,0 +1,43 @@
+package com.cvlab.spring.LaPatho;
+
+import org.junit.jupiter.api.Test;
+
+import java.awt.image.BufferedImage;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class IngestProfilerTest {
+
+    @Test
+    void peakBufferBytesIsTheLargestConcurrentTotal() {
+        IngestProfiler profiler = new IngestProfiler();
+
+        profiler.bufferAcquired(100);
+        profiler.bufferAcquired(50);
+        profiler.bufferReleased(100);
+        profiler.bufferAcquired(80);
+        profiler.bufferReleased(50);
+        profiler.bufferReleased(80);
+
+        assertEquals(150, profiler.getPeakBufferBytes());
+    }
+
+    @Test
+    void peakIsNotRaisedAfterBuffersAreReleased() {
+        IngestProfiler profiler = new IngestProfiler();
+
+        for (int i = 0; i < 10; i++) {
+            profiler.bufferAcquired(64);
+            profiler.bufferReleased(64);
+        }
+        profiler.finish();
+
+        assertEquals(64, profiler.getPeakBufferBytes());
+    }
+
+    @Test
+    void imageBytesCountTheRaster() {
+        assertEquals(30 * 20 * 3, IngestProfiler.bytes(new BufferedImage(30, 20, BufferedImage.TYPE_3BYTE_BGR)));
+        assertEquals(30 * 20, IngestProfiler.bytes(new BufferedImage(30, 20, BufferedImage.TYPE_BYTE_GRAY)));
+    }
+}
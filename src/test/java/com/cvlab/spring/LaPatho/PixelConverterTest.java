@@ -0,0 +1,123 @@
+package com.cvlab.spring.LaPatho;
+
+import loci.formats.FormatTools;
+import loci.formats.IFormatReader;
+import org.junit.jupiter.api.Test;
+
+import java.awt.image.BufferedImage;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+class PixelConverterTest {
+
+    @Test
+    void rgbReaderKeepsItsLayout() {
+        IFormatReader reader = reader(FormatTools.UINT8, 3, 3);
+        when(reader.isInterleaved()).thenReturn(true);
+
+        PixelConverter.PixelLayout layout = PixelConverter.PixelLayout.of(reader);
+
+        assertEquals(3, layout.channels());
+        assertTrue(layout.interleaved());
+        assertArrayEquals(new int[]{0}, layout.planes());
+    }
+
+    @Test
+    void separateChannelPlanesAreMappedToRgb() {
+        IFormatReader reader = reader(FormatTools.UINT16, 1, 3);
+        for (int c = 0; c < 3; c++) {
+            when(reader.getIndex(0, c, 0)).thenReturn(10 + c);
+        }
+
+        PixelConverter.PixelLayout layout = PixelConverter.PixelLayout.of(reader);
+
+        assertEquals(3, layout.channels());
+        assertEquals(2, layout.bytesPerPixel());
+        assertFalse(layout.interleaved());
+        assertFalse(layout.isGray());
+        assertArrayEquals(new int[]{10, 11, 12}, layout.planes());
+    }
+
+    @Test
+    void unsupportedChannelLayoutsAreRejected() {
+        assertThrows(IllegalArgumentException.class, () -> PixelConverter.PixelLayout.of(reader(FormatTools.UINT8, 1, 2)));
+        assertThrows(IllegalArgumentException.class, () -> PixelConverter.PixelLayout.of(reader(FormatTools.UINT8, 1, 4)));
+        assertThrows(IllegalArgumentException.class, () -> PixelConverter.PixelLayout.of(reader(FormatTools.UINT8, 2, 2)));
+    }
+
+    @Test
+    void readPlacesChannelPlanesConsecutively() throws Exception {
+        IFormatReader reader = mock(IFormatReader.class);
+        List<byte[]> planeBuffers = new ArrayList<>();
+        when(reader.openBytes(anyInt(), any(byte[].class), eq(5), eq(6), eq(2), eq(1))).thenAnswer(invocation -> {
+            int no = invocation.getArgument(0);
+            byte[] plane = invocation.getArgument(1);
+            plane[0] = (byte) no;
+            plane[1] = (byte) (no + 1);
+            planeBuffers.add(plane);
+            return plane;
+        });
+        PixelConverter.PixelLayout layout = new PixelConverter.PixelLayout(1, 3, false, false, new int[]{4, 7, 9});
+
+        byte[] buffer = new byte[layout.bufferSize(2, 1)];
+        PixelConverter.read(reader, layout, buffer, 5, 6, 2, 1);
+
+        assertArrayEquals(new byte[]{4, 5, 7, 8, 9, 10}, buffer);
+        // Düzlemler ayrı tampon ayrılmadan doğrudan buffer'a okunur
+        assertEquals(3, planeBuffers.size());
+        planeBuffers.forEach(plane -> assertSame(buffer, plane));
+    }
+
+    @Test
+    void convertInterleavedRgbToBgr() {
+        PixelConverter.PixelLayout layout = new PixelConverter.PixelLayout(1, 3, true, false, new int[]{0});
+        BufferedImage dest = PixelConverter.createImage(3, 1, layout);
+
+        PixelConverter.convert(new byte[]{1, 2, 3, 4, 5, 6}, 2, 1, layout, dest, 1, 0);
+
+        assertArrayEquals(new byte[]{0, 0, 0, 3, 2, 1, 6, 5, 4}, DownsamplerTest.data(dest));
+    }
+
+    @Test
+    void convertPlanarRgbToBgr() {
+        PixelConverter.PixelLayout layout = new PixelConverter.PixelLayout(1, 3, false, false, new int[]{0, 1, 2});
+        BufferedImage dest = PixelConverter.createImage(2, 1, layout);
+
+        // R düzlemi, G düzlemi, B düzlemi
+        PixelConverter.convert(new byte[]{1, 2, 3, 4, 5, 6}, 2, 1, layout, dest, 0, 0);
+
+        assertArrayEquals(new byte[]{5, 3, 1, 6, 4, 2}, DownsamplerTest.data(dest));
+    }
+
+    @Test
+    void convertWideSamplesKeepsHighByte() {
+        // 16-bit little-endian gri: yüksek bayt ikinci sırada
+        PixelConverter.PixelLayout layout = new PixelConverter.PixelLayout(2, 1, false, true, new int[]{0});
+        BufferedImage dest = PixelConverter.createImage(2, 1, layout);
+
+        PixelConverter.convert(new byte[]{(byte) 0xFF, 0x12, 0x00, (byte) 0xAB}, 2, 1, layout, dest, 0, 0);
+
+        assertEquals(BufferedImage.TYPE_BYTE_GRAY, dest.getType());
+        assertArrayEquals(new byte[]{0x12, (byte) 0xAB}, DownsamplerTest.data(dest));
+    }
+
+    @Test
+    void onlyTileSizedBuffersAreRetained() {
+        assertSame(PixelConverter.readBuffer(1024), PixelConverter.readBuffer(512));
+
+        int large = PixelConverter.MAX_RETAINED_BYTES + 1;
+        assertNotSame(PixelConverter.readBuffer(large), PixelConverter.readBuffer(large));
+        assertTrue(PixelConverter.readBuffer(large).length >= large);
+    }
+
+    private static IFormatReader reader(int pixelType, int rgbChannels, int sizeC) {
+        IFormatReader reader = mock(IFormatReader.class);
+        when(reader.getPixelType()).thenReturn(pixelType);
+        when(reader.getRGBChannelCount()).thenReturn(rgbChannels);
+        when(reader.getSizeC()).thenReturn(sizeC);
+        return reader;
+    }
+}
@@ -0,0 +1,262 @@
+package com.cvlab.spring.LaPatho;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.core.io.ByteArrayResource;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
+import org.springframework.test.web.servlet.request.MockHttpServletRequestBuilder;
+import org.springframework.test.web.servlet.setup.MockMvcBuilders;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.*;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.asyncDispatch;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.content;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.header;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.request;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+@ExtendWith(MockitoExtension.class)
+class TileControllerTest {
+
+    private static final String GENERATION = "1a2b3cr";
+    private static final byte[] JPEG = "jpeg-bytes".getBytes(StandardCharsets.UTF_8);
+
+    @Mock private TileService tileService;
+    @Mock private ImageService imageService;
+    @Mock private ViewportTracker viewportTracker;
+    @Mock private TileStore tileStore;
+    @Mock private TileCache tileCache;
+    @Mock private TilePrefetcher prefetcher;
+    @Mock private TileWarmup warmup;
+
+    @InjectMocks
+    private TileController controller;
+
+    private MockMvc mvc;
+
+    @BeforeEach
+    void setUp() {
+        controller.onDemandEnabled = true;
+        ReflectionTestUtils.setField(controller, "tileWriter", new TileResponseWriter());
+        ReflectionTestUtils.setField(controller, "maxAgeSeconds", 31536000L);
+        ReflectionTestUtils.setField(controller, "onDemandTimeoutMs", 1000L);
+        ReflectionTestUtils.setField(controller, "batchMaxTiles", 4);
+        ReflectionTestUtils.setField(controller, "batchRenderTimeoutMs", 2000L);
+        mvc = MockMvcBuilders.standaloneSetup(controller).build();
+    }
+
+    @Test
+    void currentGenerationIsImmutableWithEtag() throws Exception {
+        immutableGeneration();
+        when(tileStore.find("1", 3, 1, 2)).thenReturn(Optional.of(new ByteArrayResource(JPEG)));
+
+        mvc.perform(get("/api/tiles/1/3/1_2.jpg").param("v", GENERATION))
+                .andExpect(status().isOk())
+                .andExpect(header().string(HttpHeaders.ETAG, "\"" + GENERATION + "-3-1_2\""))
+                .andExpect(header().string(HttpHeaders.CACHE_CONTROL, "max-age=31536000, public, immutable"))
+                .andExpect(content().contentType(MediaType.IMAGE_JPEG))
+                .andExpect(content().bytes(JPEG));
+    }
+
+    @Test
+    void staleOrMissingVersionIsRevalidated() throws Exception {
+        immutableGeneration();
+        when(tileStore.find("1", 3, 1, 2)).thenReturn(Optional.of(new ByteArrayResource(JPEG)));
+
+        mvc.perform(get("/api/tiles/1/3/1_2.jpg").param("v", "old"))
+                .andExpect(status().isOk())
+                .andExpect(header().string(HttpHeaders.CACHE_CONTROL, "no-cache"));
+        mvc.perform(get("/api/tiles/1/3/1_2.jpg"))
+                .andExpect(status().isOk())
+                .andExpect(header().string(HttpHeaders.CACHE_CONTROL, "no-cache"));
+    }
+
+    @Test
+    void matchingEtagIsNotModifiedWithoutOpeningTile() throws Exception {
+        immutableGeneration();
+
+        mvc.perform(get("/api/tiles/1/3/1_2.jpg").param("v", GENERATION)
+                        .header(HttpHeaders.IF_NONE_MATCH, "\"" + GENERATION + "-3-1_2\""))
+                .andExpect(status().isNotModified())
+                .andExpect(header().string(HttpHeaders.CACHE_CONTROL, "max-age=31536000, public, immutable"))
+                .andExpect(content().bytes(new byte[0]));
+
+        verifyNoInteractions(tileStore);
+    }
+
+    @Test
+    void etagOfAnotherTileIsNotMatched() throws Exception {
+        immutableGeneration();
+        when(tileStore.find("1", 3, 1, 2)).thenReturn(Optional.of(new ByteArrayResource(JPEG)));
+
+        mvc.perform(get("/api/tiles/1/3/1_2.jpg")
+                        .header(HttpHeaders.IF_NONE_MATCH, "\"" + GENERATION + "-3-2_1\""))
+                .andExpect(status().isOk())
+                .andExpect(content().bytes(JPEG));
+    }
+
+    @Test
+    void batchWritesOneFramePerTile() throws Exception {
+        immutableGeneration();
+        when(tileStore.find("1", 0, 0, 0)).thenReturn(Optional.of(new ByteArrayResource(JPEG)));
+        when(tileStore.find("1", 1, 0, 0)).thenThrow(new IOException("bozuk"));
+        when(tileStore.find("1", 1, 1, 0)).thenReturn(Optional.empty());
+        when(imageService.findById(1L)).thenReturn(Optional.empty());
+
+        MvcResult result = batch("[[0,0,0],[1,0,0],[1,1,0]]", GENERATION);
+
+        assertEquals(TileController.TILE_FRAMES_CONTENT_TYPE, result.getResponse().getContentType());
+        assertEquals(GENERATION, result.getResponse().getHeader(TileController.TILE_GENERATION_HEADER));
+        ByteBuffer frames = ByteBuffer.wrap(result.getResponse().getContentAsByteArray());
+        assertJpegFrame(frames, 0, 0, 0);
+        assertFrame(frames, 1, 0, 0, TileController.FRAME_ERROR);
+        // Görüntü kaydı yok: üretilemez, tile yok
+        assertFrame(frames, 1, 1, 0, TileController.FRAME_MISSING);
+        assertFalse(frames.hasRemaining());
+    }
+
+    @Test
+    void batchStreamsRenderedTilesAsTheyComplete() throws Exception {
+        processingImage();
+        when(tileStore.find("1", 0, 0, 0)).thenReturn(Optional.of(new ByteArrayResource(JPEG)));
+        when(tileStore.find("1", 1, 0, 0)).thenReturn(Optional.empty(), Optional.of(new ByteArrayResource(JPEG)));
+        when(tileStore.find("1", 1, 1, 0)).thenReturn(Optional.empty(), Optional.of(new ByteArrayResource(JPEG)));
+        // (1,0,0) geç, (1,1,0) hemen biter
+        when(tileService.renderTileOnDemand("/slides/1.svs", "1", 1, 0, 0)).thenReturn(
+                CompletableFuture.runAsync(() -> { }, CompletableFuture.delayedExecutor(200, TimeUnit.MILLISECONDS)));
+        when(tileService.renderTileOnDemand("/slides/1.svs", "1", 1, 1, 0))
+                .thenReturn(CompletableFuture.completedFuture(null));
+
+        MvcResult result = batch("[[1,0,0],[1,1,0],[0,0,0]]", null);
+
+        assertNull(result.getResponse().getHeader(TileController.TILE_GENERATION_HEADER));
+        ByteBuffer frames = ByteBuffer.wrap(result.getResponse().getContentAsByteArray());
+        // Depodaki tile önce, üretilenler bitiş sırasıyla
+        assertJpegFrame(frames, 0, 0, 0);
+        assertJpegFrame(frames, 1, 1, 0);
+        assertJpegFrame(frames, 1, 0, 0);
+        assertFalse(frames.hasRemaining());
+    }
+
+    @Test
+    void batchMarksOnlyTimedOutRendersPending() throws Exception {
+        ReflectionTestUtils.setField(controller, "batchRenderTimeoutMs", 50L);
+        processingImage();
+        when(tileStore.find(anyString(), anyInt(), anyInt(), anyInt())).thenReturn(Optional.empty());
+        when(tileService.renderTileOnDemand("/slides/1.svs", "1", 1, 1, 0))
+                .thenReturn(new CompletableFuture<>());
+
+        MvcResult result = batch("[[1,1,0],[1,5,5]]", null);
+
+        ByteBuffer frames = ByteBuffer.wrap(result.getResponse().getContentAsByteArray());
+        // Piramit dışı tile üretilmez
+        assertFrame(frames, 1, 5, 5, TileController.FRAME_MISSING);
+        assertFrame(frames, 1, 1, 0, TileController.FRAME_PENDING);
+        assertFalse(frames.hasRemaining());
+    }
+
+    @Test
+    void batchMapsRenderFailuresToFrames() throws Exception {
+        processingImage();
+        when(tileStore.find(anyString(), anyInt(), anyInt(), anyInt())).thenReturn(Optional.empty());
+        when(tileService.renderTileOnDemand("/slides/1.svs", "1", 1, 0, 0))
+                .thenReturn(CompletableFuture.failedFuture(new IllegalArgumentException("piramit dışı")));
+        when(tileService.renderTileOnDemand("/slides/1.svs", "1", 1, 1, 0))
+                .thenReturn(CompletableFuture.failedFuture(new TimeoutException("Reader havuzu dolu")));
+        when(tileService.renderTileOnDemand("/slides/1.svs", "1", 1, 0, 1))
+                .thenReturn(CompletableFuture.failedFuture(new IOException("okunamadı")));
+
+        MvcResult result = batch("[[1,0,0],[1,1,0],[1,0,1]]", null);
+
+        ByteBuffer frames = ByteBuffer.wrap(result.getResponse().getContentAsByteArray());
+        assertFrame(frames, 1, 0, 0, TileController.FRAME_MISSING);
+        // Reader havuzu dolu: istemci yeniden dener
+        assertFrame(frames, 1, 1, 0, TileController.FRAME_PENDING);
+        assertFrame(frames, 1, 0, 1, TileController.FRAME_ERROR);
+        assertFalse(frames.hasRemaining());
+    }
+
+    @Test
+    void oversizedBatchReportsLimit() throws Exception {
+        mvc.perform(post("/api/tiles/1/batch")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content("[[0,0,0],[1,0,0],[1,1,0],[2,0,0],[2,1,0]]"))
+                .andExpect(status().isBadRequest())
+                .andExpect(jsonPath("$.maxTiles").value(4));
+
+        mvc.perform(post("/api/tiles/1/batch")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content("[[0,0]]"))
+                .andExpect(status().isBadRequest());
+
+        verifyNoInteractions(tileStore);
+    }
+
+    /** Toplu isteği gönderir ve akan yanıtın tamamlanmasını bekler */
+    private MvcResult batch(String tiles, String version) throws Exception {
+        MockHttpServletRequestBuilder builder = post("/api/tiles/1/batch")
+                .contentType(MediaType.APPLICATION_JSON)
+                .content(tiles);
+        if (version != null) {
+            builder.param("v", version);
+        }
+        MvcResult started = mvc.perform(builder)
+                .andExpect(request().asyncStarted())
+                .andReturn();
+        return mvc.perform(asyncDispatch(started))
+                .andExpect(status().isOk())
+                .andReturn();
+    }
+
+    /** 1000x800, 512'lik tile'lar: level 1'de 2x2 tile */
+    private void processingImage() {
+        ImageEntity image = new ImageEntity();
+        image.setId(1L);
+        image.setPath("/slides/1.svs");
+        image.setWidth(1000);
+        image.setHeight(800);
+        image.setTileSize(512);
+        image.setStatus(Status.PROCESSING);
+        when(imageService.findById(1L)).thenReturn(Optional.of(image));
+    }
+
+    private void immutableGeneration() {
+        when(imageService.findTileGeneration("1")).thenReturn(Optional.of(GENERATION));
+        lenient().when(imageService.isImmutableGeneration(GENERATION)).thenReturn(true);
+    }
+
+    private static void assertFrame(ByteBuffer frames, int level, int x, int y, int length) {
+        assertEquals(level, frames.getInt());
+        assertEquals(x, frames.getInt());
+        assertEquals(y, frames.getInt());
+        assertEquals(length, frames.getInt());
+    }
+
+    private static void assertJpegFrame(ByteBuffer frames, int level, int x, int y) {
+        assertFrame(frames, level, x, y, JPEG.length);
+        byte[] body = new byte[JPEG.length];
+        frames.get(body);
+        assertArrayEquals(JPEG, body);
+    }
+}
@@ -0,0 +1,110 @@
+package com.cvlab.spring.LaPatho;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class TilePackTest {
+
+    @TempDir
+    Path dir;
+
+    // 2000x1000, 256'lık tile: seviye 0..3
+    private final TilePyramid pyramid = new TilePyramid(2000, 1000, 256);
+
+    @Test
+    void appendedTileIsReadBack() throws IOException {
+        try (TilePack pack = TilePack.openOrCreate(dir.resolve("1.pack"), pyramid)) {
+            pack.append(3, 1, 2, bytes("tile-3-1-2"));
+
+            assertTrue(pack.contains(3, 1, 2));
+            assertFalse(pack.contains(3, 2, 1));
+            assertEquals("tile-3-1-2", string(pack.read(3, 1, 2)));
+            assertNull(pack.read(3, 2, 1));
+            assertNull(pack.read(4, 0, 0));
+        }
+    }
+
+    @Test
+    void rewrittenTileReplacesPreviousCopy() throws IOException {
+        try (TilePack pack = TilePack.openOrCreate(dir.resolve("1.pack"), pyramid)) {
+            pack.append(2, 0, 0, bytes("first"));
+            pack.append(2, 0, 0, bytes("second"));
+
+            assertEquals("second", string(pack.read(2, 0, 0)));
+        }
+    }
+
+    @Test
+    void linkedTileSharesData() throws IOException {
+        try (TilePack pack = TilePack.openOrCreate(dir.resolve("1.pack"), pyramid)) {
+            long entry = pack.append(3, 0, 0, bytes("blank"));
+            pack.link(3, 7, 3, entry);
+
+            assertTrue(pack.contains(3, 7, 3));
+            assertEquals("blank", string(pack.read(3, 7, 3)));
+        }
+    }
+
+    @Test
+    void reopenedPackKeepsIndexAndAppendsAfterExistingData() throws IOException {
+        Path file = dir.resolve("1.pack");
+        try (TilePack pack = TilePack.openOrCreate(file, pyramid)) {
+            pack.append(0, 0, 0, bytes("root"));
+            pack.append(3, 7, 3, bytes("corner"));
+            pack.flush();
+        }
+
+        try (TilePack pack = TilePack.open(file)) {
+            assertEquals(2000, pack.getPyramid().getWidth());
+            assertEquals(1000, pack.getPyramid().getHeight());
+            assertEquals(256, pack.getPyramid().getTileSize());
+            assertEquals("root", string(pack.read(0, 0, 0)));
+
+            pack.append(1, 1, 0, bytes("new"));
+            assertEquals("corner", string(pack.read(3, 7, 3)));
+            assertEquals("new", string(pack.read(1, 1, 0)));
+        }
+
+        try (TilePack pack = TilePack.openOrCreate(file, pyramid)) {
+            assertEquals("root", string(pack.read(0, 0, 0)));
+            assertEquals("corner", string(pack.read(3, 7, 3)));
+            assertEquals("new", string(pack.read(1, 1, 0)));
+        }
+    }
+
+    @Test
+    void openOrCreateRejectsDifferentGeometry() throws IOException {
+        Path file = dir.resolve("1.pack");
+        try (TilePack pack = TilePack.openOrCreate(file, pyramid)) {
+            pack.append(0, 0, 0, bytes("root"));
+        }
+
+        assertThrows(IOException.class, () -> TilePack.openOrCreate(file, new TilePyramid(2000, 1000, 512)));
+    }
+
+    @Test
+    void appendOutsidePyramidIsRejected() throws IOException {
+        try (TilePack pack = TilePack.openOrCreate(dir.resolve("1.pack"), pyramid)) {
+            assertThrows(IllegalArgumentException.class, () -> pack.append(3, 8, 0, bytes("x")));
+            assertThrows(IllegalArgumentException.class, () -> pack.link(4, 0, 0, 1L));
+            assertThrows(IOException.class, () -> pack.append(3, 0, 0, new byte[0]));
+        }
+    }
+
+    private static byte[] bytes(String value) {
+        return value.getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static String string(ByteBuffer buffer) {
+        byte[] data = new byte[buffer.remaining()];
+        buffer.get(data);
+        return new String(data, StandardCharsets.UTF_8);
+    }
+}
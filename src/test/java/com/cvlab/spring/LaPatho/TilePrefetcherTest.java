@@ -0,0 +1,85 @@
+package com.cvlab.spring.LaPatho;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class TilePrefetcherTest {
+
+    // 8192x8192, 256'lık tile: seviye 5'te 32x32 tile
+    private final TilePyramid pyramid = new TilePyramid(8192, 8192, 256);
+
+    @Test
+    void panPredictsStripInMovementDirection() {
+        TilePrefetcher.Bounds before = new TilePrefetcher.Bounds(5, 10, 10, 13, 12);
+        TilePrefetcher.Bounds now = new TilePrefetcher.Bounds(5, 11, 10, 14, 12);
+
+        List<int[]> tiles = TilePrefetcher.predict(pyramid, now, before);
+
+        // Sağa pan: x=15 ve x=16 sütunları, viewport'tan birer satır taşarak
+        assertEquals(10, tiles.size());
+        assertArrayEquals(new int[]{5, 15, 9}, tiles.get(0));
+        for (int i = 0; i < tiles.size(); i++) {
+            assertEquals(5, tiles.get(i)[0]);
+            assertEquals(i < 5 ? 15 : 16, tiles.get(i)[1]);
+        }
+    }
+
+    @Test
+    void zoomInPredictsChildrenFromCenterThenRing() {
+        TilePrefetcher.Bounds before = new TilePrefetcher.Bounds(4, 5, 5, 6, 6);
+        TilePrefetcher.Bounds now = new TilePrefetcher.Bounds(4, 5, 5, 6, 6);
+
+        List<int[]> zoomIn = TilePrefetcher.predict(pyramid, now, new TilePrefetcher.Bounds(3, 2, 2, 3, 3));
+        List<int[]> still = TilePrefetcher.predict(pyramid, now, before);
+
+        // 4 tile x 4 çocuk, ardından seviye 4'te 12 tile'lık çevre
+        assertEquals(16 + 12, zoomIn.size());
+        for (int i = 0; i < 16; i++) {
+            assertEquals(5, zoomIn.get(i)[0]);
+        }
+        // Viewport merkezi (12, 12) köşesine değen dört çocuk önce gelir
+        for (int i = 0; i < 4; i++) {
+            int[] tile = zoomIn.get(i);
+            assertTrue(tile[1] == 11 || tile[1] == 12);
+            assertTrue(tile[2] == 11 || tile[2] == 12);
+        }
+        for (int i = 16; i < zoomIn.size(); i++) {
+            assertEquals(4, zoomIn.get(i)[0]);
+        }
+        assertEquals(zoomIn.size(), still.size());
+    }
+
+    @Test
+    void zoomOutPredictsParentLevel() {
+        TilePrefetcher.Bounds now = new TilePrefetcher.Bounds(4, 4, 4, 7, 7);
+
+        List<int[]> tiles = TilePrefetcher.predict(pyramid, now, new TilePrefetcher.Bounds(5, 8, 8, 15, 15));
+
+        // Seviye 3'te 2..3 ve birer tile çevresi: 4x4, ardından seviye 4'te 20 tile'lık çevre
+        assertEquals(16 + 20, tiles.size());
+        assertArrayEquals(new int[]{3, 1, 1}, tiles.get(0));
+        assertArrayEquals(new int[]{3, 4, 4}, tiles.get(15));
+        assertEquals(4, tiles.get(16)[0]);
+    }
+
+    @Test
+    void candidatesStayInsidePyramid() {
+        // Seviye 0 tek tile; köşedeki viewport için dışarı taşan adaylar elenir
+        TilePrefetcher.Bounds now = new TilePrefetcher.Bounds(0, 0, 0, 0, 0);
+
+        List<int[]> tiles = TilePrefetcher.predict(pyramid, now, null);
+
+        assertEquals(4, tiles.size());
+        for (int[] tile : tiles) {
+            assertTrue(pyramid.contains(tile[0], tile[1], tile[2]));
+        }
+
+        TilePrefetcher.Bounds edge = new TilePrefetcher.Bounds(5, 30, 0, 31, 1);
+        for (int[] tile : TilePrefetcher.predict(pyramid, edge, new TilePrefetcher.Bounds(5, 29, 0, 30, 1))) {
+            assertTrue(pyramid.contains(tile[0], tile[1], tile[2]));
+        }
+    }
+}
@@ -0,0 +1,91 @@
+package com.cvlab.spring.LaPatho;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.nio.file.Path;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class TissueMaskTest {
+
+    @TempDir
+    Path dir;
+
+    // 2048x2048, 256'lık tile: seviye 0 (256x256) genel görünüm, seviye 3 tam çözünürlük
+    private final TilePyramid pyramid = new TilePyramid(2048, 2048, 256);
+
+    @Test
+    void overviewLevelIsFinestWithinSize() {
+        assertEquals(0, TissueMask.overviewLevel(pyramid, 256));
+        assertEquals(1, TissueMask.overviewLevel(pyramid, 600));
+        assertEquals(3, TissueMask.overviewLevel(pyramid, 4096));
+    }
+
+    @Test
+    void saturatedRegionIsTissue() {
+        TissueMask mask = TissueMask.detect(pyramid, 0, overview(), 20, 2);
+
+        assertEquals(0, mask.getLevel());
+        assertEquals(0xF0EBE6, mask.getBackgroundRgb());
+        // 64..127 karesi her yönde 2 piksel genişletilir
+        assertEquals(68.0 * 68 / (256 * 256), mask.tissueFraction(), 1e-9);
+    }
+
+    @Test
+    void tilesIntersectDilatedTissue() {
+        TissueMask mask = TissueMask.detect(pyramid, 0, overview(), 20, 2);
+
+        assertTrue(mask.intersects(0, 0, 0));
+        assertTrue(mask.intersects(3, 2, 2));
+        // Maskede 32..63: sadece genişletilen kenar (62, 63) kesişir
+        assertTrue(mask.intersects(3, 1, 1));
+        assertFalse(mask.intersects(3, 0, 0));
+        assertFalse(mask.intersects(3, 7, 7));
+        assertFalse(mask.intersects(3, 8, 0));
+    }
+
+    @Test
+    void withoutDilationEdgeTileHasNoTissue() {
+        TissueMask mask = TissueMask.detect(pyramid, 0, overview(), 20, 0);
+
+        assertFalse(mask.intersects(3, 1, 1));
+        assertTrue(mask.intersects(3, 2, 2));
+    }
+
+    @Test
+    void savedMaskIsLoadedBack() throws IOException {
+        Path file = dir.resolve("1.tissue");
+        TissueMask mask = TissueMask.detect(pyramid, 0, overview(), 20, 2);
+        mask.save(file);
+
+        TissueMask loaded = TissueMask.load(file);
+
+        assertEquals(mask.getLevel(), loaded.getLevel());
+        assertEquals(mask.getBackgroundRgb(), loaded.getBackgroundRgb());
+        assertEquals(mask.tissueFraction(), loaded.tissueFraction(), 1e-12);
+        assertEquals(2048, loaded.getPyramid().getWidth());
+        for (int y = 0; y < 8; y++) {
+            for (int x = 0; x < 8; x++) {
+                assertEquals(mask.intersects(3, x, y), loaded.intersects(3, x, y));
+            }
+        }
+    }
+
+    /** Açık arka plan üzerinde 64..127 aralığında doygun (pembe) bir kare */
+    private static BufferedImage overview() {
+        BufferedImage image = BlankTilesTest.bgr(256, 256, 230, 235, 240);
+        byte[] pixels = DownsamplerTest.data(image);
+        for (int y = 64; y < 128; y++) {
+            for (int x = 64; x < 128; x++) {
+                int i = (y * 256 + x) * 3;
+                pixels[i] = (byte) 180;
+                pixels[i + 1] = (byte) 100;
+                pixels[i + 2] = (byte) 200;
+            }
+        }
+        return image;
+    }
+}